@@ -0,0 +1,105 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BenchmarkRunner.java
+ *
+ * Entry point of benchmarks.jar. Runs the suites matching the given regular
+ * expressions (all of them without arguments) with the GC profiler, so every
+ * result carries the allocation rate next to throughput and latency, and
+ * writes the JSON results to {@code bench.result}
+ * (default benchmarks/results/jmh-result.json).
+ *
+ * If the committed baseline {@code bench.baseline}
+ * (default benchmarks/baseline/jmh-result.json) exists, each score is printed
+ * next to its baseline score. Run from the project root, where the GTFS
+ * databases are.
+ */
+public final class BenchmarkRunner {
+
+    private static final Path RESULT = Path.of(System.getProperty("bench.result",
+            "benchmarks/results/jmh-result.json"));
+    private static final Path BASELINE = Path.of(System.getProperty("bench.baseline",
+            "benchmarks/baseline/jmh-result.json"));
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (args.length == 0) {
+            builder.include("benchmarks\\..*Benchmark");
+        }
+        for (String pattern : args) {
+            builder.include(pattern);
+        }
+        if (RESULT.getParent() != null) {
+            Files.createDirectories(RESULT.getParent());
+        }
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT.toString())
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+        if (Files.isRegularFile(BASELINE)) {
+            compareWithBaseline(results);
+        } else {
+            System.out.println("No baseline at " + BASELINE + "; commit " + RESULT + " there to create one");
+        }
+    }
+
+    /**
+     * Prints every primary score and allocation rate next to the baseline's.
+     */
+    private static void compareWithBaseline(Collection<RunResult> results) throws IOException {
+        Map<String, JsonNode> baseline = new HashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(BASELINE.toFile())) {
+            baseline.put(run.path("benchmark").asText() + " " + run.path("mode").asText(), run);
+        }
+
+        System.out.println();
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark (mode, metric)", "baseline", "current", "change");
+        for (RunResult run : results) {
+            String benchmark = run.getParams().getBenchmark();
+            String mode = run.getParams().getMode().shortLabel();
+            JsonNode base = baseline.get(benchmark + " " + mode);
+            if (base == null) {
+                continue;
+            }
+            Result primary = run.getPrimaryResult();
+            printRow(benchmark + " " + mode + " " + primary.getScoreUnit(),
+                    base.path("primaryMetric").path("score").asDouble(Double.NaN), primary.getScore());
+
+            Result allocation = run.getSecondaryResults().get("gc.alloc.rate.norm");
+            JsonNode baseAllocation = base.path("secondaryMetrics").path("gc.alloc.rate.norm").path("score");
+            if (allocation != null && !baseAllocation.isMissingNode()) {
+                printRow(benchmark + " " + mode + " " + allocation.getScoreUnit(),
+                        baseAllocation.asDouble(), allocation.getScore());
+            }
+        }
+    }
+
+    private static void printRow(String label, double baseline, double current) {
+        double change = (current - baseline) / baseline * 100;
+        System.out.printf("%-70s %14.3f %14.3f %+8.1f%%%n", label, baseline, current, change);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import closureAnalysis.calculations.CentralityCalculator;
+import closureAnalysis.data.graph.StopGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClosureAnalysisBenchmark.java
+ *
+ * The network model of the stop closure analysis: building the stop graph
+ * from the GTFS database and computing the centrality measures on it. Each
+ * call takes seconds to minutes, so every invocation is timed on its own
+ * (single-shot mode) instead of in a timed loop.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class ClosureAnalysisBenchmark {
+
+    private static final String DB_URL = System.getProperty("bench.closureDbUrl",
+            "jdbc:sqlite:data/june2ndBudapestGTFS.db");
+
+    /**
+     * An open connection to the closure analysis database, and a stop graph
+     * built from it for the centrality benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Network {
+        Connection conn;
+        StopGraph graph;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            conn = DriverManager.getConnection(DB_URL);
+            graph = new StopGraph().buildStopGraph(conn);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            conn.close();
+        }
+    }
+
+    @Benchmark
+    public StopGraph buildStopGraph(Network network) {
+        return new StopGraph().buildStopGraph(network.conn);
+    }
+
+    @Benchmark
+    public StopGraph closenessCentrality(Network network) {
+        new CentralityCalculator().calculateClosenessCentrality(network.graph);
+        return network.graph;
+    }
+
+    @Benchmark
+    public StopGraph betweennessCentrality(Network network) {
+        new CentralityCalculator().calculateBetweennessCentrality(network.graph);
+        return network.graph;
+    }
+}
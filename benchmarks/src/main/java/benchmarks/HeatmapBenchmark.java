@@ -0,0 +1,82 @@
+package benchmarks;
+
+import heatmap.HeatmapData;
+import heatmap.TravelTimeHeatmapAPI;
+import nlc.NLCHeatmapAPI;
+import nlc.NLCHeatmapData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import routing.api.Router;
+import routing.routingEngineCSA.api.CSARoutePlanner;
+import routing.routingEngineCSA.engine.ConnectionScanRouter;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HeatmapBenchmark.java
+ *
+ * Heatmap generation as the GUI does it: travel times from one origin stop to
+ * every stop with the connection scan router, and the loss of connectivity
+ * when one stop is closed. Origins and departure times come from the seeded
+ * {@link Workload}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 20)
+@Measurement(iterations = 5, time = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class HeatmapBenchmark {
+
+    private static final int MAX_WALKING_DISTANCE_METERS = Integer.getInteger("bench.maxWalk", 500);
+
+    /**
+     * The heatmap APIs, built once per fork.
+     */
+    @State(Scope.Benchmark)
+    public static class Heatmaps {
+        TravelTimeHeatmapAPI travelTime;
+        NLCHeatmapAPI connectivity;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Workload.queries();
+            travelTime = new TravelTimeHeatmapAPI(new Router(new CSARoutePlanner(
+                    ConnectionScanRouter.createFromGTFS(MAX_WALKING_DISTANCE_METERS))));
+            connectivity = new NLCHeatmapAPI();
+        }
+    }
+
+    /**
+     * Per-thread position in the workload.
+     */
+    @State(Scope.Thread)
+    public static class Queries {
+        Workload.Cursor cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cursor = new Workload.Cursor();
+        }
+    }
+
+    @Benchmark
+    public HeatmapData travelTimeHeatmap(Heatmaps heatmaps, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return heatmaps.travelTime.generateHeatmap(q.from().id, q.departure());
+    }
+
+    @Benchmark
+    public NLCHeatmapData connectivityLossHeatmap(Heatmaps heatmaps, Queries queries) {
+        return heatmaps.connectivity.generateHeatmap(queries.cursor.next().from().id);
+    }
+}
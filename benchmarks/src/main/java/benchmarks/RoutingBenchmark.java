@@ -0,0 +1,187 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import routing.db.DBConnectionManager;
+import routing.routingEngineAstar.RoutingEngineAstar;
+import routing.routingEngineCSA.engine.ConnectionScanRouter;
+import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineDijkstra.api.DijkstraRoutePlanner;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser;
+import routing.routingEngineModels.Coordinates;
+import routing.routingEngineModels.FinalRoute;
+import routing.routingEngineModels.RouteStep;
+import routing.routingEngineRaptor.engine.RaptorRouter;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RoutingBenchmark.java
+ *
+ * Single queries against each routing engine, cycling through the seeded
+ * {@link Workload}. Throughput mode gives queries per second, sample mode the
+ * latency distribution (p50, p99); run with the GC profiler for the
+ * allocation rate, as {@link BenchmarkRunner} does.
+ *
+ * The engines are built once per fork, outside the measurement. The CSA,
+ * RAPTOR and trip-based engines have their own states, so a suite only
+ * builds the engines its benchmarks query.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RoutingBenchmark {
+
+    private static final String DB_URL = System.getProperty("bench.dbUrl", "jdbc:sqlite:budapest_gtfs.db");
+    private static final int MAX_WALKING_DISTANCE_METERS = Integer.getInteger("bench.maxWalk", 500);
+
+    /**
+     * The engines under benchmark, shared by all threads of a fork.
+     */
+    @State(Scope.Benchmark)
+    public static class Engines {
+        DBConnectionManager dbManager;
+        RoutingEngineAstar astar;
+        DijkstraRouter dijkstraRouter;
+        DijkstraRoutePlanner dijkstraPlanner;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Workload.queries();
+            dbManager = new DBConnectionManager(DB_URL);
+            astar = new RoutingEngineAstar(dbManager);
+            dijkstraRouter = GTFSDatabaseParser.createRouterFromGTFS(MAX_WALKING_DISTANCE_METERS,
+                    DijkstraRouter.SearchMode.STOP_BASED);
+            dijkstraPlanner = new DijkstraRoutePlanner(dijkstraRouter);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            dbManager.close();
+        }
+    }
+
+    /**
+     * The connection scan engine.
+     */
+    @State(Scope.Benchmark)
+    public static class CsaEngine {
+        ConnectionScanRouter router;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Workload.queries();
+            router = ConnectionScanRouter.createFromGTFS(MAX_WALKING_DISTANCE_METERS);
+        }
+    }
+
+    /**
+     * The RAPTOR engine.
+     */
+    @State(Scope.Benchmark)
+    public static class RaptorEngine {
+        RaptorRouter router;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Workload.queries();
+            router = RaptorRouter.createFromGTFS(MAX_WALKING_DISTANCE_METERS);
+        }
+    }
+
+    /**
+     * The Dijkstra router in trip-based mode; building its transfers dominates the setup.
+     */
+    @State(Scope.Benchmark)
+    public static class TripBasedEngine {
+        DijkstraRouter router;
+
+        @Setup(Level.Trial)
+        public void setUp() throws SQLException {
+            Workload.queries();
+            router = GTFSDatabaseParser.createRouterFromGTFS(MAX_WALKING_DISTANCE_METERS,
+                    DijkstraRouter.SearchMode.TRIP_BASED);
+        }
+    }
+
+    /**
+     * Per-thread position in the workload.
+     */
+    @State(Scope.Thread)
+    public static class Queries {
+        Workload.Cursor cursor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            cursor = new Workload.Cursor();
+        }
+    }
+
+    @Benchmark
+    public List<RouteStep> astarFindRoute(Engines engines, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engines.astar.findRoute(q.from().lat, q.from().lon, q.to().lat, q.to().lon, q.departureText());
+    }
+
+    @Benchmark
+    public DijkstraRouter.Journey dijkstraFindShortestJourney(Engines engines, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engines.dijkstraRouter.findShortestJourney(q.from().id, q.to().id, q.departure());
+    }
+
+    @Benchmark
+    public FinalRoute dijkstraPlannerFindRoute(Engines engines, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engines.dijkstraPlanner.findRoute(toAdiStop(q.from()), toAdiStop(q.to()), q.departure());
+    }
+
+    @Benchmark
+    public DijkstraRouter.Journey dijkstraTripBasedFindShortestJourney(TripBasedEngine engine, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engine.router.findShortestJourney(q.from().id, q.to().id, q.departure());
+    }
+
+    @Benchmark
+    public DijkstraRouter.Journey csaFindJourney(CsaEngine engine, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engine.router.findJourney(toCoordinates(q.from()), toCoordinates(q.to()), q.departure().toSecondOfDay());
+    }
+
+    @Benchmark
+    public DijkstraRouter.Journey raptorFindJourney(RaptorEngine engine, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engine.router.findJourney(toCoordinates(q.from()), toCoordinates(q.to()), q.departure().toSecondOfDay());
+    }
+
+    @Benchmark
+    public List<DijkstraRouter.Journey> raptorFindParetoJourneys(RaptorEngine engine, Queries queries) {
+        Workload.Query q = queries.cursor.next();
+        return engine.router.findParetoJourneys(toCoordinates(q.from()), toCoordinates(q.to()),
+                q.departure().toSecondOfDay());
+    }
+
+    private static DijkstraCoordinates toCoordinates(DijkstraStop stop) {
+        return new DijkstraCoordinates(stop.lat, stop.lon);
+    }
+
+    private static AdiStop toAdiStop(DijkstraStop stop) {
+        return new AdiStop(stop.id, stop.name, new Coordinates(stop.lat, stop.lon));
+    }
+}
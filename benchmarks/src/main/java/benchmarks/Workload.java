@@ -0,0 +1,113 @@
+package benchmarks;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser;
+import routing.routingEngineModels.utils.ServiceTime;
+
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Workload.java
+ *
+ * The fixed set of queries every suite runs: origin stop, destination stop and
+ * departure time, drawn with a seeded random generator from the stops of the
+ * bundled feed. The same seed and feed always give the same queries, so runs
+ * on different commits are comparable.
+ *
+ * The seed and the number of queries can be changed with
+ * {@code bench.seed} (default 20250601) and {@code bench.queries} (default 64).
+ */
+public final class Workload {
+
+    private static final long SEED = Long.getLong("bench.seed", 20250601L);
+    private static final int QUERY_COUNT = Integer.getInteger("bench.queries", 64);
+    // departures between 06:00 and 22:00, on whole minutes
+    private static final int FIRST_DEPARTURE_MINUTE = 6 * 60;
+    private static final int DEPARTURE_SPAN_MINUTES = 16 * 60;
+
+    /**
+     * One benchmark query.
+     *
+     * @param from      the origin stop
+     * @param to        the destination stop
+     * @param departure the departure time
+     */
+    public record Query(DijkstraStop from, DijkstraStop to, LocalTime departure) {
+
+        /**
+         * @return the departure time as "HH:MM:SS"
+         */
+        public String departureText() {
+            return ServiceTime.format(departure.toSecondOfDay());
+        }
+    }
+
+    private static List<Query> queries;
+
+    private Workload() {
+    }
+
+    /**
+     * Returns the queries, reading the stops from the GTFS database on first use.
+     *
+     * @return the queries, in a fixed order
+     */
+    public static synchronized List<Query> queries() {
+        if (queries == null) {
+            try {
+                queries = Collections.unmodifiableList(generate(new GTFSDatabaseParser().parseStops()));
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to read the stops of the benchmark feed", e);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Draws the queries from the given stops.
+     *
+     * @param stops the stops of the feed by stop_id
+     * @return {@code bench.queries} queries between distinct stops
+     */
+    static List<Query> generate(Map<String, DijkstraStop> stops) {
+        // sorted by id so the draw does not depend on the map's iteration order
+        List<String> ids = new ArrayList<>(stops.keySet());
+        Collections.sort(ids);
+        if (ids.size() < 2) {
+            throw new IllegalStateException("The benchmark feed needs at least two stops");
+        }
+
+        Random random = new Random(SEED);
+        List<Query> result = new ArrayList<>(QUERY_COUNT);
+        while (result.size() < QUERY_COUNT) {
+            DijkstraStop from = stops.get(ids.get(random.nextInt(ids.size())));
+            DijkstraStop to = stops.get(ids.get(random.nextInt(ids.size())));
+            int minute = FIRST_DEPARTURE_MINUTE + random.nextInt(DEPARTURE_SPAN_MINUTES);
+            if (!from.id.equals(to.id)) {
+                result.add(new Query(from, to, LocalTime.of(minute / 60, minute % 60)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Cycles through the queries, so that successive benchmark invocations
+     * see different ones. One per benchmark thread.
+     */
+    public static final class Cursor {
+        private final List<Query> all = queries();
+        private int next;
+
+        public Query next() {
+            Query query = all.get(next);
+            next = next + 1 == all.size() ? 0 : next + 1;
+            return query;
+        }
+    }
+}
@@ -9,11 +9,12 @@ public class Main {
      * Main method used to launch the Request Handler application. This
      * application handles requests for routing and GTFS data processing.
      *
-     * @param args command line arguments (not used)
+     * @param args command line arguments: {@code --workers=N}, {@code --virtual-threads}
+     *             and {@code --max-in-flight=N} enable pipelined request processing
      * @throws IOException if there is an error processing requests
      */
     public static void main(String[] args) throws IOException {
-        RequestHandler requestHandler = new RequestHandler();
+        RequestHandler requestHandler = new RequestHandler(RequestHandler.Options.fromArgs(args));
         requestHandler.run();
     }
 
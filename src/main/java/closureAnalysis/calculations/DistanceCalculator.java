@@ -1,6 +1,7 @@
 package closureAnalysis.calculations;
 
 import routing.routingEngineModels.Coordinates;
+import routing.routingEngineModels.utils.GeoDistance;
 
 /**
  * Provides geographic distance calculations using the Haversine formula.
@@ -8,9 +9,6 @@ import routing.routingEngineModels.Coordinates;
  */
 public class DistanceCalculator {
 
-
-    private static final double EARTH_RADIUS_M = 6_371_000;
-
     /**
      * Calculates the distance between two geographic coordinates using the Haversine formula.
      * Returns the distance in meters.
@@ -20,20 +18,8 @@ public class DistanceCalculator {
      * @return Distance between coordinates in meters
      */
     public double calculateDistance(Coordinates startCoordinates, Coordinates endCoordinates) {
-
-        double startLatitudeRadian = Math.toRadians(startCoordinates.getLatitude());
-        double endLatitudeRadian = Math.toRadians(endCoordinates.getLatitude());
-        double deltaLatitude = Math.toRadians(endCoordinates.getLatitude() - startCoordinates.getLatitude());
-        double deltaLongitude = Math.toRadians(endCoordinates.getLongitude() - startCoordinates.getLongitude());
-
-        double a =  Math.sin(deltaLatitude/2) * Math.sin(deltaLatitude/2) +
-                Math.cos(startLatitudeRadian) * Math.cos(endLatitudeRadian) *
-                        Math.sin(deltaLongitude/2) * Math.sin(deltaLongitude/2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-
-        return EARTH_RADIUS_M * c;
-
+        return GeoDistance.meters(startCoordinates.getLatitude(), startCoordinates.getLongitude(),
+                endCoordinates.getLatitude(), endCoordinates.getLongitude());
     }
 
 }
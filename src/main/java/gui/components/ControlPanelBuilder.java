@@ -16,6 +16,7 @@ import javax.swing.JTextField;
 import gui.MapLine;
 import heatmap.TravelTimeHeatmapAPI;
 import routing.db.DBConnectionManager;
+import routing.metrics.SearchStats;
 import routing.routingEngineAstar.RoutingEngineAstar;
 import routing.routingEngineModels.RouteStep;
 
@@ -150,7 +151,12 @@ public class ControlPanelBuilder {
 
                 System.out.println("Finding route from " + sourceLat + "," + sourceLon
                         + " to " + targetLat + "," + targetLon + " at " + startTime);
-                List<RouteStep> route = routingEngine.findRoute(sourceLat, sourceLon, targetLat, targetLon, startTime);
+                SearchStats.Measured<List<RouteStep>> measured =
+                        routingEngine.findRouteWithStats(sourceLat, sourceLon, targetLat, targetLon, startTime, null);
+                List<RouteStep> route = measured.result();
+                if (measured.stats() != null) {
+                    System.err.println(measured.stats());
+                }
                 System.out.println(route);
 
                 if (route.isEmpty()) {
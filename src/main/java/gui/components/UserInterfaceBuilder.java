@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -25,9 +24,10 @@ import heatmap.TravelTimeHeatmapAPI;
 import routing.api.Router;
 import routing.db.DBConnectionManager;
 import routing.routingEngineAstar.RoutingEngineAstar;
+import routing.routingEngineCSA.api.CSARoutePlanner;
+import routing.routingEngineCSA.engine.ConnectionScanRouter;
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
-import routing.routingEngineDijkstra.api.DijkstraRoutePlanner;
-import routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser;
+import routing.routingEngineModels.utils.GeoDistance;
 
 /**
  * UserInterfaceBuilder.java
@@ -243,31 +243,23 @@ public class UserInterfaceBuilder {
      * @return The ID of the nearest bus stop, or null if no stops are available
      */
     private static String findNearestStopId(double lat, double lon) {
-        return StopsCache.getAllStops().values().stream()
-                .min(Comparator.comparingDouble(s -> calculateDistance(lat, lon,
-                s.getCoordinates().getLatitude(), s.getCoordinates().getLongitude())))
-                .map(AdiStop::getStopID)
-                .orElse(null);
-    }
-
-    /**
-     * Calculates the distance between two geographical coordinates using the
-     * Haversine formula.
-     *
-     * @param lat1 Latitude of the first point
-     * @param lon1 Longitude of the first point
-     * @param lat2 Latitude of the second point
-     * @param lon2 Longitude of the second point
-     * @return The distance in kilometers between the two points
-     */
-    private static double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        double r = 6371;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        return r * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        AdiStop[] stops = StopsCache.getAllStops().values().toArray(new AdiStop[0]);
+        double[] lats = new double[stops.length];
+        double[] lons = new double[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            lats[i] = stops[i].getCoordinates().getLatitude();
+            lons[i] = stops[i].getCoordinates().getLongitude();
+        }
+        // Only the ranking matters, for which the fast approximation is plenty
+        double[] distances = new double[stops.length];
+        GeoDistance.metersFrom(GeoDistance.Mode.FAST, lat, lon, lats, lons, distances);
+        int nearest = -1;
+        for (int i = 0; i < stops.length; i++) {
+            if (nearest < 0 || distances[i] < distances[nearest]) {
+                nearest = i;
+            }
+        }
+        return nearest < 0 ? null : stops[nearest].getStopID();
     }
 
     /**
@@ -319,8 +311,8 @@ public class UserInterfaceBuilder {
      * @throws IOException If there is an error reading the GTFS data
      */
     private static TravelTimeHeatmapAPI initializeHeatmapSystem() throws SQLException, IOException {
-        return new TravelTimeHeatmapAPI(new Router(new DijkstraRoutePlanner(
-                GTFSDatabaseParser.createRouterFromGTFS(500)
+        return new TravelTimeHeatmapAPI(new Router(new CSARoutePlanner(
+                ConnectionScanRouter.createFromGTFS(500)
         )));
     }
 
@@ -1,26 +1,26 @@
 package gui.data;
 
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
+import parsers.CsvTokenizer;
+
 public class BusStopDataLoader {
     public static List<LocationPoint> loadFromCsvFile(String csvFilePath) {
         List<LocationPoint> busStopsList = new ArrayList<>();
-        String csvSeparatorRegex = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
-        try (BufferedReader fileReader = new BufferedReader(new FileReader(csvFilePath))) {
-            fileReader.readLine();
-            String currentLine;
-            while ((currentLine = fileReader.readLine()) != null) {
-                String[] csvColumns = currentLine.split(csvSeparatorRegex, -1);
-                if (csvColumns.length < 4) continue;
+        try (Reader fileReader = new FileReader(csvFilePath)) {
+            CsvTokenizer csvColumns = new CsvTokenizer(fileReader);
+            csvColumns.next();
+            while (csvColumns.next()) {
+                if (csvColumns.fieldCount() < 4) continue;
                 try {
-                    String stopId = csvColumns[0];
-                    String stopName = csvColumns[1];
-                    double latitude = Double.parseDouble(csvColumns[2]);
-                    double longitude = Double.parseDouble(csvColumns[3]);
+                    String stopId = csvColumns.getString(0);
+                    String stopName = csvColumns.getString(1);
+                    double latitude = csvColumns.getDouble(2);
+                    double longitude = csvColumns.getDouble(3);
                     busStopsList.add(new LocationPoint(latitude, longitude, stopId, stopName));
                 } catch (NumberFormatException ignored) {
                 }
@@ -30,4 +30,4 @@ public class BusStopDataLoader {
         }
         return busStopsList;
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,19 @@
 package heatmap;
 
 import java.time.LocalTime;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import routing.api.Router;
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
-import routing.routingEngineModels.FinalRoute;
 
 /**
- * Generates heatmap data by calculating travel times from an origin stop to all other stops using a router.
+ * Generates heatmap data by calculating travel times from an origin stop to all other stops
+ * with one one-to-all search of the router.
  */
 public class HeatmapGenerator {
+    private static final LocalTime DEFAULT_DEPARTURE_TIME = LocalTime.of(8, 0);
+
     private final Router router;
 
     /**
@@ -25,26 +27,36 @@ public class HeatmapGenerator {
     }
 
     /**
-     * Generates heatmap data from a specified origin stop.
+     * Generates heatmap data from a specified origin stop, departing at the default time.
      *
      * @param originStop the starting stop for the heatmap
      * @return a HeatmapData object containing travel times and color mappings
      */
     public HeatmapData generate(AdiStop originStop) {
-        Map<AdiStop, Double> travelTimes = new ConcurrentHashMap<>();
+        return generate(originStop, DEFAULT_DEPARTURE_TIME);
+    }
+
+    /**
+     * Generates heatmap data from a specified origin stop. A single one-to-all
+     * search gives the travel time to every stop at once.
+     *
+     * @param originStop    the starting stop for the heatmap
+     * @param departureTime the departure time from the origin
+     * @return a HeatmapData object containing travel times and color mappings
+     */
+    public HeatmapData generate(AdiStop originStop, LocalTime departureTime) {
+        Map<String, Integer> travelTimesById = router.findTravelTimes(originStop.getCoordinates(), departureTime);
+        Map<AdiStop, Double> travelTimes = new HashMap<>(travelTimesById.size() * 2);
 
-        StopsCache.getAllStops().values().parallelStream()
-                .filter(stop -> !stop.equals(originStop))
-                .forEach(targetStop -> {
-                    FinalRoute route = router.findRoute(
-                            originStop.getCoordinates(),
-                            targetStop.getCoordinates(),
-                            LocalTime.of(8, 0)
-                    );
-                    if (route != null) {
-                        travelTimes.put(targetStop, (double) route.getTotalTime());
-                    }
-                });
+        for (AdiStop targetStop : StopsCache.getAllStops().values()) {
+            if (targetStop.equals(originStop)) {
+                continue;
+            }
+            Integer travelTime = travelTimesById.get(targetStop.getStopID());
+            if (travelTime != null) {
+                travelTimes.put(targetStop, (double) travelTime);
+            }
+        }
 
         return new HeatmapData(originStop, travelTimes);
     }
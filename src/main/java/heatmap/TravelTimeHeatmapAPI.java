@@ -4,6 +4,7 @@ import routing.api.Router;
 import routing.routingEngineDijkstra.adiModels.Stop.*;
 
 import java.awt.Color;
+import java.time.LocalTime;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -38,6 +39,22 @@ public class TravelTimeHeatmapAPI {
         return heatmapGenerator.generate(origin);
     }
 
+    /**
+     * Generates a travel time heatmap from a specified origin stop ID and departure time.
+     *
+     * @param originStopId  the ID of the starting stop
+     * @param departureTime the departure time from the origin
+     * @return a HeatmapData object containing travel times and color mappings
+     * @throws IllegalArgumentException if the stop ID is not found
+     */
+    public HeatmapData generateHeatmap(String originStopId, LocalTime departureTime) {
+        AdiStop origin = StopsCache.getStop(originStopId);
+        if (origin == null) {
+            throw new IllegalArgumentException("Stop not found: " + originStopId);
+        }
+        return heatmapGenerator.generate(origin, departureTime);
+    }
+
     /**
      * Retrieves the travel time to a target stop from a heatmap.
      *
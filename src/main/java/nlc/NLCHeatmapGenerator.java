@@ -2,7 +2,7 @@ package nlc;
 
 import heatmap.StopsCache;
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
-import routing.routingEngineDijkstra.dijkstra.service.HaversineDistanceCalculator;
+import routing.routingEngineModels.utils.GeoDistance;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,7 +12,6 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class NLCHeatmapGenerator {
     private static final int NEIGHBOR_RADIUS_METERS = 400;
-    private final HaversineDistanceCalculator distanceCalculator = new HaversineDistanceCalculator();
 
     /**
      * Generates NLC heatmap data for a specified closed stop.
@@ -25,11 +24,21 @@ public class NLCHeatmapGenerator {
         Collection<AdiStop> allStops = stopMap.values();
         Map<AdiStop, Integer> connectionLoss = new ConcurrentHashMap<>();
         Map<AdiStop, Set<AdiStop>> neighborsMap = new ConcurrentHashMap<>();
-        for (AdiStop s : allStops) {
+        AdiStop[] stops = allStops.toArray(new AdiStop[0]);
+        double[] lats = new double[stops.length];
+        double[] lons = new double[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            lats[i] = stops[i].getCoordinates().getLatitude();
+            lons[i] = stops[i].getCoordinates().getLongitude();
+        }
+        double[] distances = new double[stops.length];
+        for (AdiStop s : stops) {
+            GeoDistance.metersFrom(GeoDistance.Mode.EXACT,
+                    s.getCoordinates().getLatitude(), s.getCoordinates().getLongitude(), lats, lons, distances);
             Set<AdiStop> neighbors = new HashSet<>();
-            for (AdiStop other : allStops) {
-                if (!s.equals(other) && calculateDistance(s, other) <= NEIGHBOR_RADIUS_METERS) {
-                    neighbors.add(other);
+            for (int j = 0; j < stops.length; j++) {
+                if (Math.round(distances[j]) <= NEIGHBOR_RADIUS_METERS && !s.equals(stops[j])) {
+                    neighbors.add(stops[j]);
                 }
             }
             neighborsMap.put(s, neighbors);
@@ -67,12 +76,12 @@ public class NLCHeatmapGenerator {
      * @param stop2 the second stop
      * @return the distance in meters
      */
-    private int calculateDistance(AdiStop stop1, AdiStop stop2) {
-        return distanceCalculator.calculateDistanceMeters(
+    private long calculateDistance(AdiStop stop1, AdiStop stop2) {
+        return Math.round(GeoDistance.meters(
                 stop1.getCoordinates().getLatitude(),
                 stop1.getCoordinates().getLongitude(),
                 stop2.getCoordinates().getLatitude(),
                 stop2.getCoordinates().getLongitude()
-        );
+        ));
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package parsers;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,24 +19,71 @@ public class CLIWrite {
     }
 
     public void sendOk(Object value) throws IOException {
-        responseWriter.write(Map.of("ok", value));
-        responseWriter.getWriter().write('\n');
-        responseWriter.getWriter().flush();
+        write(ok(value));
     }
 
     public void sendError(String message) throws IOException {
-        responseWriter.write(Map.of("error", message));
+        write(error(message));
+    }
+
+    public void writeRouteSteps(List<RouteStep> route) throws IOException {
+        write(ok(toJSON(route)));
+    }
+
+    /**
+     * Writes a route together with the time it took to compute it.
+     *
+     * @param route     the route steps
+     * @param latencyMs the request latency in milliseconds
+     */
+    public void writeRouteSteps(List<RouteStep> route, double latencyMs) throws IOException {
+        write(routeSteps(route, latencyMs));
+    }
+
+    /**
+     * Writes one response line. Responses may come from several worker threads,
+     * so writing a line is atomic.
+     *
+     * @param response the response object
+     */
+    public synchronized void write(Map<String, Object> response) throws IOException {
+        responseWriter.write(response);
         responseWriter.getWriter().write('\n');
         responseWriter.getWriter().flush();
     }
 
-    public void writeRouteSteps(List<RouteStep> route) throws IOException {
+    /**
+     * Builds an {"ok": value} response.
+     */
+    public static Map<String, Object> ok(Object value) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("ok", value);
+        return response;
+    }
+
+    /**
+     * Builds an {"error": message} response.
+     */
+    public static Map<String, Object> error(String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", message);
+        return response;
+    }
+
+    /**
+     * Builds a route response with its latency.
+     */
+    public static Map<String, Object> routeSteps(List<RouteStep> route, double latencyMs) {
+        Map<String, Object> response = ok(toJSON(route));
+        response.put("latencyMs", Math.round(latencyMs * 1000) / 1000.0);
+        return response;
+    }
+
+    private static List<Map<String, Object>> toJSON(List<RouteStep> route) {
         List<Map<String, Object>> steps = new ArrayList<>(route.size());
         for (RouteStep step : route) {
             steps.add(step.toJSON());
         }
-        responseWriter.write(Map.of("ok", steps));
-        responseWriter.getWriter().write('\n');
-        responseWriter.getWriter().flush();
+        return steps;
     }
 }
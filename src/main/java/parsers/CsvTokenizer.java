@@ -0,0 +1,381 @@
+package parsers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import routing.routingEngineModels.utils.ServiceTime;
+
+/**
+ * CsvTokenizer.java
+ *
+ * Streaming CSV reader used by every CSV loader of the project. Characters are
+ * read into a reusable window and each record is tokenized in place: fields
+ * are kept as trimmed offsets into the window, quotes are removed and escaped
+ * quotes ("") collapsed by moving the field's characters within the window. A
+ * record only allocates when a field is asked for as a String; the typed
+ * accessors parse numbers and GTFS times straight from the window.
+ *
+ * Quoted fields may contain commas and line breaks. A leading byte order mark
+ * is skipped, blank lines are skipped, and "\n", "\r\n" and "\r" all end a
+ * record. The window grows when a single record does not fit.
+ *
+ * Usage: call {@link #next()} until it returns false, reading the fields of
+ * the current record in between. The tokenizer does not close the reader.
+ */
+public final class CsvTokenizer {
+
+    private static final int DEFAULT_WINDOW = 1 << 16;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final Reader reader;
+    private char[] buf;
+    private int pos;        // next unread character
+    private int limit;      // end of the characters read so far
+    private boolean eof;
+    private boolean started;
+
+    // trimmed [start, end) of each field of the current record
+    private int[] fieldStart = new int[32];
+    private int[] fieldEnd = new int[32];
+    private int fieldCount;
+
+    public CsvTokenizer(Reader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+
+    public CsvTokenizer(Reader reader, int windowSize) {
+        this.reader = reader;
+        this.buf = new char[Math.max(16, windowSize)];
+    }
+
+    /**
+     * Advances to the next non-blank record.
+     *
+     * @return false at the end of the input
+     * @throws IOException if reading fails
+     */
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            if (ensure(1) && buf[pos] == '\uFEFF') {
+                pos++;
+            }
+        }
+        while (ensure(1)) {
+            int end = recordEnd();
+            tokenize(pos, end);
+            if (end == limit) {
+                pos = limit;
+            } else {
+                pos = buf[end] == '\r' && end + 1 < limit && buf[end + 1] == '\n' ? end + 2 : end + 1;
+            }
+            if (fieldCount > 1 || !isEmpty(0)) {
+                return true;
+            }
+        }
+        fieldCount = 0;
+        return false;
+    }
+
+    /**
+     * Finds the end of the record starting at pos, reading more input (and
+     * compacting or growing the window) until the whole record is in it.
+     *
+     * @return the position of the record's line break, or limit at the end of the input
+     */
+    private int recordEnd() throws IOException {
+        int r = pos;
+        boolean inQuotes = false;
+        while (true) {
+            for (; r < limit; r++) {
+                char c = buf[r];
+                if (c == '"') {
+                    // an escaped quote toggles twice
+                    inQuotes = !inQuotes;
+                } else if (!inQuotes && (c == '\n' || c == '\r')) {
+                    // a CR at the window end may still be followed by its LF
+                    if (c == '\n' || r + 1 < limit || eof) {
+                        return r;
+                    }
+                    break;
+                }
+            }
+            if (eof) {
+                return limit;
+            }
+            int scanned = r - pos;
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            r = scanned;
+            fill();
+        }
+    }
+
+    /**
+     * Splits the complete record [start, end) into fields, removing quotes
+     * and collapsing escaped quotes in place.
+     */
+    private void tokenize(int start, int end) {
+        fieldCount = 0;
+        boolean inQuotes = false;
+        int fieldBegin = start;
+        int w = start;          // write position, behind r once quotes were removed
+        for (int r = start; r < end; r++) {
+            char c = buf[r];
+            if (c == '"') {
+                if (inQuotes && r + 1 < end && buf[r + 1] == '"') {
+                    buf[w++] = '"';
+                    r++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (c == ',' && !inQuotes) {
+                addField(fieldBegin, w);
+                fieldBegin = w;
+            } else {
+                buf[w++] = c;
+            }
+        }
+        addField(fieldBegin, w);
+    }
+
+    private void addField(int start, int end) {
+        while (start < end && buf[start] <= ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] <= ' ') {
+            end--;
+        }
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * Makes sure at least {@code n} characters are available after pos.
+     */
+    private boolean ensure(int n) throws IOException {
+        while (limit - pos < n && !eof) {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            fill();
+        }
+        return limit - pos >= n;
+    }
+
+    private void fill() throws IOException {
+        int read = reader.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    // ---- fields of the current record ----
+
+    /**
+     * @return the number of fields of the current record
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param i field index
+     * @return the length of the trimmed field
+     */
+    public int length(int i) {
+        return fieldEnd[i] - fieldStart[i];
+    }
+
+    /**
+     * @param i   field index
+     * @param pos position within the trimmed field
+     * @return the character at that position
+     */
+    public char charAt(int i, int pos) {
+        return buf[fieldStart[i] + pos];
+    }
+
+    /**
+     * @param i field index
+     * @return true if the trimmed field is empty
+     */
+    public boolean isEmpty(int i) {
+        return fieldEnd[i] == fieldStart[i];
+    }
+
+    /**
+     * Compares a field with a string without allocating.
+     *
+     * @param i     field index
+     * @param value the string to compare with
+     * @return true if the trimmed field equals {@code value}
+     */
+    public boolean fieldEquals(int i, String value) {
+        int start = fieldStart[i];
+        int len = fieldEnd[i] - start;
+        if (len != value.length()) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (buf[start + k] != value.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param i field index
+     * @return the trimmed, unquoted field
+     */
+    public String getString(int i) {
+        return new String(buf, fieldStart[i], fieldEnd[i] - fieldStart[i]);
+    }
+
+    /**
+     * @return every field of the current record as trimmed strings
+     */
+    public String[] getStrings() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = getString(i);
+        }
+        return fields;
+    }
+
+    /**
+     * Parses a field as {@link Long#parseLong(String)} would.
+     *
+     * @param i field index
+     * @return the value
+     * @throws NumberFormatException if the field is not an integer
+     */
+    public long getLong(int i) {
+        int p = fieldStart[i];
+        int end = fieldEnd[i];
+        boolean negative = p < end && buf[p] == '-';
+        if (negative || p < end && buf[p] == '+') {
+            p++;
+        }
+        // up to 18 digits cannot overflow, anything else takes the slow path
+        if (p == end || end - p > 18) {
+            return Long.parseLong(getString(i));
+        }
+        long value = 0;
+        for (; p < end; p++) {
+            int d = buf[p] - '0';
+            if (d < 0 || d > 9) {
+                return Long.parseLong(getString(i));
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a field as {@link Integer#parseInt(String)} would.
+     *
+     * @param i field index
+     * @return the value
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getInt(int i) {
+        long value = getLong(i);
+        if (value != (int) value) {
+            throw new NumberFormatException("Value out of int range: " + getString(i));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a field as {@link Double#parseDouble(String)} would. Plain
+     * decimals of up to 15 digits, like coordinates, are converted without
+     * allocating; the quotient of two exactly representable doubles is
+     * correctly rounded, so the result is the same.
+     *
+     * @param i field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int i) {
+        int p = fieldStart[i];
+        int end = fieldEnd[i];
+        boolean negative = p < end && buf[p] == '-';
+        if (negative || p < end && buf[p] == '+') {
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; p < end; p++) {
+            char c = buf[p];
+            if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else {
+                return Double.parseDouble(getString(i));
+            }
+        }
+        if (digits == 0 || digits > 15) {
+            return Double.parseDouble(getString(i));
+        }
+        double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a GTFS time field ("H:MM:SS", hours may exceed 24) as
+     * {@link ServiceTime#parse(String)} would.
+     *
+     * @param i field index
+     * @return seconds since the start of the service day
+     * @throws IllegalArgumentException if the field is not a time
+     */
+    public int getSeconds(int i) {
+        int start = fieldStart[i];
+        int end = fieldEnd[i];
+        int len = end - start;
+        if (len >= 7 && len <= 9 && buf[end - 3] == ':' && buf[end - 6] == ':') {
+            int h = 0;
+            boolean digits = true;
+            for (int p = start; p < end - 6; p++) {
+                int d = buf[p] - '0';
+                digits &= d >= 0 && d <= 9;
+                h = h * 10 + d;
+            }
+            int m = (buf[end - 5] - '0') * 10 + (buf[end - 4] - '0');
+            int s = (buf[end - 2] - '0') * 10 + (buf[end - 1] - '0');
+            digits &= isDigit(end - 5) && isDigit(end - 4) && isDigit(end - 2) && isDigit(end - 1);
+            if (digits && m <= 59 && s <= 59) {
+                return h * 3600 + m * 60 + s;
+            }
+        }
+        return ServiceTime.parse(getString(i));
+    }
+
+    private boolean isDigit(int p) {
+        return buf[p] >= '0' && buf[p] <= '9';
+    }
+}
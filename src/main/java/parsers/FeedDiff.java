@@ -0,0 +1,72 @@
+package parsers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FeedDiff.java
+ *
+ * What an incremental load changed in a GTFS database: per keyed table the
+ * keys whose rows were added, changed or removed (trip_ids for stop_times and
+ * trips, stop_ids for stops, ...), and the tables that were replaced or
+ * dropped as a whole.
+ *
+ * @param changedKeys    changed keys by table name
+ * @param replacedTables names of the tables replaced or dropped whole
+ */
+public record FeedDiff(Map<String, Set<String>> changedKeys, Set<String> replacedTables) {
+
+    public FeedDiff {
+        changedKeys = Collections.unmodifiableMap(changedKeys);
+        replacedTables = Collections.unmodifiableSet(replacedTables);
+    }
+
+    /**
+     * @return true if the load changed nothing
+     */
+    public boolean isEmpty() {
+        return changedKeys.isEmpty() && replacedTables.isEmpty();
+    }
+
+    /**
+     * @param table a table name
+     * @return true if any rows of the table changed
+     */
+    public boolean touches(String table) {
+        return changedKeys.containsKey(table) || replacedTables.contains(table);
+    }
+
+    /**
+     * @param table a table name
+     * @return the changed keys of the table, empty if none changed or the table was replaced whole
+     */
+    public Set<String> changedKeys(String table) {
+        return changedKeys.getOrDefault(table, Set.of());
+    }
+
+    /**
+     * Collects the changes of a load.
+     */
+    static final class Builder {
+        private final Map<String, Set<String>> changedKeys = new LinkedHashMap<>();
+        private final Set<String> replacedTables = new LinkedHashSet<>();
+
+        void changed(String table, Set<String> keys) {
+            changedKeys.computeIfAbsent(table, t -> new LinkedHashSet<>()).addAll(keys);
+        }
+
+        void replaced(String table) {
+            changedKeys.remove(table);
+            replacedTables.add(table);
+        }
+
+        FeedDiff build() {
+            Map<String, Set<String>> keys = new LinkedHashMap<>();
+            changedKeys.forEach((table, set) -> keys.put(table, Collections.unmodifiableSet(set)));
+            return new FeedDiff(keys, new LinkedHashSet<>(replacedTables));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package parsers;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * OrderedResponseWriter.java
+ *
+ * Puts the responses of concurrently processed requests back into input order.
+ * Every request without an "id" gets a sequence number when it is read; its
+ * response is held back until all earlier responses have been written.
+ * Requests that carry an "id" are answered as soon as they are done, since
+ * the client can match them itself.
+ *
+ * One in-flight permit is released for every response actually written, so
+ * the reorder buffer is bounded by the in-flight limit as well.
+ */
+class OrderedResponseWriter {
+
+    private final CLIWrite cliWrite;
+    private final Semaphore inFlight;
+    private final Map<Long, Map<String, Object>> pending = new HashMap<>();
+    private long nextSequence;
+    private long assignedSequence;
+
+    OrderedResponseWriter(CLIWrite cliWrite, Semaphore inFlight) {
+        this.cliWrite = cliWrite;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * Reserves the next position in the output order. Called by the reader thread.
+     *
+     * @return the sequence number of the request
+     */
+    long nextSequence() {
+        return assignedSequence++;
+    }
+
+    /**
+     * Completes an ordered request and writes every response that is now in turn.
+     *
+     * @param sequence the sequence number of the request
+     * @param response the response object
+     */
+    synchronized void complete(long sequence, Map<String, Object> response) throws IOException {
+        pending.put(sequence, response);
+        Map<String, Object> next;
+        while ((next = pending.remove(nextSequence)) != null) {
+            nextSequence++;
+            try {
+                cliWrite.write(next);
+            } finally {
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Writes the response of a request that carries an "id" right away.
+     *
+     * @param response the response object, including the request id
+     */
+    void completeUnordered(Map<String, Object> response) throws IOException {
+        try {
+            cliWrite.write(response);
+        } finally {
+            inFlight.release();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package parsers;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -8,7 +7,7 @@ import java.util.List;
 
 /**
  * Utility class to parse CSV content, handling headers, quoted fields,
- * trimming, and skipping empty lines.
+ * trimming, and skipping empty lines. Tokenizing is done by {@link CsvTokenizer}.
  */
 public class ParseCSV {
 
@@ -33,65 +32,22 @@ public class ParseCSV {
     /**
      * Parses CSV data from the given Reader.
      * Implements first-record-as-header, ignores empty lines, and trims fields.
+     * Records with a different number of fields than the header are skipped.
      */
     public static Result parse(Reader reader) throws IOException {
-        BufferedReader br = new BufferedReader(reader);
-        String line;
-        // read header line (skip empty)
-        do {
-            line = br.readLine();
-        } while (line != null && line.trim().isEmpty());
-
-        if (line == null) {
+        CsvTokenizer tokenizer = new CsvTokenizer(reader);
+        // the tokenizer skips empty lines and the BOM, and trims fields
+        if (!tokenizer.next()) {
             throw new IOException("Empty CSV input");
         }
-
-        // strip BOM and leading whitespace
-        line = line.replaceAll("^[\\uFEFF\\s]+", "");
-        String[] rawHeaders = splitCsvLine(line);
-        List<String> headers = new ArrayList<>();
-        for (String h : rawHeaders) {
-            headers.add(h.trim());
-        }
+        List<String> headers = new ArrayList<>(List.of(tokenizer.getStrings()));
 
         List<String[]> records = new ArrayList<>();
-        while ((line = br.readLine()) != null) {
-            if (line.trim().isEmpty()) continue;
-            String[] fields = splitCsvLine(line);
-            if (fields.length != headers.size()) continue;
-            for (int i = 0; i < fields.length; i++) {
-                fields[i] = fields[i].trim();
-            }
-            records.add(fields);
+        while (tokenizer.next()) {
+            if (tokenizer.fieldCount() != headers.size()) continue;
+            records.add(tokenizer.getStrings());
         }
 
         return new Result(headers, records);
     }
-
-    /**
-     * Splits a CSV line on commas not enclosed in quotes, handling escaped quotes.
-     */
-    private static String[] splitCsvLine(String line) {
-        List<String> result = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        boolean inQuotes = false;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    sb.append('"');
-                    i++; // skip escaped quote
-                } else {
-                    inQuotes = !inQuotes;
-                }
-            } else if (c == ',' && !inQuotes) {
-                result.add(sb.toString());
-                sb.setLength(0);
-            } else {
-                sb.append(c);
-            }
-        }
-        result.add(sb.toString());
-        return result.toArray(new String[0]);
-    }
-}
\ No newline at end of file
+}
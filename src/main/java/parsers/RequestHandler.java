@@ -2,13 +2,23 @@ package parsers;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.leastfixedpoint.json.JSONSyntaxError;
 
-import routing.db.DBConnectionManager;
-import routing.routingEngineAstar.RoutingEngineAstar;
+import routing.api.RouteCache;
+import routing.metrics.SearchMetrics;
+import routing.metrics.SearchStats;
+import routing.routingEngineAstar.builders.ConnectionCache;
 import routing.routingEngineModels.Coordinates;
 import routing.routingEngineModels.RouteStep;
 
@@ -16,30 +26,109 @@ import routing.routingEngineModels.RouteStep;
  * RequestHandler.java
  *
  * This class reads JSON‐Line commands from stdin and writes JSON responses to stdout.
- * After a successful "load" command, it stores the new JDBC URL in `currentJdbcUrl`.
- * All subsequent "routeFrom"/"to"/"startingAt" commands use that URL.
+ * A successful "load" command builds a {@link RoutingSession} for the new database
+ * (engine, timetable and connection pool) and warms it up. All subsequent
+ * "routeFrom"/"to"/"startingAt" commands reuse that session, and each route
+ * response reports how long the request took in "latencyMs". A route request
+ * may add a "date" ("YYYY-MM-DD" or GTFS "YYYYMMDD") to only use the trips
+ * running on that service day.
+ *
+ * With more than one worker the handler runs pipelined: the reader thread keeps
+ * parsing ahead while routing requests execute on a worker pool, and responses
+ * are still written in input order. A request carrying an "id" field gets the
+ * id echoed in its response and is answered as soon as it is done. At most
+ * {@code maxInFlight} requests are read but not yet answered; the reader blocks
+ * beyond that. A "load" waits until every earlier request has been answered.
+ *
+ * A {"stats": true} request reports the connection and route caches of the
+ * current session and, when the JVM runs with -Drouting.metrics=true, the aggregated
+ * {@link SearchMetrics} of every engine.
  */
 public class RequestHandler {
 
+    /**
+     * Concurrency settings of the handler.
+     *
+     * @param workers        number of worker threads, 1 keeps the sequential loop
+     * @param virtualThreads run each request on its own virtual thread instead of a fixed pool
+     * @param maxInFlight    maximum number of requests read but not yet answered
+     */
+    public record Options(int workers, boolean virtualThreads, int maxInFlight) {
+
+        public Options {
+            if (workers < 1 || maxInFlight < 1) {
+                throw new IllegalArgumentException("workers and maxInFlight must be positive");
+            }
+        }
+
+        /**
+         * The original one-request-at-a-time behaviour.
+         */
+        public static Options sequential() {
+            return new Options(1, false, 1);
+        }
+
+        /**
+         * Reads the options from command line arguments of the form
+         * {@code --workers=N}, {@code --virtual-threads} and {@code --max-in-flight=N}.
+         * Missing values fall back to the system properties {@code routing.workers},
+         * {@code routing.virtualThreads} and {@code routing.maxInFlight}.
+         *
+         * @param args the command line arguments
+         * @return the options
+         */
+        public static Options fromArgs(String[] args) {
+            int workers = Integer.getInteger("routing.workers", 1);
+            boolean virtualThreads = Boolean.getBoolean("routing.virtualThreads");
+            Integer maxInFlight = Integer.getInteger("routing.maxInFlight");
+
+            for (String arg : args) {
+                if (arg.startsWith("--workers=")) {
+                    workers = Integer.parseInt(arg.substring("--workers=".length()));
+                } else if (arg.equals("--virtual-threads")) {
+                    virtualThreads = true;
+                } else if (arg.startsWith("--max-in-flight=")) {
+                    maxInFlight = Integer.parseInt(arg.substring("--max-in-flight=".length()));
+                } else {
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            if (virtualThreads && workers == 1) {
+                workers = Runtime.getRuntime().availableProcessors();
+            }
+            return new Options(workers, virtualThreads, maxInFlight != null ? maxInFlight : workers * 4);
+        }
+    }
+
     private final CLIRead cliRead;
     private final CLIWrite cliWrite;
+    private final Options options;
 
-    private String currentJdbcUrl = null;
+    private volatile RoutingSession session = null;
 
     public RequestHandler() {
+        this(Options.sequential());
+    }
+
+    public RequestHandler(Options options) {
         this.cliRead = new CLIRead();
         this.cliWrite = new CLIWrite();
+        this.options = options;
     }
 
     /**
      * Runs the request handler, processing JSON commands from stdin.
      * It handles commands like "ping", "load", and "routeFrom"/"to"/"startingAt".
-     * The "load" command sets the current JDBC URL for routing requests.
+     * The "load" command builds the routing session used by routing requests.
      *
      * @throws IOException if there is an error reading from stdin or writing to stdout
      */
-    @SuppressWarnings("UseSpecificCatch")
     public void run() throws IOException {
+        if (options.workers() > 1) {
+            runPipelined();
+            return;
+        }
+
         while (true) {
             Object json;
             try {
@@ -59,114 +148,343 @@ public class RequestHandler {
 
             Map<?, ?> request = (Map<?, ?>) json;
 
-            // --- ping / pong ---
-            if (request.containsKey("ping")) {
-                cliWrite.sendOk(Map.of("pong", request.get("ping")));
-                continue;
-            }
-
-            // --- load filename ---
             if (request.containsKey("load")) {
-                Object loadObj = request.get("load");
-                if (!(loadObj instanceof String)) {
-                    cliWrite.sendError("Bad request");
-                    continue;
-                }
-
-                String selectedFile = (String) loadObj;
-                try {
-                    // ZipToSQLite.run(...) now returns the .db filename it created/validated
-                    String dbFilename = ZipToSQLite.run(selectedFile);
-                    // Build the full JDBC URL and store it
-                    this.currentJdbcUrl = "jdbc:sqlite:" + dbFilename;
-                    cliWrite.sendOk("loaded");
-                } catch (Exception e) {
-                    cliWrite.sendError(e.getMessage());
+                Map<String, Object> response = handleLoad(request);
+                cliWrite.write(response);
+                if (response.containsKey("error") && request.get("load") instanceof String) {
                     break;
                 }
                 continue;
             }
 
-            if (request.containsKey("routeFrom")) {
-                if (this.currentJdbcUrl == null) {
-                    cliWrite.sendError("No database loaded");
-                    continue;
-                }
+            cliWrite.write(handle(request));
+        }
+    }
 
-                // 1) Check that routeFrom is a Map<?,?>
-                Object routeFromObj = request.get("routeFrom");
-                if (!(routeFromObj instanceof Map<?, ?>)) {
-                    cliWrite.sendError("Bad request");
-                    continue;
-                }
-                Map<?, ?> routeFromMap = (Map<?, ?>) routeFromObj;
+    /**
+     * Pipelined loop: this thread only parses and dispatches, workers route.
+     */
+    private void runPipelined() throws IOException {
+        Semaphore inFlight = new Semaphore(options.maxInFlight());
+        OrderedResponseWriter writer = new OrderedResponseWriter(cliWrite, inFlight);
+        ExecutorService workers = options.virtualThreads()
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(options.workers());
 
-                // 2) Extract lat / lon from routeFromMap
-                Double fromLat, fromLon;
+        try {
+            while (true) {
+                Object json;
                 try {
-                    fromLat = extractDouble(routeFromMap.get("lat"));
-                    fromLon = extractDouble(routeFromMap.get("lon"));
-                } catch (Exception e) {
-                    cliWrite.sendError("Bad request");
-                    continue;
+                    json = cliRead.read();
+                } catch (JSONSyntaxError e) {
+                    awaitInFlight(inFlight);
+                    cliWrite.sendError("Bad JSON input");
+                    break;
+                } catch (EOFException e) {
+                    System.err.println("End of input detected");
+                    break;
                 }
-                Coordinates startPoint = new Coordinates(fromLat, fromLon);
 
-                // 3) Check that 'to' is a Map<?,?>
-                Object toObj = request.get("to");
-                if (!(toObj instanceof Map<?, ?>)) {
-                    cliWrite.sendError("Bad request");
+                acquire(inFlight, 1);
+                Map<?, ?> request = json instanceof Map<?, ?> ? (Map<?, ?>) json : null;
+                Object id = request != null ? request.get("id") : null;
+                long sequence = id == null ? writer.nextSequence() : -1;
+
+                if (request == null) {
+                    respond(writer, sequence, id, CLIWrite.error("Bad request"));
                     continue;
                 }
-                Map<?, ?> toMap = (Map<?, ?>) toObj;
 
-                // 4) Extract lat / lon from toMap
-                Double toLat, toLon;
-                try {
-                    toLat = extractDouble(toMap.get("lat"));
-                    toLon = extractDouble(toMap.get("lon"));
-                } catch (Exception e) {
-                    cliWrite.sendError("Bad request");
+                if (request.containsKey("load")) {
+                    // Barrier: every earlier request must be answered before the session changes
+                    inFlight.release();
+                    awaitInFlight(inFlight);
+                    acquire(inFlight, 1);
+                    Map<String, Object> response = handleLoad(request);
+                    respond(writer, sequence, id, response);
+                    if (response.containsKey("error") && request.get("load") instanceof String) {
+                        break;
+                    }
                     continue;
                 }
-                Coordinates endPoint = new Coordinates(toLat, toLon);
 
-                // 5) Extract startingAt (must be a String "HH:mm" or "HH:mm:ss")
-                Object startAtObj = request.get("startingAt");
-                if (!(startAtObj instanceof String)) {
-                    cliWrite.sendError("Bad request");
+                if (!request.containsKey("routeFrom")) {
+                    respond(writer, sequence, id, handle(request));
                     continue;
                 }
-                String startingAtStr = (String) startAtObj;
-                // If it’s in "HH:mm" form, append ":00" so that findRoute can accept "HH:mm:ss"
-                if (startingAtStr.matches("^\\d{1,2}:\\d{2}$")) {
-                    startingAtStr = startingAtStr + ":00";
-                }
 
-                try {
-                    // Instantiate a new RoutingEngineAstar using the current JDBC URL
-                    DBConnectionManager connMgr = new DBConnectionManager(this.currentJdbcUrl);
-                    RoutingEngineAstar router = new RoutingEngineAstar(connMgr);
-
-                    List<RouteStep> route = router.findRoute(
-                        startPoint.getLatitude(),
-                        startPoint.getLongitude(),
-                        endPoint.getLatitude(),
-                        endPoint.getLongitude(),
-                        startingAtStr
-                    );
-                    cliWrite.writeRouteSteps(route);
-                } catch (Exception e) {
-                    cliWrite.sendError(e.getMessage());
+                workers.execute(() -> {
+                    Map<String, Object> response = CLIWrite.error("Internal error");
+                    Error error = null;
+                    try {
+                        response = handle(request);
+                    } catch (RuntimeException e) {
+                        response = CLIWrite.error(String.valueOf(e.getMessage()));
+                    } catch (Error e) {
+                        // e.g. a StackOverflowError in a deep search, rethrown once the request is answered
+                        error = e;
+                        response = CLIWrite.error(String.valueOf(e));
+                    } finally {
+                        // an unanswered request would hold its permit and every later response forever
+                        try {
+                            respond(writer, sequence, id, response);
+                        } catch (IOException | RuntimeException e) {
+                            System.err.println("Error writing response: " + e.getMessage());
+                        }
+                    }
+                    if (error != null) {
+                        throw error;
+                    }
+                });
+            }
+            awaitInFlight(inFlight);
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hands a finished response to the writer, echoing the request id if there is one.
+     */
+    private void respond(OrderedResponseWriter writer, long sequence, Object id,
+                         Map<String, Object> response) throws IOException {
+        if (id == null) {
+            writer.complete(sequence, response);
+        } else {
+            response.put("id", id);
+            writer.completeUnordered(response);
+        }
+    }
+
+    /**
+     * Waits until every dispatched request has been answered.
+     */
+    private void awaitInFlight(Semaphore inFlight) throws IOException {
+        acquire(inFlight, options.maxInFlight());
+        inFlight.release(options.maxInFlight());
+    }
+
+    private void acquire(Semaphore inFlight, int permits) throws IOException {
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for in-flight requests", e);
+        }
+    }
+
+    /**
+     * Answers a "ping", "stats" or "routeFrom" request, or rejects anything else.
+     * Safe to call from several threads at once.
+     *
+     * @param request the parsed request
+     * @return the response object
+     */
+    private Map<String, Object> handle(Map<?, ?> request) {
+        // --- ping / pong ---
+        if (request.containsKey("ping")) {
+            return CLIWrite.ok(Map.of("pong", request.get("ping")));
+        }
+
+        if (request.containsKey("stats")) {
+            return handleStats();
+        }
+
+        if (request.containsKey("routeFrom")) {
+            return handleRoute(request);
+        }
+
+        return CLIWrite.error("Bad request");
+    }
+
+    /**
+     * Answers a "stats" request with the search metrics of every engine and
+     * the connection and route cache statistics of the current session.
+     *
+     * @return the response object
+     */
+    private Map<String, Object> handleStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", SearchStats.ENABLED);
+        Map<String, Object> engines = new LinkedHashMap<>();
+        for (SearchMetrics metrics : SearchMetrics.all()) {
+            engines.put(metrics.getEngine(), metrics.toJSON());
+        }
+        stats.put("engines", engines);
+
+        RoutingSession currentSession = this.session;
+        if (currentSession != null) {
+            ConnectionCache.Stats cache = currentSession.getConnectionCacheStats();
+            Map<String, Object> cacheJson = new LinkedHashMap<>();
+            cacheJson.put("hits", cache.hits());
+            cacheJson.put("misses", cache.misses());
+            cacheJson.put("hitRate", Math.round(cache.hitRate() * 1000) / 1000.0);
+            cacheJson.put("entries", cache.entries());
+            cacheJson.put("evictions", cache.evictions());
+            stats.put("connectionCache", cacheJson);
+
+            RouteCache.Stats routes = currentSession.getRouteCacheStats();
+            if (routes != null) {
+                Map<String, Object> routesJson = new LinkedHashMap<>();
+                routesJson.put("hits", routes.hits());
+                routesJson.put("misses", routes.misses());
+                routesJson.put("coalesced", routes.coalesced());
+                routesJson.put("hitRate", Math.round(routes.hitRate() * 1000) / 1000.0);
+                routesJson.put("entries", routes.entries());
+                routesJson.put("evictions", routes.evictions());
+                stats.put("routeCache", routesJson);
+            }
+        }
+        return CLIWrite.ok(stats);
+    }
+
+    /**
+     * Loads a GTFS file and replaces the current routing session.
+     * Must not run concurrently with routing requests.
+     *
+     * @param request the parsed request containing "load"
+     * @return the response object
+     */
+    private Map<String, Object> handleLoad(Map<?, ?> request) {
+        Object loadObj = request.get("load");
+        if (!(loadObj instanceof String)) {
+            return CLIWrite.error("Bad request");
+        }
+
+        String selectedFile = (String) loadObj;
+        try {
+            // ZipToSQLite.load(...) returns the .db filename it created/validated/updated
+            ZipToSQLite.LoadResult loaded = ZipToSQLite.load(selectedFile);
+            String jdbcUrl = "jdbc:sqlite:" + loaded.dbName();
+            if (this.session != null && loaded.diff() != null && jdbcUrl.equals(this.session.getJdbcUrl())) {
+                // Incremental update of the loaded database: patch the engine if the changes allow it
+                RoutingSession patched = this.session.patch(loaded.diff());
+                if (patched != null) {
+                    // shares the old session's connections, which stay open
+                    this.session = patched;
+                    return CLIWrite.ok("loaded");
                 }
+            }
+            // Build the engine once for this database and warm it up
+            RoutingSession newSession = new RoutingSession(jdbcUrl);
+            newSession.warmUp();
+            if (this.session != null) {
+                this.session.close();
+            }
+            this.session = newSession;
+            return CLIWrite.ok("loaded");
+        } catch (Exception e) {
+            return CLIWrite.error(e.getMessage());
+        }
+    }
 
-                continue;
+    /**
+     * Parses and answers a "routeFrom"/"to"/"startingAt" request.
+     *
+     * @param request the parsed request
+     * @return the response object
+     */
+    private Map<String, Object> handleRoute(Map<?, ?> request) {
+        RoutingSession currentSession = this.session;
+        if (currentSession == null) {
+            return CLIWrite.error("No database loaded");
+        }
+
+        // 1) Check that routeFrom is a Map<?,?>
+        Object routeFromObj = request.get("routeFrom");
+        if (!(routeFromObj instanceof Map<?, ?>)) {
+            return CLIWrite.error("Bad request");
+        }
+        Map<?, ?> routeFromMap = (Map<?, ?>) routeFromObj;
+
+        // 2) Extract lat / lon from routeFromMap
+        Double fromLat, fromLon;
+        try {
+            fromLat = extractDouble(routeFromMap.get("lat"));
+            fromLon = extractDouble(routeFromMap.get("lon"));
+        } catch (Exception e) {
+            return CLIWrite.error("Bad request");
+        }
+        Coordinates startPoint = new Coordinates(fromLat, fromLon);
+
+        // 3) Check that 'to' is a Map<?,?>
+        Object toObj = request.get("to");
+        if (!(toObj instanceof Map<?, ?>)) {
+            return CLIWrite.error("Bad request");
+        }
+        Map<?, ?> toMap = (Map<?, ?>) toObj;
+
+        // 4) Extract lat / lon from toMap
+        Double toLat, toLon;
+        try {
+            toLat = extractDouble(toMap.get("lat"));
+            toLon = extractDouble(toMap.get("lon"));
+        } catch (Exception e) {
+            return CLIWrite.error("Bad request");
+        }
+        Coordinates endPoint = new Coordinates(toLat, toLon);
+
+        // 5) Extract startingAt (must be a String "HH:mm" or "HH:mm:ss")
+        Object startAtObj = request.get("startingAt");
+        if (!(startAtObj instanceof String)) {
+            return CLIWrite.error("Bad request");
+        }
+        String startingAtStr = (String) startAtObj;
+        // If it’s in "HH:mm" form, append ":00" so that findRoute can accept "HH:mm:ss"
+        if (startingAtStr.matches("^\\d{1,2}:\\d{2}$")) {
+            startingAtStr = startingAtStr + ":00";
+        }
+
+        // 6) Optional service date
+        LocalDate date = null;
+        Object dateObj = request.get("date");
+        if (dateObj != null) {
+            if (!(dateObj instanceof String)) {
+                return CLIWrite.error("Bad request");
+            }
+            try {
+                date = parseDate((String) dateObj);
+            } catch (DateTimeParseException e) {
+                return CLIWrite.error("Bad request");
             }
+        }
 
-            cliWrite.sendError("Bad request");
+        try {
+            long requestStart = System.nanoTime();
+            List<RouteStep> route = currentSession.findRoute(
+                startPoint.getLatitude(),
+                startPoint.getLongitude(),
+                endPoint.getLatitude(),
+                endPoint.getLongitude(),
+                startingAtStr,
+                date
+            );
+            double latencyMs = (System.nanoTime() - requestStart) / 1_000_000.0;
+            return CLIWrite.routeSteps(route, latencyMs);
+        } catch (Exception e) {
+            return CLIWrite.error(e.getMessage());
         }
     }
 
+    /**
+     * Parses a service date given as "YYYY-MM-DD" or as a GTFS "YYYYMMDD" date.
+     *
+     * @param value the date string
+     * @return the date
+     * @throws DateTimeParseException if the string is in neither format
+     */
+    private LocalDate parseDate(String value) {
+        String trimmed = value.trim();
+        return trimmed.indexOf('-') >= 0
+                ? LocalDate.parse(trimmed, DateTimeFormatter.ISO_LOCAL_DATE)
+                : LocalDate.parse(trimmed, DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
     /**
      * Extracts a double value from an Object, which should be a Number.
      * Throws IllegalArgumentException if the object is not a Number.
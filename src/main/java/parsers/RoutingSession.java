@@ -0,0 +1,240 @@
+package parsers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import routing.api.RouteCache;
+import routing.db.DBConnectionManager;
+import routing.routingEngineAstar.RoutingEngineAstar;
+import routing.routingEngineAstar.builders.ConnectionCache;
+import routing.routingEngineModels.RouteStep;
+import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.ServiceTime;
+
+/**
+ * RoutingSession.java
+ *
+ * Everything the CLI needs to answer routing requests for one loaded database:
+ * the pooled connection manager and the A* engine with its preloaded timetable.
+ * A session is built once per "load" command and reused by every following
+ * "routeFrom" request, so stops, indexes, the timetable and the graph builder
+ * caches are not rebuilt per request. After an incremental reload of the same
+ * database, {@link #patch(FeedDiff)} carries the session over to the new data.
+ *
+ * With -Drouting.routeCacheSize=n (n &gt; 0) the session also caches up to n
+ * routes in a {@link RouteCache}, so repeated requests between the same
+ * stations in the same minute are answered without searching. A cached route
+ * is searched from the end of its minute, so it never departs before the
+ * requested time. Every load starts with an empty route cache.
+ */
+public class RoutingSession implements AutoCloseable {
+
+    private static final int WARMUP_QUERIES = 16;
+    private static final String WARMUP_START_TIME = "08:00:00";
+    // tables the A* engine reads; changes to any other table leave it valid
+    private static final Set<String> ENGINE_TABLES = Set.of(
+            "stops", "stop_times", "trips", "routes", "agency", "calendar", "calendar_dates",
+            "transfers", "pathways");
+    // tables whose changed rows the engine can patch in by trip_id
+    private static final Set<String> TRIP_TABLES = Set.of("stop_times", "trips");
+    private static final int ROUTE_CACHE_SIZE = Integer.getInteger("routing.routeCacheSize", 0);
+    private static final int ROUTE_CACHE_BUCKET_SECONDS = Integer.getInteger("routing.routeCacheBucketSeconds", 60);
+    private static final int ROUTE_CACHE_TTL_SECONDS = Integer.getInteger("routing.routeCacheTtlSeconds", 600);
+    private static final int ROUTE_CACHE_SNAP_METERS = Integer.getInteger("routing.routeCacheSnapMeters", 50);
+
+    private final String jdbcUrl;
+    private final DBConnectionManager dbManager;
+    private final RoutingEngineAstar engine;
+    private final RouteCache<List<RouteStep>> routeCache;
+
+    /**
+     * Opens the database and builds the routing engine.
+     *
+     * @param jdbcUrl the JDBC URL of the loaded GTFS database
+     */
+    public RoutingSession(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+        this.dbManager = new DBConnectionManager(jdbcUrl);
+        try {
+            this.engine = new RoutingEngineAstar(dbManager);
+        } catch (RuntimeException e) {
+            dbManager.close();
+            throw e;
+        }
+        this.routeCache = newRouteCache(engine);
+    }
+
+    /**
+     * Shares the connection manager of a patched session.
+     */
+    private RoutingSession(RoutingSession base, RoutingEngineAstar engine) {
+        this.jdbcUrl = base.jdbcUrl;
+        this.dbManager = base.dbManager;
+        this.engine = engine;
+        this.routeCache = newRouteCache(engine);
+    }
+
+    private static RouteCache<List<RouteStep>> newRouteCache(RoutingEngineAstar engine) {
+        if (ROUTE_CACHE_SIZE <= 0) {
+            return null;
+        }
+        List<Stop> stops = new ArrayList<>(engine.getAllStops().values());
+        double[] latitudes = new double[stops.size()];
+        double[] longitudes = new double[stops.size()];
+        for (int i = 0; i < stops.size(); i++) {
+            latitudes[i] = stops.get(i).getLatitude();
+            longitudes[i] = stops.get(i).getLongitude();
+        }
+        return new RouteCache<>(latitudes, longitudes, ROUTE_CACHE_SNAP_METERS,
+                ROUTE_CACHE_BUCKET_SECONDS, ROUTE_CACHE_TTL_SECONDS, ROUTE_CACHE_SIZE);
+    }
+
+    /**
+     * Returns a session for this session's database after it was updated
+     * incrementally. If only trips changed, the engine reloads just those;
+     * if no table the engine reads changed, this session is returned.
+     *
+     * @param diff the changes applied to the database
+     * @return the session to use from now on, sharing this one's connections,
+     *         or null if the engine has to be rebuilt
+     */
+    public RoutingSession patch(FeedDiff diff) {
+        Set<String> tripIds = new HashSet<>();
+        for (String table : ENGINE_TABLES) {
+            if (!diff.touches(table)) {
+                continue;
+            }
+            if (!TRIP_TABLES.contains(table) || diff.replacedTables().contains(table)) {
+                return null;
+            }
+            tripIds.addAll(diff.changedKeys(table));
+        }
+        if (tripIds.isEmpty()) {
+            if (routeCache != null) {
+                routeCache.clear();
+            }
+            return this;
+        }
+        return new RoutingSession(this, engine.withChangedTrips(tripIds));
+    }
+
+    /**
+     * Runs a few routing queries between stops spread over the network, so the
+     * JIT has compiled the search and the caches are populated before the first
+     * real request arrives.
+     *
+     * @return the number of warm-up queries that were run
+     */
+    public int warmUp() {
+        List<Stop> stops = new ArrayList<>(engine.getAllStops().values());
+        if (stops.size() < 2) {
+            return 0;
+        }
+        stops.sort((a, b) -> a.getStopID().compareTo(b.getStopID()));
+
+        long start = System.nanoTime();
+        int queries = Math.min(WARMUP_QUERIES, stops.size() / 2);
+        int stride = stops.size() / (2 * queries);
+        int half = stops.size() / 2;
+        for (int i = 0; i < queries; i++) {
+            Stop from = stops.get(i * stride);
+            Stop to = stops.get(half + i * stride);
+            try {
+                engine.findRoute(from.getLatitude(), from.getLongitude(),
+                        to.getLatitude(), to.getLongitude(), WARMUP_START_TIME);
+            } catch (RuntimeException e) {
+                System.err.println("Warm-up query failed: " + e.getMessage());
+            }
+        }
+        System.err.printf("Warm-up: %d queries in %d ms%n", queries, (System.nanoTime() - start) / 1_000_000);
+        return queries;
+    }
+
+    /**
+     * Finds a route with the session's engine. Safe to call from several
+     * threads at once.
+     *
+     * @param sourceLat latitude of the source location
+     * @param sourceLon longitude of the source location
+     * @param destLat   latitude of the destination location
+     * @param destLon   longitude of the destination location
+     * @param startTime starting time in "HH:mm:ss" format
+     * @return a list of RouteStep representing the route
+     */
+    public List<RouteStep> findRoute(double sourceLat, double sourceLon,
+                                     double destLat, double destLon, String startTime) {
+        return findRoute(sourceLat, sourceLon, destLat, destLon, startTime, null);
+    }
+
+    /**
+     * Finds a route using only the trips running on a service date. Safe to
+     * call from several threads at once.
+     *
+     * @param sourceLat latitude of the source location
+     * @param sourceLon longitude of the source location
+     * @param destLat   latitude of the destination location
+     * @param destLon   longitude of the destination location
+     * @param startTime starting time in "HH:mm:ss" format
+     * @param date      the service date, or null for any day
+     * @return a list of RouteStep representing the route
+     */
+    public List<RouteStep> findRoute(double sourceLat, double sourceLon,
+                                     double destLat, double destLon, String startTime, LocalDate date) {
+        if (routeCache == null) {
+            return engine.findRoute(sourceLat, sourceLon, destLat, destLon, startTime, date);
+        }
+        int departureSec;
+        try {
+            departureSec = ServiceTime.parse(startTime);
+        } catch (IllegalArgumentException e) {
+            // let the engine report the bad time
+            return engine.findRoute(sourceLat, sourceLon, destLat, destLon, startTime, date);
+        }
+        // cached routes are handed to every caller of their key, so none may change them
+        return routeCache.get(sourceLat, sourceLon, destLat, destLon, departureSec, date, searchSec -> {
+            List<RouteStep> steps = engine.findRoute(sourceLat, sourceLon, destLat, destLon,
+                    ServiceTime.format(searchSec), date);
+            return steps == null ? null : Collections.unmodifiableList(new ArrayList<>(steps));
+        });
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public DBConnectionManager getDbManager() {
+        return dbManager;
+    }
+
+    public ConnectionCache.Stats getConnectionCacheStats() {
+        return engine.getConnectionCacheStats();
+    }
+
+    /**
+     * @return the route cache metrics, null if route caching is disabled
+     */
+    public RouteCache.Stats getRouteCacheStats() {
+        return routeCache == null ? null : routeCache.getStats();
+    }
+
+    /**
+     * Closes the session's pooled database connections, reporting how well the
+     * connection cache did during the session.
+     */
+    @Override
+    public void close() {
+        ConnectionCache.Stats stats = engine.getConnectionCacheStats();
+        System.err.printf("Connection cache: %.1f%% hit rate, %d entries, %d steps, %d evictions%n",
+                stats.hitRate() * 100, stats.entries(), stats.steps(), stats.evictions());
+        if (routeCache != null) {
+            RouteCache.Stats routes = routeCache.getStats();
+            System.err.printf("Route cache: %d hits, %d misses, %d coalesced, %d entries, %d evictions%n",
+                    routes.hits(), routes.misses(), routes.coalesced(), routes.entries(), routes.evictions());
+        }
+        dbManager.close();
+    }
+}
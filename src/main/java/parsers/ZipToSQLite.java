@@ -1,300 +1,1060 @@
-package parsers;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.StandardCharsets;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-
-/**
- * Parses a ZIP file containing GTFS data and converts it into an SQLite
- * database. If the input is already an SQLite database, it simply returns the
- * file name.
- *
- * The ZIP file should contain CSV files with GTFS data, which will be processed
- * and stored in the SQLite database.
- */
-public class ZipToSQLite {
-
-    @SuppressWarnings("unused")
-    public static String run(String fileName) throws IOException, SQLException {
-        File f = new File(fileName);
-        String lc = fileName.toLowerCase();
-
-        if (lc.endsWith(".db")) {
-            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + fileName)) {
-            }
-            return fileName;
-        }
-
-        if (!lc.endsWith(".zip")) {
-            throw new IOException("Unsupported file type: " + fileName);
-        }
-
-        String dbName = computeDbName(f.getName());
-        boolean existed = new File(dbName).exists();
-
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbName)) {
-            configureDatabase(conn);
-
-            if (!existed) {
-                try (ZipFile zipFile = new ZipFile(fileName)) {
-                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
-                    while (entries.hasMoreElements()) {
-                        ZipEntry entry = entries.nextElement();
-                        if (entry.isDirectory()) {
-                            continue;
-                        }
-
-                        String lower = entry.getName().toLowerCase();
-                        if ((lower.endsWith(".txt") || lower.endsWith(".csv"))
-                                && isCSVformat(zipFile, entry)) {
-                            processCsvEntry(zipFile, entry, conn);
-                        }
-                    }
-                }
-            }
-        }
-
-        return dbName;
-    }
-
-    /**
-     * Configures the SQLite database with specific settings.
-     *
-     * @param conn The connection to the SQLite database.
-     * @throws SQLException If there is an error configuring the database.
-     */
-    private static void configureDatabase(Connection conn) throws SQLException {
-        try (Statement st = conn.createStatement()) {
-            st.execute("PRAGMA synchronous = NORMAL;");
-            st.execute("PRAGMA journal_mode = WAL;");
-        }
-    }
-
-    /**
-     * Processes a CSV entry from the ZIP file and inserts its data into the
-     * SQLite database.
-     *
-     * @param zipFile The ZIP file containing the CSV entry.
-     * @param entry The ZipEntry representing the CSV file.
-     * @param conn The connection to the SQLite database.
-     * @throws IOException If there is an error reading the CSV file.
-     * @throws SQLException If there is an error inserting data into the
-     * database.
-     */
-    private static void processCsvEntry(ZipFile zipFile, ZipEntry entry, Connection conn) throws IOException, SQLException {
-
-        String entryName = entry.getName();
-        String tableName = sanitizeTableName(entryName);
-
-        try (
-                InputStream is = zipFile.getInputStream(entry); Reader ir = new InputStreamReader(is, StandardCharsets.UTF_8); BufferedReader br = new BufferedReader(ir)) {
-            String headerLine;
-            do {
-                headerLine = br.readLine();
-            } while (headerLine != null && headerLine.trim().isEmpty());
-
-            if (headerLine == null) {
-                throw new IOException("Empty CSV: " + entryName);
-            }
-            headerLine = headerLine.replaceAll("^[\\uFEFF\\s]+", "");
-            String[] rawH = splitCsvLine(headerLine);
-            List<String> headers = new ArrayList<>();
-            for (String h : rawH) {
-                headers.add(h.trim());
-            }
-
-            createTable(conn, tableName, headers);
-
-            StringBuilder sql = new StringBuilder();
-            sql.append("INSERT INTO ").append(tableName).append(" (");
-            for (int i = 0; i < headers.size(); i++) {
-                if (i > 0) {
-                    sql.append(", ");
-                }
-                sql.append(headers.get(i).replaceAll("[^A-Za-z0-9_]", "_"));
-            }
-            sql.append(") VALUES (")
-                    .append(String.join(",", Collections.nCopies(headers.size(), "?")))
-                    .append(");");
-
-            conn.setAutoCommit(false);
-            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-                String line;
-                int batch = 0;
-                while ((line = br.readLine()) != null) {
-                    if (line.trim().isEmpty()) {
-                        continue;
-                    }
-                    String[] fields = splitCsvLine(line);
-                    if (fields.length != headers.size()) {
-                        continue;
-                    }
-                    for (int i = 0; i < fields.length; i++) {
-                        ps.setString(i + 1, fields[i].trim());
-                    }
-                    ps.addBatch();
-                    if (++batch % 1000 == 0) {
-                        ps.executeBatch();
-                        conn.commit();
-                    }
-                }
-                ps.executeBatch();
-                conn.commit();
-            } finally {
-                conn.setAutoCommit(true);
-            }
-
-            createIndexes(entryName, conn);
-        }
-    }
-
-    /**
-     * Splits a CSV line into parts, handling quoted fields and escaped quotes.
-     *
-     * @param line The CSV line to split.
-     * @return An array of strings representing the parts of the CSV line.
-     */
-    private static String[] splitCsvLine(String line) {
-        List<String> parts = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    sb.append('"');
-                    i++;
-                } else {
-                    inQuotes = !inQuotes;
-                }
-            } else if (c == ',' && !inQuotes) {
-                parts.add(sb.toString());
-                sb.setLength(0);
-            } else {
-                sb.append(c);
-            }
-        }
-        parts.add(sb.toString());
-        return parts.toArray(new String[0]);
-    }
-
-    private static boolean isCSVformat(ZipFile zipFile, ZipEntry entry) {
-        try (
-                InputStream is = zipFile.getInputStream(entry); BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-            String first = br.readLine();
-            if (first == null) {
-                return false;
-            }
-            String lower = first.toLowerCase();
-
-            if (first.contains(",")
-                    || lower.contains("agency")
-                    || lower.contains("route")
-                    || lower.contains("stop")
-                    || lower.contains("trip")) {
-
-                int lines = 1;
-                while (lines < 2 && br.readLine() != null) {
-                    lines++;
-                }
-                return lines >= 2;
-            }
-            return false;
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
-    /**
-     * Creates indexes for the specified table in the SQLite database.
-     *
-     * @param entryName The name of the entry (table) to create indexes for.
-     * @param conn The connection to the SQLite database.
-     * @throws SQLException If there is an error creating the indexes.
-     */
-    public static void createIndexes(String entryName, Connection conn) throws SQLException {
-        String tableName = sanitizeTableName(entryName);
-        if ("stop_times".equals(tableName)) {
-            try (Statement st = conn.createStatement()) {
-                st.executeUpdate(
-                        "CREATE INDEX IF NOT EXISTS idx_stop_times_stop_id "
-                        + "ON stop_times (stop_id);"
-                );
-                st.executeUpdate(
-                        "CREATE INDEX IF NOT EXISTS idx_stop_times_trip_seq "
-                        + "ON stop_times (trip_id, stop_sequence);"
-                );
-                st.execute("CREATE INDEX IF NOT EXISTS idx_stop_times_trip_id ON stop_times (trip_id);");
-                st.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_stop_times_unique ON stop_times (trip_id, stop_sequence);");
-
-            }
-        }
-    }
-
-    /**
-     * Creates a table in the SQLite database based on the provided headers.
-     *
-     * @param conn The connection to the SQLite database.
-     * @param tableName The name of the table to create.
-     * @param headers The list of headers (column names) for the table.
-     * @throws SQLException If there is an error creating the table.
-     */
-    private static void createTable(Connection conn, String tableName, List<String> headers)
-            throws SQLException {
-        StringBuilder ddl = new StringBuilder();
-        ddl.append("DROP TABLE IF EXISTS ").append(tableName).append(";");
-        ddl.append("CREATE TABLE ").append(tableName).append(" (");
-        for (int i = 0; i < headers.size(); i++) {
-            if (i > 0) {
-                ddl.append(", ");
-            }
-            String col = headers.get(i).replaceAll("[^A-Za-z0-9_]", "_");
-            ddl.append(col).append(" TEXT");
-        }
-        ddl.append(");");
-        try (Statement st = conn.createStatement()) {
-            st.executeUpdate(ddl.toString());
-        }
-    }
-
-    private static String sanitizeTableName(String entryName) {
-        String file = entryName.contains("/")
-                ? entryName.substring(entryName.lastIndexOf('/') + 1)
-                : entryName;
-        String base = file.contains(".")
-                ? file.substring(0, file.lastIndexOf('.'))
-                : file;
-        return base.replaceAll("[^A-Za-z0-9_]", "_");
-    }
-
-    private static String computeDbName(String zipName) {
-        if (!zipName.contains(".")) {
-            return zipName + ".db";
-        }
-        return zipName.substring(0, zipName.lastIndexOf('.')) + ".db";
-    }
-
-    @SuppressWarnings("unused")
-    private static String escapeForJson(String raw) {
-        if (raw == null) {
-            return "";
-        }
-        return raw.replace("\\", "\\\\").replace("\"", "\\\"");
-    }
-}
+package parsers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Parses a ZIP file containing GTFS data and converts it into an SQLite
+ * database. If the input is already an SQLite database, it simply returns the
+ * file name.
+ *
+ * The ZIP file should contain CSV files with GTFS data, which will be processed
+ * and stored in the SQLite database.
+ *
+ * The CSV entries are parsed with {@link CsvTokenizer} in parallel by a pool
+ * of reader threads ({@code routing.ingestThreads}, default up to 4), which
+ * hand batches of parsed rows to the calling thread through a bounded queue;
+ * that thread is the only SQLite writer. Known numeric GTFS columns are created as INTEGER or REAL
+ * and bound as numbers, and every GTFS time column (arrival_time, ...) gets a
+ * companion INTEGER column (arrival_secs, ...) holding the service-day seconds.
+ * During the load the database runs without journal and fsync, in large
+ * transactions; indexes are created once the data is in. A partially written
+ * database is deleted if the import fails.
+ *
+ * The database records the CRC of every entry and, for keyed tables
+ * (stop_times and trips by trip_id, stops, routes, calendar, ...), a hash per
+ * key of its rows. Loading a changed ZIP over an existing database only
+ * rewrites the entries and keys that differ, and returns them as a
+ * {@link FeedDiff} so the routing engines can patch themselves.
+ */
+public class ZipToSQLite {
+
+    private static final int READER_THREADS = Integer.getInteger("routing.ingestThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int BATCH_ROWS = Integer.getInteger("routing.ingestBatchRows", 4096);
+    private static final int QUEUE_BATCHES = Integer.getInteger("routing.ingestQueueBatches", 64);
+    private static final int COMMIT_ROWS = Integer.getInteger("routing.ingestCommitRows", 1_000_000);
+
+    private static final Set<String> INTEGER_COLUMNS = Set.of(
+            "stop_sequence", "location_type", "wheelchair_boarding", "route_type", "route_sort_order",
+            "direction_id", "wheelchair_accessible", "bikes_allowed", "pickup_type", "drop_off_type",
+            "timepoint", "shape_pt_sequence", "monday", "tuesday", "wednesday", "thursday", "friday",
+            "saturday", "sunday", "exception_type", "transfer_type", "min_transfer_time",
+            "headway_secs", "exact_times", "pathway_mode", "is_bidirectional", "traversal_time");
+    private static final Set<String> REAL_COLUMNS = Set.of(
+            "stop_lat", "stop_lon", "shape_pt_lat", "shape_pt_lon", "shape_dist_traveled", "length");
+    private static final Set<String> TIME_COLUMNS = Set.of(
+            "arrival_time", "departure_time", "start_time", "end_time");
+    // column grouping the rows of a table into the blocks diffed by incremental updates
+    private static final Map<String, String> KEY_COLUMNS = Map.of(
+            "stop_times", "trip_id", "trips", "trip_id", "stops", "stop_id", "routes", "route_id",
+            "calendar", "service_id", "calendar_dates", "service_id", "shapes", "shape_id");
+
+    /**
+     * Imports a GTFS ZIP file, or validates an SQLite database, and returns the
+     * database file name. See {@link #load(String)}.
+     *
+     * @param fileName the ZIP file or database
+     * @return the database file name
+     * @throws IOException  if the file cannot be read
+     * @throws SQLException if writing to the database fails
+     */
+    public static String run(String fileName) throws IOException, SQLException {
+        return load(fileName).dbName();
+    }
+
+    /**
+     * Result of {@link #load(String)}.
+     *
+     * @param dbName the database file name
+     * @param diff   what changed in an existing database, or null if the
+     *               database was imported from scratch or given directly
+     */
+    public record LoadResult(String dbName, FeedDiff diff) {
+    }
+
+    /**
+     * Imports a GTFS ZIP file into the database next to it. If that database
+     * already exists it is updated incrementally: only the tables, and within
+     * keyed tables only the trips, stops, services, ... whose rows changed are
+     * rewritten. A database file is validated and returned as is.
+     *
+     * @param fileName the ZIP file or database
+     * @return the database file name and, for an update, the changes applied
+     * @throws IOException  if the file cannot be read
+     * @throws SQLException if writing to the database fails
+     */
+    @SuppressWarnings("unused")
+    public static LoadResult load(String fileName) throws IOException, SQLException {
+        File f = new File(fileName);
+        String lc = fileName.toLowerCase();
+
+        if (lc.endsWith(".db")) {
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + fileName)) {
+            }
+            return new LoadResult(fileName, null);
+        }
+
+        if (!lc.endsWith(".zip")) {
+            throw new IOException("Unsupported file type: " + fileName);
+        }
+
+        String dbName = computeDbName(f.getName());
+        boolean existed = new File(dbName).exists();
+        if (existed && !f.isFile()) {
+            // nothing to compare against, use the database as it is
+            return new LoadResult(dbName, null);
+        }
+
+        boolean loaded = false;
+        FeedDiff diff = null;
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbName)) {
+            if (existed) {
+                configureDatabase(conn);
+                diff = update(fileName, conn);
+                // fold the WAL into the database file, whose content identifies the feed
+                try (Statement st = conn.createStatement()) {
+                    st.execute("PRAGMA wal_checkpoint(TRUNCATE);");
+                }
+            } else {
+                importFeed(fileName, conn);
+                configureDatabase(conn);
+            }
+            loaded = true;
+        } finally {
+            if (!loaded && !existed) {
+                Files.deleteIfExists(Path.of(dbName));
+            }
+        }
+
+        return new LoadResult(dbName, diff);
+    }
+
+    /**
+     * Configures the SQLite database with specific settings.
+     *
+     * @param conn The connection to the SQLite database.
+     * @throws SQLException If there is an error configuring the database.
+     */
+    private static void configureDatabase(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA synchronous = NORMAL;");
+            st.execute("PRAGMA journal_mode = WAL;");
+        }
+    }
+
+    /**
+     * Imports every CSV entry of the ZIP file into a new database, without
+     * journal and fsync, then builds the indexes and reports the throughput on
+     * stderr.
+     *
+     * @param fileName the ZIP file
+     * @param conn     the connection to the new database
+     * @throws IOException  if an entry cannot be read
+     * @throws SQLException if writing to the database fails
+     */
+    private static void importFeed(String fileName, Connection conn) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (ZipFile zipFile = new ZipFile(fileName)) {
+            Map<String, ZipEntry> entries = csvEntries(zipFile);
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA synchronous = OFF;");
+                st.execute("PRAGMA journal_mode = OFF;");
+            }
+            createFeedTables(conn);
+
+            Map<String, Long> rowsByTable;
+            conn.setAutoCommit(false);
+            try {
+                rowsByTable = importEntries(zipFile, entries.values(), conn, COMMIT_ROWS);
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            long loadedAt = System.nanoTime();
+            for (ZipEntry entry : entries.values()) {
+                createIndexes(entry.getName(), conn);
+            }
+            long indexedAt = System.nanoTime();
+
+            long rows = rowsByTable.values().stream().mapToLong(Long::longValue).sum();
+            double loadSeconds = (loadedAt - start) / 1e9;
+            System.err.printf("Imported %,d rows from %d files in %.1f s (%,.0f rows/s), indexes in %.1f s%n",
+                    rows, entries.size(), loadSeconds, rows / Math.max(loadSeconds, 1e-9),
+                    (indexedAt - loadedAt) / 1e9);
+            rowsByTable.forEach((table, count) -> System.err.printf("  %-20s %,12d rows%n", table, count));
+        }
+    }
+
+    /**
+     * Returns the CSV entries of the ZIP file by table name. Like the table
+     * replacement before, the last entry for a table wins.
+     */
+    private static Map<String, ZipEntry> csvEntries(ZipFile zipFile) {
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Enumeration<? extends ZipEntry> all = zipFile.entries();
+        while (all.hasMoreElements()) {
+            ZipEntry entry = all.nextElement();
+            String lower = entry.getName().toLowerCase();
+            if (!entry.isDirectory() && (lower.endsWith(".txt") || lower.endsWith(".csv"))
+                    && isCSVformat(zipFile, entry)) {
+                entries.put(sanitizeTableName(entry.getName()), entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * (Re)creates the tables of the given entries: reader threads parse them,
+     * this thread writes them. The caller manages the transaction.
+     *
+     * @param zipFile    the ZIP file
+     * @param entries    the CSV entries to import
+     * @param conn       the connection to the database, not in auto-commit mode
+     * @param commitRows rows after which to commit, Long.MAX_VALUE to leave that to the caller
+     * @return the number of rows written per table, in completion order
+     * @throws IOException  if an entry cannot be read
+     * @throws SQLException if writing to the database fails
+     */
+    private static Map<String, Long> importEntries(ZipFile zipFile, Collection<ZipEntry> entries, Connection conn,
+                                                   long commitRows) throws IOException, SQLException {
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(READER_THREADS, entries.size())), r -> {
+                    Thread t = new Thread(r, "gtfs-reader-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        try {
+            for (ZipEntry entry : entries) {
+                readers.execute(() -> readEntry(zipFile, entry, queue));
+            }
+            return write(conn, queue, entries.size(), commitRows);
+        } finally {
+            // stops readers still blocked on a full queue if the writer failed
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads one CSV entry on a reader thread and queues its rows in batches,
+     * followed by an end marker with the entry's block hashes, or with the
+     * error if reading failed.
+     *
+     * @param zipFile the ZIP file
+     * @param entry   the CSV entry
+     * @param queue   the queue to the writer
+     */
+    private static void readEntry(ZipFile zipFile, ZipEntry entry, BlockingQueue<Batch> queue) {
+        Table table = null;
+        Map<String, long[]> blocks = new HashMap<>();
+        Exception error = null;
+        try (CsvEntryReader reader = new CsvEntryReader(zipFile, entry)) {
+            table = Table.of(entry.getName(), reader.headers());
+
+            Object[][] rows = new Object[BATCH_ROWS][];
+            int size = 0;
+            while (reader.next()) {
+                rows[size++] = table.toRow(reader.fields());
+                table.addToBlock(blocks, reader.fields());
+                if (size == BATCH_ROWS) {
+                    queue.put(new Batch(entry, table, rows, size, null, null));
+                    rows = new Object[BATCH_ROWS][];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                queue.put(new Batch(entry, table, rows, size, null, null));
+            }
+        } catch (InterruptedException e) {
+            // the writer gave up, nobody is listening any more
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        try {
+            queue.put(new Batch(entry, table, null, 0, blocks, error));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued batches until every entry has sent its end marker.
+     * Tables are created on their first batch, and recorded in the feed tables
+     * once complete.
+     *
+     * @param conn       the connection to the database
+     * @param queue      the queue from the readers
+     * @param entries    the number of entries being read
+     * @param commitRows rows after which to commit
+     * @return the number of rows written per table, in completion order
+     * @throws IOException  if a reader failed or the writer was interrupted
+     * @throws SQLException if writing to the database fails
+     */
+    private static Map<String, Long> write(Connection conn, BlockingQueue<Batch> queue, int entries,
+                                           long commitRows) throws IOException, SQLException {
+        Map<Table, PreparedStatement> inserts = new IdentityHashMap<>();
+        Map<String, Long> rowsByTable = new LinkedHashMap<>();
+        try {
+            int open = entries;
+            long uncommitted = 0;
+            while (open > 0) {
+                Batch batch;
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while importing GTFS data", e);
+                }
+                if (batch.error() != null) {
+                    throw new IOException("Unable to read " + batch.entry().getName() + ": "
+                            + batch.error().getMessage(), batch.error());
+                }
+
+                Table table = batch.table();
+                PreparedStatement ps = inserts.get(table);
+                if (ps == null) {
+                    createTable(conn, table);
+                    ps = conn.prepareStatement(table.insertSql());
+                    inserts.put(table, ps);
+                }
+
+                if (batch.rows() == null) {
+                    ps.executeBatch();
+                    recordEntry(conn, batch.entry(), table, batch.blocks());
+                    rowsByTable.merge(table.name(), 0L, Long::sum);
+                    open--;
+                    continue;
+                }
+
+                for (int r = 0; r < batch.size(); r++) {
+                    table.bind(ps, batch.rows()[r]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                rowsByTable.merge(table.name(), (long) batch.size(), Long::sum);
+                uncommitted += batch.size();
+                if (uncommitted >= commitRows) {
+                    conn.commit();
+                    uncommitted = 0;
+                }
+            }
+        } finally {
+            for (PreparedStatement ps : inserts.values()) {
+                ps.close();
+            }
+        }
+        return rowsByTable;
+    }
+
+    // ---- incremental updates ----
+
+    /**
+     * Brings an existing database up to date with the ZIP file, in one
+     * transaction. Entries whose CRC and size match the recorded ones are
+     * skipped. Changed keyed entries are diffed block by block (all rows
+     * sharing a key, e.g. a trip's stop times): the rows of changed and removed
+     * blocks are deleted and those of changed and new blocks inserted. Other
+     * changed entries, and keyed ones where most blocks changed, are replaced
+     * whole, as are all tables of a database imported before the feed tables
+     * existed.
+     *
+     * @param fileName the ZIP file
+     * @param conn     the connection to the existing database
+     * @return what changed
+     * @throws IOException  if an entry cannot be read
+     * @throws SQLException if writing to the database fails
+     */
+    private static FeedDiff update(String fileName, Connection conn) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (ZipFile zipFile = new ZipFile(fileName)) {
+            Map<String, ZipEntry> entries = csvEntries(zipFile);
+            FeedDiff.Builder diff = new FeedDiff.Builder();
+            List<ZipEntry> replace = new ArrayList<>();
+            int unchanged = 0;
+
+            conn.setAutoCommit(false);
+            try {
+                createFeedTables(conn);
+                Map<String, RecordedEntry> recorded = recordedEntries(conn);
+                for (Map.Entry<String, ZipEntry> e : entries.entrySet()) {
+                    String table = e.getKey();
+                    ZipEntry entry = e.getValue();
+                    RecordedEntry old = recorded.remove(table);
+                    if (old != null && old.crc() == entry.getCrc() && old.size() == entry.getSize()) {
+                        unchanged++;
+                        continue;
+                    }
+                    Set<String> changedKeys = old == null ? null : updateBlocks(zipFile, entry, conn, old);
+                    if (changedKeys == null) {
+                        replace.add(entry);
+                        diff.replaced(table);
+                    } else if (!changedKeys.isEmpty()) {
+                        diff.changed(table, changedKeys);
+                    }
+                }
+                if (!replace.isEmpty()) {
+                    importEntries(zipFile, replace, conn, Long.MAX_VALUE);
+                    for (ZipEntry entry : replace) {
+                        createIndexes(entry.getName(), conn);
+                    }
+                }
+                // tables of entries the feed no longer has
+                for (String table : recorded.keySet()) {
+                    try (Statement st = conn.createStatement()) {
+                        st.executeUpdate("DROP TABLE IF EXISTS " + table + ";");
+                    }
+                    forgetEntry(conn, table);
+                    diff.replaced(table);
+                }
+
+                FeedDiff result = diff.build();
+                if (result.touches("stops") || result.touches("pathways")) {
+                    dropGeneratedFootpaths(conn);
+                }
+                conn.commit();
+
+                System.err.printf("Updated in %.1f s: %d files unchanged, %d replaced (%s), %d keys changed in %s%n",
+                        (System.nanoTime() - start) / 1e9, unchanged, result.replacedTables().size(),
+                        String.join(", ", result.replacedTables()),
+                        result.changedKeys().values().stream().mapToInt(Set::size).sum(),
+                        String.join(", ", result.changedKeys().keySet()));
+                return result;
+            } catch (IOException | SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Diffs a changed keyed entry against its recorded block hashes and
+     * rewrites the rows of the blocks that differ.
+     *
+     * @return the keys of the changed, added and removed blocks, or null if the
+     *         table has to be replaced whole instead
+     */
+    private static Set<String> updateBlocks(ZipFile zipFile, ZipEntry entry, Connection conn, RecordedEntry old)
+            throws IOException, SQLException {
+        // pass 1: hash the blocks of the new entry
+        Table table;
+        Map<String, long[]> blocks = new HashMap<>();
+        try (CsvEntryReader reader = new CsvEntryReader(zipFile, entry)) {
+            table = Table.of(entry.getName(), reader.headers());
+            if (table.keyColumn() < 0 || !String.join(",", table.columns()).equals(old.columns())) {
+                return null;
+            }
+            while (reader.next()) {
+                table.addToBlock(blocks, reader.fields());
+            }
+        }
+
+        Map<String, Long> oldHashes = recordedBlocks(conn, table.name());
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, long[]> block : blocks.entrySet()) {
+            Long oldHash = oldHashes.get(block.getKey());
+            if (oldHash == null || oldHash != block.getValue()[0]) {
+                changed.add(block.getKey());
+            }
+        }
+        Set<String> removed = new HashSet<>(oldHashes.keySet());
+        removed.removeAll(blocks.keySet());
+        if ((changed.size() + removed.size()) * 2L > Math.max(blocks.size(), oldHashes.size())) {
+            // rewriting most of the table row by row is slower than replacing it
+            return null;
+        }
+
+        String keyColumn = table.columns()[table.keyColumn()];
+        try (PreparedStatement delete = conn.prepareStatement(
+                "DELETE FROM " + table.name() + " WHERE " + keyColumn + " = ?;");
+             PreparedStatement forget = conn.prepareStatement(
+                "DELETE FROM feed_blocks WHERE tbl = ? AND block_key = ?;")) {
+            for (Set<String> keys : List.of(changed, removed)) {
+                for (String key : keys) {
+                    delete.setString(1, key);
+                    delete.addBatch();
+                    forget.setString(1, table.name());
+                    forget.setString(2, key);
+                    forget.addBatch();
+                }
+            }
+            delete.executeBatch();
+            forget.executeBatch();
+        }
+
+        // pass 2: insert the rows of the changed blocks
+        if (!changed.isEmpty()) {
+            try (CsvEntryReader reader = new CsvEntryReader(zipFile, entry);
+                 PreparedStatement insert = conn.prepareStatement(table.insertSql())) {
+                int batch = 0;
+                while (reader.next()) {
+                    CsvTokenizer fields = reader.fields();
+                    if (changed.contains(fields.getString(table.keyColumn()))) {
+                        table.bind(insert, table.toRow(fields));
+                        insert.addBatch();
+                        if (++batch % BATCH_ROWS == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                }
+                insert.executeBatch();
+            }
+        }
+
+        Map<String, long[]> changedBlocks = new HashMap<>();
+        for (String key : changed) {
+            changedBlocks.put(key, blocks.get(key));
+        }
+        insertBlocks(conn, table.name(), changedBlocks);
+        recordEntryHeader(conn, entry, table);
+
+        changed.addAll(removed);
+        return changed;
+    }
+
+    /**
+     * Creates the tables describing the imported feed: per table the CRC, size
+     * and columns of its entry, and per block of a keyed table the hash of its rows.
+     */
+    private static void createFeedTables(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS feed_entries "
+                    + "(tbl TEXT PRIMARY KEY, entry_crc INTEGER, entry_size INTEGER, columns TEXT);");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS feed_blocks "
+                    + "(tbl TEXT, block_key TEXT, hash INTEGER, PRIMARY KEY (tbl, block_key)) WITHOUT ROWID;");
+        }
+    }
+
+    /**
+     * CRC, size and columns of the entry a table was imported from.
+     */
+    private record RecordedEntry(long crc, long size, String columns) {
+    }
+
+    private static Map<String, RecordedEntry> recordedEntries(Connection conn) throws SQLException {
+        Map<String, RecordedEntry> recorded = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT tbl, entry_crc, entry_size, columns FROM feed_entries;")) {
+            while (rs.next()) {
+                recorded.put(rs.getString("tbl"), new RecordedEntry(
+                        rs.getLong("entry_crc"), rs.getLong("entry_size"), rs.getString("columns")));
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Identifies the feed a database holds: a hash of the CRC and size of
+     * every entry recorded by the last load or update, so it changes whenever
+     * a load changes the data. Costs one query over a few rows, however large
+     * the database is.
+     *
+     * @param conn connection to the database
+     * @return the feed hash, or 0 if the database was not loaded by this class
+     * @throws SQLException if reading the database fails
+     */
+    public static long feedHash(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet tables = st.executeQuery(
+                     "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'feed_entries';")) {
+            if (!tables.next()) {
+                return 0;
+            }
+        }
+        long h = 0xcbf29ce484222325L;
+        boolean any = false;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT tbl, entry_crc, entry_size FROM feed_entries ORDER BY tbl;")) {
+            while (rs.next()) {
+                any = true;
+                h = (h ^ rs.getString(1).hashCode()) * 0x100000001b3L;
+                h = (h ^ rs.getLong(2)) * 0x100000001b3L;
+                h = (h ^ rs.getLong(3)) * 0x100000001b3L;
+            }
+        }
+        return !any ? 0 : h == 0 ? 1 : h;
+    }
+
+    /**
+     * Returns an SQL expression for the service-day seconds of a time column:
+     * its seconds column when the table has one, or the seconds computed from
+     * the text for databases imported before those columns existed. Blank
+     * times are null either way.
+     *
+     * @param conn       connection to the database
+     * @param table      the table holding the column, e.g. stop_times
+     * @param alias      the table's alias in the query
+     * @param timeColumn the time column, e.g. departure_time
+     * @return the expression
+     * @throws SQLException if reading the table layout fails
+     */
+    public static String secondsExpression(Connection conn, String table, String alias, String timeColumn)
+            throws SQLException {
+        String secs = secondsColumn(timeColumn);
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ");")) {
+            while (rs.next()) {
+                if (secs.equals(rs.getString("name"))) {
+                    return alias + "." + secs;
+                }
+            }
+        }
+        String time = "trim(" + alias + "." + timeColumn + ")";
+        return "(CASE WHEN ifnull(" + time + ", '') = '' THEN NULL ELSE"
+                + " CAST(" + time + " AS INTEGER) * 3600"
+                + " + CAST(substr(" + time + ", -5, 2) AS INTEGER) * 60"
+                + " + CAST(substr(" + time + ", -2) AS INTEGER) END)";
+    }
+
+    /**
+     * @return the seconds column derived from a time column: departure_time becomes departure_secs
+     */
+    private static String secondsColumn(String timeColumn) {
+        return timeColumn.substring(0, Math.max(0, timeColumn.length() - "_time".length())) + "_secs";
+    }
+
+    private static Map<String, Long> recordedBlocks(Connection conn, String table) throws SQLException {
+        Map<String, Long> hashes = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT block_key, hash FROM feed_blocks WHERE tbl = ?;")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hashes.put(rs.getString("block_key"), rs.getLong("hash"));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Records a completely imported entry: its header and all its block hashes.
+     */
+    private static void recordEntry(Connection conn, ZipEntry entry, Table table, Map<String, long[]> blocks)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM feed_blocks WHERE tbl = ?;")) {
+            ps.setString(1, table.name());
+            ps.executeUpdate();
+        }
+        insertBlocks(conn, table.name(), blocks);
+        recordEntryHeader(conn, entry, table);
+    }
+
+    private static void recordEntryHeader(Connection conn, ZipEntry entry, Table table) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT OR REPLACE INTO feed_entries (tbl, entry_crc, entry_size, columns) VALUES (?, ?, ?, ?);")) {
+            ps.setString(1, table.name());
+            ps.setLong(2, entry.getCrc());
+            ps.setLong(3, entry.getSize());
+            ps.setString(4, String.join(",", table.columns()));
+            ps.executeUpdate();
+        }
+    }
+
+    private static void insertBlocks(Connection conn, String table, Map<String, long[]> blocks) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT OR REPLACE INTO feed_blocks (tbl, block_key, hash) VALUES (?, ?, ?);")) {
+            int batch = 0;
+            for (Map.Entry<String, long[]> block : blocks.entrySet()) {
+                ps.setString(1, table);
+                ps.setString(2, block.getKey());
+                ps.setLong(3, block.getValue()[0]);
+                ps.addBatch();
+                if (++batch % BATCH_ROWS == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void forgetEntry(Connection conn, String table) throws SQLException {
+        for (String sql : new String[] {"DELETE FROM feed_entries WHERE tbl = ?;", "DELETE FROM feed_blocks WHERE tbl = ?;"}) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, table);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Removes the footpaths computed from the old stops, so the routing
+     * engine computes them again for the new ones.
+     */
+    private static void dropGeneratedFootpaths(Connection conn) throws SQLException {
+        boolean hasGenerated = false;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(transfers);")) {
+            while (rs.next()) {
+                hasGenerated |= "generated".equals(rs.getString("name"));
+            }
+        }
+        if (hasGenerated) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("DELETE FROM transfers WHERE generated = '1';");
+            }
+        }
+    }
+
+    private static boolean isCSVformat(ZipFile zipFile, ZipEntry entry) {
+        try (
+                InputStream is = zipFile.getInputStream(entry); BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String first = br.readLine();
+            if (first == null) {
+                return false;
+            }
+            String lower = first.toLowerCase();
+
+            if (first.contains(",")
+                    || lower.contains("agency")
+                    || lower.contains("route")
+                    || lower.contains("stop")
+                    || lower.contains("trip")) {
+
+                int lines = 1;
+                while (lines < 2 && br.readLine() != null) {
+                    lines++;
+                }
+                return lines >= 2;
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates indexes for the specified table in the SQLite database.
+     *
+     * @param entryName The name of the entry (table) to create indexes for.
+     * @param conn The connection to the SQLite database.
+     * @throws SQLException If there is an error creating the indexes.
+     */
+    public static void createIndexes(String entryName, Connection conn) throws SQLException {
+        String tableName = sanitizeTableName(entryName);
+        if ("stop_times".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate(
+                        "CREATE INDEX IF NOT EXISTS idx_stop_times_stop_id "
+                        + "ON stop_times (stop_id);"
+                );
+                st.executeUpdate(
+                        "CREATE INDEX IF NOT EXISTS idx_stop_times_trip_seq "
+                        + "ON stop_times (trip_id, stop_sequence);"
+                );
+                st.execute("CREATE INDEX IF NOT EXISTS idx_stop_times_trip_id ON stop_times (trip_id);");
+                st.execute("CREATE UNIQUE INDEX IF NOT EXISTS idx_stop_times_unique ON stop_times (trip_id, stop_sequence);");
+
+            }
+        } else if ("trips".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_trips_trip_id ON trips (trip_id);");
+            }
+        } else if ("stops".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_stops_stop_id ON stops (stop_id);");
+            }
+        } else if ("calendar_dates".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_calendar_dates_service_id ON calendar_dates (service_id);");
+            }
+        } else if ("routes".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_routes_route_id ON routes (route_id);");
+            }
+        } else if ("calendar".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_calendar_service_id ON calendar (service_id);");
+            }
+        } else if ("shapes".equals(tableName)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE INDEX IF NOT EXISTS idx_shapes_shape_id ON shapes (shape_id);");
+            }
+        }
+    }
+
+    /**
+     * Creates (or replaces) the table for a CSV entry in the SQLite database.
+     *
+     * @param conn The connection to the SQLite database.
+     * @param table The table to create.
+     * @throws SQLException If there is an error creating the table.
+     */
+    private static void createTable(Connection conn, Table table) throws SQLException {
+        StringBuilder ddl = new StringBuilder();
+        ddl.append("CREATE TABLE ").append(table.name()).append(" (");
+        for (int i = 0; i < table.columns().length; i++) {
+            if (i > 0) {
+                ddl.append(", ");
+            }
+            ddl.append(table.columns()[i]).append(' ').append(table.types()[i]);
+        }
+        ddl.append(");");
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("DROP TABLE IF EXISTS " + table.name() + ";");
+            st.executeUpdate(ddl.toString());
+        }
+    }
+
+    private static String sanitizeTableName(String entryName) {
+        String file = entryName.contains("/")
+                ? entryName.substring(entryName.lastIndexOf('/') + 1)
+                : entryName;
+        String base = file.contains(".")
+                ? file.substring(0, file.lastIndexOf('.'))
+                : file;
+        return base.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String computeDbName(String zipName) {
+        if (!zipName.contains(".")) {
+            return zipName + ".db";
+        }
+        return zipName.substring(0, zipName.lastIndexOf('.')) + ".db";
+    }
+
+    @SuppressWarnings("unused")
+    private static String escapeForJson(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        return raw.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * One batch of parsed rows of a CSV entry, or, with null rows, the end
+     * marker of the entry.
+     */
+    private record Batch(ZipEntry entry, Table table, Object[][] rows, int size, Map<String, long[]> blocks,
+                         Exception error) {
+    }
+
+    /**
+     * Reads the rows of a CSV entry: the header, then the records with as many
+     * fields as the header, skipping the others.
+     */
+    private static final class CsvEntryReader implements AutoCloseable {
+        private final String name;
+        private final Reader in;
+        private final CsvTokenizer tokenizer;
+        private List<String> headers;
+
+        CsvEntryReader(ZipFile zipFile, ZipEntry entry) throws IOException {
+            name = entry.getName();
+            in = new InputStreamReader(zipFile.getInputStream(entry), StandardCharsets.UTF_8);
+            tokenizer = new CsvTokenizer(in);
+        }
+
+        List<String> headers() throws IOException {
+            if (headers == null) {
+                if (!tokenizer.next()) {
+                    throw new IOException("Empty CSV: " + name);
+                }
+                headers = List.of(tokenizer.getStrings());
+            }
+            return headers;
+        }
+
+        /**
+         * @return false at the end of the entry
+         */
+        boolean next() throws IOException {
+            int columns = headers().size();
+            while (tokenizer.next()) {
+                if (tokenizer.fieldCount() == columns) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the tokenizer positioned on the current record
+         */
+        CsvTokenizer fields() {
+            return tokenizer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Column layout of an imported table: the CSV columns with their SQLite
+     * types, followed by the seconds columns derived from the time columns, and
+     * the CSV column the table's rows are grouped by in incremental updates
+     * (-1 if none).
+     */
+    private record Table(String entryName, String name, String[] columns, String[] types, int[] timeSources,
+                         int keyColumn) {
+
+        static Table of(String entryName, List<String> headers) {
+            List<String> columns = new ArrayList<>();
+            List<String> types = new ArrayList<>();
+            for (String header : headers) {
+                String col = header.replaceAll("[^A-Za-z0-9_]", "_");
+                columns.add(col);
+                types.add(INTEGER_COLUMNS.contains(col) ? "INTEGER" : REAL_COLUMNS.contains(col) ? "REAL" : "TEXT");
+            }
+            List<Integer> timeSources = new ArrayList<>();
+            for (int i = 0; i < headers.size(); i++) {
+                String col = columns.get(i);
+                String secs = secondsColumn(col);
+                if (TIME_COLUMNS.contains(col) && !columns.contains(secs)) {
+                    columns.add(secs);
+                    types.add("INTEGER");
+                    timeSources.add(i);
+                }
+            }
+            String name = sanitizeTableName(entryName);
+            return new Table(entryName, name, columns.toArray(new String[0]), types.toArray(new String[0]),
+                    timeSources.stream().mapToInt(Integer::intValue).toArray(),
+                    KEY_COLUMNS.containsKey(name) ? headers.indexOf(KEY_COLUMNS.get(name)) : -1);
+        }
+
+        /**
+         * Adds the hash of a row to the hash of its block. Blocks are hashed as
+         * the sum of their row hashes, so the order of the rows does not matter.
+         */
+        void addToBlock(Map<String, long[]> blocks, CsvTokenizer fields) {
+            if (keyColumn >= 0) {
+                blocks.computeIfAbsent(fields.getString(keyColumn), k -> new long[1])[0] += rowHash(fields);
+            }
+        }
+
+        /**
+         * FNV-1a over the trimmed fields, then mixed so that sums of row hashes
+         * do not cancel out.
+         */
+        private static long rowHash(CsvTokenizer fields) {
+            long h = 0xcbf29ce484222325L;
+            for (int f = 0; f < fields.fieldCount(); f++) {
+                for (int i = 0; i < fields.length(f); i++) {
+                    h = (h ^ fields.charAt(f, i)) * 0x100000001b3L;
+                }
+                h = (h ^ 0x1F) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            return h ^ (h >>> 33);
+        }
+
+        String insertSql() {
+            return "INSERT INTO " + name + " (" + String.join(", ", columns) + ") VALUES ("
+                    + String.join(",", Collections.nCopies(columns.length, "?")) + ");";
+        }
+
+        /**
+         * Converts the fields of a CSV record into column values: Long or
+         * Double for numeric columns that parse, the trimmed text otherwise,
+         * and the seconds of each time column (null if it is blank or malformed).
+         */
+        Object[] toRow(CsvTokenizer fields) {
+            int csvColumns = columns.length - timeSources.length;
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < csvColumns; i++) {
+                row[i] = switch (types[i]) {
+                    case "INTEGER" -> parseLong(fields, i);
+                    case "REAL" -> parseDouble(fields, i);
+                    default -> fields.getString(i);
+                };
+            }
+            for (int t = 0; t < timeSources.length; t++) {
+                Integer seconds = null;
+                if (!fields.isEmpty(timeSources[t])) {
+                    try {
+                        seconds = fields.getSeconds(timeSources[t]);
+                    } catch (IllegalArgumentException e) {
+                        // left NULL, the text column still has the original value
+                    }
+                }
+                row[csvColumns + t] = seconds;
+            }
+            return row;
+        }
+
+        void bind(PreparedStatement ps, Object[] row) throws SQLException {
+            for (int i = 0; i < row.length; i++) {
+                Object value = row[i];
+                if (value instanceof Long l) {
+                    ps.setLong(i + 1, l);
+                } else if (value instanceof Integer n) {
+                    ps.setInt(i + 1, n);
+                } else if (value instanceof Double d) {
+                    ps.setDouble(i + 1, d);
+                } else if (value == null) {
+                    ps.setNull(i + 1, Types.INTEGER);
+                } else {
+                    ps.setString(i + 1, (String) value);
+                }
+            }
+        }
+
+        private static Object parseLong(CsvTokenizer fields, int i) {
+            if (fields.isEmpty(i)) {
+                return "";
+            }
+            try {
+                return fields.getLong(i);
+            } catch (NumberFormatException e) {
+                return fields.getString(i);
+            }
+        }
+
+        private static Object parseDouble(CsvTokenizer fields, int i) {
+            if (fields.isEmpty(i)) {
+                return "";
+            }
+            try {
+                return fields.getDouble(i);
+            } catch (NumberFormatException e) {
+                return fields.getString(i);
+            }
+        }
+    }
+}
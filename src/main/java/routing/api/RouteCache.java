@@ -0,0 +1,274 @@
+package routing.api;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import routing.routingEngineModels.utils.IntList;
+import routing.routingEngineModels.utils.PackedKDTree;
+
+/**
+ * RouteCache.java
+ *
+ * Bounded, thread-safe cache of routing results for repeated queries. A query
+ * is keyed by its snapped origin and destination, its departure-time bucket
+ * and its service date:
+ * <ul>
+ * <li>the stops are grouped into clusters of stops within {@code snapMeters}
+ * of a cluster's first stop, and a coordinate within {@code snapMeters} of a
+ * stop snaps to the cluster of that stop, so requests from the same station
+ * share entries; other coordinates are keyed by a grid cell of about 10 m;</li>
+ * <li>departures are grouped into buckets of {@code bucketSeconds}.</li>
+ * </ul>
+ * A result is searched from the last second of its bucket, so it never
+ * departs before the requested time of any query it is handed to; it may
+ * depart up to one bucket later than a search from that time would, and its
+ * ends may be up to twice the snap radius off.
+ *
+ * Like {@link routing.routingEngineAstar.builders.ConnectionCache} the cache
+ * is split into segments, each an access-ordered LRU map under its own lock,
+ * evicting their least recently used entries beyond their share of
+ * {@code maxEntries}. Entries also expire {@code ttlSeconds} after they were
+ * computed. Identical queries arriving while the first one is still searching
+ * wait for its result instead of searching again.
+ *
+ * @param <V> the result type, null results ("no route") are cached too
+ */
+public final class RouteCache<V> {
+
+    private static final int SEGMENTS = 16;
+    private static final double CELL_DEGREES = 1e-4;
+
+    /**
+     * Snapshot of the cache metrics.
+     *
+     * @param hits      queries answered from the cache
+     * @param misses    queries that ran a search
+     * @param coalesced queries that waited for an identical running search
+     * @param evictions entries dropped to stay within the size bound or because they expired
+     * @param entries   entries currently cached
+     */
+    public record Stats(long hits, long misses, long coalesced, long evictions, int entries) {
+
+        /**
+         * @return the fraction of queries that did not search themselves, 0 if there were none
+         */
+        public double hitRate() {
+            long queries = hits + misses + coalesced;
+            return queries == 0 ? 0.0 : (double) (hits + coalesced) / queries;
+        }
+    }
+
+    private record Key(long origin, long destination, int bucket, LocalDate date) {
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    private final PackedKDTree stopTree;
+    private final int[] clusterOfStop;
+    private final double snapMeters;
+    private final int bucketSeconds;
+    private final long ttlNanos;
+    private final int maxEntriesPerSegment;
+    private final List<Segment> segments;
+    private final Map<Key, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private volatile long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache for a network's stops.
+     *
+     * @param latitudes     latitudes of the stops
+     * @param longitudes    longitudes of the stops
+     * @param snapMeters    cluster and snapping radius in meters, 0 to only share exact stops
+     * @param bucketSeconds width of a departure-time bucket in seconds
+     * @param ttlSeconds    how long a result stays valid
+     * @param maxEntries    maximum number of cached results
+     */
+    public RouteCache(double[] latitudes, double[] longitudes, double snapMeters,
+                      int bucketSeconds, int ttlSeconds, int maxEntries) {
+        if (latitudes.length != longitudes.length || snapMeters < 0 || bucketSeconds < 1
+                || ttlSeconds < 1 || maxEntries < 1) {
+            throw new IllegalArgumentException("Invalid route cache settings");
+        }
+        this.stopTree = latitudes.length == 0 ? null : new PackedKDTree(latitudes, longitudes);
+        this.clusterOfStop = clusters(stopTree, latitudes, longitudes, snapMeters);
+        this.snapMeters = snapMeters;
+        this.bucketSeconds = bucketSeconds;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.maxEntriesPerSegment = Math.max(1, maxEntries / SEGMENTS);
+        this.segments = new ArrayList<>(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new Segment());
+        }
+    }
+
+    /**
+     * Groups the stops greedily: every stop not yet in a cluster starts one
+     * holding the unclustered stops within the radius.
+     */
+    private static int[] clusters(PackedKDTree tree, double[] latitudes, double[] longitudes, double radius) {
+        int[] cluster = new int[latitudes.length];
+        Arrays.fill(cluster, -1);
+        int next = 0;
+        for (int i = 0; i < cluster.length; i++) {
+            if (cluster[i] >= 0) {
+                continue;
+            }
+            cluster[i] = next;
+            IntList near = tree.within(latitudes[i], longitudes[i], radius);
+            for (int k = 0; k < near.size(); k++) {
+                if (cluster[near.get(k)] < 0) {
+                    cluster[near.get(k)] = next;
+                }
+            }
+            next++;
+        }
+        return cluster;
+    }
+
+    /**
+     * Returns the cached result of a query, running {@code search} on a miss.
+     * Exceptions thrown by the search are passed on to every caller waiting
+     * for it and are not cached.
+     *
+     * @param fromLat      latitude of the origin
+     * @param fromLon      longitude of the origin
+     * @param toLat        latitude of the destination
+     * @param toLon        longitude of the destination
+     * @param departureSec departure, seconds since midnight
+     * @param date         the service date, or null for any day
+     * @param search       computes the result on a miss, given the departure
+     *                     (seconds since midnight) to search from
+     * @return the result
+     */
+    public V get(double fromLat, double fromLon, double toLat, double toLon,
+                 int departureSec, LocalDate date, IntFunction<V> search) {
+        int bucket = Math.floorDiv(departureSec, bucketSeconds);
+        Key key = new Key(snap(fromLat, fromLon), snap(toLat, toLon), bucket, date);
+        Segment segment = segments.get((key.hashCode() & 0x7FFFFFFF) % SEGMENTS);
+
+        Entry<V> cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.value();
+        }
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        misses.increment();
+        long startGeneration = generation;
+        try {
+            V value = search.apply((bucket + 1) * bucketSeconds - 1);
+            // a result computed before an invalidation is handed out but not kept
+            if (generation == startGeneration) {
+                segment.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+            }
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return the key of a coordinate: its stop cluster when near a stop,
+     *         otherwise a negative grid cell number
+     */
+    private long snap(double lat, double lon) {
+        if (stopTree != null) {
+            IntList near = stopTree.within(lat, lon, snapMeters);
+            if (near.size() > 0) {
+                // the lowest cluster in range, so the key does not depend on the order of the stops found
+                int cluster = Integer.MAX_VALUE;
+                for (int k = 0; k < near.size(); k++) {
+                    cluster = Math.min(cluster, clusterOfStop[near.get(k)]);
+                }
+                return cluster;
+            }
+        }
+        long row = Math.round((lat + 90) / CELL_DEGREES);
+        long column = Math.round((lon + 180) / CELL_DEGREES);
+        return -1 - (row * Math.round(360 / CELL_DEGREES + 1) + column);
+    }
+
+    /**
+     * Drops every entry, e.g. after the data was reloaded. Searches running
+     * during the call still answer their callers but are not cached. The
+     * metrics are kept.
+     */
+    public void clear() {
+        generation++;
+        inFlight.clear();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int entries = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.map.size();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), entries);
+    }
+
+    /**
+     * One LRU map with its own lock.
+     */
+    private final class Segment {
+        final LinkedHashMap<Key, Entry<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+
+        synchronized Entry<V> get(Key key) {
+            Entry<V> entry = map.get(key);
+            if (entry != null && entry.expiresAtNanos() - System.nanoTime() < 0) {
+                map.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put(Key key, Entry<V> entry) {
+            map.put(key, entry);
+            Iterator<Entry<V>> eldest = map.values().iterator();
+            while (map.size() > maxEntriesPerSegment && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+        }
+    }
+}
@@ -1,33 +1,137 @@
 package routing.api;
 
+import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import routing.metrics.SearchStats;
 
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
 import routing.routingEngineModels.Coordinates;
 import routing.routingEngineModels.FinalRoute;
 import routing.routingEngineModels.InputJourney;
 
+/**
+ * Router.java
+ *
+ * Entry point of the routing engines: forwards queries to the current
+ * {@link RoutingStrategy}. With a {@link RouteCache}, coordinate queries that
+ * share a stop cluster and a departure bucket are answered with one search,
+ * run from the end of the bucket so the route never departs before any of
+ * their start times. Every caller gets its own copy of the cached route.
+ *
+ * The cache is cleared when the strategy changes; owners that reload the
+ * strategy's data in place must call {@link #invalidateCache()}.
+ */
 public class Router {
+    private static final int LAST_SECOND_OF_DAY = LocalTime.MAX.toSecondOfDay();
+
     private RoutingStrategy strategy;
+    private final RouteCache<FinalRoute> routeCache;
 
     public Router(RoutingStrategy strategy) {
+        this(strategy, null);
+    }
+
+    /**
+     * @param strategy   the routing engine
+     * @param routeCache cache for the strategy's routes, or null to search every query
+     */
+    public Router(RoutingStrategy strategy, RouteCache<FinalRoute> routeCache) {
         this.strategy = strategy;
+        this.routeCache = routeCache;
     }
 
     public void setStrategy(RoutingStrategy strategy) {
         this.strategy = strategy;
+        invalidateCache();
+    }
+
+    /**
+     * Drops every cached route, e.g. after the strategy's timetable was reloaded.
+     */
+    public void invalidateCache() {
+        if (routeCache != null) {
+            routeCache.clear();
+        }
+    }
+
+    /**
+     * @return the route cache metrics, null if the router has no cache
+     */
+    public RouteCache.Stats getCacheStats() {
+        return routeCache == null ? null : routeCache.getStats();
     }
 
     public FinalRoute findRoute(InputJourney inputJourney) {
-        return strategy.findRoute(inputJourney);
+        if (routeCache == null) {
+            return measured(() -> strategy.findRoute(inputJourney));
+        }
+        return measured(() -> {
+            FinalRoute route = cachedRoute(inputJourney);
+            return route == null ? null : route.copy();
+        });
+    }
+
+    /**
+     * Looks a journey up in the cache, searching from the end of its departure
+     * bucket on a miss. The cached instance is never handed out.
+     */
+    private FinalRoute cachedRoute(InputJourney inputJourney) {
+        Coordinates from = inputJourney.getStart();
+        Coordinates to = inputJourney.getEnd();
+        RoutingStrategy current = strategy;
+        return routeCache.get(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude(),
+                inputJourney.getStartTime().toSecondOfDay(), inputJourney.getDate(), searchSec -> {
+                    // the last bucket of the day may end past midnight
+                    LocalTime searchTime = LocalTime.ofSecondOfDay(Math.min(searchSec, LAST_SECOND_OF_DAY));
+                    return current.findRoute(new InputJourney(from, to, searchTime, inputJourney.getDate()));
+                });
     }
 
     public FinalRoute findRoute(AdiStop from, AdiStop to, LocalTime startTime) {
-        return strategy.findRoute(from, to, startTime);
+        return measured(() -> strategy.findRoute(from, to, startTime));
     }
 
     public FinalRoute findRoute(Coordinates from, Coordinates to, LocalTime startTime) {
-        InputJourney inputJourney = new InputJourney(from, to, startTime);
-        return strategy.findRoute(inputJourney);
+        return findRoute(new InputJourney(from, to, startTime));
+    }
+
+    /**
+     * Finds a route on a service date. The CSA, RAPTOR and Dijkstra planners
+     * search the timetable of every day at once and reject dated queries.
+     *
+     * @throws UnsupportedOperationException if the strategy does not apply the service calendar
+     */
+    public FinalRoute findRoute(Coordinates from, Coordinates to, LocalTime startTime, LocalDate date) {
+        return findRoute(new InputJourney(from, to, startTime, date));
+    }
+
+    /**
+     * Runs a query of the current strategy, attaching its {@link SearchStats}
+     * to the route when metrics are enabled. The route must not be shared
+     * with other callers.
+     */
+    private FinalRoute measured(Supplier<FinalRoute> search) {
+        if (!SearchStats.ENABLED) {
+            return search.get();
+        }
+        SearchStats.Measured<FinalRoute> measured =
+                SearchStats.measure(strategy.getClass().getSimpleName(), search);
+        FinalRoute route = measured.result();
+        if (route != null) {
+            route.setSearchStats(measured.stats());
+        }
+        return route;
+    }
+
+    public List<FinalRoute> findParetoRoutes(InputJourney inputJourney) {
+        return strategy.findParetoRoutes(inputJourney);
+    }
+
+    public Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime) {
+        return strategy.findTravelTimes(origin, startTime);
     }
 }
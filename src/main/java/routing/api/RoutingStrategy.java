@@ -1,12 +1,39 @@
 package routing.api;
 
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineModels.Coordinates;
 import routing.routingEngineModels.FinalRoute;
 import routing.routingEngineModels.InputJourney;
 import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 
 public interface RoutingStrategy {
     FinalRoute findRoute(InputJourney inputJourney);
     FinalRoute findRoute(AdiStop from, AdiStop to, LocalTime startTime);
-}
\ No newline at end of file
+
+    /**
+     * Finds the Pareto set of routes over (arrival time, number of transfers),
+     * ordered by increasing number of transfers. Engines that only compute a
+     * single journey return just that one.
+     *
+     * @param inputJourney the journey details including start, end, and start time
+     * @return the routes, empty if no route is found
+     */
+    default List<FinalRoute> findParetoRoutes(InputJourney inputJourney) {
+        FinalRoute route = findRoute(inputJourney);
+        return route == null ? Collections.emptyList() : Collections.singletonList(route);
+    }
+
+    /**
+     * One-to-all search: travel times from {@code origin} to every reachable
+     * stop, computed with a single search.
+     *
+     * @param origin    the starting coordinates
+     * @param startTime the start time of the journey
+     * @return a map of stop IDs to travel times in seconds
+     */
+    Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime);
+}
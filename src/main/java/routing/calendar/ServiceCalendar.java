@@ -0,0 +1,251 @@
+package routing.calendar;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ServiceCalendar.java
+ *
+ * Which GTFS services run on which day, read from the optional "calendar"
+ * (weekly patterns with a date range) and "calendar_dates" (added and removed
+ * days) tables. Services get dense indices, and for every day covered by the
+ * feed a BitSet of the services running that day is precomputed, so checking
+ * whether a trip runs is a single bit lookup.
+ *
+ * Days outside the covered range have no running services. The range is capped
+ * at {@code routing.calendarMaxDays} days (default 1096) from the first day, so
+ * open-ended calendars such as an end_date of 20991231 stay small.
+ */
+public final class ServiceCalendar {
+
+    private static final int MAX_DAYS = Integer.getInteger("routing.calendarMaxDays", 1096);
+    private static final DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String[] WEEKDAY_COLUMNS = {
+            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"
+    };
+
+    private final Map<String, Integer> serviceIndex;
+    private final LocalDate firstDay;
+    private final BitSet[] activeByDay;   // activeByDay[d] holds the services running on firstDay + d
+
+    private ServiceCalendar(Map<String, Integer> serviceIndex, LocalDate firstDay, BitSet[] activeByDay) {
+        this.serviceIndex = Collections.unmodifiableMap(serviceIndex);
+        this.firstDay = firstDay;
+        this.activeByDay = activeByDay;
+    }
+
+    /**
+     * A calendar without any services, for feeds that ship no calendar tables.
+     *
+     * @return the empty calendar
+     */
+    public static ServiceCalendar empty() {
+        return new ServiceCalendar(new HashMap<>(), null, new BitSet[0]);
+    }
+
+    /**
+     * Reads the calendar and calendar_dates tables. Either may be missing;
+     * rows with malformed dates are skipped.
+     *
+     * @param conn an open connection to the GTFS database
+     * @return the calendar, empty if neither table exists
+     * @throws SQLException if reading from the database fails
+     */
+    public static ServiceCalendar load(Connection conn) throws SQLException {
+        Map<String, Integer> serviceIndex = new HashMap<>();
+        List<WeeklyPattern> patterns = new ArrayList<>();
+        List<CalendarDate> exceptions = new ArrayList<>();
+
+        if (tableExists(conn, "calendar")) {
+            String query = """
+                SELECT service_id, monday, tuesday, wednesday, thursday, friday, saturday, sunday,
+                       start_date, end_date
+                FROM calendar
+                """;
+            try (PreparedStatement stmt = conn.prepareStatement(query);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate start = parseDate(rs.getString("start_date"));
+                    LocalDate end = parseDate(rs.getString("end_date"));
+                    if (start == null || end == null || end.isBefore(start)) {
+                        continue;
+                    }
+                    boolean[] days = new boolean[7];
+                    for (int d = 0; d < 7; d++) {
+                        days[d] = "1".equals(trim(rs.getString(WEEKDAY_COLUMNS[d])));
+                    }
+                    int service = indexService(serviceIndex, rs.getString("service_id"));
+                    patterns.add(new WeeklyPattern(service, days, start, end));
+                }
+            }
+        }
+
+        if (tableExists(conn, "calendar_dates")) {
+            String query = "SELECT service_id, date, exception_type FROM calendar_dates";
+            try (PreparedStatement stmt = conn.prepareStatement(query);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate date = parseDate(rs.getString("date"));
+                    String type = trim(rs.getString("exception_type"));
+                    if (date == null || !("1".equals(type) || "2".equals(type))) {
+                        continue;
+                    }
+                    int service = indexService(serviceIndex, rs.getString("service_id"));
+                    exceptions.add(new CalendarDate(service, date, "1".equals(type)));
+                }
+            }
+        }
+
+        if (patterns.isEmpty() && exceptions.isEmpty()) {
+            return new ServiceCalendar(serviceIndex, null, new BitSet[0]);
+        }
+
+        // Covered range: from the earliest to the latest day mentioned anywhere
+        LocalDate first = null;
+        LocalDate last = null;
+        for (WeeklyPattern p : patterns) {
+            first = first == null || p.start.isBefore(first) ? p.start : first;
+            last = last == null || p.end.isAfter(last) ? p.end : last;
+        }
+        for (CalendarDate e : exceptions) {
+            first = first == null || e.date.isBefore(first) ? e.date : first;
+            last = last == null || e.date.isAfter(last) ? e.date : last;
+        }
+        int dayCount = (int) Math.min(ChronoUnit.DAYS.between(first, last) + 1, MAX_DAYS);
+
+        BitSet[] activeByDay = new BitSet[dayCount];
+        for (int d = 0; d < dayCount; d++) {
+            activeByDay[d] = new BitSet(serviceIndex.size());
+        }
+        for (WeeklyPattern p : patterns) {
+            int from = (int) ChronoUnit.DAYS.between(first, p.start);
+            int to = (int) Math.min(ChronoUnit.DAYS.between(first, p.end), dayCount - 1L);
+            for (int d = from; d <= to; d++) {
+                if (p.days[first.plusDays(d).getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()]) {
+                    activeByDay[d].set(p.service);
+                }
+            }
+        }
+        // Exceptions override the weekly patterns
+        for (CalendarDate e : exceptions) {
+            long d = ChronoUnit.DAYS.between(first, e.date);
+            if (d < dayCount) {
+                activeByDay[(int) d].set(e.service, e.added);
+            }
+        }
+        return new ServiceCalendar(serviceIndex, first, activeByDay);
+    }
+
+    /**
+     * @return true if the feed has no calendar information at all
+     */
+    public boolean isEmpty() {
+        return activeByDay.length == 0;
+    }
+
+    public int getServiceCount() {
+        return serviceIndex.size();
+    }
+
+    /**
+     * Returns the dense index of a service.
+     *
+     * @param serviceId the GTFS service_id
+     * @return the index, or -1 if the service has no calendar entry
+     */
+    public int indexOf(String serviceId) {
+        Integer idx = serviceId == null ? null : serviceIndex.get(serviceId.trim());
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * Checks whether a service runs on a day.
+     *
+     * @param service the dense service index
+     * @param date    the service day
+     * @return true if the service runs that day
+     */
+    public boolean isActive(int service, LocalDate date) {
+        BitSet active = activeOn(date);
+        return service >= 0 && active != null && active.get(service);
+    }
+
+    /**
+     * Returns the services running on a day.
+     *
+     * @param date the service day
+     * @return a copy of the set of dense service indices, empty outside the covered range
+     */
+    public BitSet activeServices(LocalDate date) {
+        BitSet active = activeOn(date);
+        return active == null ? new BitSet() : (BitSet) active.clone();
+    }
+
+    /**
+     * @return the first covered day, or null if the calendar is empty
+     */
+    public LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    /**
+     * @return the last covered day, or null if the calendar is empty
+     */
+    public LocalDate getLastDay() {
+        return firstDay == null ? null : firstDay.plusDays(activeByDay.length - 1L);
+    }
+
+    private BitSet activeOn(LocalDate date) {
+        if (firstDay == null || date == null) {
+            return null;
+        }
+        long d = ChronoUnit.DAYS.between(firstDay, date);
+        return d < 0 || d >= activeByDay.length ? null : activeByDay[(int) d];
+    }
+
+    private static int indexService(Map<String, Integer> serviceIndex, String serviceId) {
+        return serviceIndex.computeIfAbsent(trim(serviceId), k -> serviceIndex.size());
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(null, null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value.trim(), GTFS_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String trim(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    private record WeeklyPattern(int service, boolean[] days, LocalDate start, LocalDate end) {
+    }
+
+    private record CalendarDate(int service, LocalDate date, boolean added) {
+    }
+}
@@ -1,12 +1,39 @@
 package routing.db;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * DBConnectionManager is responsible for creating (and potentially caching)
- * a JDBC Connection to a single SQLite database file (your GTFS‐loaded .db).
+ * DBConnectionManager hands out JDBC Connections to a single SQLite database
+ * file (your GTFS‐loaded .db).
+ *
+ * Connections returned by {@link #getConnection()} come from a small pool of
+ * read-only connections that stay open. Closing them returns them to the pool,
+ * and a thread gets the connection it used last whenever that one is free, so
+ * each worker thread effectively keeps its own connection. Every pooled
+ * connection also keeps its hot statements prepared: closing a PreparedStatement
+ * obtained through {@code prepareStatement(String)} only clears its parameters.
+ *
+ * Anything that writes (index creation, imports) must use
+ * {@link #openUnpooledConnection()}, because pooled connections run with
+ * {@code PRAGMA query_only}.
  *
  * Usage:
  *   DBConnectionManager mgr = new DBConnectionManager("jdbc:sqlite:budapest_gtfs.db");
@@ -14,26 +41,396 @@ import java.sql.SQLException;
  *     // do some queries
  *   }
  */
-public class DBConnectionManager {
+public class DBConnectionManager implements AutoCloseable {
+
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+    private static final long CLOSED_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+    private static final int CACHE_SIZE_KIB = 64 * 1024;
+
     private final String jdbcUrl;
+    private final int maxConnections;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final List<PooledConnection> all = new ArrayList<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final ThreadLocal<PooledConnection> lastUsed = new ThreadLocal<>();
+    private volatile boolean closed;
+
+    private final LongAdder connectionHits = new LongAdder();
+    private final LongAdder connectionMisses = new LongAdder();
+    private final LongAdder connectionWaits = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
 
     /**
-     * Construct a DBConnectionManager for a given JDBC URL.
+     * Construct a DBConnectionManager for a given JDBC URL, with one pooled
+     * connection per available processor.
      * For SQLite, that URL will usually look like: "jdbc:sqlite:/path/to/my_gtfs.db"
      */
     public DBConnectionManager(String jdbcUrl) {
-        this.jdbcUrl = jdbcUrl;
+        this(jdbcUrl, Runtime.getRuntime().availableProcessors());
     }
 
     /**
-     * Returns a new Connection to the underlying database.
-     * Caller is responsible for closing this Connection (e.g. via try‐with‐resources).
+     * Construct a DBConnectionManager for a given JDBC URL.
      *
-     * If you want to cache connections or use a connection pool, you can modify this
-     * method to do so. For simplicity, it just calls DriverManager.getConnection(...) 
-     * each time.
+     * @param jdbcUrl        the JDBC URL of the database
+     * @param maxConnections the maximum number of pooled connections kept open
+     */
+    public DBConnectionManager(String jdbcUrl, int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Returns a pooled, read-only Connection to the underlying database.
+     * Caller is responsible for closing this Connection (e.g. via try‐with‐resources),
+     * which hands it back to the pool. Blocks while all connections are in use.
      */
     public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection manager is closed");
+        }
+        PooledConnection pooled = acquire();
+        // close() may have run meanwhile: it skips connections in use and misses newly opened ones
+        if (closed) {
+            pooled.closePhysical();
+            throw new SQLException("Connection manager is closed");
+        }
+        lastUsed.set(pooled);
+        return pooled.borrow();
+    }
+
+    /**
+     * Returns a new, writable Connection that is not pooled. Use this for DDL
+     * and imports; the caller must close it.
+     */
+    public Connection openUnpooledConnection() throws SQLException {
         return DriverManager.getConnection(jdbcUrl);
     }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    /**
+     * Snapshot of the pool metrics.
+     *
+     * @param connectionHits   connections handed out without opening a new one
+     * @param connectionMisses connections that had to be opened
+     * @param connectionWaits  requests that had to wait for a free connection
+     * @param statementHits    prepareStatement calls served from the cache
+     * @param statementMisses  prepareStatement calls that had to prepare
+     * @param openConnections  pooled connections currently open
+     */
+    public record PoolStats(long connectionHits, long connectionMisses, long connectionWaits,
+                            long statementHits, long statementMisses, int openConnections) {
+    }
+
+    /**
+     * Returns the current pool metrics.
+     */
+    public PoolStats getStats() {
+        return new PoolStats(connectionHits.sum(), connectionMisses.sum(), connectionWaits.sum(),
+                statementHits.sum(), statementMisses.sum(), openConnections.get());
+    }
+
+    /**
+     * Closes every pooled connection. Connections still borrowed are closed
+     * when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (all) {
+            for (PooledConnection pooled : all) {
+                if (!pooled.inUse.get()) {
+                    pooled.closePhysical();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a free connection: the one this thread used last, else any idle
+     * one, else a new one if the pool is not full, else waits for a release.
+     */
+    private PooledConnection acquire() throws SQLException {
+        PooledConnection preferred = lastUsed.get();
+        if (preferred != null && preferred.tryTake()) {
+            connectionHits.increment();
+            return preferred;
+        }
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.queued.set(false);
+            if (pooled.tryTake()) {
+                connectionHits.increment();
+                return pooled;
+            }
+        }
+
+        if (openConnections.incrementAndGet() <= maxConnections) {
+            connectionMisses.increment();
+            try {
+                pooled = new PooledConnection(openPooledConnection());
+            } catch (SQLException | RuntimeException e) {
+                openConnections.decrementAndGet();
+                throw e;
+            }
+            pooled.inUse.set(true);
+            synchronized (all) {
+                all.add(pooled);
+            }
+            return pooled;
+        }
+        openConnections.decrementAndGet();
+
+        connectionWaits.increment();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ACQUIRE_TIMEOUT_SECONDS);
+        try {
+            while (true) {
+                if (closed) {
+                    throw new SQLException("Connection manager is closed");
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLException("Timed out waiting for a database connection");
+                }
+                // connections returned after close() are not queued, so look at the flag now and then
+                pooled = idle.pollFirst(Math.min(remaining, CLOSED_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (pooled == null) {
+                    continue;
+                }
+                pooled.queued.set(false);
+                if (pooled.tryTake()) {
+                    return pooled;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Opens a physical connection and applies the read-only tuning pragmas.
+     */
+    private Connection openPooledConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(jdbcUrl);
+        if (jdbcUrl.startsWith("jdbc:sqlite:")) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA query_only = ON");
+                stmt.execute("PRAGMA mmap_size = " + MMAP_SIZE_BYTES);
+                stmt.execute("PRAGMA cache_size = -" + CACHE_SIZE_KIB);
+                stmt.execute("PRAGMA temp_store = MEMORY");
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+        return conn;
+    }
+
+    /**
+     * Hands a connection back to the pool.
+     */
+    private void release(PooledConnection pooled) {
+        pooled.inUse.set(false);
+        if (closed) {
+            pooled.closePhysical();
+            return;
+        }
+        if (pooled.queued.compareAndSet(false, true)) {
+            idle.offerFirst(pooled);
+        }
+    }
+
+    /**
+     * One physical connection of the pool together with its statement cache.
+     * {@code queued} guarantees the connection is at most once in the idle deque.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        final AtomicBoolean inUse = new AtomicBoolean();
+        final AtomicBoolean queued = new AtomicBoolean();
+        final AtomicBoolean physicallyClosed = new AtomicBoolean();
+        final Map<String, CachedStatement> statements =
+                new LinkedHashMap<>(STATEMENT_CACHE_SIZE * 2, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        boolean tryTake() {
+            return inUse.compareAndSet(false, true);
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new ConnectionHandler(this));
+        }
+
+        /**
+         * Returns the cached statement for {@code sql}, preparing it on a miss.
+         * A statement that is already open in this borrow is not shared; the
+         * caller then gets a plain statement that is closed normally.
+         */
+        PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null) {
+                if (cached.open) {
+                    statementMisses.increment();
+                    return physical.prepareStatement(sql);
+                }
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                cached = new CachedStatement(physical.prepareStatement(sql));
+                statements.put(sql, cached);
+                evictStatements();
+            }
+            cached.open = true;
+            return cached.proxy();
+        }
+
+        private void evictStatements() {
+            Iterator<CachedStatement> it = statements.values().iterator();
+            while (statements.size() > STATEMENT_CACHE_SIZE && it.hasNext()) {
+                CachedStatement eldest = it.next();
+                if (!eldest.open) {
+                    it.remove();
+                    eldest.closePhysical();
+                }
+            }
+        }
+
+        void closePhysical() {
+            if (!physicallyClosed.compareAndSet(false, true)) {
+                return;
+            }
+            for (CachedStatement cached : statements.values()) {
+                cached.closePhysical();
+            }
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing pooled connection: " + e.getMessage());
+            }
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * A prepared statement kept open across borrows of its connection.
+     */
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        boolean open;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement proxy() {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                if (open) {
+                                    open = false;
+                                    physical.clearParameters();
+                                }
+                                return null;
+                            case "isClosed":
+                                return !open;
+                            default:
+                                if (!open) {
+                                    throw new SQLException("Statement is closed");
+                                }
+                                return invoke(physical, method, args);
+                        }
+                    });
+        }
+
+        void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Handler behind a borrowed connection: close() returns the connection to
+     * the pool and prepareStatement(String) goes through the statement cache.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<PreparedStatement> borrowedStatements = new ArrayList<>();
+        private boolean released;
+
+        ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        for (PreparedStatement stmt : borrowedStatements) {
+                            stmt.close();
+                        }
+                        borrowedStatements.clear();
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return released;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection is closed");
+            }
+            if ("prepareStatement".equals(method.getName())
+                    && args != null && args.length == 1 && args[0] instanceof String sql) {
+                PreparedStatement stmt = pooled.prepare(sql);
+                borrowedStatements.add(stmt);
+                return stmt;
+            }
+            return DBConnectionManager.invoke(pooled.physical, method, args);
+        }
+    }
+
+    /**
+     * Invokes a method on the wrapped JDBC object, unwrapping reflection exceptions.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
 }
@@ -0,0 +1,227 @@
+package routing.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * SearchMetrics.java
+ *
+ * Running totals of the {@link SearchStats} of one engine's queries, plus a
+ * latency histogram with power-of-two buckets (1 us, 2 us, 4 us, ...), from
+ * which the percentiles are read. Percentiles are the upper bound of their
+ * bucket, so they overestimate by less than a factor of two. Adding a query
+ * only touches striped counters, so worker threads do not contend.
+ *
+ * One instance per engine name, registered with the platform MBean server on
+ * first use.
+ */
+public final class SearchMetrics implements SearchMetricsMXBean {
+
+    private static final int BUCKETS = 48;
+    private static final Map<String, SearchMetrics> BY_ENGINE = new ConcurrentHashMap<>();
+
+    private final String engine;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder nodesSettled = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder sqlQueries = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder[] latencyBuckets = new LongAdder[BUCKETS];
+
+    private SearchMetrics(String engine) {
+        this.engine = engine;
+        for (int i = 0; i < BUCKETS; i++) {
+            latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the metrics of an engine, creating and registering them on first use.
+     *
+     * @param engine the engine name
+     * @return the engine's metrics
+     */
+    public static SearchMetrics of(String engine) {
+        return BY_ENGINE.computeIfAbsent(engine, name -> {
+            SearchMetrics metrics = new SearchMetrics(name);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                        new ObjectName("routing:type=SearchMetrics,engine=" + ObjectName.quote(name)));
+            } catch (JMException e) {
+                System.err.println("Unable to register search metrics for " + name + ": " + e.getMessage());
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * @return the metrics of every engine that answered a measured query
+     */
+    public static Collection<SearchMetrics> all() {
+        List<SearchMetrics> all = new ArrayList<>(BY_ENGINE.values());
+        all.sort((a, b) -> a.engine.compareTo(b.engine));
+        return all;
+    }
+
+    void add(SearchStats stats) {
+        queries.increment();
+        latencyNanos.add(stats.getLatencyNanos());
+        maxLatencyNanos.accumulate(stats.getLatencyNanos());
+        long micros = Math.max(1, stats.getLatencyNanos() / 1000);
+        latencyBuckets[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))].increment();
+        nodesSettled.add(stats.getNodesSettled());
+        edgesRelaxed.add(stats.getEdgesRelaxed());
+        sqlQueries.add(stats.getSqlQueries());
+        cacheHits.add(stats.getCacheHits());
+        cacheMisses.add(stats.getCacheMisses());
+        allocatedBytes.add(stats.getAllocatedBytes());
+    }
+
+    /**
+     * Reads a latency percentile from the histogram.
+     *
+     * @param fraction the percentile as a fraction, e.g. 0.99
+     * @return the upper bound of the bucket holding it, in milliseconds
+     */
+    private double percentileMillis(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyBuckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // bucket i holds latencies in [2^i, 2^(i+1)) microseconds
+                return Math.min((1L << (i + 1)) / 1e3, getMaxLatencyMillis());
+            }
+        }
+        return getMaxLatencyMillis();
+    }
+
+    @Override
+    public String getEngine() {
+        return engine;
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        long n = queries.sum();
+        return n == 0 ? 0 : latencyNanos.sum() / 1e6 / n;
+    }
+
+    @Override
+    public double getP50LatencyMillis() {
+        return percentileMillis(0.50);
+    }
+
+    @Override
+    public double getP90LatencyMillis() {
+        return percentileMillis(0.90);
+    }
+
+    @Override
+    public double getP99LatencyMillis() {
+        return percentileMillis(0.99);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    @Override
+    public long getNodesSettled() {
+        return nodesSettled.sum();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+        return edgesRelaxed.sum();
+    }
+
+    @Override
+    public long getSqlQueries() {
+        return sqlQueries.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        queries.reset();
+        latencyNanos.reset();
+        maxLatencyNanos.reset();
+        nodesSettled.reset();
+        edgesRelaxed.reset();
+        sqlQueries.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        allocatedBytes.reset();
+        for (LongAdder bucket : latencyBuckets) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * @return the aggregates as a JSON-ready map, latencies in milliseconds
+     */
+    public Map<String, Object> toJSON() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("queries", getQueries());
+        json.put("meanLatencyMs", round(getMeanLatencyMillis()));
+        json.put("p50LatencyMs", round(getP50LatencyMillis()));
+        json.put("p90LatencyMs", round(getP90LatencyMillis()));
+        json.put("p99LatencyMs", round(getP99LatencyMillis()));
+        json.put("maxLatencyMs", round(getMaxLatencyMillis()));
+        json.put("nodesSettled", getNodesSettled());
+        json.put("edgesRelaxed", getEdgesRelaxed());
+        json.put("sqlQueries", getSqlQueries());
+        json.put("cacheHits", getCacheHits());
+        json.put("cacheMisses", getCacheMisses());
+        json.put("allocatedBytes", getAllocatedBytes());
+        return json;
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,41 @@
+package routing.metrics;
+
+/**
+ * SearchMetricsMXBean.java
+ *
+ * JMX view of the aggregated {@link SearchStats} of one routing engine,
+ * registered as {@code routing:type=SearchMetrics,engine=<name>}.
+ */
+public interface SearchMetricsMXBean {
+
+    String getEngine();
+
+    long getQueries();
+
+    double getMeanLatencyMillis();
+
+    double getP50LatencyMillis();
+
+    double getP90LatencyMillis();
+
+    double getP99LatencyMillis();
+
+    double getMaxLatencyMillis();
+
+    long getNodesSettled();
+
+    long getEdgesRelaxed();
+
+    long getSqlQueries();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getAllocatedBytes();
+
+    /**
+     * Clears every counter and the latency histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,198 @@
+package routing.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * SearchStats.java
+ *
+ * What one routing query cost, whatever engine answered it: latency, nodes
+ * settled, edges relaxed, SQL queries issued, connection cache hits and
+ * misses, and bytes allocated by the searching thread. For the engines:
+ * <ul>
+ * <li>A* and Dijkstra: a node is a settled stop, an edge an examined connection or footpath;</li>
+ * <li>trip-based Dijkstra: a node is a queued trip segment, an edge an examined transfer;</li>
+ * <li>CSA: a node is an improved stop arrival, an edge a scanned connection or footpath;</li>
+ * <li>RAPTOR: a node is a stop marked in a round, an edge a scanned pattern stop or footpath.</li>
+ * </ul>
+ *
+ * Instrumentation is off unless the JVM runs with {@code -Drouting.metrics=true}.
+ * {@link #ENABLED} is a static final constant, so with metrics off every
+ * {@code if (SearchStats.ENABLED)} block in the engines is removed by the JIT.
+ * The engines count in local variables and report once per search; the hooks
+ * add to the stats of the query running on the current thread, set up by
+ * {@link #measure(String, Supplier)}, which also adds them to the engine's
+ * {@link SearchMetrics} when the query ends.
+ */
+public final class SearchStats {
+
+    public static final boolean ENABLED = Boolean.getBoolean("routing.metrics");
+
+    private static final ThreadLocal<SearchStats> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final String engine;
+    private long latencyNanos;
+    private long nodesSettled;
+    private long edgesRelaxed;
+    private long sqlQueries;
+    private long cacheHits;
+    private long cacheMisses;
+    private long allocatedBytes;
+
+    /**
+     * The result of a measured query.
+     *
+     * @param result the engine's answer
+     * @param stats  what the query cost, null if metrics are disabled
+     */
+    public record Measured<T>(T result, SearchStats stats) {
+    }
+
+    private SearchStats(String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Runs a query, collecting the stats reported while it runs. A query
+     * measured inside another one (an engine called through a wrapper that
+     * already measures) counts towards the outer query only.
+     *
+     * @param engine the name of the engine, the key of its aggregated metrics
+     * @param search the query
+     * @return the query's result and stats
+     */
+    public static <T> Measured<T> measure(String engine, Supplier<T> search) {
+        if (!ENABLED) {
+            return new Measured<>(search.get(), null);
+        }
+        SearchStats outer = CURRENT.get();
+        if (outer != null) {
+            return new Measured<>(search.get(), outer);
+        }
+
+        SearchStats stats = new SearchStats(engine);
+        CURRENT.set(stats);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return new Measured<>(search.get(), stats);
+        } finally {
+            stats.latencyNanos = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                stats.allocatedBytes = allocatedAfter - allocatedBefore;
+            }
+            CURRENT.remove();
+            SearchMetrics.of(engine).add(stats);
+        }
+    }
+
+    // ---- hooks for the engines, call inside if (SearchStats.ENABLED) ----
+
+    /**
+     * Reports the work of one search (a query may run several).
+     */
+    public static void recordSearch(long nodesSettled, long edgesRelaxed) {
+        SearchStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.nodesSettled += nodesSettled;
+            stats.edgesRelaxed += edgesRelaxed;
+        }
+    }
+
+    public static void recordSqlQuery() {
+        SearchStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.sqlQueries++;
+        }
+    }
+
+    public static void recordCacheHit() {
+        SearchStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.cacheHits++;
+        }
+    }
+
+    public static void recordCacheMiss() {
+        SearchStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.cacheMisses++;
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, -1 if the JVM cannot tell
+     * (for example on virtual threads).
+     */
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    // ---- getters ----
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getNodesSettled() {
+        return nodesSettled;
+    }
+
+    public long getEdgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    public long getSqlQueries() {
+        return sqlQueries;
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the stats as a JSON-ready map
+     */
+    public Map<String, Object> toJSON() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("engine", engine);
+        json.put("latencyMs", Math.round(latencyNanos / 1e3) / 1e3);
+        json.put("nodesSettled", nodesSettled);
+        json.put("edgesRelaxed", edgesRelaxed);
+        json.put("sqlQueries", sqlQueries);
+        json.put("cacheHits", cacheHits);
+        json.put("cacheMisses", cacheMisses);
+        json.put("allocatedBytes", allocatedBytes);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStats" + toJSON();
+    }
+}
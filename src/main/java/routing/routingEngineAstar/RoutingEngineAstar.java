@@ -2,24 +2,38 @@ package routing.routingEngineAstar;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 import parsers.ZipToSQLite;
+import routing.calendar.ServiceCalendar;
 import routing.db.DBConnectionManager;
+import routing.metrics.SearchStats;
+import routing.routingEngineAstar.builders.ConnectionCache;
 import routing.routingEngineAstar.builders.DynamicGraphBuilder;
 import routing.routingEngineAstar.builders.RouteBuilder;
 import routing.routingEngineAstar.finders.StopService;
+import routing.routingEngineAstar.footpaths.FootpathGraph;
+import routing.routingEngineAstar.footpaths.FootpathGraphLoader;
+import routing.routingEngineAstar.miscellaneous.ConnectionMode;
 import routing.routingEngineAstar.miscellaneous.Node;
 import routing.routingEngineAstar.miscellaneous.TimeUtils;
+import routing.routingEngineAstar.timetable.Timetable;
+import routing.routingEngineAstar.timetable.TimetableLoader;
 import routing.routingEngineModels.RouteStep;
 import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.GeoDistance;
 import routing.routingEngineModels.utils.TimeAndGeoUtils;
 
 /**
@@ -28,6 +42,13 @@ import routing.routingEngineModels.utils.TimeAndGeoUtils;
  * Changes: 1. If A* finds no transit steps, fall back to a single “WALK” step.
  * 2. Merge any consecutive walk legs in the final route into one direct walk
  * (so you don’t walk to an intermediate stop and then walk again).
+ * 3. Queries may carry a service date. In timetable mode the trips not running
+ * that day are pruned from the timetable before searching; the graph builders
+ * of the most recently used dates are kept.
+ * 4. Times are service-day seconds of the query's day. Searches also see the
+ * previous day's trips running after midnight and, past 24:00, the next day's.
+ * 5. With -Drouting.metrics=true every query is measured under the engine name
+ * "astar"; {@link #findRouteWithStats} also returns the query's stats.
  */
 public class RoutingEngineAstar {
 
@@ -35,36 +56,133 @@ public class RoutingEngineAstar {
     private static final double INITIAL_WALK_RADIUS_M = 1000;    // 300 m
     private static final double SEARCH_RADIUS = 1000;           // ~1 km
     private static final double WALKING_SPEED_MPS = 1.3889;     // ~5 km/h in m/s
+    // Number of per-date graph builders kept: -Drouting.cachedServiceDays
+    private static final int CACHED_SERVICE_DAYS = Integer.getInteger("routing.cachedServiceDays", 4);
 
-    @SuppressWarnings("unused")
     private final DBConnectionManager dbManager;
     private final Map<String, Stop> allStops;
     private final DynamicGraphBuilder graphBuilder;
+    private final ServiceCalendar calendar;
+    private final Timetable timetable;
+    private final FootpathGraph footpaths;
+    // per-date values are futures so that they are built outside the map's lock
+    private final Map<LocalDate, CompletableFuture<DynamicGraphBuilder>> graphBuilderByDate;
+    private final Map<LocalDate, CompletableFuture<Timetable>> timetableByDate;
     private RouteBuilder routeBuilder;
     private StopService stopService;
 
 
     /**
-     * Constructor for RoutingEngineAstar.
+     * Constructor for RoutingEngineAstar. Preloads the timetable so that the
+     * search itself does not query the database.
      *
      * @param dbManager the database connection manager
      */
     public RoutingEngineAstar(DBConnectionManager dbManager) {
+        this(dbManager, ConnectionMode.TIMETABLE);
+    }
+
+    /**
+     * Constructor for RoutingEngineAstar.
+     *
+     * @param dbManager the database connection manager
+     * @param mode      whether to preload the timetable or query per expansion
+     */
+    public RoutingEngineAstar(DBConnectionManager dbManager, ConnectionMode mode) {
         this.dbManager = dbManager;
         this.routeBuilder = new RouteBuilder(WALKING_SPEED_MPS);
         this.stopService = new StopService(dbManager);
         this.allStops = stopService.getAllStops(); 
 
-        this.graphBuilder = new DynamicGraphBuilder(dbManager);
-
         // ensure our stop_times indexes exist
-        try (Connection conn = dbManager.getConnection()) {
+        try (Connection conn = dbManager.openUnpooledConnection()) {
             ZipToSQLite.createIndexes("stop_times.txt", conn);
         } catch (SQLException e) {
             // either log or rethrow as unchecked
             throw new RuntimeException("Unable to create indexes", e);
         }
 
+        // walking graph between stops, computed once per database
+        try {
+            this.footpaths = new FootpathGraphLoader(dbManager).load(allStops);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to load footpaths", e);
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            this.calendar = ServiceCalendar.load(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to load service calendar", e);
+        }
+
+        if (mode == ConnectionMode.TIMETABLE) {
+            try {
+                this.timetable = new TimetableLoader(dbManager).load(allStops, calendar);
+                this.graphBuilder = new DynamicGraphBuilder(timetable, footpaths, MAX_WAIT_SECONDS);
+            } catch (SQLException e) {
+                throw new RuntimeException("Unable to load timetable", e);
+            }
+        } else {
+            this.timetable = null;
+            this.graphBuilder = new DynamicGraphBuilder(dbManager, footpaths);
+        }
+        this.graphBuilderByDate = lruByDate(CACHED_SERVICE_DAYS);
+        // a day's builder also needs the days before and after
+        this.timetableByDate = lruByDate(CACHED_SERVICE_DAYS + 2);
+    }
+
+    /**
+     * Copies an engine with a patched timetable. Stops, footpaths and the
+     * calendar are shared; graph builders and per-date caches start empty.
+     */
+    private RoutingEngineAstar(RoutingEngineAstar base, Timetable timetable) {
+        this.dbManager = base.dbManager;
+        this.routeBuilder = base.routeBuilder;
+        this.stopService = base.stopService;
+        this.allStops = base.allStops;
+        this.footpaths = base.footpaths;
+        this.calendar = base.calendar;
+        this.timetable = timetable;
+        this.graphBuilder = timetable == null
+                ? new DynamicGraphBuilder(dbManager, footpaths)
+                : new DynamicGraphBuilder(timetable, footpaths, MAX_WAIT_SECONDS);
+        this.graphBuilderByDate = lruByDate(CACHED_SERVICE_DAYS);
+        this.timetableByDate = lruByDate(CACHED_SERVICE_DAYS + 2);
+    }
+
+    private static <V> Map<LocalDate, V> lruByDate(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalDate, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns an engine for the database after an incremental feed update
+     * that changed only the given trips' stop_times or trips rows. In
+     * timetable mode just those trips are read again; the stops, footpaths and
+     * calendar must be unchanged. This engine stays usable until it is
+     * dropped.
+     *
+     * @param tripIds the trip_ids whose rows were added, changed or removed
+     * @return the engine for the updated database
+     */
+    public RoutingEngineAstar withChangedTrips(Set<String> tripIds) {
+        if (timetable == null) {
+            // connections are queried per expansion, only the caches are stale
+            return new RoutingEngineAstar(this, null);
+        }
+        long start = System.nanoTime();
+        try {
+            Timetable patched = new TimetableLoader(dbManager).reloadTrips(timetable, calendar, tripIds);
+            System.err.printf("Timetable patched: %d trips reloaded in %d ms, %d trips%n",
+                    tripIds.size(), (System.nanoTime() - start) / 1_000_000, patched.getTripCount());
+            return new RoutingEngineAstar(this, patched);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to reload trips", e);
+        }
     }
 
     /**
@@ -80,6 +198,50 @@ public class RoutingEngineAstar {
      */
     public List<RouteStep> findRoute(double sourceLat, double sourceLon,
             double destLat, double destLon, String startTime) {
+        return findRoute(sourceLat, sourceLon, destLat, destLon, startTime, null);
+    }
+
+    /**
+     * Finds a route from source to destination using only the trips that run
+     * on the given service date. A null date, a feed without calendar tables
+     * or the database connection mode search every trip.
+     *
+     * @param sourceLat  latitude of the source location
+     * @param sourceLon  longitude of the source location
+     * @param destLat    latitude of the destination location
+     * @param destLon    longitude of the destination location
+     * @param startTime  starting time in "HH:mm:ss" format
+     * @param date       the service date, or null for any day
+     * @return a list of RouteStep representing the route
+     */
+    public List<RouteStep> findRoute(double sourceLat, double sourceLon,
+            double destLat, double destLon, String startTime, LocalDate date) {
+        if (SearchStats.ENABLED) {
+            return findRouteWithStats(sourceLat, sourceLon, destLat, destLon, startTime, date).result();
+        }
+        return search(sourceLat, sourceLon, destLat, destLon, startTime, date);
+    }
+
+    /**
+     * Same as {@link #findRoute(double, double, double, double, String, LocalDate)},
+     * also returning what the query cost.
+     *
+     * @param sourceLat  latitude of the source location
+     * @param sourceLon  longitude of the source location
+     * @param destLat    latitude of the destination location
+     * @param destLon    longitude of the destination location
+     * @param startTime  starting time in "HH:mm:ss" format
+     * @param date       the service date, or null for any day
+     * @return the route steps and the query's stats, null if metrics are disabled
+     */
+    public SearchStats.Measured<List<RouteStep>> findRouteWithStats(double sourceLat, double sourceLon,
+            double destLat, double destLon, String startTime, LocalDate date) {
+        return SearchStats.measure("astar",
+                () -> search(sourceLat, sourceLon, destLat, destLon, startTime, date));
+    }
+
+    private List<RouteStep> search(double sourceLat, double sourceLon,
+            double destLat, double destLon, String startTime, LocalDate date) {
 
         // 1) If source and destination are within walking distance, return direct walk.
         double directDistance = TimeAndGeoUtils.haversineMeters(
@@ -104,7 +266,7 @@ public class RoutingEngineAstar {
 
         // 3) Run A* to get both the list of RouteStep and the actual boarding stop.
         AStarResult result = runAStar(
-                startStops, endStops, startTime, sourceLat, sourceLon, destLat, destLon
+                graphBuilderFor(date), startStops, endStops, startTime, sourceLat, sourceLon, destLat, destLon
         );
 
         List<RouteStep> transitRoute = result.steps;
@@ -126,6 +288,68 @@ public class RoutingEngineAstar {
         
     }   
 
+    /**
+     * Returns the graph builder searching the trips of a service date and of
+     * the days around it, pruning the timetables for those dates on first use.
+     *
+     * @param date the service date, or null for any day
+     * @return the graph builder to search with
+     */
+    private DynamicGraphBuilder graphBuilderFor(LocalDate date) {
+        if (date == null || timetable == null || calendar.isEmpty()) {
+            return graphBuilder;
+        }
+        return computeOnce(graphBuilderByDate, date, d -> new DynamicGraphBuilder(runningOn(d.minusDays(1)),
+                runningOn(d), runningOn(d.plusDays(1)), footpaths, MAX_WAIT_SECONDS));
+    }
+
+    /**
+     * Returns the timetable pruned to the trips running on a date.
+     */
+    private Timetable runningOn(LocalDate date) {
+        return computeOnce(timetableByDate, date, d -> {
+            Timetable running = timetable.restrictToServices(calendar.activeServices(d));
+            System.err.printf("Timetable for %s: %d of %d trips running%n",
+                    d, running.getTripCount(), timetable.getTripCount());
+            return running;
+        });
+    }
+
+    /**
+     * Returns the value cached for a date, building it on first use. The
+     * cache's lock is held only to look up or insert the future, so building
+     * one day does not hold up searches on other days; concurrent first
+     * requests for the same day wait for a single build. A failed build is
+     * not kept.
+     */
+    private static <V> V computeOnce(Map<LocalDate, CompletableFuture<V>> cache, LocalDate date,
+            Function<LocalDate, V> build) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running;
+        synchronized (cache) {
+            running = cache.putIfAbsent(date, mine);
+        }
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            V value = build.apply(date);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            synchronized (cache) {
+                cache.remove(date, mine);
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
     /**
      * A simple container for the result of the A* search.
      */
@@ -144,6 +368,7 @@ public class RoutingEngineAstar {
      * Runs the A* search algorithm to find the best route from startStops to
      * endStops, considering the given start time and source/destination coordinates.
      *
+     * @param builder     expands stops with the trips of the query's service day
      * @param startStops  list of starting stops
      * @param endStops    list of ending stops
      * @param startTime   starting time in "HH:mm:ss" format
@@ -153,7 +378,7 @@ public class RoutingEngineAstar {
      * @param destLon     longitude of the destination location
      * @return an AStarResult containing the route steps and first boarding stop
      */
-    private AStarResult runAStar(List<Stop> startStops, List<Stop> endStops, String startTime, double sourceLat, double sourceLon, double destLat, double destLon) {
+    private AStarResult runAStar(DynamicGraphBuilder builder, List<Stop> startStops, List<Stop> endStops, String startTime, double sourceLat, double sourceLon, double destLat, double destLon) {
 
         // Convert "HH:mm:ss" → seconds since midnight
         int startTimeSec = TimeUtils.timeToSeconds(startTime);
@@ -163,6 +388,8 @@ public class RoutingEngineAstar {
         for (Stop s : endStops) {
             endStopIds.add(s.getStopID());
         }
+        // One circle around all end stops, so the heuristic needs a single distance
+        EndStopBounds endBounds = EndStopBounds.of(endStops);
 
         // Data structures for A*:
         Map<String, Integer> bestArrivalTime = new HashMap<>();
@@ -182,14 +409,16 @@ public class RoutingEngineAstar {
             int walkingSeconds = (int) Math.ceil(walkDistance / WALKING_SPEED_MPS);
             int arrival = startTimeSec + walkingSeconds;
 
-            double h = heuristic(startStop, endStops);
+            double h = heuristic(startStop, endBounds);
             double f = arrival + h;
 
             bestArrivalTime.put(sid, arrival);
             openSet.add(new Node(startStop, arrival, f));
         }
 
-        // A* main loop
+        // A* main loop; the counts are only reported with metrics enabled
+        int settled = 0;
+        long relaxed = 0;
         while (!openSet.isEmpty()) {
             Node current = openSet.poll();
             Stop currStop = current.stop;
@@ -201,6 +430,7 @@ public class RoutingEngineAstar {
                     && currArrSec > bestArrivalTime.get(currId)) {
                 continue;
             }
+            settled++;
 
             // If this stop is one of the endStops, reconstruct the path
             if (endStopIds.contains(currId) && cameFrom.containsKey(currId)) {
@@ -213,12 +443,15 @@ public class RoutingEngineAstar {
                 String firstFromId = cameFrom.get(firstToId);
                 Stop firstBoardStop = allStops.get(firstFromId);
 
+                if (SearchStats.ENABLED) {
+                    SearchStats.recordSearch(settled, relaxed);
+                }
                 return new AStarResult(path, firstBoardStop);
             }
 
-            // Otherwise, expand neighbors from currStop at currTimeStr
-            String currTimeStr = TimeUtils.secondsToTime(currArrSec);
-            List<RouteStep> neighbors = getConnectionsForStop(currStop, currTimeStr);
+            // Otherwise, expand neighbors from currStop at currArrSec
+            List<RouteStep> neighbors = builder.getValidRouteSteps(currStop, currArrSec);
+            relaxed += neighbors.size();
 
             for (RouteStep step : neighbors) {
                 Stop nextStop = step.getToStop();
@@ -238,13 +471,16 @@ public class RoutingEngineAstar {
                     cameFrom.put(nextId, currId);
                     cameStep.put(nextId, step);
 
-                    double hNext = heuristic(nextStop, endStops);
+                    double hNext = heuristic(nextStop, endBounds);
                     double fNext = arrSec + hNext;
                     openSet.add(new Node(nextStop, arrSec, fNext));
 
                 }
             }
         }
+        if (SearchStats.ENABLED) {
+            SearchStats.recordSearch(settled, relaxed);
+        }
         // No route found → return empty steps and null boarding stop
         return new AStarResult(Collections.emptyList(), null);
     }
@@ -275,30 +511,56 @@ public class RoutingEngineAstar {
     }
 
     /**
-     * Heuristic function for A* search: calculates the minimum distance from
-     * the current stop to any of the end stops, divided by walking speed.
+     * Heuristic function for A* search: the distance from the current stop to
+     * the circle enclosing all end stops, divided by walking speed. By the
+     * triangle inequality this never exceeds the distance to the closest end
+     * stop, so it stays admissible. Distances use the fast equirectangular
+     * approximation, which within a city is off by far less than a meter.
      *
      * @param currentStop  the current stop being evaluated
-     * @param endStops     list of destination stops
+     * @param endBounds    bounding circle of the destination stops
      * @return estimated time in seconds to reach any end stop from the current stop
      */
-    private double heuristic(Stop currentStop, List<Stop> endStops) {
-        double minDist = Double.MAX_VALUE;
-        double lat1 = currentStop.getLatitude();
-        double lon1 = currentStop.getLongitude();
-
-        for (Stop end : endStops) {
-            double d = TimeAndGeoUtils.haversineMeters(
-                    lat1, lon1,
-                    end.getLatitude(), end.getLongitude()
-            );
-            if (d < minDist) {
-                minDist = d;
+    private double heuristic(Stop currentStop, EndStopBounds endBounds) {
+        double d = GeoDistance.fastMeters(
+                currentStop.getLatitude(), currentStop.getLongitude(),
+                endBounds.lat(), endBounds.lon()
+        );
+        return Math.max(0.0, d - endBounds.radius()) / WALKING_SPEED_MPS;
+    }
+
+    /**
+     * Circle (center and radius in meters) containing every end stop of a query.
+     */
+    private record EndStopBounds(double lat, double lon, double radius) {
+
+        static EndStopBounds of(List<Stop> endStops) {
+            double sumLat = 0;
+            double sumLon = 0;
+            for (Stop end : endStops) {
+                sumLat += end.getLatitude();
+                sumLon += end.getLongitude();
             }
+            double lat = sumLat / endStops.size();
+            double lon = sumLon / endStops.size();
+
+            double radius = 0;
+            for (Stop end : endStops) {
+                radius = Math.max(radius, GeoDistance.fastMeters(
+                        lat, lon, end.getLatitude(), end.getLongitude()));
+            }
+            return new EndStopBounds(lat, lon, radius);
         }
-        return minDist / WALKING_SPEED_MPS;
     }
 
+    /**
+     * Returns every stop known to the engine, keyed by stop_id.
+     *
+     * @return an unmodifiable map of all stops
+     */
+    public Map<String, Stop> getAllStops() {
+        return Collections.unmodifiableMap(allStops);
+    }
 
     /**
      * Retrieves all valid connections for a given stop at the specified time.
@@ -310,4 +572,34 @@ public class RoutingEngineAstar {
     public List<RouteStep> getConnectionsForStop(Stop stop, String currentTime) {
         return graphBuilder.getValidRouteSteps(stop, currentTime);
     }
+
+    /**
+     * Returns the service calendar of the loaded feed.
+     *
+     * @return the calendar, empty if the feed has none
+     */
+    public ServiceCalendar getServiceCalendar() {
+        return calendar;
+    }
+
+    /**
+     * Returns the metrics of the graph builders' connection caches, summed
+     * over the unrestricted builder and the cached per-date ones.
+     *
+     * @return hits, misses, evictions and size of the caches
+     */
+    public ConnectionCache.Stats getConnectionCacheStats() {
+        ConnectionCache.Stats stats = graphBuilder.getCacheStats();
+        List<CompletableFuture<DynamicGraphBuilder>> builders;
+        synchronized (graphBuilderByDate) {
+            builders = List.copyOf(graphBuilderByDate.values());
+        }
+        for (CompletableFuture<DynamicGraphBuilder> builder : builders) {
+            // builders still being built have no cache traffic yet
+            if (builder.isDone() && !builder.isCompletedExceptionally()) {
+                stats = stats.plus(builder.join().getCacheStats());
+            }
+        }
+        return stats;
+    }
 }
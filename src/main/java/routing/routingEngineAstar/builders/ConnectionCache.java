@@ -0,0 +1,240 @@
+package routing.routingEngineAstar.builders;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import routing.metrics.SearchStats;
+import routing.routingEngineAstar.miscellaneous.TimeUtils;
+import routing.routingEngineModels.RouteStep;
+
+/**
+ * ConnectionCache.java
+ *
+ * Bounded, thread-safe cache of the transit connections leaving a stop.
+ * Entries are keyed by stop and departure-time bucket: the entry for bucket b
+ * holds every connection departing in
+ * [b * bucketSeconds, (b + 1) * bucketSeconds - 1 + maxWaitSeconds], which
+ * covers the window of every query time inside the bucket. Lookups then cut
+ * the exact window out of the entry with a binary search, so searches arriving
+ * a few seconds apart share one entry.
+ *
+ * The cache is split into segments, each an access-ordered LRU map under its
+ * own lock. Every segment evicts its least recently used entries once the
+ * number of cached route steps exceeds its share of {@code maxSteps}, which
+ * bounds the memory used independently of how many entries there are.
+ */
+public final class ConnectionCache {
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Loads the connections of a stop for a departure window.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<RouteStep> load(int earliestDepartureSec, int latestDepartureSec);
+    }
+
+    /**
+     * Snapshot of the cache metrics.
+     *
+     * @param hits      lookups answered from the cache
+     * @param misses    lookups that had to load the connections
+     * @param evictions entries dropped to stay within the size bound
+     * @param entries   entries currently cached
+     * @param steps     route steps currently cached
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long steps) {
+
+        /**
+         * @return the fraction of lookups answered from the cache, 0 if there were none
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        /**
+         * @param other metrics of another cache
+         * @return the metrics of both caches together
+         */
+        public Stats plus(Stats other) {
+            return new Stats(hits + other.hits, misses + other.misses, evictions + other.evictions,
+                    entries + other.entries, steps + other.steps);
+        }
+    }
+
+    private record Key(String stopId, int bucket) {
+    }
+
+    /**
+     * Connections of one bucket, sorted by departure time.
+     */
+    private record Bucket(int[] departures, RouteStep[] steps) {
+    }
+
+    private final int bucketSeconds;
+    private final int maxWaitSeconds;
+    private final long maxStepsPerSegment;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param bucketSeconds  width of a departure-time bucket in seconds
+     * @param maxWaitSeconds length of the departure window of a lookup
+     * @param maxSteps       maximum number of route steps kept in the cache
+     */
+    public ConnectionCache(int bucketSeconds, int maxWaitSeconds, long maxSteps) {
+        if (bucketSeconds < 1 || maxWaitSeconds < 0 || maxSteps < 1) {
+            throw new IllegalArgumentException("Invalid connection cache settings");
+        }
+        this.bucketSeconds = bucketSeconds;
+        this.maxWaitSeconds = maxWaitSeconds;
+        this.maxStepsPerSegment = Math.max(1, maxSteps / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns the connections leaving a stop within
+     * [timeSec, timeSec + maxWaitSeconds], loading the bucket containing
+     * {@code timeSec} if it is not cached.
+     *
+     * @param stopId  the stop_id of the departure stop
+     * @param timeSec the earliest departure, seconds since midnight
+     * @param loader  loads the connections of a window on a miss
+     * @param out     receives the matching route steps, ordered by departure
+     */
+    public void get(String stopId, int timeSec, Loader loader, List<RouteStep> out) {
+        int bucket = Math.floorDiv(timeSec, bucketSeconds);
+        Key key = new Key(stopId, bucket);
+        Segment segment = segments[(key.hashCode() & 0x7FFFFFFF) % SEGMENTS];
+
+        Bucket cached = segment.get(key);
+        if (cached != null) {
+            hits.increment();
+            if (SearchStats.ENABLED) {
+                SearchStats.recordCacheHit();
+            }
+        } else {
+            misses.increment();
+            if (SearchStats.ENABLED) {
+                SearchStats.recordCacheMiss();
+            }
+            // Loaded outside the lock; two threads may load the same bucket once
+            int bucketStart = bucket * bucketSeconds;
+            cached = toBucket(loader.load(bucketStart, bucketStart + bucketSeconds - 1 + maxWaitSeconds));
+            segment.put(key, cached);
+        }
+
+        int[] departures = cached.departures();
+        int from = firstAtOrAfter(departures, timeSec);
+        int latest = timeSec + maxWaitSeconds;
+        for (int i = from; i < departures.length && departures[i] <= latest; i++) {
+            out.add(cached.steps()[i]);
+        }
+    }
+
+    /**
+     * Drops every entry. The metrics are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int entries = 0;
+        long steps = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.map.size();
+                steps += segment.steps;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries, steps);
+    }
+
+    private static Bucket toBucket(List<RouteStep> loaded) {
+        RouteStep[] steps = loaded.toArray(new RouteStep[0]);
+        long[] order = new long[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            order[i] = ((long) TimeUtils.timeToSeconds(steps[i].getDepartureTime()) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int[] departures = new int[steps.length];
+        RouteStep[] sorted = new RouteStep[steps.length];
+        for (int i = 0; i < order.length; i++) {
+            departures[i] = (int) (order[i] >>> 32);
+            sorted[i] = steps[(int) order[i]];
+        }
+        return new Bucket(departures, sorted);
+    }
+
+    private static int firstAtOrAfter(int[] departures, int timeSec) {
+        int lo = 0;
+        int hi = departures.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departures[mid] < timeSec) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long weightOf(Bucket bucket) {
+        return bucket.steps().length + 1L;
+    }
+
+    /**
+     * One LRU map with its own lock and step count.
+     */
+    private final class Segment {
+        final LinkedHashMap<Key, Bucket> map = new LinkedHashMap<>(64, 0.75f, true);
+        long steps;
+
+        synchronized Bucket get(Key key) {
+            return map.get(key);
+        }
+
+        synchronized void put(Key key, Bucket bucket) {
+            Bucket previous = map.put(key, bucket);
+            if (previous != null) {
+                steps -= weightOf(previous);
+            }
+            steps += weightOf(bucket);
+
+            Iterator<Map.Entry<Key, Bucket>> eldest = map.entrySet().iterator();
+            while (steps > maxStepsPerSegment && eldest.hasNext()) {
+                Map.Entry<Key, Bucket> entry = eldest.next();
+                if (entry.getKey().equals(key)) {
+                    continue;
+                }
+                steps -= weightOf(entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            steps = 0;
+        }
+    }
+}
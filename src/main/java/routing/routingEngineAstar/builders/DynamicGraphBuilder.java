@@ -1,18 +1,15 @@
 package routing.routingEngineAstar.builders;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import routing.db.DBConnectionManager;
+import routing.routingEngineAstar.finders.ConnectionFinder;
 import routing.routingEngineAstar.finders.StopConnectionFinder;
-import routing.routingEngineAstar.validators.TimeConstraintValidator;
-import routing.routingEngineModels.Coordinates;
+import routing.routingEngineAstar.finders.TimetableConnectionFinder;
+import routing.routingEngineAstar.footpaths.FootpathGraph;
+import routing.routingEngineAstar.miscellaneous.TimeUtils;
+import routing.routingEngineAstar.timetable.Timetable;
 import routing.routingEngineModels.RouteStep;
 import routing.routingEngineModels.Stop.Stop;
 
@@ -21,100 +18,102 @@ import routing.routingEngineModels.Stop.Stop;
  */
 public class DynamicGraphBuilder {
     
-    private final DBConnectionManager dbManager;
-    private final StopConnectionFinder connectionFinder;
-    private final FootpathConnectionBuilder footpathBuilder;
-    @SuppressWarnings("unused")
-    private final TimeConstraintValidator timeValidator;
+    private static final int DEFAULT_MAX_WAIT_SECONDS = 3600; // same as TimeConstraintValidator
+    // Connection cache tuning: -Drouting.cacheBucketSeconds and -Drouting.cacheMaxSteps
+    private static final int CACHE_BUCKET_SECONDS = Integer.getInteger("routing.cacheBucketSeconds", 300);
+    private static final long CACHE_MAX_STEPS = Long.getLong("routing.cacheMaxSteps", 1_000_000L);
+
+    private final ConnectionFinder connectionFinder;
+    private final FootpathGraph footpaths;
+    private final int maxWaitSeconds;
     
-    // Cache to avoid rebuilding connections for the same stop-time combination
-    private final Map<String, List<RouteStep>> connectionCache;
+    // Transit connections per stop and departure-time bucket, bounded and
+    // shared by concurrent searches; walking steps are cheap and not cached
+    private final ConnectionCache connectionCache;
     
-    public DynamicGraphBuilder(DBConnectionManager dbManager) {
-        this.dbManager = dbManager;
+    /**
+     * Creates a builder that queries the database for every transit expansion
+     * (fallback mode). Footpaths still come from the precomputed graph.
+     *
+     * @param dbManager the database connection manager
+     * @param footpaths the precomputed footpath graph
+     */
+    public DynamicGraphBuilder(DBConnectionManager dbManager, FootpathGraph footpaths) {
         this.connectionFinder = new StopConnectionFinder(dbManager);
-        this.footpathBuilder = new FootpathConnectionBuilder(dbManager);
-        this.timeValidator = new TimeConstraintValidator();
-        this.connectionCache = new HashMap<>();
+        this.footpaths = footpaths;
+        this.maxWaitSeconds = DEFAULT_MAX_WAIT_SECONDS;
+        this.connectionCache = new ConnectionCache(CACHE_BUCKET_SECONDS, maxWaitSeconds, CACHE_MAX_STEPS);
     }
-    
+
     /**
-     * Gets all valid route steps from a stop at a given time
+     * Creates a builder that expands stops from a preloaded timetable, without
+     * touching the database while searching.
+     *
+     * @param timetable       the preloaded timetable
+     * @param footpaths       the precomputed footpath graph
+     * @param maxWaitSeconds  longest wait at a stop for a departure to be considered
      */
-    public List<RouteStep> getValidRouteSteps(Stop fromStop, String currentTime) {
-        String cacheKey = fromStop.getStopID() + "_" + currentTime;
-        
-        // Check cache first
-        if (connectionCache.containsKey(cacheKey)) {
-            return connectionCache.get(cacheKey);
-        }
-        
-        List<RouteStep> validSteps = new ArrayList<>();
-        
-        // Get transit connections
-        List<RouteStep> transitSteps = connectionFinder.findValidConnections(fromStop, currentTime);
-        validSteps.addAll(transitSteps);
-        
-        // Get walking connections
-        Map<String, Integer> footpaths = footpathBuilder.findFootpathConnections(fromStop);
-        for (Map.Entry<String, Integer> footpath : footpaths.entrySet()) {
-            RouteStep walkingStep = createWalkingRouteStep(
-                fromStop, 
-                footpath.getKey(), 
-                footpath.getValue(),
-                currentTime
-            );
-            if (walkingStep != null) {
-                validSteps.add(walkingStep);
-            }
-        }
-        
-        connectionCache.put(cacheKey, validSteps);
-        return validSteps;
+    public DynamicGraphBuilder(Timetable timetable, FootpathGraph footpaths, int maxWaitSeconds) {
+        this(timetable, timetable, timetable, footpaths, maxWaitSeconds);
     }
-    
+
     /**
-     * Creates a walking route step
+     * Creates a builder that expands stops from the preloaded timetables of a
+     * service day and its neighbours, so searches near midnight see the trips
+     * of the previous day still running and of the next day.
+     *
+     * @param previousDay     the trips running on the day before
+     * @param timetable       the trips running on the searched day
+     * @param nextDay         the trips running on the day after
+     * @param footpaths       the precomputed footpath graph
+     * @param maxWaitSeconds  longest wait at a stop for a departure to be considered
      */
-    private RouteStep createWalkingRouteStep(Stop fromStop, String toStopId, 
-                                           int walkingSeconds, String startTime) {
-        Stop toStop = getStopById(toStopId);
-        if (toStop == null) {
-            return null;
-        }
-        
-        return new RouteStep("walk", toStop, startTime, walkingSeconds);
+    public DynamicGraphBuilder(Timetable previousDay, Timetable timetable, Timetable nextDay,
+                               FootpathGraph footpaths, int maxWaitSeconds) {
+        this.connectionFinder = new TimetableConnectionFinder(previousDay, timetable, nextDay);
+        this.footpaths = footpaths;
+        this.maxWaitSeconds = maxWaitSeconds;
+        this.connectionCache = new ConnectionCache(CACHE_BUCKET_SECONDS, maxWaitSeconds, CACHE_MAX_STEPS);
     }
     
     /**
-     * Gets a stop by ID from the database
+     * Gets all valid route steps from a stop at a given time
+     */
+    public List<RouteStep> getValidRouteSteps(Stop fromStop, String currentTime) {
+        return getValidRouteSteps(fromStop, TimeUtils.timeToSeconds(currentTime));
+    }
+
+    /**
+     * Gets all valid route steps from a stop at a given time (seconds since midnight)
      */
-    private Stop getStopById(String stopId) {
-        String query = "SELECT stop_id, stop_name, stop_lat, stop_lon FROM stops WHERE stop_id = ?";
+    public List<RouteStep> getValidRouteSteps(Stop fromStop, int currentTimeSec) {
+        String currentTime = TimeUtils.secondsToTime(currentTimeSec);
+        List<RouteStep> validSteps = new ArrayList<>();
+        
+        // Get transit connections leaving within maxWaitSeconds, through the cache
+        connectionCache.get(fromStop.getStopID(), currentTimeSec,
+            (earliest, latest) -> connectionFinder.findValidConnections(fromStop, earliest, latest),
+            validSteps);
         
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            
-            stmt.setString(1, stopId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String stopName = rs.getString("stop_name");
-                    double lat = rs.getDouble("stop_lat");
-                    double lon = rs.getDouble("stop_lon");
-                    Coordinates coordinates = new Coordinates(lat, lon);
-                    return new Stop(stopId, stopName, coordinates);
-                }
+        // Get walking connections from the precomputed footpath graph
+        int fromIdx = footpaths.indexOf(fromStop.getStopID());
+        if (fromIdx >= 0) {
+            for (int f = footpaths.footpathsBegin(fromIdx); f < footpaths.footpathsEnd(fromIdx); f++) {
+                Stop toStop = footpaths.getStop(footpaths.getFootpathTarget(f));
+                validSteps.add(new RouteStep("walk", toStop, currentTime, footpaths.getFootpathSeconds(f)));
             }
-        } catch (SQLException e) {
-            System.err.println("Error getting stop by ID: " + e.getMessage());
         }
-        
-        return null;
+        return validSteps;
     }
     
-
     public void clearCache() {
         connectionCache.clear();
     }
+
+    /**
+     * Returns the hit rate and size of the connection cache.
+     */
+    public ConnectionCache.Stats getCacheStats() {
+        return connectionCache.getStats();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package routing.routingEngineAstar.finders;
+
+import java.util.List;
+
+import routing.routingEngineModels.RouteStep;
+import routing.routingEngineModels.Stop.Stop;
+
+/**
+ * Source of transit connections for the A* search. Every departure from the
+ * given stop inside the time window yields one RouteStep per later stop of the
+ * same trip (you may ride as far as you like before getting off).
+ */
+public interface ConnectionFinder {
+
+    /**
+     * Finds all transit route steps leaving {@code fromStop} in the given window.
+     *
+     * @param fromStop              the stop to depart from
+     * @param earliestDepartureSec  earliest departure, seconds since midnight
+     * @param latestDepartureSec    latest departure, seconds since midnight
+     * @return the route steps, ordered by departure and then arrival time
+     */
+    List<RouteStep> findValidConnections(Stop fromStop, int earliestDepartureSec, int latestDepartureSec);
+}
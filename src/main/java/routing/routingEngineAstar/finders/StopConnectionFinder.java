@@ -7,40 +7,102 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
+import parsers.ZipToSQLite;
 import routing.db.DBConnectionManager;
-import routing.routingEngineAstar.validators.TimeConstraintValidator;
+import routing.metrics.SearchStats;
 import routing.routingEngineModels.Coordinates;
 import routing.routingEngineModels.RouteInfo;
 import routing.routingEngineModels.RouteStep;
 import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.ServiceTime;
 
 /**
  * Finds valid connections from a given stop based on time constraints.
+ * Queries the database on every call; used as the fallback when no
+ * preloaded timetable is available.
+ *
+ * Times are read as the service-day seconds stored by the import (see
+ * {@link ZipToSQLite#secondsExpression}), so "9:05:00" and "25:10:00" order
+ * correctly and nothing is parsed per row. A window is searched on the
+ * current service day and, shifted by a day, on the previous one (its trips
+ * after midnight) and the next one (when the window runs past midnight).
  */
-public class StopConnectionFinder {
+public class StopConnectionFinder implements ConnectionFinder {
+
+    private static final int DEFAULT_WINDOW_SECONDS = 3600; // same as TimeConstraintValidator
 
     private final DBConnectionManager dbManager;
-    private final TimeConstraintValidator timeValidator;
+    // built on first use, once the layout of stop_times is known
+    private volatile String query;
 
     public StopConnectionFinder(DBConnectionManager dbManager) {
         this.dbManager = dbManager;
-        this.timeValidator = new TimeConstraintValidator();
     }
 
     /**
-     * Finds all valid route steps from a given stop after a specific time.
+     * Finds all valid route steps from a given stop within the time window.
+     * Step times are on the timeline of the current service day.
      */
-    public List<RouteStep> findValidConnections(Stop fromStop, String currentTime) {
+    @Override
+    public List<RouteStep> findValidConnections(Stop fromStop, int earliestDepartureSec, int latestDepartureSec) {
         List<RouteStep> validSteps = new ArrayList<>();
 
-        String query = """
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query(conn))) {
+
+            stmt.setString(1, fromStop.getStopID());
+            // Current day, previous day (times past 24:00) and next day
+            stmt.setInt(2, earliestDepartureSec);
+            stmt.setInt(3, latestDepartureSec);
+            stmt.setInt(4, earliestDepartureSec + ServiceTime.DAY_SECONDS);
+            stmt.setInt(5, latestDepartureSec + ServiceTime.DAY_SECONDS);
+            stmt.setInt(6, earliestDepartureSec - ServiceTime.DAY_SECONDS);
+            stmt.setInt(7, latestDepartureSec - ServiceTime.DAY_SECONDS);
+
+            if (SearchStats.ENABLED) {
+                SearchStats.recordSqlQuery();
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int depSec = rs.getInt("from_departure_secs");
+                    int shift = 0;
+                    if (depSec > latestDepartureSec) {
+                        shift = -ServiceTime.DAY_SECONDS;
+                    } else if (depSec < earliestDepartureSec) {
+                        shift = ServiceTime.DAY_SECONDS;
+                    }
+
+                    RouteStep step = createRouteStep(rs, depSec + shift, shift);
+                    if (step != null) {
+                        validSteps.add(step);
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error finding connections from stop " +
+                               fromStop.getStopID() + ": " + e.getMessage());
+        }
+
+        return validSteps;
+    }
+
+    private String query(Connection conn) throws SQLException {
+        String q = query;
+        if (q != null) {
+            return q;
+        }
+        String departure = ZipToSQLite.secondsExpression(conn, "stop_times", "st1", "departure_time");
+        String arrival = ZipToSQLite.secondsExpression(conn, "stop_times", "st2", "arrival_time");
+        q = """
             SELECT DISTINCT
                 st1.stop_id        AS from_stop_id,
-                st1.arrival_time   AS from_arrival,
-                st1.departure_time AS from_departure,
+                %1$s AS from_departure_secs,
                 st2.stop_id        AS to_stop_id,
-                st2.arrival_time   AS to_arrival,
-                st2.departure_time AS to_departure,
+                %2$s AS to_arrival_secs,
+                s2.stop_name       AS to_stop_name,
+                s2.stop_lat        AS to_stop_lat,
+                s2.stop_lon        AS to_stop_lon,
                 r.route_id,
                 r.route_short_name AS route_short_name,
                 r.route_long_name  AS route_long_name,
@@ -60,56 +122,43 @@ public class StopConnectionFinder {
             JOIN stops s2
               ON st2.stop_id = s2.stop_id
             WHERE st1.stop_id = ?
-              AND st1.departure_time >= ?
-            ORDER BY st1.departure_time, st2.arrival_time
-            """;
-
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-
-            stmt.setString(1, fromStop.getStopID());
-            stmt.setString(2, currentTime);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String fromDeparture = rs.getString("from_departure");
-
-                    // Validate the time constraint
-                    if (timeValidator.isValidTimeConnection(currentTime, fromDeparture)) {
-                        RouteStep step = createRouteStep(rs);
-                        if (step != null) {
-                            validSteps.add(step);
-                        }
-                    }
-                }
-            }
-
-        } catch (SQLException e) {
-            System.err.println("Error finding connections from stop " +
-                               fromStop.getStopID() + ": " + e.getMessage());
-        }
+              AND (%1$s BETWEEN ? AND ?
+                   OR %1$s BETWEEN ? AND ?
+                   OR %1$s BETWEEN ? AND ?)
+            ORDER BY from_departure_secs, to_arrival_secs
+            """.formatted(departure, arrival);
+        query = q;
+        return q;
+    }
 
-        return validSteps;
+    /**
+     * Finds all valid route steps from a given stop after a specific time.
+     */
+    public List<RouteStep> findValidConnections(Stop fromStop, String currentTime) {
+        int currentSec = ServiceTime.parse(currentTime);
+        return findValidConnections(fromStop, currentSec, currentSec + DEFAULT_WINDOW_SECONDS);
     }
 
     /**
      * Creates a RouteStep from the ResultSet.
      * 
-     * @param rs The ResultSet containing the route step data.
-     * @return A RouteStep object or null if the stop was not found.
+     * @param rs     The ResultSet containing the route step data.
+     * @param depSec The departure on the timeline of the searched service day.
+     * @param shift  Seconds added to the trip's times to move them onto the
+     *               timeline of the searched service day.
+     * @return A RouteStep object or null if the arrival time is blank.
      * @throws SQLException If there is an error accessing the ResultSet.
      */
-    private RouteStep createRouteStep(ResultSet rs) throws SQLException {
+    private RouteStep createRouteStep(ResultSet rs, int depSec, int shift) throws SQLException {
         String toStopId = rs.getString("to_stop_id");
-        Stop toStop = getStopById(toStopId);
-        if (toStop == null) {
+        Stop toStop = new Stop(toStopId, rs.getString("to_stop_name"),
+                new Coordinates(rs.getDouble("to_stop_lat"), rs.getDouble("to_stop_lon")));
+
+        int arrSec = rs.getInt("to_arrival_secs") + shift;
+        if (rs.wasNull()) {
             return null;
         }
 
-        String departureTime = rs.getString("from_departure");
-        String arrivalTime   = rs.getString("to_arrival");
-        double durationMinutes = calculateDurationMinutes(departureTime, arrivalTime);
-
         String routeShortName = rs.getString("route_short_name");
         String modeOfTransport = (routeShortName != null ? routeShortName : "Transit");
 
@@ -130,84 +179,11 @@ public class StopConnectionFinder {
         return new RouteStep(
             modeOfTransport,
             toStop,
-            durationMinutes,
-            departureTime,
-            arrivalTime,
+            (arrSec - depSec) / 60.0,
+            ServiceTime.format(depSec),
+            ServiceTime.format(arrSec),
             stopStr,
             routeInfo
         );
     }
-
-    /**
-     * Retrieves a Stop object by its ID from the database.
-     *
-     * @param stopId The ID of the stop to retrieve.
-     * @return A Stop object or null if not found.
-     */
-    private Stop getStopById(String stopId) {
-        String query = "SELECT stop_id, stop_name, stop_lat, stop_lon "
-                     + "FROM stops WHERE stop_id = ?";
-
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-
-            stmt.setString(1, stopId);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String stopName = rs.getString("stop_name");
-                    double lat = rs.getDouble("stop_lat");
-                    double lon = rs.getDouble("stop_lon");
-                    Coordinates coords = new Coordinates(lat, lon);
-                    return new Stop(stopId, stopName, coords);
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Error getting stop by ID: " + e.getMessage());
-        }
-
-        return null;
-    }
-
-    /**
-     * Calculates the duration in minutes between two times.
-     * Handles cases where the end time rolls over past midnight.
-     *
-     * @param startTime The start time in "HH:mm:ss" format.
-     * @param endTime   The end time in "HH:mm:ss" format.
-     * @return The duration in minutes, or 0.0 if parsing fails.
-     */
-    private double calculateDurationMinutes(String startTime, String endTime) {
-        try {
-            int startSeconds = timeToSeconds(startTime);
-            int endSeconds   = timeToSeconds(endTime);
-
-            // If the end‐time rolled over past midnight:
-            if (endSeconds < startSeconds) {
-                endSeconds += 24 * 3600;
-            }
-            return (endSeconds - startSeconds) / 60.0;
-        } catch (Exception e) {
-            // If parsing fails for some reason, default to 0.
-            return 0.0;
-        }
-    }
-
-    /**
-     * Converts a time string in "HH:mm:ss" format to seconds.
-     *
-     * @param time The time string to convert.
-     * @return The total number of seconds.
-     * @throws IllegalArgumentException If the time format is invalid.
-     */
-    private int timeToSeconds(String time) {
-        String[] parts = time.split(":");
-        if (parts.length != 3) {
-            throw new IllegalArgumentException("Invalid time format: " + time);
-        }
-        int hours   = Integer.parseInt(parts[0]);
-        int minutes = Integer.parseInt(parts[1]);
-        int seconds = Integer.parseInt(parts[2]);
-        return hours * 3600 + minutes * 60 + seconds;
-    }
 }
@@ -12,16 +12,29 @@ import java.util.Map;
 import routing.db.DBConnectionManager;
 import routing.routingEngineModels.Coordinates;
 import routing.routingEngineModels.Stop.Stop;
-import routing.routingEngineModels.utils.TimeAndGeoUtils;
+import routing.routingEngineModels.utils.IntList;
+import routing.routingEngineModels.utils.PackedKDTree;
 
 public class StopService {
     
     private final Map<String, Stop> allStops;
     private final DBConnectionManager dbManager;
+    private final Stop[] indexedStops;
+    private final PackedKDTree stopIndex;
 
     public StopService(DBConnectionManager dbManager) {
         this.dbManager = dbManager;
         this.allStops = loadAllStops();
+
+        // Spatial index over all stops for radius queries
+        this.indexedStops = allStops.values().toArray(new Stop[0]);
+        double[] lats = new double[indexedStops.length];
+        double[] lons = new double[indexedStops.length];
+        for (int i = 0; i < indexedStops.length; i++) {
+            lats[i] = indexedStops[i].getLatitude();
+            lons[i] = indexedStops[i].getLongitude();
+        }
+        this.stopIndex = new PackedKDTree(lats, lons);
     }
 
      /**
@@ -58,25 +71,27 @@ public class StopService {
 
      /**
      * Finds all stops within `radiusM` meters of (lat, lon), using
-     * straight‐line (haversine) distance.
+     * straight‐line (haversine) distance. Answered from the spatial index.
      */
     public List<Stop> findNearbyStops(double lat, double lon, double radiusM) {
-        List<Stop> nearbyStops = new ArrayList<>();
-
-        for (Stop stop : allStops.values()) {
-            double distance = TimeAndGeoUtils.haversineMeters(
-                    lat, lon,
-                    stop.getLatitude(), stop.getLongitude()
-            );
-            if (distance <= radiusM) {
-                nearbyStops.add(stop);
-
-            }
+        IntList found = stopIndex.within(lat, lon, radiusM);
+        List<Stop> nearbyStops = new ArrayList<>(found.size());
+        for (int i = 0; i < found.size(); i++) {
+            nearbyStops.add(indexedStops[found.get(i)]);
         }
-
         return nearbyStops;
     }
 
+    /**
+     * Finds the stop closest to (lat, lon).
+     *
+     * @return the closest stop, or null if there are no stops
+     */
+    public Stop findClosestStop(double lat, double lon) {
+        int nearest = stopIndex.nearest(lat, lon);
+        return nearest < 0 ? null : indexedStops[nearest];
+    }
+
     public Map<String, Stop> getAllStops() {
         return allStops;
     }
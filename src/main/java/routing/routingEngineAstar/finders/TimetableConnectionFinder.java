@@ -0,0 +1,119 @@
+package routing.routingEngineAstar.finders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import routing.routingEngineAstar.miscellaneous.TimeUtils;
+import routing.routingEngineAstar.timetable.Timetable;
+import routing.routingEngineModels.RouteInfo;
+import routing.routingEngineModels.RouteStep;
+import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.ServiceTime;
+
+/**
+ * Finds connections from a stop using the preloaded {@link Timetable}.
+ * The first feasible departure is found by binary search and the scan stops
+ * at the end of the time window, so no SQL is issued while searching.
+ *
+ * Times are service-day seconds of the searched day. Besides that day's
+ * timetable, the previous day's is searched one day later (its trips running
+ * past midnight) and, once the window reaches 24:00, the next day's one day
+ * earlier; their times are shifted onto the searched day's timeline.
+ */
+public class TimetableConnectionFinder implements ConnectionFinder {
+
+    private final Timetable previousDay;
+    private final Timetable timetable;
+    private final Timetable nextDay;
+
+    /**
+     * Creates a finder for a timetable that runs every day.
+     *
+     * @param timetable the timetable of every service day
+     */
+    public TimetableConnectionFinder(Timetable timetable) {
+        this(timetable, timetable, timetable);
+    }
+
+    /**
+     * Creates a finder searching a service day together with its neighbours.
+     *
+     * @param previousDay the trips of the day before
+     * @param timetable   the trips of the searched day
+     * @param nextDay     the trips of the day after
+     */
+    public TimetableConnectionFinder(Timetable previousDay, Timetable timetable, Timetable nextDay) {
+        this.previousDay = previousDay;
+        this.timetable = timetable;
+        this.nextDay = nextDay;
+    }
+
+    /**
+     * Finds all valid route steps from a given stop within the time window.
+     */
+    @Override
+    public List<RouteStep> findValidConnections(Stop fromStop, int earliestDepartureSec, int latestDepartureSec) {
+        List<RouteStep> validSteps = new ArrayList<>();
+        int day = ServiceTime.DAY_SECONDS;
+
+        findInDay(timetable, fromStop, earliestDepartureSec, latestDepartureSec, 0, validSteps);
+        findInDay(previousDay, fromStop, earliestDepartureSec + day, latestDepartureSec + day, -day, validSteps);
+        if (latestDepartureSec >= day) {
+            findInDay(nextDay, fromStop, earliestDepartureSec - day, latestDepartureSec - day, day, validSteps);
+        }
+        return validSteps;
+    }
+
+    /**
+     * Adds the steps of one service day's timetable departing in the window,
+     * given in that day's times, with their times moved by {@code shift}.
+     */
+    private void findInDay(Timetable day, Stop fromStop, int earliestDepartureSec, int latestDepartureSec,
+                           int shift, List<RouteStep> validSteps) {
+        int stopIdx = day.indexOf(fromStop.getStopID());
+        if (stopIdx < 0) {
+            return;
+        }
+
+        int end = day.departuresEnd(stopIdx);
+        for (int d = day.firstDepartureAtOrAfter(stopIdx, earliestDepartureSec); d < end; d++) {
+            int depSec = day.getDepartureTime(d);
+            if (depSec > latestDepartureSec) {
+                break;
+            }
+
+            int boardStopTime = day.getDepartureStopTime(d);
+            int trip = day.getStopTimeTrip(boardStopTime);
+            int tripEnd = day.tripEnd(trip);
+            String departureTime = TimeUtils.secondsToTime(depSec + shift);
+            RouteInfo routeInfo = day.getRouteInfo(trip);
+
+            for (int st = boardStopTime + 1; st < tripEnd; st++) {
+                validSteps.add(createRouteStep(day, st, depSec, shift, departureTime, routeInfo));
+            }
+        }
+    }
+
+    /**
+     * Creates a RouteStep for riding from the boarding stop to stop time {@code st}.
+     */
+    private RouteStep createRouteStep(Timetable day, int st, int depSec, int shift,
+                                      String departureTime, RouteInfo routeInfo) {
+        Stop toStop = day.getStop(day.getStopTimeStop(st));
+        int arrSec = day.getStopTimeArrival(st);
+
+        String shortName = routeInfo.getShortNameString();
+        String modeOfTransport = (shortName != null ? shortName : "Transit");
+        String stopStr = toStop.getStopName() + " (" + toStop.getStopID() + ")";
+
+        return new RouteStep(
+            modeOfTransport,
+            toStop,
+            (arrSec - depSec) / 60.0,
+            departureTime,
+            TimeUtils.secondsToTime(arrSec + shift),
+            stopStr,
+            routeInfo
+        );
+    }
+}
@@ -0,0 +1,89 @@
+package routing.routingEngineAstar.footpaths;
+
+import java.util.Collections;
+import java.util.Map;
+
+import routing.routingEngineModels.Stop.Stop;
+
+/**
+ * FootpathGraph.java
+ *
+ * Immutable walking graph between stops, computed once per database by
+ * {@link FootpathGraphLoader} and shared by all searches. The edges are kept
+ * in compressed sparse row form: the footpaths leaving stop s are the entries
+ * footpathStart[s]..footpathStart[s+1] of the target and seconds arrays.
+ *
+ * Stops are numbered in stop_id order, the same way as in the timetable.
+ */
+public final class FootpathGraph {
+
+    private final Stop[] stops;
+    private final Map<String, Integer> stopIndex;
+    private final int[] footpathStart;
+    private final int[] footpathTarget;
+    private final int[] footpathSeconds;
+
+    /**
+     * Constructs a FootpathGraph from fully built arrays. Only
+     * {@link FootpathGraphLoader} is expected to call this; the arrays are not copied.
+     */
+    FootpathGraph(Stop[] stops, Map<String, Integer> stopIndex,
+                  int[] footpathStart, int[] footpathTarget, int[] footpathSeconds) {
+        this.stops = stops;
+        this.stopIndex = Collections.unmodifiableMap(stopIndex);
+        this.footpathStart = footpathStart;
+        this.footpathTarget = footpathTarget;
+        this.footpathSeconds = footpathSeconds;
+    }
+
+    public int getStopCount() {
+        return stops.length;
+    }
+
+    public Stop getStop(int stopIdx) {
+        return stops[stopIdx];
+    }
+
+    /**
+     * Returns the dense index of a stop.
+     *
+     * @param stopId the stop_id
+     * @return the index, or -1 if unknown
+     */
+    public int indexOf(String stopId) {
+        Integer idx = stopIndex.get(stopId);
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * Returns the index of the first footpath leaving a stop.
+     *
+     * @param stopIdx dense stop index
+     * @return an index into the footpath arrays
+     */
+    public int footpathsBegin(int stopIdx) {
+        return footpathStart[stopIdx];
+    }
+
+    /**
+     * Returns the (exclusive) end of the footpath slice of a stop.
+     *
+     * @param stopIdx dense stop index
+     * @return one past the last footpath index of the stop
+     */
+    public int footpathsEnd(int stopIdx) {
+        return footpathStart[stopIdx + 1];
+    }
+
+    public int getFootpathTarget(int footpathIdx) {
+        return footpathTarget[footpathIdx];
+    }
+
+    public int getFootpathSeconds(int footpathIdx) {
+        return footpathSeconds[footpathIdx];
+    }
+
+    public int getFootpathCount() {
+        return footpathTarget.length;
+    }
+}
@@ -0,0 +1,415 @@
+package routing.routingEngineAstar.footpaths;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import routing.db.DBConnectionManager;
+import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.IntList;
+import routing.routingEngineModels.utils.PackedKDTree;
+import routing.routingEngineModels.utils.TimeAndGeoUtils;
+
+/**
+ * Computes the walking graph between stops and stores it in the GTFS
+ * `transfers` table, so it is only computed the first time a database is used.
+ *
+ * Every pair of stops within {@value #FOOTPATH_RADIUS_M} m gets a footpath
+ * whose duration is the straight-line walking time. Two sources override that
+ * estimate:
+ * - pathways.txt: the shortest traversal_time through the station pathway
+ *   graph between two stops (also adding pairs that are further apart);
+ * - transfers.txt rows of transfer_type 2 with a min_transfer_time.
+ *
+ * Computed footpaths are appended to `transfers` as transfer_type 2 rows with
+ * generated = '1'; rows that came with the feed are left untouched. A database
+ * that already contains generated rows is read back instead of recomputed.
+ */
+public class FootpathGraphLoader {
+
+    private static final double FOOTPATH_RADIUS_M = 500.0; // 0.5 km
+    private static final double WALKING_SPEED_MS = 1.4; // 1.4 m/s (average walking speed)
+    private static final String TRANSFER_TYPE_MIN_TIME = "2";
+
+    private final DBConnectionManager dbManager;
+
+    public FootpathGraphLoader(DBConnectionManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Loads the footpath graph for the given set of stops, computing and
+     * persisting it if the database does not contain it yet.
+     *
+     * @param allStops every known stop, keyed by stop_id
+     * @return the footpath graph
+     * @throws SQLException if reading from the database fails
+     */
+    public FootpathGraph load(Map<String, Stop> allStops) throws SQLException {
+        Stop[] stops = allStops.values().toArray(new Stop[0]);
+        Arrays.sort(stops, (a, b) -> a.getStopID().compareTo(b.getStopID()));
+        Map<String, Integer> stopIndex = new HashMap<>(stops.length * 2);
+        for (int i = 0; i < stops.length; i++) {
+            stopIndex.put(stops[i].getStopID(), i);
+        }
+
+        long start = System.nanoTime();
+        // Writes go through an unpooled connection, pooled ones are query_only
+        try (Connection conn = dbManager.openUnpooledConnection()) {
+            Set<String> transferColumns = columnsOf(conn, "transfers");
+            if (transferColumns.contains("generated") && hasGeneratedRows(conn)) {
+                Edges edges = readTransfers(conn, stopIndex, transferColumns);
+                FootpathGraph graph = toGraph(stops, stopIndex, edges);
+                System.err.printf("Footpaths: %d read from transfers in %d ms%n",
+                        graph.getFootpathCount(), (System.nanoTime() - start) / 1_000_000);
+                return graph;
+            }
+
+            Map<Long, Integer> fixedSeconds = new HashMap<>();
+            loadPathwayTimes(conn, stops, stopIndex, fixedSeconds);
+            Set<Long> feedPairs = new HashSet<>();
+            if (transferColumns.contains("min_transfer_time")) {
+                Edges feedEdges = readTransfers(conn, stopIndex, transferColumns);
+                for (int i = 0; i < feedEdges.from.size(); i++) {
+                    long key = pairKey(feedEdges.from.get(i), feedEdges.to.get(i));
+                    fixedSeconds.put(key, feedEdges.seconds.get(i));
+                    feedPairs.add(key);
+                }
+            }
+
+            Edges edges = computeFootpaths(stops, fixedSeconds);
+            FootpathGraph graph = toGraph(stops, stopIndex, edges);
+            System.err.printf("Footpaths: %d computed in %d ms%n",
+                    graph.getFootpathCount(), (System.nanoTime() - start) / 1_000_000);
+
+            try {
+                persist(conn, stops, edges, feedPairs, transferColumns);
+            } catch (SQLException e) {
+                // The graph is still usable, it is just recomputed next time
+                System.err.println("Unable to store footpaths: " + e.getMessage());
+            }
+            return graph;
+        }
+    }
+
+    /**
+     * Footpaths as parallel lists of (from, to, seconds).
+     */
+    private static final class Edges {
+        final IntList from = new IntList(1 << 12);
+        final IntList to = new IntList(1 << 12);
+        final IntList seconds = new IntList(1 << 12);
+
+        void add(int fromIdx, int toIdx, int secs) {
+            from.add(fromIdx);
+            to.add(toIdx);
+            seconds.add(secs);
+        }
+    }
+
+    private static long pairKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Links every stop to the stops within walking distance, plus the pairs
+     * with a fixed time from pathways or feed transfers.
+     */
+    private Edges computeFootpaths(Stop[] stops, Map<Long, Integer> fixedSeconds) {
+        double[] lats = new double[stops.length];
+        double[] lons = new double[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            lats[i] = stops[i].getLatitude();
+            lons[i] = stops[i].getLongitude();
+        }
+        PackedKDTree tree = new PackedKDTree(lats, lons);
+
+        // Fixed pairs grouped by their source stop
+        IntList[] fixedTargets = new IntList[stops.length];
+        for (long key : fixedSeconds.keySet()) {
+            int from = (int) (key >>> 32);
+            if (fixedTargets[from] == null) {
+                fixedTargets[from] = new IntList(4);
+            }
+            fixedTargets[from].add((int) key);
+        }
+
+        Edges edges = new Edges();
+        int[] seenBy = new int[stops.length];
+        for (int s = 0; s < stops.length; s++) {
+            seenBy[s] = s + 1;
+            IntList nearby = tree.within(lats[s], lons[s], FOOTPATH_RADIUS_M);
+            for (int i = 0; i < nearby.size(); i++) {
+                int t = nearby.get(i);
+                if (seenBy[t] == s + 1) {
+                    continue;
+                }
+                seenBy[t] = s + 1;
+                Integer fixed = fixedSeconds.get(pairKey(s, t));
+                edges.add(s, t, fixed != null ? fixed : walkingSeconds(stops[s], stops[t]));
+            }
+            if (fixedTargets[s] != null) {
+                for (int i = 0; i < fixedTargets[s].size(); i++) {
+                    int t = fixedTargets[s].get(i);
+                    if (seenBy[t] != s + 1) {
+                        seenBy[t] = s + 1;
+                        edges.add(s, t, fixedSeconds.get(pairKey(s, t)));
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static int walkingSeconds(Stop from, Stop to) {
+        double distance = TimeAndGeoUtils.haversineMeters(
+                from.getLatitude(), from.getLongitude(),
+                to.getLatitude(), to.getLongitude()
+        );
+        return (int) Math.ceil(distance / WALKING_SPEED_MS);
+    }
+
+    /**
+     * Reads pathways.txt and records the shortest traversal time between every
+     * two stops connected through the pathway graph. Pathways without a
+     * traversal_time count as a straight-line walk.
+     */
+    private void loadPathwayTimes(Connection conn, Stop[] stops, Map<String, Integer> stopIndex,
+                                  Map<Long, Integer> fixedSeconds) throws SQLException {
+        Set<String> columns = columnsOf(conn, "pathways");
+        if (!columns.contains("from_stop_id") || !columns.contains("to_stop_id")) {
+            return;
+        }
+        boolean hasTime = columns.contains("traversal_time");
+        boolean hasDirection = columns.contains("is_bidirectional");
+        String query = "SELECT from_stop_id, to_stop_id"
+                + (hasTime ? ", traversal_time" : "")
+                + (hasDirection ? ", is_bidirectional" : "")
+                + " FROM pathways";
+
+        Map<Integer, IntList> adjacency = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Integer from = stopIndex.get(rs.getString("from_stop_id"));
+                Integer to = stopIndex.get(rs.getString("to_stop_id"));
+                if (from == null || to == null || from.equals(to)) {
+                    continue;
+                }
+                Integer time = hasTime ? parseSeconds(rs.getString("traversal_time")) : null;
+                int seconds = time != null ? time : walkingSeconds(stops[from], stops[to]);
+                addArc(adjacency, from, to, seconds);
+                if (hasDirection && "1".equals(trim(rs.getString("is_bidirectional")))) {
+                    addArc(adjacency, to, from, seconds);
+                }
+            }
+        }
+
+        for (int source : adjacency.keySet()) {
+            shortestPathwayTimes(source, adjacency, fixedSeconds);
+        }
+    }
+
+    private static void addArc(Map<Integer, IntList> adjacency, int from, int to, int seconds) {
+        IntList arcs = adjacency.computeIfAbsent(from, k -> new IntList(4));
+        arcs.add(to);
+        arcs.add(seconds);
+    }
+
+    /**
+     * Dijkstra over the pathway graph from one stop. Queue entries pack the
+     * time in the high and the stop in the low 32 bits.
+     */
+    private static void shortestPathwayTimes(int source, Map<Integer, IntList> adjacency,
+                                             Map<Long, Integer> fixedSeconds) {
+        Map<Integer, Integer> best = new HashMap<>();
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        best.put(source, 0);
+        queue.add((long) source);
+
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int time = (int) (entry >>> 32);
+            int stop = (int) entry;
+            if (time > best.get(stop)) {
+                continue;
+            }
+            if (stop != source) {
+                fixedSeconds.put(pairKey(source, stop), time);
+            }
+            IntList arcs = adjacency.get(stop);
+            if (arcs == null) {
+                continue;
+            }
+            for (int i = 0; i < arcs.size(); i += 2) {
+                int next = arcs.get(i);
+                int nextTime = time + arcs.get(i + 1);
+                Integer known = best.get(next);
+                if (known == null || nextTime < known) {
+                    best.put(next, nextTime);
+                    queue.add(((long) nextTime << 32) | next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the transfer_type 2 rows of the transfers table that have a
+     * min_transfer_time and connect two known stops.
+     */
+    private Edges readTransfers(Connection conn, Map<String, Integer> stopIndex,
+                                Set<String> columns) throws SQLException {
+        Edges edges = new Edges();
+        if (!columns.contains("transfer_type") || !columns.contains("min_transfer_time")) {
+            return edges;
+        }
+        String query = """
+            SELECT from_stop_id, to_stop_id, min_transfer_time
+            FROM transfers
+            WHERE transfer_type = ?
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, TRANSFER_TYPE_MIN_TIME);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Integer from = stopIndex.get(rs.getString("from_stop_id"));
+                    Integer to = stopIndex.get(rs.getString("to_stop_id"));
+                    Integer seconds = parseSeconds(rs.getString("min_transfer_time"));
+                    if (from != null && to != null && !from.equals(to) && seconds != null) {
+                        edges.add(from, to, seconds);
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Appends the computed footpaths that did not come with the feed to the
+     * transfers table, creating the table or its missing columns first.
+     */
+    private void persist(Connection conn, Stop[] stops, Edges edges, Set<Long> feedPairs,
+                         Set<String> columns) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            if (columns.isEmpty()) {
+                st.executeUpdate("CREATE TABLE transfers (from_stop_id TEXT, to_stop_id TEXT, "
+                        + "transfer_type TEXT, min_transfer_time TEXT, generated TEXT);");
+            } else {
+                for (String column : new String[] {"from_stop_id", "to_stop_id",
+                        "transfer_type", "min_transfer_time", "generated"}) {
+                    if (!columns.contains(column)) {
+                        st.executeUpdate("ALTER TABLE transfers ADD COLUMN " + column + " TEXT;");
+                    }
+                }
+            }
+        }
+
+        String insert = """
+            INSERT INTO transfers (from_stop_id, to_stop_id, transfer_type, min_transfer_time, generated)
+            VALUES (?, ?, ?, ?, '1')
+            """;
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(insert)) {
+            int batch = 0;
+            for (int i = 0; i < edges.from.size(); i++) {
+                int from = edges.from.get(i);
+                int to = edges.to.get(i);
+                if (feedPairs.contains(pairKey(from, to))) {
+                    continue;
+                }
+                ps.setString(1, stops[from].getStopID());
+                ps.setString(2, stops[to].getStopID());
+                ps.setString(3, TRANSFER_TYPE_MIN_TIME);
+                ps.setString(4, Integer.toString(edges.seconds.get(i)));
+                ps.addBatch();
+                if (++batch % 1000 == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_transfers_from_stop_id ON transfers (from_stop_id);");
+        }
+    }
+
+    /**
+     * Packs the edges into CSR arrays ordered by source stop.
+     */
+    private static FootpathGraph toGraph(Stop[] stops, Map<String, Integer> stopIndex, Edges edges) {
+        int count = edges.from.size();
+        int[] start = new int[stops.length + 1];
+        for (int i = 0; i < count; i++) {
+            start[edges.from.get(i) + 1]++;
+        }
+        for (int s = 0; s < stops.length; s++) {
+            start[s + 1] += start[s];
+        }
+
+        int[] target = new int[count];
+        int[] seconds = new int[count];
+        int[] fill = Arrays.copyOf(start, stops.length);
+        for (int i = 0; i < count; i++) {
+            int slot = fill[edges.from.get(i)]++;
+            target[slot] = edges.to.get(i);
+            seconds[slot] = edges.seconds.get(i);
+        }
+        return new FootpathGraph(stops, stopIndex, start, target, seconds);
+    }
+
+    private static boolean hasGeneratedRows(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1 FROM transfers WHERE generated = '1' LIMIT 1")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Returns the column names of a table, or an empty set if it does not exist.
+     */
+    private static Set<String> columnsOf(Connection conn, String table) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Parses a whole number of seconds, returning null for blank or malformed values.
+     */
+    private static Integer parseSeconds(String value) {
+        String trimmed = trim(value);
+        if (trimmed == null || trimmed.isEmpty()) {
+            return null;
+        }
+        try {
+            int seconds = (int) Math.round(Double.parseDouble(trimmed));
+            return seconds >= 0 ? seconds : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String trim(String value) {
+        return value == null ? null : value.trim();
+    }
+}
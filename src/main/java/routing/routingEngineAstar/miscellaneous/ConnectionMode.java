@@ -0,0 +1,11 @@
+package routing.routingEngineAstar.miscellaneous;
+
+/**
+ * Where the A* engine gets its transit connections from.
+ */
+public enum ConnectionMode {
+    /** Preload all stop times into memory once and search without SQL. */
+    TIMETABLE,
+    /** Run the stop_times self-join for every expanded stop (old behaviour). */
+    SQL_FALLBACK
+}
@@ -1,27 +1,23 @@
 package routing.routingEngineAstar.miscellaneous;
 
+import routing.routingEngineModels.utils.ServiceTime;
+
 public class TimeUtils {
     
 
       /**
-     * Converts a time string "HH:mm:ss" to total seconds since midnight.
+     * Converts a time string "HH:mm:ss" to total seconds since midnight of the
+     * service day. Times of 24:00:00 and later are kept (see {@link ServiceTime}).
      */
     public static int timeToSeconds(String timeStr) {
-        String[] parts = timeStr.split(":");
-        int h = Integer.parseInt(parts[0]);
-        int m = Integer.parseInt(parts[1]);
-        int s = Integer.parseInt(parts[2]);
-        return h * 3600 + m * 60 + s;
+        return ServiceTime.parse(timeStr);
     }
 
         /**
-     * Converts total seconds since midnight back to "HH:mm:ss".
+     * Converts total seconds since midnight of the service day back to
+     * "HH:mm:ss", without wrapping: 90000 becomes "25:00:00".
      */
     public static String secondsToTime(int totalSeconds) {
-        int h = totalSeconds / 3600;
-        int rem = totalSeconds % 3600;
-        int m = rem / 60;
-        int s = rem % 60;
-        return String.format("%02d:%02d:%02d", h, m, s);
+        return ServiceTime.format(totalSeconds);
     }
 }
@@ -0,0 +1,379 @@
+package routing.routingEngineAstar.timetable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import routing.routingEngineModels.RouteInfo;
+import routing.routingEngineModels.Stop.Stop;
+
+/**
+ * Timetable.java
+ *
+ * Immutable, array-based view of every scheduled stop time in the feed. It is
+ * built once by {@link TimetableLoader} and then shared by all searches, so the
+ * A* hot path never has to go back to the database.
+ *
+ * Two indexes are kept:
+ * - per trip: the trip's stop times in stop_sequence order (stop, arrival,
+ *   departure), addressed by a global "stop time" index;
+ * - per stop: every departure from that stop, sorted by departure time, so the
+ *   first feasible departure can be found with a binary search.
+ *
+ * All times are seconds since midnight of the service day (GTFS times after
+ * 24:00:00 are kept as values above 86400).
+ *
+ * Every trip remembers the dense index of its service in the feed's
+ * {@link routing.calendar.ServiceCalendar}, so a timetable holding only the
+ * trips running on one day can be cut out with {@link #restrictToServices(BitSet)}.
+ *
+ * After an incremental feed update, {@link TimetableLoader#reloadTrips} swaps
+ * the changed trips for freshly loaded ones without reading the rest again.
+ */
+public final class Timetable {
+
+    private final Stop[] stops;
+    private final Map<String, Integer> stopIndex;
+
+    private final String[] tripIds;
+    private final RouteInfo[] tripRouteInfo;
+    private final int[] tripService;    // dense service index per trip, -1 if the service is unknown
+    private final int[] tripStart;      // tripStart[t]..tripStart[t+1] are the stop times of trip t
+
+    private final int[] stopTimeStop;
+    private final int[] stopTimeTrip;
+    private final int[] stopTimeArrival;
+    private final int[] stopTimeDeparture;
+
+    private final int[] stopDepartureStart;   // stopDepartureStart[s]..stopDepartureStart[s+1] are departures of stop s
+    private final int[] departureTime;        // sorted within every stop slice
+    private final int[] departureStopTime;    // stop time index the departure belongs to
+
+    /**
+     * Constructs a Timetable from fully built arrays. The arrays are not copied.
+     */
+    private Timetable(Stop[] stops, Map<String, Integer> stopIndex,
+                      String[] tripIds, RouteInfo[] tripRouteInfo, int[] tripService, int[] tripStart,
+                      int[] stopTimeStop, int[] stopTimeTrip, int[] stopTimeArrival, int[] stopTimeDeparture,
+                      int[] stopDepartureStart, int[] departureTime, int[] departureStopTime) {
+        this.stops = stops;
+        this.stopIndex = Collections.unmodifiableMap(stopIndex);
+        this.tripIds = tripIds;
+        this.tripRouteInfo = tripRouteInfo;
+        this.tripService = tripService;
+        this.tripStart = tripStart;
+        this.stopTimeStop = stopTimeStop;
+        this.stopTimeTrip = stopTimeTrip;
+        this.stopTimeArrival = stopTimeArrival;
+        this.stopTimeDeparture = stopTimeDeparture;
+        this.stopDepartureStart = stopDepartureStart;
+        this.departureTime = departureTime;
+        this.departureStopTime = departureStopTime;
+    }
+
+    /**
+     * Builds a Timetable from its per-trip arrays, adding the per-stop
+     * departure index. Only {@link TimetableLoader},
+     * {@link #restrictToServices(BitSet)} and {@link #replaceTrips} are
+     * expected to call this; the arrays are not copied.
+     */
+    static Timetable build(Stop[] stops, Map<String, Integer> stopIndex,
+                           String[] tripIds, RouteInfo[] tripRouteInfo, int[] tripService, int[] tripStart,
+                           int[] stopTimeStop, int[] stopTimeTrip, int[] stopTimeArrival, int[] stopTimeDeparture) {
+        int tripCount = tripIds.length;
+
+        // Per-stop departure index (CSR), the last stop of a trip has nowhere to go
+        int[] stopDepartureStart = new int[stops.length + 1];
+        for (int t = 0; t < tripCount; t++) {
+            for (int st = tripStart[t]; st < tripStart[t + 1] - 1; st++) {
+                stopDepartureStart[stopTimeStop[st] + 1]++;
+            }
+        }
+        for (int s = 0; s < stops.length; s++) {
+            stopDepartureStart[s + 1] += stopDepartureStart[s];
+        }
+
+        long[] packed = new long[stopDepartureStart[stops.length]];
+        int[] fill = Arrays.copyOf(stopDepartureStart, stops.length);
+        for (int t = 0; t < tripCount; t++) {
+            for (int st = tripStart[t]; st < tripStart[t + 1] - 1; st++) {
+                int s = stopTimeStop[st];
+                packed[fill[s]++] = ((long) stopTimeDeparture[st] << 32) | st;
+            }
+        }
+
+        int[] departureTime = new int[packed.length];
+        int[] departureStopTime = new int[packed.length];
+        for (int s = 0; s < stops.length; s++) {
+            Arrays.sort(packed, stopDepartureStart[s], stopDepartureStart[s + 1]);
+        }
+        for (int i = 0; i < packed.length; i++) {
+            departureTime[i] = (int) (packed[i] >>> 32);
+            departureStopTime[i] = (int) packed[i];
+        }
+
+        return new Timetable(
+                stops, stopIndex,
+                tripIds, tripRouteInfo, tripService, tripStart,
+                stopTimeStop, stopTimeTrip, stopTimeArrival, stopTimeDeparture,
+                stopDepartureStart, departureTime, departureStopTime
+        );
+    }
+
+    /**
+     * Returns a timetable with only the trips whose service is in
+     * {@code activeServices}, for example the services running on one day.
+     * Stops and their indices stay the same.
+     *
+     * @param activeServices dense service indices to keep
+     * @return the restricted timetable, or this one if every trip is kept
+     */
+    public Timetable restrictToServices(BitSet activeServices) {
+        int keptTrips = 0;
+        int keptStopTimes = 0;
+        for (int t = 0; t < tripIds.length; t++) {
+            if (tripService[t] >= 0 && activeServices.get(tripService[t])) {
+                keptTrips++;
+                keptStopTimes += tripStart[t + 1] - tripStart[t];
+            }
+        }
+        if (keptTrips == tripIds.length) {
+            return this;
+        }
+
+        String[] ids = new String[keptTrips];
+        RouteInfo[] infos = new RouteInfo[keptTrips];
+        int[] services = new int[keptTrips];
+        int[] starts = new int[keptTrips + 1];
+        int[] stStop = new int[keptStopTimes];
+        int[] stTrip = new int[keptStopTimes];
+        int[] stArrival = new int[keptStopTimes];
+        int[] stDeparture = new int[keptStopTimes];
+
+        int k = 0;
+        int out = 0;
+        for (int t = 0; t < tripIds.length; t++) {
+            if (tripService[t] < 0 || !activeServices.get(tripService[t])) {
+                continue;
+            }
+            ids[k] = tripIds[t];
+            infos[k] = tripRouteInfo[t];
+            services[k] = tripService[t];
+            starts[k] = out;
+            for (int st = tripStart[t]; st < tripStart[t + 1]; st++, out++) {
+                stStop[out] = stopTimeStop[st];
+                stTrip[out] = k;
+                stArrival[out] = stopTimeArrival[st];
+                stDeparture[out] = stopTimeDeparture[st];
+            }
+            k++;
+        }
+        starts[keptTrips] = out;
+
+        return build(stops, stopIndex, ids, infos, services, starts, stStop, stTrip, stArrival, stDeparture);
+    }
+
+    /**
+     * Returns a timetable in which the given trips are replaced by the trips
+     * of {@code replacement}, which must be built on the same stops. Trips
+     * stay sorted by trip_id, as the loader produces them.
+     *
+     * @param replacedTripIds trips to drop from this timetable, whether or not
+     *                        {@code replacement} has a new version of them
+     * @param replacement     the new versions of the trips
+     * @return the patched timetable
+     */
+    Timetable replaceTrips(Set<String> replacedTripIds, Timetable replacement) {
+        int keptTrips = 0;
+        int keptStopTimes = 0;
+        for (int t = 0; t < tripIds.length; t++) {
+            if (!replacedTripIds.contains(tripIds[t])) {
+                keptTrips++;
+                keptStopTimes += tripStart[t + 1] - tripStart[t];
+            }
+        }
+        int tripCount = keptTrips + replacement.tripIds.length;
+        int stopTimeCount = keptStopTimes + replacement.stopTimeStop.length;
+
+        String[] ids = new String[tripCount];
+        RouteInfo[] infos = new RouteInfo[tripCount];
+        int[] services = new int[tripCount];
+        int[] starts = new int[tripCount + 1];
+        int[] stStop = new int[stopTimeCount];
+        int[] stTrip = new int[stopTimeCount];
+        int[] stArrival = new int[stopTimeCount];
+        int[] stDeparture = new int[stopTimeCount];
+
+        int k = 0;
+        int out = 0;
+        int t = 0;
+        int r = 0;
+        while (k < tripCount) {
+            if (t < tripIds.length && replacedTripIds.contains(tripIds[t])) {
+                t++;
+                continue;
+            }
+            // merge the two trip_id orders
+            boolean fromReplacement = t == tripIds.length
+                    || r < replacement.tripIds.length && replacement.tripIds[r].compareTo(tripIds[t]) < 0;
+            Timetable source = fromReplacement ? replacement : this;
+            int trip = fromReplacement ? r++ : t++;
+
+            ids[k] = source.tripIds[trip];
+            infos[k] = source.tripRouteInfo[trip];
+            services[k] = source.tripService[trip];
+            starts[k] = out;
+            for (int st = source.tripStart[trip]; st < source.tripStart[trip + 1]; st++, out++) {
+                stStop[out] = source.stopTimeStop[st];
+                stTrip[out] = k;
+                stArrival[out] = source.stopTimeArrival[st];
+                stDeparture[out] = source.stopTimeDeparture[st];
+            }
+            k++;
+        }
+        starts[tripCount] = out;
+
+        return build(stops, stopIndex, ids, infos, services, starts, stStop, stTrip, stArrival, stDeparture);
+    }
+
+    Stop[] stops() {
+        return stops;
+    }
+
+    Map<String, Integer> stopIndex() {
+        return stopIndex;
+    }
+
+    // ---- stops ----
+
+    public int getStopCount() {
+        return stops.length;
+    }
+
+    public Stop getStop(int stopIdx) {
+        return stops[stopIdx];
+    }
+
+    /**
+     * Looks up a stop by its GTFS stop_id.
+     *
+     * @param stopId the stop_id
+     * @return the Stop, or null if the stop is not part of the timetable
+     */
+    public Stop getStop(String stopId) {
+        Integer idx = stopIndex.get(stopId);
+        return idx == null ? null : stops[idx];
+    }
+
+    /**
+     * Returns the dense index of a stop.
+     *
+     * @param stopId the stop_id
+     * @return the index, or -1 if unknown
+     */
+    public int indexOf(String stopId) {
+        Integer idx = stopIndex.get(stopId);
+        return idx == null ? -1 : idx;
+    }
+
+    // ---- departures per stop ----
+
+    /**
+     * Binary-searches the departures of a stop for the first one leaving at or
+     * after the given time.
+     *
+     * @param stopIdx dense stop index
+     * @param timeSec earliest acceptable departure, in seconds
+     * @return an index into the departure arrays; equal to
+     *         {@link #departuresEnd(int)} when nothing leaves that late
+     */
+    public int firstDepartureAtOrAfter(int stopIdx, int timeSec) {
+        int lo = stopDepartureStart[stopIdx];
+        int hi = stopDepartureStart[stopIdx + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departureTime[mid] < timeSec) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the (exclusive) end of the departure slice of a stop.
+     *
+     * @param stopIdx dense stop index
+     * @return one past the last departure index of the stop
+     */
+    public int departuresEnd(int stopIdx) {
+        return stopDepartureStart[stopIdx + 1];
+    }
+
+    public int getDepartureTime(int departureIdx) {
+        return departureTime[departureIdx];
+    }
+
+    public int getDepartureStopTime(int departureIdx) {
+        return departureStopTime[departureIdx];
+    }
+
+    // ---- stop times per trip ----
+
+    public int getTripCount() {
+        return tripIds.length;
+    }
+
+    public String getTripId(int tripIdx) {
+        return tripIds[tripIdx];
+    }
+
+    public RouteInfo getRouteInfo(int tripIdx) {
+        return tripRouteInfo[tripIdx];
+    }
+
+    /**
+     * @param tripIdx dense trip index
+     * @return the dense service index of the trip, -1 if its service is unknown
+     */
+    public int getTripService(int tripIdx) {
+        return tripService[tripIdx];
+    }
+
+    /**
+     * Returns the (exclusive) end of the stop-time slice of a trip.
+     *
+     * @param tripIdx dense trip index
+     * @return one past the last stop time index of the trip
+     */
+    public int tripEnd(int tripIdx) {
+        return tripStart[tripIdx + 1];
+    }
+
+    public int tripBegin(int tripIdx) {
+        return tripStart[tripIdx];
+    }
+
+    public int getStopTimeStop(int stopTimeIdx) {
+        return stopTimeStop[stopTimeIdx];
+    }
+
+    public int getStopTimeTrip(int stopTimeIdx) {
+        return stopTimeTrip[stopTimeIdx];
+    }
+
+    public int getStopTimeArrival(int stopTimeIdx) {
+        return stopTimeArrival[stopTimeIdx];
+    }
+
+    public int getStopTimeDeparture(int stopTimeIdx) {
+        return stopTimeDeparture[stopTimeIdx];
+    }
+
+    public int getStopTimeCount() {
+        return stopTimeStop.length;
+    }
+}
@@ -0,0 +1,330 @@
+package routing.routingEngineAstar.timetable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import parsers.ZipToSQLite;
+import routing.calendar.ServiceCalendar;
+import routing.db.DBConnectionManager;
+import routing.routingEngineModels.RouteInfo;
+import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.IntList;
+
+/**
+ * Reads the GTFS tables once and packs them into an immutable {@link Timetable}.
+ *
+ * stop_times is streamed in trip order (using the trip_id index) and each trip
+ * is sorted by its numeric stop_sequence in memory, because the imported
+ * columns are TEXT and sorting them in SQL would put "10" before "2".
+ * Times are read as the service-day seconds stored by the import, see
+ * {@link ZipToSQLite#secondsExpression}.
+ * The service_id of every trip is resolved against the feed's
+ * {@link ServiceCalendar}, so the timetable can later be restricted to a day.
+ * After an incremental feed update only the changed trips are read again, see
+ * {@link #reloadTrips(Timetable, ServiceCalendar, Collection)}.
+ */
+public class TimetableLoader {
+
+    // trip_ids per IN (...) list when reloading trips
+    private static final int TRIP_CHUNK = 500;
+
+    private final DBConnectionManager dbManager;
+
+    public TimetableLoader(DBConnectionManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Loads the timetable for the given set of stops. Stop times referring to a
+     * stop that is not in {@code allStops} are skipped, the same way the SQL
+     * connection query drops them through its join on stops.
+     *
+     * @param allStops every known stop, keyed by stop_id
+     * @return the packed timetable
+     * @throws SQLException if reading from the database fails
+     */
+    public Timetable load(Map<String, Stop> allStops) throws SQLException {
+        return load(allStops, ServiceCalendar.empty());
+    }
+
+    /**
+     * Loads the timetable for the given set of stops, tagging every trip with
+     * its service index in {@code calendar}.
+     *
+     * @param allStops every known stop, keyed by stop_id
+     * @param calendar the feed's service calendar
+     * @return the packed timetable
+     * @throws SQLException if reading from the database fails
+     */
+    public Timetable load(Map<String, Stop> allStops, ServiceCalendar calendar) throws SQLException {
+        // 1) Stops get dense indices
+        Stop[] stops = allStops.values().toArray(new Stop[0]);
+        Arrays.sort(stops, (a, b) -> a.getStopID().compareTo(b.getStopID()));
+        Map<String, Integer> stopIndex = new HashMap<>(stops.length * 2);
+        for (int i = 0; i < stops.length; i++) {
+            stopIndex.put(stops[i].getStopID(), i);
+        }
+
+        try (Connection conn = dbManager.getConnection()) {
+            Map<String, TripInfo> tripInfo = loadTripInfo(conn, calendar, null);
+            return loadStopTimes(conn, stops, stopIndex, tripInfo, null);
+        }
+    }
+
+    /**
+     * Reads the given trips again and swaps them into a timetable, for
+     * example after an incremental feed update changed their stop times.
+     * Trips that no longer exist are removed. The stops must not have changed
+     * since {@code base} was loaded.
+     *
+     * @param base     the timetable to patch
+     * @param calendar the feed's service calendar
+     * @param tripIds  the trip_ids to read again
+     * @return the patched timetable
+     * @throws SQLException if reading from the database fails
+     */
+    public Timetable reloadTrips(Timetable base, ServiceCalendar calendar, Collection<String> tripIds)
+            throws SQLException {
+        List<String> sorted = new ArrayList<>(new HashSet<>(tripIds));
+        Collections.sort(sorted);
+        Timetable replacement;
+        try (Connection conn = dbManager.getConnection()) {
+            Map<String, TripInfo> tripInfo = loadTripInfo(conn, calendar, sorted);
+            replacement = loadStopTimes(conn, base.stops(), base.stopIndex(), tripInfo, sorted);
+        }
+        return base.replaceTrips(new HashSet<>(sorted), replacement);
+    }
+
+    /**
+     * Splits the trip_ids to read into IN (...) lists; a single null chunk
+     * means every trip.
+     */
+    private static List<List<String>> chunks(List<String> tripIds) {
+        if (tripIds == null) {
+            return Collections.singletonList(null);
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < tripIds.size(); from += TRIP_CHUNK) {
+            chunks.add(tripIds.subList(from, Math.min(tripIds.size(), from + TRIP_CHUNK)));
+        }
+        return chunks;
+    }
+
+    private static String tripFilter(String column, List<String> chunk) {
+        return chunk == null ? "" : "WHERE " + column + " IN ("
+                + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")\n";
+    }
+
+    private static void bindTrips(PreparedStatement stmt, List<String> chunk) throws SQLException {
+        if (chunk != null) {
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setString(i + 1, chunk.get(i));
+            }
+        }
+    }
+
+    /**
+     * Display information and service of one trip.
+     */
+    private record TripInfo(RouteInfo routeInfo, int service) {
+    }
+
+    /**
+     * Loads the display information (operator, route names, headsign) and the
+     * service of every trip, or of the given sorted trip_ids. Trips with the
+     * same route and headsign share one RouteInfo.
+     */
+    private Map<String, TripInfo> loadTripInfo(Connection conn, ServiceCalendar calendar, List<String> tripIds)
+            throws SQLException {
+        String select = """
+            SELECT t.trip_id,
+                   t.route_id,
+                   t.service_id,
+                   t.trip_headsign    AS trip_headsign,
+                   r.route_short_name AS route_short_name,
+                   r.route_long_name  AS route_long_name,
+                   a.agency_name      AS operator_name
+            FROM trips t
+            JOIN routes r
+              ON t.route_id = r.route_id
+            JOIN agency a
+              ON r.agency_id = a.agency_id
+            """;
+
+        Map<String, TripInfo> tripInfo = new HashMap<>();
+        Map<String, RouteInfo> shared = new HashMap<>();
+
+        for (List<String> chunk : chunks(tripIds)) {
+            try (PreparedStatement stmt = conn.prepareStatement(select + tripFilter("t.trip_id", chunk))) {
+                bindTrips(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    readTripInfo(rs, calendar, tripInfo, shared);
+                }
+            }
+        }
+        return tripInfo;
+    }
+
+    private static void readTripInfo(ResultSet rs, ServiceCalendar calendar, Map<String, TripInfo> tripInfo,
+                                     Map<String, RouteInfo> shared) throws SQLException {
+        while (rs.next()) {
+            String tripId = rs.getString("trip_id");
+            String headSign = rs.getString("trip_headsign");
+            String key = rs.getString("route_id") + '\u0000' + headSign;
+
+            RouteInfo info = shared.get(key);
+            if (info == null) {
+                info = new RouteInfo(
+                        rs.getString("operator_name"),
+                        rs.getString("route_short_name"),
+                        rs.getString("route_long_name"),
+                        headSign
+                );
+                shared.put(key, info);
+            }
+            tripInfo.put(tripId, new TripInfo(info, calendar.indexOf(rs.getString("service_id"))));
+        }
+    }
+
+    /**
+     * Streams stop_times, of every trip or of the given sorted trip_ids, and
+     * builds the per-trip and per-stop arrays.
+     */
+    private Timetable loadStopTimes(Connection conn, Stop[] stops, Map<String, Integer> stopIndex,
+                                    Map<String, TripInfo> tripInfo, List<String> onlyTrips) throws SQLException {
+        String select = """
+            SELECT st.trip_id, st.stop_sequence, st.stop_id, %s AS arrival_secs, %s AS departure_secs
+            FROM stop_times st
+            """.formatted(ZipToSQLite.secondsExpression(conn, "stop_times", "st", "arrival_time"),
+                ZipToSQLite.secondsExpression(conn, "stop_times", "st", "departure_time"));
+
+        List<String> tripIds = new ArrayList<>();
+        List<RouteInfo> routeInfos = new ArrayList<>();
+        IntList tripService = new IntList(1 << 16);
+        IntList tripStart = new IntList(1 << 16);
+        IntList stStop = new IntList(1 << 20);
+        IntList stTrip = new IntList(1 << 20);
+        IntList stArrival = new IntList(1 << 20);
+        IntList stDeparture = new IntList(1 << 20);
+
+        TripBuffer buffer = new TripBuffer();
+
+        // chunks are sorted among each other, so the trips come out in trip_id order
+        for (List<String> chunk : chunks(onlyTrips)) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    select + tripFilter("st.trip_id", chunk) + "ORDER BY st.trip_id")) {
+                bindTrips(stmt, chunk);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    readStopTimes(rs, stopIndex, tripInfo, buffer, tripIds, routeInfos, tripService, tripStart,
+                            stStop, stTrip, stArrival, stDeparture);
+                }
+            }
+        }
+        buffer.flush(tripInfo, tripIds, routeInfos, tripService, tripStart, stStop, stTrip, stArrival, stDeparture);
+        tripStart.add(stStop.size());
+
+        return Timetable.build(
+                stops, stopIndex,
+                tripIds.toArray(new String[0]), routeInfos.toArray(new RouteInfo[0]),
+                tripService.toArray(), tripStart.toArray(),
+                stStop.toArray(), stTrip.toArray(), stArrival.toArray(), stDeparture.toArray()
+        );
+    }
+
+    private static void readStopTimes(ResultSet rs, Map<String, Integer> stopIndex, Map<String, TripInfo> tripInfo,
+                                      TripBuffer buffer, List<String> tripIds, List<RouteInfo> routeInfos,
+                                      IntList tripService, IntList tripStart,
+                                      IntList stStop, IntList stTrip, IntList stArrival, IntList stDeparture)
+            throws SQLException {
+        while (rs.next()) {
+            String tripId = rs.getString("trip_id");
+            if (!tripId.equals(buffer.tripId)) {
+                buffer.flush(tripInfo, tripIds, routeInfos, tripService, tripStart, stStop, stTrip, stArrival, stDeparture);
+                buffer.reset(tripId);
+            }
+
+            Integer stopIdx = stopIndex.get(rs.getString("stop_id"));
+            if (stopIdx == null) {
+                continue;
+            }
+
+            int arrival = rs.getInt("arrival_secs");
+            boolean hasArrival = !rs.wasNull();
+            int departure = rs.getInt("departure_secs");
+            boolean hasDeparture = !rs.wasNull();
+            if (!hasArrival && !hasDeparture) {
+                continue;
+            }
+            int arrSec = hasArrival ? arrival : departure;
+            int depSec = hasDeparture ? departure : arrival;
+
+            buffer.add(Integer.parseInt(rs.getString("stop_sequence").trim()), stopIdx, arrSec, depSec);
+        }
+    }
+
+    /**
+     * Collects the rows of one trip so they can be sorted by stop_sequence
+     * before being appended to the global arrays.
+     */
+    private static class TripBuffer {
+
+        String tripId;
+        final IntList sequence = new IntList();
+        final IntList stop = new IntList();
+        final IntList arrival = new IntList();
+        final IntList departure = new IntList();
+
+        void reset(String tripId) {
+            this.tripId = tripId;
+            sequence.clear();
+            stop.clear();
+            arrival.clear();
+            departure.clear();
+        }
+
+        void add(int seq, int stopIdx, int arrSec, int depSec) {
+            sequence.add(seq);
+            stop.add(stopIdx);
+            arrival.add(arrSec);
+            departure.add(depSec);
+        }
+
+        void flush(Map<String, TripInfo> tripInfo, List<String> tripIds, List<RouteInfo> routeInfos,
+                   IntList tripService, IntList tripStart,
+                   IntList stStop, IntList stTrip, IntList stArrival, IntList stDeparture) {
+            TripInfo info = tripId == null ? null : tripInfo.get(tripId);
+            // A trip needs route information and at least one hop to be useful
+            if (info == null || sequence.size() < 2) {
+                return;
+            }
+
+            Integer[] order = new Integer[sequence.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(sequence.get(a), sequence.get(b)));
+
+            int tripIdx = tripIds.size();
+            tripIds.add(tripId);
+            routeInfos.add(info.routeInfo());
+            tripService.add(info.service());
+            tripStart.add(stStop.size());
+            for (int i : order) {
+                stStop.add(stop.get(i));
+                stTrip.add(tripIdx);
+                stArrival.add(arrival.get(i));
+                stDeparture.add(departure.get(i));
+            }
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package routing.routingEngineAstar.validators;
 
+import routing.routingEngineModels.utils.ServiceTime;
+
 /**
- * Validates time constraints for route connections
+ * Validates time constraints for route connections.
+ *
+ * Both times must be on the same service-day timeline (see {@link ServiceTime}):
+ * a departure after midnight is written as 24:xx:xx or later, never wrapped
+ * back to 00:xx:xx, so a departure earlier than the arrival is simply missed.
  */
 public class TimeConstraintValidator {
     
@@ -19,36 +25,21 @@ public class TimeConstraintValidator {
         }
         
         try {
-            int arrivalSeconds = timeToSeconds(arrivalTime);
-            int departureSeconds = timeToSeconds(departureTime);
-            
-            // Handle day rollover (departure next day)
-            if (departureSeconds < arrivalSeconds) {
-                departureSeconds += 24 * 3600; // Add 24 hours
-            }
-            
-            int waitTime = departureSeconds - arrivalSeconds;
-            return waitTime >= 0 && waitTime <= MAX_WAIT_SECONDS;
-            
-        } catch (Exception e) {
+            return isValidTimeConnection(ServiceTime.parse(arrivalTime), ServiceTime.parse(departureTime));
+        } catch (IllegalArgumentException e) {
             return false;
         }
     }
-    
+
     /**
-     * Converts time string to seconds since midnight
+     * Checks if a connection is valid based on time constraints
+     * @param arrivalSeconds Current step arrival time in service-day seconds
+     * @param departureSeconds Next step departure time in service-day seconds
+     * @return true if the time difference is within acceptable limits
      */
-    private int timeToSeconds(String time) {
-        String[] parts = time.split(":");
-        if (parts.length != 3) {
-            throw new IllegalArgumentException("Invalid time format: " + time);
-        }
-        
-        int hours = Integer.parseInt(parts[0]);
-        int minutes = Integer.parseInt(parts[1]);
-        int seconds = Integer.parseInt(parts[2]);
-        
-        return hours * 3600 + minutes * 60 + seconds;
+    public boolean isValidTimeConnection(int arrivalSeconds, int departureSeconds) {
+        int waitTime = departureSeconds - arrivalSeconds;
+        return waitTime >= 0 && waitTime <= MAX_WAIT_SECONDS;
     }
     
     /**
@@ -58,14 +49,6 @@ public class TimeConstraintValidator {
         if (!isValidTimeConnection(arrivalTime, departureTime)) {
             return -1;
         }
-        
-        int arrivalSeconds = timeToSeconds(arrivalTime);
-        int departureSeconds = timeToSeconds(departureTime);
-        
-        if (departureSeconds < arrivalSeconds) {
-            departureSeconds += 24 * 3600;
-        }
-        
-        return departureSeconds - arrivalSeconds;
+        return ServiceTime.parse(departureTime) - ServiceTime.parse(arrivalTime);
     }
 }
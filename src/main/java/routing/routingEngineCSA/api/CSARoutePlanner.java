@@ -0,0 +1,90 @@
+package routing.routingEngineCSA.api;
+
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import routing.api.RoutingStrategy;
+import routing.routingEngineCSA.engine.ConnectionScanRouter;
+import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.converters.DijkstraModelConverter;
+import routing.routingEngineModels.Coordinates;
+import routing.routingEngineModels.FinalRoute;
+import routing.routingEngineModels.InputJourney;
+
+/**
+ * Implements the RoutingStrategy interface with the Connection Scan Algorithm.
+ * It can be plugged into {@link routing.api.Router} in place of the Dijkstra planner.
+ */
+public class CSARoutePlanner implements RoutingStrategy {
+    private final ConnectionScanRouter router;
+
+    /**
+     * Constructs a CSARoutePlanner with a specified ConnectionScanRouter.
+     *
+     * @param router the ConnectionScanRouter used for route calculations
+     */
+    public CSARoutePlanner(ConnectionScanRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * Finds a route based on the provided InputJourney.
+     *
+     * @param inputJourney the journey details including start, end, and start time
+     * @return a FinalRoute object representing the calculated route, or null if no route is found
+     * @throws UnsupportedOperationException if the journey has a service date
+     */
+    @Override
+    public FinalRoute findRoute(InputJourney inputJourney) {
+        if (inputJourney.getDate() != null) {
+            throw new UnsupportedOperationException("The CSA planner does not apply the service calendar");
+        }
+        int departureSec = inputJourney.getStartTime().toSecondOfDay();
+        Journey journey = router.findJourney(
+                DijkstraModelConverter.toDijkstraCoordinates(inputJourney.getStart()),
+                DijkstraModelConverter.toDijkstraCoordinates(inputJourney.getEnd()),
+                departureSec
+        );
+        if (journey == null) {
+            return null;
+        }
+        return DijkstraModelConverter.toFinalRoute(journey, router::getRouteInfo);
+    }
+
+    /**
+     * Finds a route between two stops starting at a specified time.
+     *
+     * @param from      the starting stop
+     * @param to        the destination stop
+     * @param startTime the start time of the journey
+     * @return a FinalRoute object representing the calculated route, or null if no route is found
+     */
+    @Override
+    public FinalRoute findRoute(AdiStop from, AdiStop to, LocalTime startTime) {
+        InputJourney inputJourney = new InputJourney(
+                new Coordinates(from.getLatitude(), from.getLongitude()),
+                new Coordinates(to.getLatitude(), to.getLongitude()),
+                startTime
+        );
+        return findRoute(inputJourney);
+    }
+
+    /**
+     * One-to-all search: travel times from {@code origin} to every reachable stop.
+     *
+     * @param origin    the starting coordinates
+     * @param startTime the start time of the journey
+     * @return a map of stop IDs to travel times in seconds
+     */
+    @Override
+    public Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime) {
+        int departureSec = startTime.toSecondOfDay();
+        Map<String, Integer> arrivals = router.findEarliestArrivals(
+                DijkstraModelConverter.toDijkstraCoordinates(origin), departureSec);
+        Map<String, Integer> travelTimes = new HashMap<>(arrivals.size() * 2);
+        arrivals.forEach((stopId, arrival) -> travelTimes.put(stopId, arrival - departureSec));
+        return travelTimes;
+    }
+}
@@ -0,0 +1,528 @@
+package routing.routingEngineCSA.engine;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import routing.metrics.SearchStats;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser;
+import routing.routingEngineDijkstra.dijkstra.parsers.TimetableSnapshot;
+import routing.routingEngineDijkstra.dijkstra.service.HaversineDistanceCalculator;
+import routing.routingEngineDijkstra.dijkstra.service.WalkingTransferService;
+import routing.routingEngineModels.utils.IntList;
+import routing.routingEngineModels.utils.PackedKDTree;
+
+/**
+ * ConnectionScanRouter.java
+ *
+ * Earliest-arrival routing with the Connection Scan Algorithm (Dibbelt et al.).
+ * Every elementary connection (one vehicle hop between two consecutive stops)
+ * is stored in a single int array sorted by departure time. A query binary
+ * searches the first connection at or after the departure time and then scans
+ * forward once, relaxing footpaths whenever a stop's arrival time improves.
+ * The scan stops as soon as connections depart after the best known arrival
+ * at the destination.
+ *
+ * All query state lives in local arrays, so one instance can be queried from
+ * many threads at the same time.
+ */
+public class ConnectionScanRouter {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final double WALKING_SPEED_MPS = 1.389;
+
+    // Layout of one connection inside the connections array
+    private static final int DEP_TIME = 0;
+    private static final int ARR_TIME = 1;
+    private static final int DEP_STOP = 2;
+    private static final int ARR_STOP = 3;
+    private static final int TRIP = 4;
+    private static final int STRIDE = 5;
+    // layout of the sort keys of sortByDeparture: 20 + 16 + 28 bits
+    private static final int DEPARTURE_BITS = 20;
+    private static final int DURATION_BITS = 16;
+    private static final int POSITION_BITS = 28;
+
+    private final DijkstraStop[] stops;
+    private final PackedKDTree spatialIndex;
+    private final Map<String, Integer> stopIndex;
+    private final Map<String, DijkstraRouteInfo> routeInfo;
+
+    private final int[] connections;
+    private final int connectionCount;
+
+    private final String[] tripIds;
+    private final String[] tripRouteIds;
+    private final String[] tripHeadSigns;
+
+    private final int[] footpathStart;
+    private final int[] footpathTarget;
+    private final int[] footpathDuration;
+
+    private final HaversineDistanceCalculator distanceCalculator;
+    private final int maxWalkingDistanceMeters;
+
+    /**
+     * Builds the connection array and footpath graph.
+     *
+     * @param stops                    the map of stop IDs to DijkstraStop objects
+     * @param outgoingConnections      the map of stop IDs to their outgoing connections
+     * @param routeInfo                the map of route IDs to DijkstraRouteInfo objects
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     */
+    public ConnectionScanRouter(Map<String, DijkstraStop> stops,
+                                Map<String, List<DijkstraConnection>> outgoingConnections,
+                                Map<String, DijkstraRouteInfo> routeInfo,
+                                int maxWalkingDistanceMeters) {
+        this.routeInfo = routeInfo;
+        this.maxWalkingDistanceMeters = maxWalkingDistanceMeters;
+        this.distanceCalculator = new HaversineDistanceCalculator();
+
+        this.stops = stops.values().toArray(new DijkstraStop[0]);
+        Arrays.sort(this.stops, (a, b) -> a.id.compareTo(b.id));
+        // indexed after sorting: the tree's point indices are indices into this.stops
+        double[] stopLats = new double[this.stops.length];
+        double[] stopLons = new double[this.stops.length];
+        for (int s = 0; s < this.stops.length; s++) {
+            stopLats[s] = this.stops[s].lat;
+            stopLons[s] = this.stops[s].lon;
+        }
+        this.spatialIndex = new PackedKDTree(stopLats, stopLons);
+        this.stopIndex = new HashMap<>(this.stops.length * 2);
+        for (int i = 0; i < this.stops.length; i++) {
+            stopIndex.put(this.stops[i].id, i);
+        }
+
+        // Intern trips and collect the transit connections
+        Map<String, Integer> tripIndex = new HashMap<>();
+        List<String> tripIdList = new ArrayList<>();
+        List<String> tripRouteList = new ArrayList<>();
+        List<String> tripHeadSignList = new ArrayList<>();
+        IntList raw = new IntList(1 << 20);
+
+        for (List<DijkstraConnection> list : outgoingConnections.values()) {
+            for (DijkstraConnection c : list) {
+                if ("WALK".equals(c.routeId) || c.tripId == null) {
+                    continue;
+                }
+                Integer from = stopIndex.get(c.from.id);
+                Integer to = stopIndex.get(c.to.id);
+                if (from == null || to == null || c.arrivalTime < c.departureTime) {
+                    continue;
+                }
+                // a trip on another service day is another vehicle run
+                Integer trip = tripIndex.get(c.tripKey());
+                if (trip == null) {
+                    trip = tripIdList.size();
+                    tripIndex.put(c.tripKey(), trip);
+                    tripIdList.add(c.tripId);
+                    tripRouteList.add(c.routeId);
+                    tripHeadSignList.add(c.headSign);
+                }
+                raw.add(c.departureTime);
+                raw.add(c.arrivalTime);
+                raw.add(from);
+                raw.add(to);
+                raw.add(trip);
+            }
+        }
+
+        this.tripIds = tripIdList.toArray(new String[0]);
+        this.tripRouteIds = tripRouteList.toArray(new String[0]);
+        this.tripHeadSigns = tripHeadSignList.toArray(new String[0]);
+        this.connectionCount = raw.size() / STRIDE;
+        this.connections = sortByDeparture(raw.toArray(), connectionCount);
+
+        // Footpaths between stops within walking distance
+        WalkingTransferService walkingService = new WalkingTransferService(
+                distanceCalculator, maxWalkingDistanceMeters, stops.values());
+        this.footpathStart = new int[this.stops.length + 1];
+        IntList targets = new IntList(this.stops.length * 8);
+        IntList durations = new IntList(this.stops.length * 8);
+        for (int s = 0; s < this.stops.length; s++) {
+            footpathStart[s] = targets.size();
+            for (DijkstraStop near : walkingService.getNearbyStops(this.stops[s])) {
+                targets.add(stopIndex.get(near.id));
+                durations.add(Math.max(1, walkingService.calculateWalkTime(this.stops[s], near)));
+            }
+        }
+        footpathStart[this.stops.length] = targets.size();
+        this.footpathTarget = targets.toArray();
+        this.footpathDuration = durations.toArray();
+    }
+
+    /**
+     * Creates a ConnectionScanRouter from the GTFS database, using the same
+     * parser (and snapshot) as the Dijkstra engine.
+     *
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @return a ready-to-query router
+     * @throws SQLException if a database error occurs
+     */
+    public static ConnectionScanRouter createFromGTFS(int maxWalkingDistanceMeters) throws SQLException {
+        // the snapshot's walking connections are ignored, footpaths are rebuilt from the stops
+        TimetableSnapshot snapshot = GTFSDatabaseParser.openSnapshot(maxWalkingDistanceMeters);
+        if (snapshot != null) {
+            return new ConnectionScanRouter(snapshot.getStops(), snapshot.getConnections(), snapshot.getRoutes(),
+                    maxWalkingDistanceMeters);
+        }
+        GTFSDatabaseParser parser = new GTFSDatabaseParser();
+        Map<String, DijkstraStop> stops = parser.parseStops();
+        Map<String, DijkstraRouteInfo> routes = parser.parseRoutes();
+        Map<String, List<DijkstraConnection>> connections = parser.parseConnections(stops);
+        return new ConnectionScanRouter(stops, connections, routes, maxWalkingDistanceMeters);
+    }
+
+    /**
+     * Sorts the strided connection array by departure time (then arrival time,
+     * so that connections of the same trip at the same second stay in order).
+     * Each connection is sorted as one long: the signed departure in the top
+     * {@value #DEPARTURE_BITS} bits, then the clamped duration, then the
+     * original position as tie-break.
+     *
+     * @throws IllegalArgumentException if there are too many connections or a
+     *                                  departure is too far from the service day
+     */
+    static int[] sortByDeparture(int[] raw, int count) {
+        if (count > 1 << POSITION_BITS) {
+            throw new IllegalArgumentException("Too many connections to sort: " + count);
+        }
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int base = i * STRIDE;
+            long dep = raw[base + DEP_TIME];
+            if (dep < -(1L << (DEPARTURE_BITS - 1)) || dep >= 1L << (DEPARTURE_BITS - 1)) {
+                throw new IllegalArgumentException("Departure out of range: " + dep);
+            }
+            long duration = Math.min(raw[base + ARR_TIME] - raw[base + DEP_TIME], (1 << DURATION_BITS) - 1);
+            duration = Math.max(duration, 0);
+            keys[i] = (dep << (DURATION_BITS + POSITION_BITS)) | (duration << POSITION_BITS) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sorted = new int[count * STRIDE];
+        for (int i = 0; i < count; i++) {
+            int src = (int) (keys[i] & ((1L << POSITION_BITS) - 1)) * STRIDE;
+            System.arraycopy(raw, src, sorted, i * STRIDE, STRIDE);
+        }
+        return sorted;
+    }
+
+    /**
+     * Finds the earliest-arrival journey between two coordinates. The journey
+     * may start at any stop within walking distance of {@code from} and end at
+     * any stop within walking distance of {@code to}. The returned legs include
+     * the initial and final walks, to and from virtual "Origin"/"Destination" stops.
+     *
+     * @param from         the starting coordinates
+     * @param to           the destination coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return the journey, or null if the destination cannot be reached
+     */
+    public Journey findJourney(DijkstraCoordinates from, DijkstraCoordinates to, int departureSec) {
+        int[] sources = stopsAround(from);
+        int[] targets = stopsAround(to);
+        if (sources.length == 0 || targets.length == 0) {
+            return null;
+        }
+
+        int[] sourceArrival = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceArrival[i] = departureSec + walkSeconds(from, stops[sources[i]]);
+        }
+        int[] targetWalk = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            targetWalk[i] = walkSeconds(to, stops[targets[i]]);
+        }
+
+        ScanState state = scan(sources, sourceArrival, departureSec, targets, targetWalk);
+
+        int bestTarget = -1;
+        int bestArrival = INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            int arr = state.arrival[targets[i]];
+            if (arr != INFINITY && arr + targetWalk[i] < bestArrival) {
+                bestArrival = arr + targetWalk[i];
+                bestTarget = i;
+            }
+        }
+        if (bestTarget < 0) {
+            return null;
+        }
+
+        DijkstraStop origin = new DijkstraStop("ORIGIN", "Origin", from.getLatitude(), from.getLongitude());
+        DijkstraStop destination = new DijkstraStop("DEST", "Destination", to.getLatitude(), to.getLongitude());
+
+        List<JourneyLeg> legs = reconstruct(state, targets[bestTarget], origin, departureSec);
+        int lastStop = targets[bestTarget];
+        int lastArrival = state.arrival[lastStop];
+        if (targetWalk[bestTarget] > 0) {
+            legs.add(new JourneyLeg(stops[lastStop], destination, lastArrival, bestArrival,
+                    "WALK", null, "Walk to " + destination.name, true));
+        }
+        return new Journey(legs, departureSec, bestArrival);
+    }
+
+    /**
+     * One-to-all search: the earliest arrival time at every stop reachable from
+     * a coordinate. Without a destination the scan runs to the end of the day,
+     * so a single call replaces one point-to-point query per stop.
+     *
+     * @param from         the starting coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return a map of stop IDs to arrival times in seconds since midnight
+     */
+    public Map<String, Integer> findEarliestArrivals(DijkstraCoordinates from, int departureSec) {
+        int[] sources = stopsAround(from);
+        int[] sourceArrival = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceArrival[i] = departureSec + walkSeconds(from, stops[sources[i]]);
+        }
+
+        ScanState state = scan(sources, sourceArrival, departureSec, new int[0], new int[0]);
+
+        Map<String, Integer> arrivals = new HashMap<>(stops.length * 2);
+        for (int s = 0; s < stops.length; s++) {
+            if (state.arrival[s] != INFINITY) {
+                arrivals.put(stops[s].id, state.arrival[s]);
+            }
+        }
+        return arrivals;
+    }
+
+    /**
+     * Per-query labels of the connection scan.
+     */
+    private static final class ScanState {
+        final int[] arrival;
+        final int[] enterConnection;   // connection where the trip reaching this stop was boarded
+        final int[] exitConnection;    // connection that reached this stop, or -1
+        final int[] walkFrom;          // stop this stop was walked to from, or -1
+        final boolean[] fromOrigin;    // reached by walking directly from the origin coordinate
+        final int[] tripBoarded;       // first connection of a trip that was reachable, or -1
+
+        ScanState(int stopCount, int tripCount) {
+            arrival = new int[stopCount];
+            enterConnection = new int[stopCount];
+            exitConnection = new int[stopCount];
+            walkFrom = new int[stopCount];
+            fromOrigin = new boolean[stopCount];
+            tripBoarded = new int[tripCount];
+            Arrays.fill(arrival, INFINITY);
+            Arrays.fill(exitConnection, -1);
+            Arrays.fill(walkFrom, -1);
+            Arrays.fill(tripBoarded, -1);
+        }
+    }
+
+    /**
+     * Runs the connection scan from the given source stops.
+     *
+     * @param sources       source stop indices
+     * @param sourceArrival arrival time at each source stop
+     * @param departureSec  first departure time to scan from
+     * @param targets       target stop indices used for the stopping criterion
+     * @param targetWalk    walking time from each target to the destination
+     * @return the labels after the scan
+     */
+    private ScanState scan(int[] sources, int[] sourceArrival, int departureSec, int[] targets, int[] targetWalk) {
+        ScanState state = new ScanState(stops.length, tripIds.length);
+        int[] arrival = state.arrival;
+
+        for (int i = 0; i < sources.length; i++) {
+            int s = sources[i];
+            if (sourceArrival[i] < arrival[s]) {
+                arrival[s] = sourceArrival[i];
+                state.fromOrigin[s] = true;
+            }
+        }
+
+        int best = bestTargetArrival(arrival, targets, targetWalk);
+
+        // the counts are only reported with metrics enabled
+        int first = firstConnectionAtOrAfter(departureSec);
+        int c = first;
+        long improved = 0;
+        long footpaths = 0;
+        for (; c < connectionCount; c++) {
+            int base = c * STRIDE;
+            int dep = connections[base + DEP_TIME];
+            if (dep >= best) {
+                break;
+            }
+            int trip = connections[base + TRIP];
+            int depStop = connections[base + DEP_STOP];
+
+            if (state.tripBoarded[trip] < 0) {
+                if (arrival[depStop] > dep) {
+                    continue;
+                }
+                state.tripBoarded[trip] = c;
+            }
+
+            int arrStop = connections[base + ARR_STOP];
+            int arr = connections[base + ARR_TIME];
+            if (arr >= arrival[arrStop]) {
+                continue;
+            }
+            arrival[arrStop] = arr;
+            state.enterConnection[arrStop] = state.tripBoarded[trip];
+            state.exitConnection[arrStop] = c;
+            state.walkFrom[arrStop] = -1;
+            state.fromOrigin[arrStop] = false;
+            improved++;
+
+            // Footpath relaxation
+            footpaths += footpathStart[arrStop + 1] - footpathStart[arrStop];
+            for (int f = footpathStart[arrStop]; f < footpathStart[arrStop + 1]; f++) {
+                int next = footpathTarget[f];
+                int walkArrival = arr + footpathDuration[f];
+                if (walkArrival < arrival[next]) {
+                    arrival[next] = walkArrival;
+                    state.walkFrom[next] = arrStop;
+                    state.exitConnection[next] = -1;
+                    state.fromOrigin[next] = false;
+                    improved++;
+                }
+            }
+            best = Math.min(best, bestTargetArrival(arrival, targets, targetWalk));
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.recordSearch(improved, c - first + footpaths);
+        }
+        return state;
+    }
+
+    /**
+     * Returns the best known arrival at the destination coordinate.
+     */
+    private int bestTargetArrival(int[] arrival, int[] targets, int[] targetWalk) {
+        int best = INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            int arr = arrival[targets[i]];
+            if (arr != INFINITY && arr + targetWalk[i] < best) {
+                best = arr + targetWalk[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Binary-searches the first connection departing at or after the given time.
+     *
+     * @param timeSec the time in seconds since midnight
+     * @return the index of the first such connection
+     */
+    private int firstConnectionAtOrAfter(int timeSec) {
+        int lo = 0;
+        int hi = connectionCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (connections[mid * STRIDE + DEP_TIME] < timeSec) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Walks the journey pointers back from the target stop.
+     */
+    private List<JourneyLeg> reconstruct(ScanState state, int target, DijkstraStop origin, int departureSec) {
+        List<JourneyLeg> legs = new ArrayList<>();
+        int stop = target;
+
+        // Every step moves to a stop reached strictly earlier, the bound only guards against bad data
+        for (int guard = 0; guard <= stops.length; guard++) {
+            if (state.fromOrigin[stop]) {
+                if (state.arrival[stop] > departureSec) {
+                    legs.add(new JourneyLeg(origin, stops[stop], departureSec, state.arrival[stop],
+                            "WALK", null, "Walk to " + stops[stop].name, true));
+                }
+                break;
+            }
+            int prev = state.walkFrom[stop];
+            if (prev >= 0) {
+                int arrival = state.arrival[stop];
+                int duration = footpathDuration(prev, stop);
+                legs.add(new JourneyLeg(stops[prev], stops[stop], arrival - duration, arrival,
+                        "WALK", null, "Walk to " + stops[stop].name, true));
+                stop = prev;
+                continue;
+            }
+            int exit = state.exitConnection[stop];
+            if (exit < 0) {
+                break;
+            }
+            int enter = state.enterConnection[stop];
+            int trip = connections[enter * STRIDE + TRIP];
+            int boardStop = connections[enter * STRIDE + DEP_STOP];
+            legs.add(new JourneyLeg(stops[boardStop], stops[stop],
+                    connections[enter * STRIDE + DEP_TIME], connections[exit * STRIDE + ARR_TIME],
+                    tripRouteIds[trip], tripIds[trip], tripHeadSigns[trip], false));
+            stop = boardStop;
+        }
+        Collections.reverse(legs);
+        return legs;
+    }
+
+    /**
+     * Looks up the footpath duration between two stops.
+     */
+    private int footpathDuration(int from, int to) {
+        for (int f = footpathStart[from]; f < footpathStart[from + 1]; f++) {
+            if (footpathTarget[f] == to) {
+                return footpathDuration[f];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the stops within walking distance of a coordinate, or the single
+     * closest stop when none is that close.
+     */
+    private int[] stopsAround(DijkstraCoordinates coord) {
+        IntList result = spatialIndex.within(coord.getLatitude(), coord.getLongitude(), maxWalkingDistanceMeters);
+        if (result.isEmpty()) {
+            int closest = spatialIndex.nearest(coord.getLatitude(), coord.getLongitude());
+            if (closest >= 0) {
+                result.add(closest);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Walking time between a coordinate and a stop.
+     */
+    private int walkSeconds(DijkstraCoordinates coord, DijkstraStop stop) {
+        return (int) Math.ceil(distanceCalculator.calculateDistanceMeters(coord, stop) / WALKING_SPEED_MPS);
+    }
+
+    /**
+     * Retrieves the route information of a route.
+     *
+     * @param routeId the route ID
+     * @return the DijkstraRouteInfo, or null if unknown
+     */
+    public DijkstraRouteInfo getRouteInfo(String routeId) {
+        return routeInfo.get(routeId);
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+}
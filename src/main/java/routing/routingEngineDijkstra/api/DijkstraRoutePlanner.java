@@ -1,6 +1,8 @@
 package routing.routingEngineDijkstra.api;
 
 import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
 
 import routing.api.RoutingStrategy;
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
@@ -34,9 +36,13 @@ public class DijkstraRoutePlanner implements RoutingStrategy {
      *
      * @param inputJourney the journey details including start, end, and start time
      * @return a FinalRoute object representing the calculated route, or null if no route is found
+     * @throws UnsupportedOperationException if the journey has a service date
      */
     @Override
     public FinalRoute findRoute(InputJourney inputJourney) {
+        if (inputJourney.getDate() != null) {
+            throw new UnsupportedOperationException("The Dijkstra planner does not apply the service calendar");
+        }
         DijkstraInputJourney dijkstraInput = DijkstraModelConverter.toDijkstraInputJourney(inputJourney);
 
         DijkstraFinalRoute dijkstraResult = router.findRoute(dijkstraInput);
@@ -77,4 +83,21 @@ public class DijkstraRoutePlanner implements RoutingStrategy {
         InputJourney inputJourney = new InputJourney(from, to, startTime);
         return findRoute(inputJourney);
     }
-}
\ No newline at end of file
+
+    /**
+     * One-to-all search: travel times from {@code origin} to every reachable stop.
+     *
+     * @param origin    the starting coordinates
+     * @param startTime the start time of the journey
+     * @return a map of stop IDs to travel times in seconds
+     */
+    @Override
+    public Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime) {
+        int departureSec = startTime.toSecondOfDay();
+        Map<String, Integer> arrivals = router.findEarliestArrivals(
+                DijkstraModelConverter.toDijkstraCoordinates(origin), departureSec);
+        Map<String, Integer> travelTimes = new HashMap<>(arrivals.size() * 2);
+        arrivals.forEach((stopId, arrival) -> travelTimes.put(stopId, arrival - departureSec));
+        return travelTimes;
+    }
+}
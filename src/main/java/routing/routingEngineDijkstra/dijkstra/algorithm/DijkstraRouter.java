@@ -1,11 +1,11 @@
 package routing.routingEngineDijkstra.dijkstra.algorithm;
 
+import routing.metrics.SearchStats;
 import routing.routingEngineDijkstra.dijkstra.model.input.*;
 import routing.routingEngineDijkstra.dijkstra.model.output.DijkstraFinalRoute;
 import routing.routingEngineDijkstra.dijkstra.model.output.DijkstraInputJourney;
 import routing.routingEngineDijkstra.dijkstra.model.output.DijkstraRouteStep;
 import routing.routingEngineDijkstra.dijkstra.service.*;
-import routing.routingEngineDijkstra.dijkstra.service.PathReconstructionService.SearchNode;
 
 import java.time.LocalTime;
 import java.util.*;
@@ -14,6 +14,23 @@ import java.util.*;
  * Implements Dijkstra's algorithm for finding the shortest journey between stops, incorporating walking and transit connections.
  */
 public class DijkstraRouter {
+    /**
+     * How journeys between two stops are searched.
+     */
+    public enum SearchMode {
+        /** Classic Dijkstra over stops, settling every stop a vehicle passes. */
+        STOP_BASED,
+        /** Trip-based search over trip segments and precomputed transfers, see {@link TripBasedSearch}. */
+        TRIP_BASED
+    }
+
+    /** Transfer limit used by the trip-based mode when none is given. */
+    public static final int DEFAULT_MAX_TRANSFERS = 8;
+
+    private static final DijkstraConnection[] NO_CONNECTIONS = new DijkstraConnection[0];
+    private static final int[] NO_DEPARTURES = new int[0];
+    private static final int MAX_WAIT_SECONDS = 1800;
+
     private final Map<String, DijkstraStop> stops;
     private final Map<String, List<DijkstraConnection>> outgoingConnections;
     private final WalkingTransferService walkingService;
@@ -21,12 +38,18 @@ public class DijkstraRouter {
     private final Map<String, DijkstraRouteInfo> routeInfo;
     private final int maxReasonableJourneyTime;
     private final HaversineDistanceCalculator distanceCalculator;
-    private final Map<String, DijkstraConnection[]> connectionArrayCache = new HashMap<>();
+    private final DijkstraStop[] stopsByIndex;
+    private final DijkstraConnection[][] walkingByStop;
+    private final DijkstraConnection[][] transitByStop;
+    private final int[][] transitDepartures;
+    private final ThreadLocal<DijkstraSearchManager> searchState;
+    private final TripBasedSearch tripBasedSearch;
 
     /**
      * Constructs a DijkstraRouter with the specified stops, connections, route information, and maximum walking distance.
      *
-     * @param stops                   the map of stop IDs to DijkstraStop objects
+     * @param stops                   the map of stop IDs to DijkstraStop objects, carrying dense indices
+     *                                as assigned by {@link routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser}
      * @param outgoingConnections     the map of stop IDs to lists of outgoing connections
      * @param routeInfo               the map of route IDs to DijkstraRouteInfo objects
      * @param maxWalkingDistanceMeters the maximum walking distance in meters
@@ -35,7 +58,36 @@ public class DijkstraRouter {
                           Map<String, List<DijkstraConnection>> outgoingConnections,
                           Map<String, DijkstraRouteInfo> routeInfo,
                           int maxWalkingDistanceMeters) {
+        this(stops, outgoingConnections, routeInfo, maxWalkingDistanceMeters, SearchMode.STOP_BASED);
+    }
+
+    /**
+     * Constructs a DijkstraRouter using the given search mode. The trip-based
+     * mode precomputes its trips and transfers here.
+     *
+     * @param stops                   the map of stop IDs to DijkstraStop objects, carrying dense indices
+     * @param outgoingConnections     the map of stop IDs to lists of outgoing connections
+     * @param routeInfo               the map of route IDs to DijkstraRouteInfo objects
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @param searchMode              how stop-to-stop journeys are searched
+     */
+    public DijkstraRouter(Map<String, DijkstraStop> stops,
+                          Map<String, List<DijkstraConnection>> outgoingConnections,
+                          Map<String, DijkstraRouteInfo> routeInfo,
+                          int maxWalkingDistanceMeters,
+                          SearchMode searchMode) {
         this.stops = stops;
+        this.stopsByIndex = new DijkstraStop[stops.size()];
+        for (DijkstraStop stop : stops.values()) {
+            if (stop.index < 0 || stop.index >= stopsByIndex.length || stopsByIndex[stop.index] != null) {
+                throw new IllegalArgumentException("Stops must have dense, unique indices: " + stop.id);
+            }
+            stopsByIndex[stop.index] = stop;
+        }
+        this.walkingByStop = new DijkstraConnection[stopsByIndex.length][];
+        this.transitByStop = new DijkstraConnection[stopsByIndex.length][];
+        this.transitDepartures = new int[stopsByIndex.length][];
+        this.searchState = ThreadLocal.withInitial(() -> new DijkstraSearchManager(stopsByIndex.length));
         this.outgoingConnections = new HashMap<>(outgoingConnections);
         this.distanceCalculator = new HaversineDistanceCalculator();
         this.walkingService = new WalkingTransferService(
@@ -49,52 +101,74 @@ public class DijkstraRouter {
 
         precomputeWalkingConnections();
         precomputeConnectionArrays();
+
+        this.tripBasedSearch = searchMode == SearchMode.TRIP_BASED
+                ? new TripBasedSearch(stopsByIndex, transitByStop, walkingByStop)
+                : null;
     }
 
     /**
-     * Precomputes connection arrays for each stop, sorting connections by departure time.
+     * Precomputes connection arrays for each stop: the walking connections, and
+     * the transit connections sorted by departure time with their departure
+     * times in a parallel int array for binary search.
      */
     private void precomputeConnectionArrays() {
+        Arrays.fill(walkingByStop, NO_CONNECTIONS);
+        Arrays.fill(transitByStop, NO_CONNECTIONS);
+        Arrays.fill(transitDepartures, NO_DEPARTURES);
+
         outgoingConnections.forEach((stopId, connections) -> {
-            connections.sort(Comparator.comparingInt(c ->
-                    "WALK".equals(c.routeId) ? 0 : c.departureTime));
-            connectionArrayCache.put(stopId, connections.toArray(new DijkstraConnection[0]));
+            DijkstraStop stop = stops.get(stopId);
+            if (stop == null) {
+                return;
+            }
+            List<DijkstraConnection> walking = new ArrayList<>();
+            List<DijkstraConnection> transit = new ArrayList<>();
+            for (DijkstraConnection conn : connections) {
+                ("WALK".equals(conn.routeId) ? walking : transit).add(conn);
+            }
+            transit.sort(Comparator.comparingInt(c -> c.departureTime));
+
+            int[] departures = new int[transit.size()];
+            for (int i = 0; i < departures.length; i++) {
+                departures[i] = transit.get(i).departureTime;
+            }
+            walkingByStop[stop.index] = walking.toArray(NO_CONNECTIONS);
+            transitByStop[stop.index] = transit.toArray(NO_CONNECTIONS);
+            transitDepartures[stop.index] = departures;
         });
     }
 
     /**
-     * Precomputes walking connections between stops within the maximum walking distance.
+     * Precomputes walking connections between stops within the maximum walking
+     * distance, from the walking service's precomputed neighbours, which are
+     * already within that distance. Stops that already come with walking
+     * connections are left alone.
      */
     private void precomputeWalkingConnections() {
-        stops.values().parallelStream()
-                .filter(stop -> !outgoingConnections.containsKey(stop.id) ||
-                        outgoingConnections.get(stop.id).stream().noneMatch(c -> "WALK".equals(c.routeId)))
-                .forEach(from -> {
-                    List<DijkstraConnection> connections = new ArrayList<>();
-
-                    for (DijkstraStop to : stops.values()) {
-                        if (!from.equals(to) &&
-                                distanceCalculator.estimateQuickDistance(from.lat, from.lon, to.lat, to.lon)
-                                        <= walkingService.getMaxWalkingDistance()) {
-
-                            if (walkingService.canWalkBetween(from, to)) {
-                                int walkTime = walkingService.calculateWalkTime(from, to);
-                                connections.add(new DijkstraConnection(
-                                        from, to, 0, walkTime, null, "WALK", "Walk to " + to.name
-                                ));
-                            }
-                        }
-                    }
-
-                    if (!connections.isEmpty()) {
-                        synchronized (outgoingConnections) {
-                            outgoingConnections.merge(from.id, connections, (oldList, newList) -> {
-                                oldList.addAll(newList);
-                                return oldList;
-                            });
-                        }
-                    }
+        for (DijkstraStop from : stopsByIndex) {
+            if (hasWalkingConnections(from)) {
+                continue;
+            }
+            List<DijkstraConnection> connections = new ArrayList<>();
+            for (DijkstraStop to : walkingService.getNearbyStops(from)) {
+                connections.add(new DijkstraConnection(
+                        from, to, 0, walkingService.calculateWalkTime(from, to), null, "WALK", "Walk to " + to.name
+                ));
+            }
+            if (!connections.isEmpty()) {
+                outgoingConnections.merge(from.id, connections, (oldList, newList) -> {
+                    List<DijkstraConnection> merged = new ArrayList<>(oldList);
+                    merged.addAll(newList);
+                    return merged;
                 });
+            }
+        }
+    }
+
+    private boolean hasWalkingConnections(DijkstraStop stop) {
+        List<DijkstraConnection> connections = outgoingConnections.get(stop.id);
+        return connections != null && connections.stream().anyMatch(c -> "WALK".equals(c.routeId));
     }
 
     /**
@@ -118,6 +192,20 @@ public class DijkstraRouter {
      * @return a Journey object representing the shortest journey, or null if no journey is found
      */
     public Journey findShortestJourney(String fromStopId, String toStopId, int departureTimeSec) {
+        return findShortestJourney(fromStopId, toStopId, departureTimeSec, DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Finds the shortest journey between two stops starting at a specified time in seconds. The transfer
+     * limit is only applied in {@link SearchMode#TRIP_BASED} mode.
+     *
+     * @param fromStopId       the ID of the starting stop
+     * @param toStopId         the ID of the destination stop
+     * @param departureTimeSec the departure time in seconds since midnight
+     * @param maxTransfers     the maximum number of vehicle changes
+     * @return a Journey object representing the shortest journey, or null if no journey is found
+     */
+    public Journey findShortestJourney(String fromStopId, String toStopId, int departureTimeSec, int maxTransfers) {
         DijkstraStop start = stops.get(fromStopId);
         DijkstraStop end = stops.get(toStopId);
 
@@ -125,66 +213,147 @@ public class DijkstraRouter {
             return null;
         }
 
-        DijkstraSearchManager searchManager = new DijkstraSearchManager();
-        searchManager.initialize(start, departureTimeSec);
+        if (tripBasedSearch != null) {
+            Journey journey = tripBasedSearch.findJourney(start.index, end.index, departureTimeSec, maxTransfers);
+            if (journey == null || journey.arrivalTime > departureTimeSec + maxReasonableJourneyTime) {
+                return null;
+            }
+            return journey;
+        }
+
+        DijkstraSearchManager searchManager = acquireSearchState();
+        searchManager.initialize(start.index, departureTimeSec);
 
+        // the counts are only reported with metrics enabled
+        int settled = 0;
+        long relaxed = 0;
         while (!searchManager.isEmpty()) {
-            SearchNode current = searchManager.getNextNode();
-            if (current == null) break;
-            if (current.time > departureTimeSec + maxReasonableJourneyTime) {
+            int current = searchManager.getNextStop();
+            if (current < 0) break;
+            int currentTime = searchManager.getEarliestArrival(current);
+            if (currentTime > departureTimeSec + maxReasonableJourneyTime) {
                 break;
             }
-            if (current.stop.equals(end)) {
-                return reconstructionService.reconstructJourney(current, departureTimeSec);
+            settled++;
+            if (current == end.index) {
+                if (SearchStats.ENABLED) {
+                    SearchStats.recordSearch(settled, relaxed);
+                }
+                return reconstructionService.reconstructJourney(searchManager, current, departureTimeSec);
             }
 
-            processConnections(current, searchManager);
+            relaxed += processConnections(current, currentTime, searchManager);
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.recordSearch(settled, relaxed);
         }
         return null;
     }
 
     /**
-     * Processes outgoing connections from the current node in the Dijkstra search.
+     * Returns the outgoing connections per stop, including the walking
+     * connections computed when the router was built.
      *
-     * @param current       the current search node
-     * @param searchManager the search manager handling node exploration
+     * @return an unmodifiable map of stop IDs to outgoing connections
      */
-    private void processConnections(SearchNode current, DijkstraSearchManager searchManager) {
-        DijkstraConnection[] connections = connectionArrayCache.get(current.stop.id);
-        if (connections == null) return;
+    public Map<String, List<DijkstraConnection>> getConnections() {
+        return Collections.unmodifiableMap(outgoingConnections);
+    }
 
-        for (DijkstraConnection conn : connections) {
-            int arrivalTime;
+    /**
+     * One-to-all search: the earliest arrival time at every stop reachable from
+     * the stop closest to {@code origin}, within the maximum journey time.
+     *
+     * @param origin       the starting coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return a map of stop IDs to arrival times in seconds since midnight
+     */
+    public Map<String, Integer> findEarliestArrivals(DijkstraCoordinates origin, int departureSec) {
+        DijkstraStop start = walkingService.findClosestStop(origin);
+        if (start == null) {
+            return Collections.emptyMap();
+        }
+        int startTime = departureSec + (int) Math.ceil(walkingService.getDistance(origin, start) / 1.389);
+        int horizon = departureSec + maxReasonableJourneyTime;
 
-            if ("WALK".equals(conn.routeId)) {
-                arrivalTime = current.time + conn.getDuration();
-            } else {
-                if (conn.departureTime < current.time) continue;
+        DijkstraSearchManager searchManager = acquireSearchState();
+        searchManager.initialize(start.index, startTime);
 
-                if (conn.departureTime > current.time + 1800) {
-                    continue;
-                }
+        while (!searchManager.isEmpty()) {
+            int current = searchManager.getNextStop();
+            if (current < 0) break;
+            int currentTime = searchManager.getEarliestArrival(current);
+            if (currentTime > horizon) break;
+            processConnections(current, currentTime, searchManager);
+        }
 
-                arrivalTime = conn.arrivalTime;
+        Map<String, Integer> arrivals = new HashMap<>();
+        for (int i = 0; i < searchManager.getReachedCount(); i++) {
+            int stop = searchManager.getReachedStop(i);
+            int time = searchManager.getEarliestArrival(stop);
+            if (time <= horizon) {
+                arrivals.put(stopsByIndex[stop].id, time);
             }
+        }
+        return arrivals;
+    }
 
-            if (arrivalTime >= searchManager.getEarliestArrival(conn.to)) {
-                continue;
+    /**
+     * Returns this thread's search state, cleared of the previous search.
+     */
+    private DijkstraSearchManager acquireSearchState() {
+        DijkstraSearchManager searchManager = searchState.get();
+        searchManager.reset();
+        return searchManager;
+    }
+
+    /**
+     * Processes outgoing connections from the current stop in the Dijkstra search.
+     *
+     * @param current       index of the stop being settled
+     * @param currentTime   the arrival time at that stop
+     * @param searchManager the search manager handling node exploration
+     * @return the number of connections examined
+     */
+    private int processConnections(int current, int currentTime, DijkstraSearchManager searchManager) {
+        // Walking connections are templates starting at 0; the departure is recorded separately
+        for (DijkstraConnection conn : walkingByStop[current]) {
+            searchManager.relax(conn.to.index, currentTime + conn.getDuration(), conn, currentTime);
+        }
+
+        // Only the departures inside [currentTime, currentTime + MAX_WAIT_SECONDS]
+        DijkstraConnection[] transit = transitByStop[current];
+        int[] departures = transitDepartures[current];
+        int latest = currentTime + MAX_WAIT_SECONDS;
+        int first = firstDepartureAtOrAfter(departures, currentTime);
+        int i = first;
+        for (; i < departures.length; i++) {
+            if (departures[i] > latest) {
+                break;
             }
+            DijkstraConnection conn = transit[i];
+            searchManager.relax(conn.to.index, conn.arrivalTime, conn, conn.departureTime);
+        }
+        return walkingByStop[current].length + i - first;
+    }
 
-            DijkstraConnection actualConnection;
-            if ("WALK".equals(conn.routeId)) {
-                actualConnection = new DijkstraConnection(
-                        conn.from, conn.to, current.time, arrivalTime,
-                        conn.tripId, conn.routeId, conn.headSign
-                );
+    /**
+     * Binary-searches a sorted departure array.
+     *
+     * @return the index of the first departure at or after {@code time}
+     */
+    private static int firstDepartureAtOrAfter(int[] departures, int time) {
+        int lo = 0;
+        int hi = departures.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departures[mid] < time) {
+                lo = mid + 1;
             } else {
-                actualConnection = conn;
+                hi = mid;
             }
-
-            SearchNode newNode = new SearchNode(actualConnection.to, arrivalTime, current, actualConnection);
-            searchManager.tryAddNode(newNode);
         }
+        return lo;
     }
 
     /**
@@ -272,8 +441,8 @@ public class DijkstraRouter {
      * @return a DijkstraFinalRoute object representing the calculated route, or null if no route is found
      */
     public DijkstraFinalRoute findRoute(DijkstraInputJourney inputJourney) {
-        DijkstraStop fromStop = walkingService.findClosestStop(inputJourney.getStart(), stops.values());
-        DijkstraStop toStop = walkingService.findClosestStop(inputJourney.getEnd(), stops.values());
+        DijkstraStop fromStop = walkingService.findClosestStop(inputJourney.getStart());
+        DijkstraStop toStop = walkingService.findClosestStop(inputJourney.getEnd());
 
         int departureSec = inputJourney.getStartTime().toSecondOfDay();
         Journey journey = findShortestJourney(fromStop.id, toStop.id, departureSec);
@@ -0,0 +1,634 @@
+package routing.routingEngineDijkstra.dijkstra.algorithm;
+
+import routing.metrics.SearchStats;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineDijkstra.dijkstra.service.TripPatterns;
+import routing.routingEngineDijkstra.dijkstra.service.TripPatterns.Trip;
+import routing.routingEngineModels.utils.IntList;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Trip-based earliest-arrival search, following Witt, "Trip-Based Public Transit Routing" (2015).
+ *
+ * Instead of settling every stop a vehicle passes, the search works on trip segments: boarding trip t at
+ * stop position i makes every later stop of t reachable at once, and the only way to change vehicles is a
+ * precomputed transfer (t, i) -> (u, j). Per trip the search remembers the first stop position reached so far,
+ * so a trip is never scanned twice over the same stops, and staying seated is never mistaken for a transfer.
+ * Rounds correspond to the number of transfers, which makes a transfer limit free.
+ *
+ * At construction the consecutive-stop connections are rebuilt into trips, trips with the same stop sequence
+ * are grouped into lines (without overtaking, so the trips of a line are ordered at every stop), and for every
+ * stop time the transfers to the earliest reachable trip of every line nearby are generated. Transfers that
+ * never lead to an earlier arrival anywhere are removed.
+ *
+ * Instances are immutable after construction; the per-query state is kept per thread.
+ */
+final class TripBasedSearch {
+
+    private final DijkstraStop[] stops;
+
+    // Footpaths per stop (CSR), from the router's walking connections
+    private final int[] footpathStart;
+    private final int[] footpathTarget;
+    private final int[] footpathDuration;
+
+    // Trips, numbered so that the trips of a line are contiguous and ordered by departure
+    private final int[] tripLine;
+    private final int[] tripStart;          // tripStart[t]..tripStart[t+1] are the stop times of trip t
+    private final String[] tripIds;
+    private final String[] tripRouteIds;
+    private final String[] tripHeadSigns;
+
+    private final int[] stopTimeStop;
+    private final int[] stopTimeArrival;
+    private final int[] stopTimeDeparture;
+
+    private final int[] lineTripStart;      // lineTripStart[l]..lineTripStart[l+1] are the trips of line l
+
+    // Lines serving a stop, with the stop's position on the line
+    private final int[] stopLineStart;
+    private final int[] stopLineLine;
+    private final int[] stopLinePosition;
+
+    // Transfers per stop time (CSR): the trip and stop position to change to
+    private final int[] transferStart;
+    private final int[] transferTrip;
+    private final int[] transferPosition;
+
+    private final ThreadLocal<QueryState> queryState;
+
+    /**
+     * Builds the trips, lines and transfers.
+     *
+     * @param stops      all stops, addressed by their index
+     * @param transit    transit connections per stop index
+     * @param footpaths  walking connections per stop index, as duration templates
+     */
+    TripBasedSearch(DijkstraStop[] stops, DijkstraConnection[][] transit, DijkstraConnection[][] footpaths) {
+        this.stops = stops;
+
+        this.footpathStart = new int[stops.length + 1];
+        for (int s = 0; s < stops.length; s++) {
+            footpathStart[s + 1] = footpathStart[s] + footpaths[s].length;
+        }
+        this.footpathTarget = new int[footpathStart[stops.length]];
+        this.footpathDuration = new int[footpathTarget.length];
+        for (int s = 0; s < stops.length; s++) {
+            for (int f = 0; f < footpaths[s].length; f++) {
+                footpathTarget[footpathStart[s] + f] = footpaths[s][f].to.index;
+                footpathDuration[footpathStart[s] + f] = footpaths[s][f].getDuration();
+            }
+        }
+
+        List<List<Trip>> lines = TripPatterns.groupIntoPatterns(TripPatterns.buildTrips(
+                Arrays.stream(transit).map(Arrays::asList).toList(), stop -> stop.index));
+
+        int tripCount = 0;
+        int stopTimeCount = 0;
+        for (List<Trip> line : lines) {
+            tripCount += line.size();
+            stopTimeCount += line.size() * line.get(0).stops.size();
+        }
+
+        this.tripLine = new int[tripCount];
+        this.tripStart = new int[tripCount + 1];
+        this.tripIds = new String[tripCount];
+        this.tripRouteIds = new String[tripCount];
+        this.tripHeadSigns = new String[tripCount];
+        this.stopTimeStop = new int[stopTimeCount];
+        this.stopTimeArrival = new int[stopTimeCount];
+        this.stopTimeDeparture = new int[stopTimeCount];
+        this.lineTripStart = new int[lines.size() + 1];
+
+        int t = 0;
+        int st = 0;
+        for (int l = 0; l < lines.size(); l++) {
+            lineTripStart[l] = t;
+            for (Trip trip : lines.get(l)) {
+                tripLine[t] = l;
+                tripStart[t] = st;
+                tripIds[t] = trip.tripId;
+                tripRouteIds[t] = trip.routeId;
+                tripHeadSigns[t] = trip.headSign;
+                for (int i = 0; i < trip.stops.size(); i++, st++) {
+                    stopTimeStop[st] = trip.stops.get(i);
+                    stopTimeArrival[st] = trip.arrivals.get(i);
+                    stopTimeDeparture[st] = trip.departures.get(i);
+                }
+                t++;
+            }
+        }
+        tripStart[tripCount] = st;
+        lineTripStart[lines.size()] = tripCount;
+
+        // Lines per stop
+        this.stopLineStart = new int[stops.length + 1];
+        for (int l = 0; l < lines.size(); l++) {
+            int first = lineTripStart[l];
+            for (int i = tripStart[first]; i < tripStart[first + 1]; i++) {
+                stopLineStart[stopTimeStop[i] + 1]++;
+            }
+        }
+        for (int s = 0; s < stops.length; s++) {
+            stopLineStart[s + 1] += stopLineStart[s];
+        }
+        this.stopLineLine = new int[stopLineStart[stops.length]];
+        this.stopLinePosition = new int[stopLineLine.length];
+        int[] fill = Arrays.copyOf(stopLineStart, stops.length);
+        for (int l = 0; l < lines.size(); l++) {
+            int first = lineTripStart[l];
+            for (int i = tripStart[first]; i < tripStart[first + 1]; i++) {
+                int slot = fill[stopTimeStop[i]]++;
+                stopLineLine[slot] = l;
+                stopLinePosition[slot] = i - tripStart[first];
+            }
+        }
+
+        // Transfers, generated and reduced trip by trip in parallel
+        int[][] perTrip = new int[tripCount][];
+        ThreadLocal<ReductionState> reduction = ThreadLocal.withInitial(() -> new ReductionState(stops.length));
+        IntStream.range(0, tripCount).parallel()
+                .forEach(trip -> perTrip[trip] = computeTransfers(trip, reduction.get()));
+
+        this.transferStart = new int[stopTimeCount + 1];
+        int transferCount = 0;
+        for (int trip = 0; trip < tripCount; trip++) {
+            int length = tripLength(trip);
+            for (int i = 0; i < length; i++) {
+                transferStart[tripStart[trip] + i + 1] = perTrip[trip][i];
+            }
+            transferCount += (perTrip[trip].length - length) / 2;
+        }
+        for (int i = 0; i < stopTimeCount; i++) {
+            transferStart[i + 1] += transferStart[i];
+        }
+        this.transferTrip = new int[transferCount];
+        this.transferPosition = new int[transferCount];
+        for (int trip = 0; trip < tripCount; trip++) {
+            int length = tripLength(trip);
+            int[] data = perTrip[trip];
+            int out = transferStart[tripStart[trip]];
+            for (int k = length; k < data.length; k += 2, out++) {
+                transferTrip[out] = data[k];
+                transferPosition[out] = data[k + 1];
+            }
+        }
+
+        int trips = tripCount;
+        this.queryState = ThreadLocal.withInitial(() -> new QueryState(trips, stops.length));
+    }
+
+    // ------------------------------------------------------------------
+    // Preprocessing
+    // ------------------------------------------------------------------
+
+    /**
+     * Scratch arrays of the transfer reduction. Footpaths are not transitively
+     * closed, so arriving by vehicle (after which one may still walk) and
+     * arriving on foot are tracked separately.
+     */
+    private static final class ReductionState {
+        final int[] vehicleArrival;
+        final int[] anyArrival;
+        final IntList touched = new IntList();
+
+        ReductionState(int stopCount) {
+            this.vehicleArrival = new int[stopCount];
+            this.anyArrival = new int[stopCount];
+            Arrays.fill(vehicleArrival, Integer.MAX_VALUE);
+            Arrays.fill(anyArrival, Integer.MAX_VALUE);
+        }
+
+        void reset() {
+            for (int i = 0; i < touched.size(); i++) {
+                vehicleArrival[touched.get(i)] = Integer.MAX_VALUE;
+                anyArrival[touched.get(i)] = Integer.MAX_VALUE;
+            }
+            touched.clear();
+        }
+    }
+
+    /**
+     * Generates and reduces the transfers leaving one trip.
+     *
+     * @param trip      the trip
+     * @param reduction scratch state, clean on entry and exit
+     * @return the number of transfers per stop position, followed by (trip, position) pairs in stop position order
+     */
+    private int[] computeTransfers(int trip, ReductionState reduction) {
+        int length = tripLength(trip);
+        int base = tripStart[trip];
+        IntList[] candidates = new IntList[length];
+
+        for (int i = 1; i < length; i++) {
+            int stop = stopTimeStop[base + i];
+            int arrival = stopTimeArrival[base + i];
+            addCandidates(trip, i, stop, arrival, candidates);
+            for (int f = footpathStart[stop]; f < footpathStart[stop + 1]; f++) {
+                addCandidates(trip, i, footpathTarget[f], arrival + footpathDuration[f], candidates);
+            }
+        }
+
+        // Keep a transfer only if it improves the arrival at some stop, latest stop positions first
+        IntList[] kept = new IntList[length];
+        for (int i = length - 1; i >= 1; i--) {
+            arriveByVehicle(stopTimeStop[base + i], stopTimeArrival[base + i], reduction);
+            if (candidates[i] == null) {
+                continue;
+            }
+
+            int[] order = sortByDeparture(candidates[i]);
+            for (int c : order) {
+                int target = candidates[i].get(2 * c);
+                int position = candidates[i].get(2 * c + 1);
+                boolean useful = false;
+                for (int k = tripStart[target] + position + 1; k < tripStart[target + 1]; k++) {
+                    useful |= arriveByVehicle(stopTimeStop[k], stopTimeArrival[k], reduction);
+                }
+                if (useful) {
+                    if (kept[i] == null) {
+                        kept[i] = new IntList(4);
+                    }
+                    kept[i].add(target);
+                    kept[i].add(position);
+                }
+            }
+        }
+        reduction.reset();
+
+        int total = length;
+        for (IntList list : kept) {
+            total += list == null ? 0 : list.size();
+        }
+        int[] result = new int[total];
+        int out = length;
+        for (int i = 0; i < length; i++) {
+            if (kept[i] != null) {
+                result[i] = kept[i].size() / 2;
+                for (int k = 0; k < kept[i].size(); k++) {
+                    result[out++] = kept[i].get(k);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the transfers from stop position {@code i} of {@code trip} to the
+     * earliest trip of every line at {@code stop} departing at or after {@code time}.
+     */
+    private void addCandidates(int trip, int i, int stop, int time, IntList[] candidates) {
+        for (int s = stopLineStart[stop]; s < stopLineStart[stop + 1]; s++) {
+            int line = stopLineLine[s];
+            int position = stopLinePosition[s];
+            if (position == lineLength(line) - 1) {
+                continue;
+            }
+            int target = earliestTrip(line, position, time);
+            if (target < 0) {
+                continue;
+            }
+            // Staying seated on the same or an earlier trip of the line is always at least as good
+            if (line == tripLine[trip] && target >= trip && position >= i) {
+                continue;
+            }
+            if (candidates[i] == null) {
+                candidates[i] = new IntList(8);
+            }
+            candidates[i].add(target);
+            candidates[i].add(position);
+        }
+    }
+
+    private int[] sortByDeparture(IntList pairs) {
+        int count = pairs.size() / 2;
+        long[] keys = new long[count];
+        for (int c = 0; c < count; c++) {
+            int departure = stopTimeDeparture[tripStart[pairs.get(2 * c)] + pairs.get(2 * c + 1)];
+            keys[c] = ((long) departure << 32) | c;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int c = 0; c < count; c++) {
+            order[c] = (int) keys[c];
+        }
+        return order;
+    }
+
+    /**
+     * Records a vehicle arrival and the walks from it.
+     *
+     * @return true if any arrival improved
+     */
+    private boolean arriveByVehicle(int stop, int time, ReductionState reduction) {
+        boolean improved = false;
+        if (time < reduction.vehicleArrival[stop]) {
+            touch(stop, reduction);
+            reduction.vehicleArrival[stop] = time;
+            improved = true;
+        }
+        improved |= arrive(stop, time, reduction);
+        for (int f = footpathStart[stop]; f < footpathStart[stop + 1]; f++) {
+            improved |= arrive(footpathTarget[f], time + footpathDuration[f], reduction);
+        }
+        return improved;
+    }
+
+    private static boolean arrive(int stop, int time, ReductionState reduction) {
+        if (time >= reduction.anyArrival[stop]) {
+            return false;
+        }
+        touch(stop, reduction);
+        reduction.anyArrival[stop] = time;
+        return true;
+    }
+
+    private static void touch(int stop, ReductionState reduction) {
+        if (reduction.vehicleArrival[stop] == Integer.MAX_VALUE && reduction.anyArrival[stop] == Integer.MAX_VALUE) {
+            reduction.touched.add(stop);
+        }
+    }
+
+    /**
+     * Binary-searches the trips of a line for the first one leaving stop
+     * {@code position} at or after {@code time}.
+     *
+     * @return the trip, or -1 if no trip of the line leaves that late
+     */
+    private int earliestTrip(int line, int position, int time) {
+        int lo = lineTripStart[line];
+        int hi = lineTripStart[line + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stopTimeDeparture[tripStart[mid] + position] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < lineTripStart[line + 1] ? lo : -1;
+    }
+
+    private int tripLength(int trip) {
+        return tripStart[trip + 1] - tripStart[trip];
+    }
+
+    private int lineLength(int line) {
+        return tripLength(lineTripStart[line]);
+    }
+
+    // ------------------------------------------------------------------
+    // Query
+    // ------------------------------------------------------------------
+
+    /**
+     * Per-thread search state, reset between queries by undoing only what the
+     * previous query touched.
+     */
+    private static final class QueryState {
+        final int[] reachedPosition;     // first stop position reached per trip, trip length if none
+        final IntList touchedTrips = new IntList();
+        final int[] targetWalk;          // walking seconds to the target per stop, MAX_VALUE if none
+        final IntList touchedStops = new IntList();
+
+        // Queued trip segments: board at position from, ride up to (excluding) position to
+        final IntList segmentTrip = new IntList(256);
+        final IntList segmentFrom = new IntList(256);
+        final IntList segmentTo = new IntList(256);
+        final IntList segmentParent = new IntList(256);
+        final IntList segmentParentExit = new IntList(256);
+
+        QueryState(int tripCount, int stopCount) {
+            this.reachedPosition = new int[tripCount];
+            Arrays.fill(reachedPosition, Integer.MAX_VALUE);
+            this.targetWalk = new int[stopCount];
+            Arrays.fill(targetWalk, Integer.MAX_VALUE);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedTrips.size(); i++) {
+                reachedPosition[touchedTrips.get(i)] = Integer.MAX_VALUE;
+            }
+            touchedTrips.clear();
+            for (int i = 0; i < touchedStops.size(); i++) {
+                targetWalk[touchedStops.get(i)] = Integer.MAX_VALUE;
+            }
+            touchedStops.clear();
+            segmentTrip.clear();
+            segmentFrom.clear();
+            segmentTo.clear();
+            segmentParent.clear();
+            segmentParentExit.clear();
+        }
+    }
+
+    /**
+     * Finds the earliest arrival journey between two stops.
+     *
+     * @param source        index of the starting stop
+     * @param target        index of the destination stop
+     * @param departureTime the departure time in seconds since midnight
+     * @param maxTransfers  the maximum number of vehicle changes
+     * @return the journey, or null if the target cannot be reached
+     */
+    Journey findJourney(int source, int target, int departureTime, int maxTransfers) {
+        QueryState state = queryState.get();
+        state.reset();
+
+        if (source == target) {
+            return new Journey(Collections.emptyList(), departureTime, departureTime);
+        }
+
+        // Stops from which the target can be reached on foot
+        setTargetWalk(state, target, 0);
+        for (int f = footpathStart[target]; f < footpathStart[target + 1]; f++) {
+            setTargetWalk(state, footpathTarget[f], footpathDuration[f]);
+        }
+
+        int best = Integer.MAX_VALUE;
+        int bestSegment = -1;
+        int bestExit = -1;
+        if (state.targetWalk[source] != Integer.MAX_VALUE) {
+            best = departureTime + state.targetWalk[source];
+        }
+
+        // Round 0: board every line near the source
+        enqueueLinesAt(state, source, departureTime);
+        for (int f = footpathStart[source]; f < footpathStart[source + 1]; f++) {
+            enqueueLinesAt(state, footpathTarget[f], departureTime + footpathDuration[f]);
+        }
+
+        int roundStart = 0;
+        long transfers = 0;     // only reported with metrics enabled
+        for (int round = 0; round <= maxTransfers && roundStart < state.segmentTrip.size(); round++) {
+            int roundEnd = state.segmentTrip.size();
+
+            for (int seg = roundStart; seg < roundEnd; seg++) {
+                int trip = state.segmentTrip.get(seg);
+                int base = tripStart[trip];
+                int to = state.segmentTo.get(seg);
+                for (int k = state.segmentFrom.get(seg) + 1; k < to; k++) {
+                    int arrival = stopTimeArrival[base + k];
+                    if (arrival >= best) {
+                        break;
+                    }
+                    int walk = state.targetWalk[stopTimeStop[base + k]];
+                    if (walk != Integer.MAX_VALUE && arrival + walk < best) {
+                        best = arrival + walk;
+                        bestSegment = seg;
+                        bestExit = k;
+                    }
+                }
+            }
+
+            if (round < maxTransfers) {
+                for (int seg = roundStart; seg < roundEnd; seg++) {
+                    int trip = state.segmentTrip.get(seg);
+                    int base = tripStart[trip];
+                    int to = state.segmentTo.get(seg);
+                    for (int k = state.segmentFrom.get(seg) + 1; k < to; k++) {
+                        if (stopTimeArrival[base + k] >= best) {
+                            break;
+                        }
+                        transfers += transferStart[base + k + 1] - transferStart[base + k];
+                        for (int tr = transferStart[base + k]; tr < transferStart[base + k + 1]; tr++) {
+                            enqueue(state, transferTrip[tr], transferPosition[tr], seg, k);
+                        }
+                    }
+                }
+            }
+            roundStart = roundEnd;
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.recordSearch(state.segmentTrip.size(), transfers);
+        }
+
+        if (best == Integer.MAX_VALUE) {
+            return null;
+        }
+        return reconstruct(state, source, target, departureTime, best, bestSegment, bestExit);
+    }
+
+    private void setTargetWalk(QueryState state, int stop, int seconds) {
+        if (state.targetWalk[stop] == Integer.MAX_VALUE) {
+            state.touchedStops.add(stop);
+        }
+        state.targetWalk[stop] = Math.min(state.targetWalk[stop], seconds);
+    }
+
+    private void enqueueLinesAt(QueryState state, int stop, int time) {
+        for (int s = stopLineStart[stop]; s < stopLineStart[stop + 1]; s++) {
+            int line = stopLineLine[s];
+            int position = stopLinePosition[s];
+            if (position == lineLength(line) - 1) {
+                continue;
+            }
+            int trip = earliestTrip(line, position, time);
+            if (trip >= 0) {
+                enqueue(state, trip, position, -1, -1);
+            }
+        }
+    }
+
+    /**
+     * Queues trip {@code trip} boarded at {@code position}, unless that part of
+     * it is already queued, and marks the later trips of its line as reached
+     * from {@code position} on.
+     */
+    private void enqueue(QueryState state, int trip, int position, int parent, int parentExit) {
+        int reached = Math.min(state.reachedPosition[trip], tripLength(trip));
+        if (position >= reached) {
+            return;
+        }
+        state.segmentTrip.add(trip);
+        state.segmentFrom.add(position);
+        // The stop where the trip was boarded before is still ours to alight at
+        state.segmentTo.add(Math.min(reached + 1, tripLength(trip)));
+        state.segmentParent.add(parent);
+        state.segmentParentExit.add(parentExit);
+
+        int lineEnd = lineTripStart[tripLine[trip] + 1];
+        for (int u = trip; u < lineEnd && state.reachedPosition[u] > position; u++) {
+            if (state.reachedPosition[u] == Integer.MAX_VALUE) {
+                state.touchedTrips.add(u);
+            }
+            state.reachedPosition[u] = position;
+        }
+    }
+
+    /**
+     * Turns the chain of segments ending at the best exit into journey legs,
+     * adding the walks between them.
+     */
+    private Journey reconstruct(QueryState state, int source, int target, int departureTime,
+                                int arrivalTime, int segment, int exit) {
+        List<JourneyLeg> legs = new ArrayList<>();
+
+        int current = source;
+        int time = departureTime;
+        if (segment >= 0) {
+            List<JourneyLeg> rides = new ArrayList<>();
+            int seg = segment;
+            int segExit = exit;
+            while (seg >= 0) {
+                int trip = state.segmentTrip.get(seg);
+                int base = tripStart[trip];
+                int board = state.segmentFrom.get(seg);
+                rides.add(new JourneyLeg(
+                        stops[stopTimeStop[base + board]], stops[stopTimeStop[base + segExit]],
+                        stopTimeDeparture[base + board], stopTimeArrival[base + segExit],
+                        tripRouteIds[trip], tripIds[trip], tripHeadSigns[trip], false
+                ));
+                segExit = state.segmentParentExit.get(seg);
+                seg = state.segmentParent.get(seg);
+            }
+            Collections.reverse(rides);
+
+            for (JourneyLeg ride : rides) {
+                if (ride.from.index != current) {
+                    legs.add(walk(current, ride.from.index, time));
+                }
+                legs.add(ride);
+                current = ride.to.index;
+                time = ride.arrivalTime;
+            }
+        }
+        if (current != target) {
+            // Final walk; its duration is whatever remains until the arrival
+            legs.add(new JourneyLeg(stops[current], stops[target], time, arrivalTime,
+                    "WALK", null, "Walk to " + stops[target].name, true));
+        }
+        return new Journey(legs, departureTime, arrivalTime);
+    }
+
+    private JourneyLeg walk(int from, int to, int start) {
+        int duration = 0;
+        for (int f = footpathStart[from]; f < footpathStart[from + 1]; f++) {
+            if (footpathTarget[f] == to) {
+                duration = footpathDuration[f];
+                break;
+            }
+        }
+        return new JourneyLeg(stops[from], stops[to], start, start + duration,
+                "WALK", null, "Walk to " + stops[to].name, true);
+    }
+
+    /**
+     * @return the number of precomputed trip-to-trip transfers
+     */
+    int getTransferCount() {
+        return transferTrip.length;
+    }
+
+    /**
+     * @return the number of trips the connections were rebuilt into
+     */
+    int getTripCount() {
+        return tripIds.length;
+    }
+}
@@ -3,18 +3,25 @@ package routing.routingEngineDijkstra.dijkstra.converters;
 import routing.routingEngineDijkstra.adiModels.AdiRouteInfo;
 import routing.routingEngineDijkstra.adiModels.AdiRouteStep;
 import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
 import routing.routingEngineDijkstra.dijkstra.model.input.*;
 import routing.routingEngineDijkstra.dijkstra.model.output.*;
+import routing.routingEngineDijkstra.dijkstra.service.HaversineDistanceCalculator;
 import routing.routingEngineModels.*;
+import routing.routingEngineModels.utils.ServiceTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Provides utility methods for converting between routing engine models and Dijkstra-specific models.
  */
 public class DijkstraModelConverter {
 
+    private static final HaversineDistanceCalculator DISTANCE_CALCULATOR = new HaversineDistanceCalculator();
+
     //really regretting this
     /**
      * Converts an InputJourney to a DijkstraInputJourney.
@@ -80,6 +87,35 @@ public class DijkstraModelConverter {
         );
     }
 
+    /**
+     * Converts a Journey (as produced by the CSA and RAPTOR engines) to a FinalRoute.
+     * Step durations are in seconds and every step starts at the departure time of its leg.
+     *
+     * @param journey   the journey to convert
+     * @param routeInfo lookup of route information by route ID
+     * @return a FinalRoute object
+     */
+    public static FinalRoute toFinalRoute(Journey journey, Function<String, DijkstraRouteInfo> routeInfo) {
+        ArrayList<AdiRouteStep> routeSteps = new ArrayList<>();
+        double totalDistance = 0;
+
+        for (JourneyLeg leg : journey.legs) {
+            Coordinates to = new Coordinates(leg.to.lat, leg.to.lon);
+            LocalTime startTime = LocalTime.ofSecondOfDay(ServiceTime.toClock(leg.departureTime));
+            totalDistance += DISTANCE_CALCULATOR.calculateDistanceMeters(leg.from, leg.to);
+
+            if (leg.isWalking) {
+                routeSteps.add(new AdiRouteStep("walk", to, leg.getDuration(), startTime));
+            } else {
+                DijkstraRouteInfo info = routeInfo.apply(leg.routeId);
+                AdiRouteInfo adiRouteInfo = info == null ? null
+                        : new AdiRouteInfo(info.operator, info.shortName, info.longName, leg.headSign);
+                routeSteps.add(new AdiRouteStep("ride", to, leg.getDuration(), startTime, leg.to.name, adiRouteInfo));
+            }
+        }
+        return new FinalRoute(routeSteps, totalDistance, journey.getTotalTravelTime());
+    }
+
     /**
      * Converts a DijkstraRouteStep to an AdiRouteStep, handling both walking and transit steps.
      *
@@ -1,5 +1,7 @@
 package routing.routingEngineDijkstra.dijkstra.model.input;
 
+import routing.routingEngineModels.utils.ServiceTime;
+
 /**
  * Represents a connection between two stops in the routing system, including departure and arrival times, trip, and route details.
  */
@@ -18,6 +20,12 @@ public class DijkstraConnection {
     public final String routeId;
     /** The head sign displayed for the route, or a description for walking connections. */
     public final String headSign;
+    /**
+     * The service day of the trip relative to the searched day: 0 for the same
+     * day, -1 for the previous day's trips running after midnight, 1 for the
+     * next day's trips. Times are always on the searched day's timeline.
+     */
+    public final int serviceDay;
 
     /**
      * Constructs a DijkstraConnection with the specified details.
@@ -32,6 +40,23 @@ public class DijkstraConnection {
      */
     public DijkstraConnection(DijkstraStop from, DijkstraStop to, int departureTime, int arrivalTime,
                               String tripId, String routeId, String headSign) {
+        this(from, to, departureTime, arrivalTime, tripId, routeId, headSign, 0);
+    }
+
+    /**
+     * Constructs a DijkstraConnection of a trip running on another service day.
+     *
+     * @param from          the starting stop
+     * @param to            the destination stop
+     * @param departureTime the departure time in seconds since midnight of the searched day
+     * @param arrivalTime   the arrival time in seconds since midnight of the searched day
+     * @param tripId        the unique trip identifier, or null for walking
+     * @param routeId       the route identifier, or "WALK" for walking
+     * @param headSign      the head sign or description of the route
+     * @param serviceDay    the trip's service day relative to the searched day
+     */
+    public DijkstraConnection(DijkstraStop from, DijkstraStop to, int departureTime, int arrivalTime,
+                              String tripId, String routeId, String headSign, int serviceDay) {
         this.from = from;
         this.to = to;
         this.departureTime = departureTime;
@@ -39,6 +64,7 @@ public class DijkstraConnection {
         this.tripId = tripId;
         this.routeId = routeId;
         this.headSign = headSign;
+        this.serviceDay = serviceDay;
     }
 
     /**
@@ -59,7 +85,35 @@ public class DijkstraConnection {
     public DijkstraConnection withUpdatedTimes(int newDepartureTime) {
         return new DijkstraConnection(
                 from, to, newDepartureTime, newDepartureTime + getDuration(),
-                tripId, routeId, headSign
+                tripId, routeId, headSign, serviceDay
         );
     }
+
+    /**
+     * Creates a copy of this connection for the same trip running a number of
+     * days later (or earlier, if negative), with its times shifted by as many days.
+     *
+     * @param days the number of days to move the trip
+     * @return a new DijkstraConnection on the other service day
+     */
+    public DijkstraConnection onServiceDay(int days) {
+        int shift = days * ServiceTime.DAY_SECONDS;
+        return new DijkstraConnection(
+                from, to, departureTime + shift, arrivalTime + shift,
+                tripId, routeId, headSign, serviceDay + days
+        );
+    }
+
+    /**
+     * Identifies the vehicle run: the trip ID, qualified by the service day
+     * when the trip runs on another day than the searched one.
+     *
+     * @return the trip key, or null for walking connections
+     */
+    public String tripKey() {
+        if (tripId == null || serviceDay == 0) {
+            return tripId;
+        }
+        return tripId + "@" + serviceDay;
+    }
 }
\ No newline at end of file
@@ -14,9 +14,11 @@ public class DijkstraStop {
     public final double lat;
     /** The longitude of the stop's location. */
     public final double lon;
+    /** Dense index of the stop within its network, or -1 for stops outside of one. */
+    public final int index;
 
     /**
-     * Constructs a DijkstraStop with the specified details.
+     * Constructs a DijkstraStop that is not part of an indexed network.
      *
      * @param id   the unique identifier of the stop
      * @param name the name of the stop
@@ -24,9 +26,23 @@ public class DijkstraStop {
      * @param lon  the longitude of the stop's location
      */
     public DijkstraStop(String id, String name, double lat, double lon) {
+        this(id, name, lat, lon, -1);
+    }
+
+    /**
+     * Constructs a DijkstraStop with the specified details.
+     *
+     * @param id    the unique identifier of the stop
+     * @param name  the name of the stop
+     * @param lat   the latitude of the stop's location
+     * @param lon   the longitude of the stop's location
+     * @param index the dense index of the stop, from 0 to the number of stops - 1
+     */
+    public DijkstraStop(String id, String name, double lat, double lon, int index) {
         this.id = id;
         this.name = name;
         this.lat = lat;
         this.lon = lon;
+        this.index = index;
     }
 }
\ No newline at end of file
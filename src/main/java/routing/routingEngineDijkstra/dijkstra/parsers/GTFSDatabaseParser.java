@@ -1,21 +1,37 @@
 package routing.routingEngineDijkstra.dijkstra.parsers;
 
+import parsers.ZipToSQLite;
 import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineModels.utils.ServiceTime;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
 
 /**
  * Parses GTFS data from a SQLite database to create routing model objects for stops, routes, and connections.
+ * The parsed data is kept in a {@link TimetableSnapshot} next to the database and reused while the feed is unchanged.
  */
 public class GTFSDatabaseParser {
-    private static final String DB_PATH = "jdbc:sqlite:budapest_gtfs.db";
+    private static final String DB_FILE = "budapest_gtfs.db";
+    private static final String DB_PATH = "jdbc:sqlite:" + DB_FILE;
+    // Snapshot location, -Drouting.snapshotPath; an empty path disables snapshots
+    private static final String SNAPSHOT_PATH = System.getProperty("routing.snapshotPath", "budapest_gtfs.snapshot");
+    // Checksum the whole snapshot when opening it: -Drouting.snapshotVerify=true
+    private static final boolean SNAPSHOT_VERIFY = Boolean.getBoolean("routing.snapshotVerify");
+    // How far past midnight the next service day's trips are added: -Drouting.nextDayHorizonSeconds
+    private static final int NEXT_DAY_HORIZON_SECONDS = Integer.getInteger("routing.nextDayHorizonSeconds", 4 * 3600);
+    // Search mode of the routers created without one: -Drouting.dijkstraMode=TRIP_BASED
+    private static final String SEARCH_MODE = System.getProperty("routing.dijkstraMode", "STOP_BASED");
 
     /**
-     * Parses stops from the GTFS database.
+     * Parses stops from the GTFS database. Stops get dense indices in stop_id
+     * order, which the router uses to address its arrays.
      *
      * @return a map of stop IDs to DijkstraStop objects
      * @throws SQLException if a database error occurs
@@ -24,14 +40,16 @@ public class GTFSDatabaseParser {
         Map<String, DijkstraStop> stops = new HashMap<>();
         try (Connection conn = DriverManager.getConnection(DB_PATH);
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT stop_id, stop_name, stop_lat, stop_lon FROM stops")) {
+             ResultSet rs = stmt.executeQuery("SELECT stop_id, stop_name, stop_lat, stop_lon FROM stops ORDER BY stop_id")) {
 
             while (rs.next()) {
                 String id = rs.getString("stop_id");
                 String name = rs.getString("stop_name");
                 double lat = rs.getDouble("stop_lat");
                 double lon = rs.getDouble("stop_lon");
-                stops.put(id, new DijkstraStop(id, name, lat, lon));
+                if (!stops.containsKey(id)) {
+                    stops.put(id, new DijkstraStop(id, name, lat, lon, stops.size()));
+                }
             }
         }
         return stops;
@@ -62,6 +80,13 @@ public class GTFSDatabaseParser {
     /**
      * Parses connections between stops from the GTFS database.
      *
+     * Times are service-day seconds of one searched day, extended across both
+     * midnights: hops of the previous day's trips departing at 24:00:00 or
+     * later are added one day earlier, and hops of the next day's trips
+     * departing before the next-day horizon one day later. Those copies carry
+     * their {@link DijkstraConnection#serviceDay}, so they are kept apart from
+     * the same trip on the searched day.
+     *
      * @param stops a map of stop IDs to DijkstraStop objects
      * @return a map of stop IDs to lists of outgoing DijkstraConnection objects
      * @throws SQLException if a database error occurs
@@ -69,17 +94,9 @@ public class GTFSDatabaseParser {
     public Map<String, List<DijkstraConnection>> parseConnections(Map<String, DijkstraStop> stops) throws SQLException {
         Map<String, List<DijkstraConnection>> connections = new HashMap<>();
 
-        String query = "SELECT t.trip_id, t.route_id, t.trip_headsign, " +
-                "st1.stop_id as from_stop, st1.departure_time as dep_time, " +
-                "st2.stop_id as to_stop, st2.arrival_time as arr_time " +
-                "FROM stop_times st1 " +
-                "JOIN stop_times st2 ON st1.trip_id = st2.trip_id AND st1.stop_sequence + 1 = st2.stop_sequence " +
-                "JOIN trips t ON st1.trip_id = t.trip_id " +
-                "ORDER BY st1.trip_id, st1.stop_sequence";
-
         try (Connection conn = DriverManager.getConnection(DB_PATH);
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             ResultSet rs = stmt.executeQuery(connectionQuery(conn))) {
 
             while (rs.next()) {
                 String tripId = rs.getString("trip_id");
@@ -87,8 +104,14 @@ public class GTFSDatabaseParser {
                 String headSign = rs.getString("trip_headsign");
                 String fromStopId = rs.getString("from_stop");
                 String toStopId = rs.getString("to_stop");
-                int depTime = parseGTFSTime(rs.getString("dep_time"));
-                int arrTime = parseGTFSTime(rs.getString("arr_time"));
+                int depTime = rs.getInt("dep_secs");
+                if (rs.wasNull()) {
+                    continue;
+                }
+                int arrTime = rs.getInt("arr_secs");
+                if (rs.wasNull()) {
+                    continue;
+                }
 
                 DijkstraStop fromStop = stops.get(fromStopId);
                 DijkstraStop toStop = stops.get(toStopId);
@@ -97,7 +120,14 @@ public class GTFSDatabaseParser {
                     DijkstraConnection connection = new DijkstraConnection(
                             fromStop, toStop, depTime, arrTime, tripId, routeId, headSign);
 
-                    connections.computeIfAbsent(fromStopId, k -> new ArrayList<>()).add(connection);
+                    List<DijkstraConnection> outgoing = connections.computeIfAbsent(fromStopId, k -> new ArrayList<>());
+                    outgoing.add(connection);
+                    if (depTime >= ServiceTime.DAY_SECONDS) {
+                        outgoing.add(connection.onServiceDay(-1));
+                    }
+                    if (depTime < NEXT_DAY_HORIZON_SECONDS) {
+                        outgoing.add(connection.onServiceDay(1));
+                    }
                 }
             }
         }
@@ -105,32 +135,133 @@ public class GTFSDatabaseParser {
     }
 
     /**
-     * Parses a GTFS time string (HH:MM:SS) into seconds since midnight.
-     *
-     * @param timeStr the time string in HH:MM:SS format
-     * @return the time in seconds since midnight
-     * @throws NumberFormatException if the time string is invalid
+     * Selects every hop between consecutive stops of a trip, with the
+     * service-day seconds stored by the import (null for blank times).
      */
-    private int parseGTFSTime(String timeStr) {
-        String[] parts = timeStr.split(":");
-        int hours = Integer.parseInt(parts[0]);
-        int minutes = Integer.parseInt(parts[1]);
-        int seconds = Integer.parseInt(parts[2]);
-        return hours * 3600 + minutes * 60 + seconds;
+    private static String connectionQuery(Connection conn) throws SQLException {
+        return "SELECT t.trip_id, t.route_id, t.trip_headsign, " +
+                "st1.stop_id as from_stop, " +
+                ZipToSQLite.secondsExpression(conn, "stop_times", "st1", "departure_time") + " as dep_secs, " +
+                "st2.stop_id as to_stop, " +
+                ZipToSQLite.secondsExpression(conn, "stop_times", "st2", "arrival_time") + " as arr_secs " +
+                "FROM stop_times st1 " +
+                "JOIN stop_times st2 ON st1.trip_id = st2.trip_id AND st1.stop_sequence + 1 = st2.stop_sequence " +
+                "JOIN trips t ON st1.trip_id = t.trip_id " +
+                "ORDER BY st1.trip_id, st1.stop_sequence";
     }
 
     /**
-     * Creates a DijkstraRouter instance from GTFS data.
+     * Creates a DijkstraRouter instance from GTFS data, in the search mode set
+     * with {@code routing.dijkstraMode} (STOP_BASED unless set).
      *
      * @param maxWalkingDistanceMeters the maximum walking distance in meters
      * @return a configured DijkstraRouter
      * @throws SQLException if a database error occurs
+     * @throws IllegalArgumentException if {@code routing.dijkstraMode} is not a search mode
      */
     public static DijkstraRouter createRouterFromGTFS(int maxWalkingDistanceMeters) throws SQLException {
+        return createRouterFromGTFS(maxWalkingDistanceMeters, configuredSearchMode());
+    }
+
+    /**
+     * @return the search mode named by {@code routing.dijkstraMode}, ignoring case
+     */
+    static DijkstraRouter.SearchMode configuredSearchMode() {
+        try {
+            return DijkstraRouter.SearchMode.valueOf(SEARCH_MODE.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown routing.dijkstraMode: " + SEARCH_MODE
+                    + ", expected one of " + Arrays.toString(DijkstraRouter.SearchMode.values()), e);
+        }
+    }
+
+    /**
+     * Creates a DijkstraRouter instance from GTFS data using the given search mode.
+     *
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @param searchMode               how the router searches stop-to-stop journeys
+     * @return a configured DijkstraRouter
+     * @throws SQLException if a database error occurs
+     */
+    public static DijkstraRouter createRouterFromGTFS(int maxWalkingDistanceMeters,
+                                                      DijkstraRouter.SearchMode searchMode) throws SQLException {
+        TimetableSnapshot snapshot = openSnapshot(maxWalkingDistanceMeters);
+        if (snapshot != null) {
+            return new DijkstraRouter(snapshot.getStops(), snapshot.getConnections(), snapshot.getRoutes(),
+                    maxWalkingDistanceMeters, searchMode);
+        }
+
         GTFSDatabaseParser parser = new GTFSDatabaseParser();
         Map<String, DijkstraStop> stops = parser.parseStops();
         Map<String, DijkstraRouteInfo> routes = parser.parseRoutes();
         Map<String, List<DijkstraConnection>> connections = parser.parseConnections(stops);
-        return new DijkstraRouter(stops, connections, routes, maxWalkingDistanceMeters);
+        DijkstraRouter router = new DijkstraRouter(stops, connections, routes, maxWalkingDistanceMeters, searchMode);
+        writeSnapshot(maxWalkingDistanceMeters, stops, routes, router.getConnections());
+        return router;
+    }
+
+    /**
+     * Opens the snapshot of the current feed, if one was written for the given
+     * walking distance. Problems reading it are logged and treated as a miss.
+     *
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @return the snapshot, or null if there is no current one
+     */
+    public static TimetableSnapshot openSnapshot(int maxWalkingDistanceMeters) {
+        if (SNAPSHOT_PATH.isEmpty() || !Files.isRegularFile(Path.of(DB_FILE))) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            TimetableSnapshot snapshot = TimetableSnapshot.openIfCurrent(
+                    Path.of(SNAPSHOT_PATH), feedHash(), maxWalkingDistanceMeters, SNAPSHOT_VERIFY);
+            if (snapshot != null) {
+                System.err.printf("Loaded snapshot %s in %d ms%n", SNAPSHOT_PATH, (System.nanoTime() - start) / 1_000_000);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            System.err.println("Unable to read snapshot " + SNAPSHOT_PATH + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of the current feed. Failing to write it only costs
+     * the next start-up a full parse, so errors are logged and ignored.
+     *
+     * @param maxWalkingDistanceMeters the walking distance the footpaths were computed for
+     * @param stops                    the parsed stops
+     * @param routes                   the parsed routes
+     * @param connections              the outgoing connections, walking ones included
+     */
+    public static void writeSnapshot(int maxWalkingDistanceMeters, Map<String, DijkstraStop> stops,
+                                     Map<String, DijkstraRouteInfo> routes,
+                                     Map<String, List<DijkstraConnection>> connections) {
+        if (SNAPSHOT_PATH.isEmpty() || !Files.isRegularFile(Path.of(DB_FILE))) {
+            return;
+        }
+        try {
+            TimetableSnapshot.write(Path.of(SNAPSHOT_PATH), feedHash(),
+                    maxWalkingDistanceMeters, stops, routes, connections);
+        } catch (IOException e) {
+            System.err.println("Unable to write snapshot " + SNAPSHOT_PATH + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Identifies the current feed without reading the database file: the
+     * hash ZipToSQLite derives from the entries it loaded, or the file's size
+     * and modification time for databases it did not create.
+     */
+    private static long feedHash() throws IOException {
+        try (Connection conn = DriverManager.getConnection(DB_PATH)) {
+            long hash = ZipToSQLite.feedHash(conn);
+            if (hash != 0) {
+                return hash;
+            }
+        } catch (SQLException e) {
+            System.err.println("Unable to read the feed hash of " + DB_FILE + ": " + e.getMessage());
+        }
+        return TimetableSnapshot.fileStamp(Path.of(DB_FILE));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,522 @@
+package routing.routingEngineDijkstra.dijkstra.parsers;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * TimetableSnapshot.java
+ *
+ * Versioned binary snapshot of the parsed GTFS data: stops, routes, trips,
+ * the transit connections as parallel int arrays grouped by departure stop,
+ * and the walking connections between stops. Written once after a full parse
+ * and memory-mapped on later start-ups, so the stop_times query, the time
+ * parsing and the all-pairs footpath search are skipped, and JVMs on the same
+ * host share the file through the page cache.
+ *
+ * Layout (little-endian): a 32-byte header with magic, version, the hash of
+ * the source feed, the walking distance the footpaths were computed for, the
+ * CRC32C and the length of the payload; then the payload sections described
+ * in {@link #write}. A snapshot whose version, feed hash, walking distance or
+ * length does not match is treated as stale. The feed hash is supplied by the
+ * caller and must be cheap to compute, since it is checked on every start-up;
+ * the payload checksum is only verified on request.
+ */
+public final class TimetableSnapshot {
+
+    private static final int MAGIC = 0x544E5352;          // "RSNT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Map<String, DijkstraStop> stops;
+    private final Map<String, DijkstraRouteInfo> routes;
+    private final Map<String, List<DijkstraConnection>> connections;
+
+    private TimetableSnapshot(Map<String, DijkstraStop> stops, Map<String, DijkstraRouteInfo> routes,
+                              Map<String, List<DijkstraConnection>> connections) {
+        this.stops = stops;
+        this.routes = routes;
+        this.connections = connections;
+    }
+
+    /**
+     * @return the stops, keyed by stop ID and carrying their dense indices
+     */
+    public Map<String, DijkstraStop> getStops() {
+        return stops;
+    }
+
+    /**
+     * @return the routes, keyed by route ID
+     */
+    public Map<String, DijkstraRouteInfo> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return the outgoing transit and walking connections, keyed by stop ID
+     */
+    public Map<String, List<DijkstraConnection>> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Stamps a file by its size and modification time, for feeds that do not
+     * record a hash of their own. The database's write-ahead log, if any, is
+     * stamped too, since committed changes may still be in it.
+     *
+     * @param feed the GTFS database file
+     * @return the stamp
+     * @throws IOException if the file's attributes cannot be read
+     */
+    public static long fileStamp(Path feed) throws IOException {
+        long h = 0xcbf29ce484222325L;
+        for (Path file : new Path[] {feed, feed.resolveSibling(feed.getFileName() + "-wal")}) {
+            if (Files.exists(file)) {
+                h = (h ^ Files.size(file)) * 0x100000001b3L;
+                h = (h ^ Files.getLastModifiedTime(file).toMillis()) * 0x100000001b3L;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Opens a snapshot if it exists and is current.
+     *
+     * @param file                     the snapshot file
+     * @param feedHash                 hash of the feed the data must come from
+     * @param maxWalkingDistanceMeters walking distance the footpaths must be computed for
+     * @param verifyChecksum           whether to checksum the whole payload, which reads every page
+     * @return the snapshot, or null if it is missing or stale
+     * @throws IOException if the file cannot be read
+     */
+    public static TimetableSnapshot openIfCurrent(Path file, long feedHash, int maxWalkingDistanceMeters,
+                                                  boolean verifyChecksum) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return stale(file, "truncated");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                return stale(file, "unknown format or version");
+            }
+            if (buf.getLong(8) != feedHash) {
+                return stale(file, "built from another feed");
+            }
+            if (buf.getInt(16) != maxWalkingDistanceMeters) {
+                return stale(file, "footpaths for " + buf.getInt(16) + " m");
+            }
+            long payloadLength = buf.getLong(24);
+            if (payloadLength != size - HEADER_BYTES || payloadLength > Integer.MAX_VALUE) {
+                return stale(file, "truncated");
+            }
+            if (verifyChecksum) {
+                CRC32C crc = new CRC32C();
+                crc.update(buf.slice(HEADER_BYTES, (int) payloadLength));
+                if ((int) crc.getValue() != buf.getInt(20)) {
+                    return stale(file, "checksum mismatch");
+                }
+            }
+            return read(buf.slice(HEADER_BYTES, (int) payloadLength).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Writes a snapshot, replacing any previous one atomically. Payload sections:
+     * <ol>
+     * <li>counts: stops, routes, trips, connections, footpaths, strings, string bytes</li>
+     * <li>string table: byte offsets, then the UTF-8 bytes padded to 8 bytes</li>
+     * <li>stops by index: latitudes and longitudes, then id and name strings</li>
+     * <li>routes: id, operator, short name, long name and head sign strings</li>
+     * <li>trips (one per trip and service day): id, route and head sign strings, service day</li>
+     * <li>connections: start per departure stop, then arrival stop, departure,
+     *     arrival and trip of each connection</li>
+     * <li>footpaths: start per stop, then target stop and walking seconds</li>
+     * </ol>
+     *
+     * @param file                     the snapshot file
+     * @param feedHash                 hash of the feed the data comes from
+     * @param maxWalkingDistanceMeters walking distance the footpaths were computed for
+     * @param stops                    the stops, with dense indices
+     * @param routes                   the routes
+     * @param connections              the outgoing connections, walking ones included
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, long feedHash, int maxWalkingDistanceMeters,
+                             Map<String, DijkstraStop> stops, Map<String, DijkstraRouteInfo> routes,
+                             Map<String, List<DijkstraConnection>> connections) throws IOException {
+        StringTable strings = new StringTable();
+
+        DijkstraStop[] byIndex = new DijkstraStop[stops.size()];
+        for (DijkstraStop stop : stops.values()) {
+            byIndex[stop.index] = stop;
+        }
+
+        // Trips, and connections grouped by departure stop
+        Map<String, Integer> tripIndex = new HashMap<>();
+        List<DijkstraConnection> tripFirst = new ArrayList<>();
+        int[] connectionStart = new int[byIndex.length + 1];
+        int[] footpathStart = new int[byIndex.length + 1];
+        List<DijkstraConnection> transit = new ArrayList<>();
+        List<DijkstraConnection> walking = new ArrayList<>();
+        for (int s = 0; s < byIndex.length; s++) {
+            connectionStart[s] = transit.size();
+            footpathStart[s] = walking.size();
+            for (DijkstraConnection c : connections.getOrDefault(byIndex[s].id, List.of())) {
+                if (c.to.index < 0 || c.to.index >= byIndex.length) {
+                    continue;
+                }
+                if ("WALK".equals(c.routeId) || c.tripId == null) {
+                    walking.add(c);
+                } else {
+                    transit.add(c);
+                    if (tripIndex.putIfAbsent(c.tripKey(), tripFirst.size()) == null) {
+                        tripFirst.add(c);
+                    }
+                }
+            }
+        }
+        connectionStart[byIndex.length] = transit.size();
+        footpathStart[byIndex.length] = walking.size();
+
+        for (DijkstraStop stop : byIndex) {
+            strings.intern(stop.id);
+            strings.intern(stop.name);
+        }
+        for (Map.Entry<String, DijkstraRouteInfo> e : routes.entrySet()) {
+            strings.intern(e.getKey());
+            strings.intern(e.getValue().operator);
+            strings.intern(e.getValue().shortName);
+            strings.intern(e.getValue().longName);
+            strings.intern(e.getValue().headSign);
+        }
+        for (DijkstraConnection c : tripFirst) {
+            strings.intern(c.tripId);
+            strings.intern(c.routeId);
+            strings.intern(c.headSign);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotWriter out = new SnapshotWriter(channel);
+
+            out.putInt(byIndex.length);
+            out.putInt(routes.size());
+            out.putInt(tripFirst.size());
+            out.putInt(transit.size());
+            out.putInt(walking.size());
+            out.putInt(strings.size());
+            out.putInt(strings.byteCount());
+
+            strings.writeTo(out);
+
+            for (DijkstraStop stop : byIndex) {
+                out.putDouble(stop.lat);
+            }
+            for (DijkstraStop stop : byIndex) {
+                out.putDouble(stop.lon);
+            }
+            for (DijkstraStop stop : byIndex) {
+                out.putInt(strings.indexOf(stop.id));
+            }
+            for (DijkstraStop stop : byIndex) {
+                out.putInt(strings.indexOf(stop.name));
+            }
+
+            for (Map.Entry<String, DijkstraRouteInfo> e : routes.entrySet()) {
+                DijkstraRouteInfo route = e.getValue();
+                out.putInt(strings.indexOf(e.getKey()));
+                out.putInt(strings.indexOf(route.operator));
+                out.putInt(strings.indexOf(route.shortName));
+                out.putInt(strings.indexOf(route.longName));
+                out.putInt(strings.indexOf(route.headSign));
+            }
+
+            for (DijkstraConnection c : tripFirst) {
+                out.putInt(strings.indexOf(c.tripId));
+                out.putInt(strings.indexOf(c.routeId));
+                out.putInt(strings.indexOf(c.headSign));
+                out.putInt(c.serviceDay);
+            }
+
+            for (int start : connectionStart) {
+                out.putInt(start);
+            }
+            for (DijkstraConnection c : transit) {
+                out.putInt(c.to.index);
+            }
+            for (DijkstraConnection c : transit) {
+                out.putInt(c.departureTime);
+            }
+            for (DijkstraConnection c : transit) {
+                out.putInt(c.arrivalTime);
+            }
+            for (DijkstraConnection c : transit) {
+                out.putInt(tripIndex.get(c.tripKey()));
+            }
+
+            for (int start : footpathStart) {
+                out.putInt(start);
+            }
+            for (DijkstraConnection c : walking) {
+                out.putInt(c.to.index);
+            }
+            for (DijkstraConnection c : walking) {
+                out.putInt(c.getDuration());
+            }
+
+            out.finish(feedHash, maxWalkingDistanceMeters);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static TimetableSnapshot stale(Path file, String reason) {
+        System.err.println("Snapshot " + file + " is stale (" + reason + "), rebuilding");
+        return null;
+    }
+
+    /**
+     * Rebuilds the model objects from the mapped payload.
+     */
+    private static TimetableSnapshot read(ByteBuffer buf) {
+        int stopCount = buf.getInt();
+        int routeCount = buf.getInt();
+        int tripCount = buf.getInt();
+        int connectionCount = buf.getInt();
+        int footpathCount = buf.getInt();
+        int stringCount = buf.getInt();
+        int stringBytes = buf.getInt();
+
+        IntBuffer stringOffsets = ints(buf, stringCount + 1);
+        byte[] utf8 = new byte[stringBytes];
+        buf.get(utf8);
+        buf.position(align8(buf.position()));
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int from = stringOffsets.get(i);
+            strings[i] = new String(utf8, from, stringOffsets.get(i + 1) - from, StandardCharsets.UTF_8);
+        }
+
+        DoubleBuffer lats = doubles(buf, stopCount);
+        DoubleBuffer lons = doubles(buf, stopCount);
+        IntBuffer stopIds = ints(buf, stopCount);
+        IntBuffer stopNames = ints(buf, stopCount);
+        DijkstraStop[] byIndex = new DijkstraStop[stopCount];
+        Map<String, DijkstraStop> stops = new HashMap<>(stopCount * 2);
+        for (int s = 0; s < stopCount; s++) {
+            byIndex[s] = new DijkstraStop(string(strings, stopIds.get(s)), string(strings, stopNames.get(s)),
+                    lats.get(s), lons.get(s), s);
+            stops.put(byIndex[s].id, byIndex[s]);
+        }
+
+        Map<String, DijkstraRouteInfo> routes = new HashMap<>(routeCount * 2);
+        for (int r = 0; r < routeCount; r++) {
+            String id = string(strings, buf.getInt());
+            routes.put(id, new DijkstraRouteInfo(string(strings, buf.getInt()), string(strings, buf.getInt()),
+                    string(strings, buf.getInt()), string(strings, buf.getInt())));
+        }
+
+        IntBuffer trips = ints(buf, tripCount * 4);
+
+        IntBuffer connectionStart = ints(buf, stopCount + 1);
+        IntBuffer connectionTo = ints(buf, connectionCount);
+        IntBuffer connectionDep = ints(buf, connectionCount);
+        IntBuffer connectionArr = ints(buf, connectionCount);
+        IntBuffer connectionTrip = ints(buf, connectionCount);
+
+        IntBuffer footpathStart = ints(buf, stopCount + 1);
+        IntBuffer footpathTarget = ints(buf, footpathCount);
+        IntBuffer footpathSeconds = ints(buf, footpathCount);
+
+        Map<String, List<DijkstraConnection>> connections = new HashMap<>(stopCount * 2);
+        for (int s = 0; s < stopCount; s++) {
+            int transitBegin = connectionStart.get(s);
+            int transitEnd = connectionStart.get(s + 1);
+            int walkBegin = footpathStart.get(s);
+            int walkEnd = footpathStart.get(s + 1);
+            if (transitBegin == transitEnd && walkBegin == walkEnd) {
+                continue;
+            }
+            DijkstraStop from = byIndex[s];
+            List<DijkstraConnection> list = new ArrayList<>(transitEnd - transitBegin + walkEnd - walkBegin);
+            for (int c = transitBegin; c < transitEnd; c++) {
+                int t = connectionTrip.get(c) * 4;
+                list.add(new DijkstraConnection(from, byIndex[connectionTo.get(c)],
+                        connectionDep.get(c), connectionArr.get(c),
+                        string(strings, trips.get(t)), string(strings, trips.get(t + 1)),
+                        string(strings, trips.get(t + 2)), trips.get(t + 3)));
+            }
+            for (int f = walkBegin; f < walkEnd; f++) {
+                DijkstraStop to = byIndex[footpathTarget.get(f)];
+                list.add(new DijkstraConnection(from, to, 0, footpathSeconds.get(f),
+                        null, "WALK", "Walk to " + to.name));
+            }
+            connections.put(from.id, list);
+        }
+        return new TimetableSnapshot(stops, routes, connections);
+    }
+
+    private static IntBuffer ints(ByteBuffer buf, int count) {
+        IntBuffer view = buf.slice(buf.position(), count * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        buf.position(buf.position() + count * Integer.BYTES);
+        return view;
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer buf, int count) {
+        DoubleBuffer view = buf.slice(buf.position(), count * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        buf.position(buf.position() + count * Double.BYTES);
+        return view;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static int align8(int position) {
+        return (position + 7) & ~7;
+    }
+
+    /**
+     * Distinct strings of the snapshot; null is stored as index -1.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<byte[]> bytes = new ArrayList<>();
+        private int byteCount;
+
+        void intern(String s) {
+            if (s != null && !index.containsKey(s)) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                index.put(s, bytes.size());
+                bytes.add(utf8);
+                byteCount += utf8.length;
+            }
+        }
+
+        int indexOf(String s) {
+            return s == null ? -1 : index.get(s);
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        int byteCount() {
+            return byteCount;
+        }
+
+        void writeTo(SnapshotWriter out) throws IOException {
+            int offset = 0;
+            for (byte[] b : bytes) {
+                out.putInt(offset);
+                offset += b.length;
+            }
+            out.putInt(offset);
+            for (byte[] b : bytes) {
+                out.put(b);
+            }
+            out.padTo8();
+        }
+    }
+
+    /**
+     * Streams the payload to the file through a small buffer, checksumming it
+     * on the way, and writes the header last.
+     */
+    private static final class SnapshotWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long written;
+
+        SnapshotWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_BYTES);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int off = 0; off < bytes.length; ) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), bytes.length - off);
+                buffer.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        void padTo8() throws IOException {
+            long position = written + buffer.position() + HEADER_BYTES;
+            for (long p = position; (p & 7) != 0; p++) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void finish(long feedHash, int maxWalkingDistanceMeters) throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(feedHash);
+            header.putInt(maxWalkingDistanceMeters);
+            header.putInt((int) crc.getValue());
+            header.putLong(written);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
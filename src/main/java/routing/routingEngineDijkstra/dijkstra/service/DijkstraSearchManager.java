@@ -1,80 +1,108 @@
 package routing.routingEngineDijkstra.dijkstra.service;
 
-import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
-import routing.routingEngineDijkstra.dijkstra.service.PathReconstructionService.SearchNode;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Manages the search process for Dijkstra's algorithm, handling node prioritization and tracking of earliest arrival times.
+ *
+ * Stops are addressed by their dense index ({@link routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop#index}).
+ * Arrival times live in an int array, settled stops in a BitSet and the queue is a binary heap of packed
+ * (time, stop) longs, so relaxing an edge neither boxes nor hashes. A manager is meant to be reused:
+ * {@link #reset()} only clears the stops touched by the previous search.
  */
 public class DijkstraSearchManager {
-    private final PriorityQueue<SearchNode> queue;
-    private final Map<String, Integer> earliestArrival;
-    private final Set<String> processedStops;
+    private final int[] earliestArrival;
+    private final BitSet processedStops;
+    private final DijkstraConnection[] reachedVia;
+    private final int[] reachedViaDeparture;
+    private final int[] touched;
+    private int touchedCount;
+    private long[] heap;
+    private int heapSize;
 
     /**
-     * Constructs a DijkstraSearchManager with initialized data structures for search management.
+     * Constructs a DijkstraSearchManager for a network of the given size.
+     *
+     * @param stopCount the number of stops, indices run from 0 to stopCount - 1
+     */
+    public DijkstraSearchManager(int stopCount) {
+        this.earliestArrival = new int[stopCount];
+        Arrays.fill(earliestArrival, Integer.MAX_VALUE);
+        this.processedStops = new BitSet(stopCount);
+        this.reachedVia = new DijkstraConnection[stopCount];
+        this.reachedViaDeparture = new int[stopCount];
+        this.touched = new int[stopCount];
+        this.heap = new long[Math.max(16, Math.min(stopCount, 1024))];
+    }
+
+    /**
+     * Clears the state left by the previous search.
      */
-    public DijkstraSearchManager() {
-        this.queue = new PriorityQueue<>(512, Comparator.comparingInt(node -> node.time));
-        this.earliestArrival = new HashMap<>(512);
-        this.processedStops = new HashSet<>(512);
+    public void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int stop = touched[i];
+            earliestArrival[stop] = Integer.MAX_VALUE;
+            reachedVia[stop] = null;
+            processedStops.clear(stop);
+        }
+        touchedCount = 0;
+        heapSize = 0;
     }
 
     /**
      * Initializes the search with the starting stop and departure time.
      *
-     * @param startStop    the starting stop
+     * @param startStop     index of the starting stop
      * @param departureTime the departure time in seconds since midnight
      */
-    public void initialize(DijkstraStop startStop, int departureTime) {
-        SearchNode startNode = new SearchNode(startStop, departureTime, null, null);
-        queue.add(startNode);
-        earliestArrival.put(startStop.id, departureTime);
+    public void initialize(int startStop, int departureTime) {
+        relax(startStop, departureTime, null, departureTime);
     }
 
     /**
-     * Retrieves the next node to process from the priority queue, ensuring it hasn't been processed and has an optimal arrival time.
+     * Retrieves the next stop to process, skipping queue entries that were superseded or already settled.
      *
-     * @return the next valid SearchNode to process, or null if no valid nodes remain
+     * @return the index of the next stop to process, or -1 if no valid entries remain
      */
-    public SearchNode getNextNode() {
-        while (!queue.isEmpty()) {
-            SearchNode current = queue.poll();
+    public int getNextStop() {
+        while (heapSize > 0) {
+            long entry = poll();
+            int stop = (int) entry;
+            int time = (int) (entry >>> 32);
 
-            if (processedStops.contains(current.stop.id)) {
+            if (processedStops.get(stop) || time > earliestArrival[stop]) {
                 continue;
             }
-
-            if (current.time <= earliestArrival.getOrDefault(current.stop.id, Integer.MAX_VALUE)) {
-                processedStops.add(current.stop.id);
-                return current;
-            }
+            processedStops.set(stop);
+            return stop;
         }
-        return null;
+        return -1;
     }
 
     /**
-     * Attempts to add a new node to the search queue if it improves the arrival time for its stop.
+     * Records a new arrival at a stop if it improves on the best known one.
      *
-     * @param newNode the node to add
-     * @return true if the node was added, false if it was not (e.g., already processed or not optimal)
+     * @param stop          index of the reached stop
+     * @param time          the arrival time in seconds
+     * @param via           the connection used to reach the stop, null for the start
+     * @param viaDeparture  when that connection was started, in seconds
+     * @return true if the arrival was an improvement and got queued
      */
-    public boolean tryAddNode(SearchNode newNode) {
-        String stopId = newNode.stop.id;
-
-        if (processedStops.contains(stopId)) {
+    public boolean relax(int stop, int time, DijkstraConnection via, int viaDeparture) {
+        if (processedStops.get(stop) || time >= earliestArrival[stop]) {
             return false;
         }
-
-        int currentBest = earliestArrival.getOrDefault(stopId, Integer.MAX_VALUE);
-        if (newNode.time < currentBest) {
-            earliestArrival.put(stopId, newNode.time);
-            queue.add(newNode);
-            return true;
+        if (earliestArrival[stop] == Integer.MAX_VALUE) {
+            touched[touchedCount++] = stop;
         }
-        return false;
+        earliestArrival[stop] = time;
+        reachedVia[stop] = via;
+        reachedViaDeparture[stop] = viaDeparture;
+        push(((long) time << 32) | stop);
+        return true;
     }
 
     /**
@@ -83,16 +111,85 @@ public class DijkstraSearchManager {
      * @return true if the queue is empty, false otherwise
      */
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return heapSize == 0;
     }
 
     /**
      * Retrieves the earliest known arrival time for a given stop.
      *
-     * @param stop the stop to check
+     * @param stop index of the stop to check
      * @return the earliest arrival time in seconds, or Integer.MAX_VALUE if unknown
      */
-    public int getEarliestArrival(DijkstraStop stop) {
-        return earliestArrival.getOrDefault(stop.id, Integer.MAX_VALUE);
+    public int getEarliestArrival(int stop) {
+        return earliestArrival[stop];
+    }
+
+    /**
+     * @param stop index of a reached stop
+     * @return the connection the best arrival came through, null for the start stop
+     */
+    public DijkstraConnection getReachedVia(int stop) {
+        return reachedVia[stop];
+    }
+
+    /**
+     * @param stop index of a reached stop
+     * @return the time the connection returned by {@link #getReachedVia(int)} was started
+     */
+    public int getReachedViaDeparture(int stop) {
+        return reachedViaDeparture[stop];
+    }
+
+    /**
+     * @return the number of stops reached by the current search
+     */
+    public int getReachedCount() {
+        return touchedCount;
+    }
+
+    /**
+     * @param i a number between 0 and {@link #getReachedCount()} - 1
+     * @return the index of the i-th reached stop
+     */
+    public int getReachedStop(int i) {
+        return touched[i];
+    }
+
+    private void push(long entry) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private long poll() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
     }
-}
\ No newline at end of file
+}
@@ -6,12 +6,26 @@ import java.util.*;
 
 /**
  * Implements a spatial index using a grid to efficiently find nearby stops for walking transfers.
+ *
+ * Cells are at least the maximum walking distance wide in both directions, so
+ * every stop within walking distance lies in the same or one of the eight
+ * adjacent cells. Cells are addressed by a packed long key and stored as flat
+ * arrays: the sorted keys, and per cell a slice of stop positions (positions
+ * in the order the stops were given, ascending within a cell).
  */
 public class GridIndex {
-    private final Map<String, DijkstraStop[]> gridCells = new HashMap<>();
-    private final double cellSizeDegrees;
-    private final int maxWalkingDistanceMeters;
-    private final Map<String, String> stopToCellMap = new HashMap<>();
+    // Meters per degree of latitude on the 6371 km sphere of the haversine distance
+    private static final double METERS_PER_DEGREE = 111194.9;
+    // Cells are slightly wider than the walking distance, so rounding and the
+    // quick equirectangular estimate never reach past the adjacent cells
+    private static final double CELL_MARGIN = 1.01;
+
+    private final double latCellDegrees;
+    private final double lonCellDegrees;
+    private final DijkstraStop[] stops;
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] cellMembers;
 
     /**
      * Constructs a GridIndex for the given stops and maximum walking distance.
@@ -20,18 +34,46 @@ public class GridIndex {
      * @param maxWalkingDistanceMeters the maximum walking distance in meters
      */
     public GridIndex(Collection<DijkstraStop> stops, int maxWalkingDistanceMeters) {
-        this.maxWalkingDistanceMeters = maxWalkingDistanceMeters;
-        this.cellSizeDegrees = (maxWalkingDistanceMeters * 2) / 111320.0;
-
-        Map<String, List<DijkstraStop>> tempCells = new HashMap<>();
-        for (DijkstraStop stop : stops) {
-            String cellKey = getCellKey(stop.lat, stop.lon);
-            tempCells.computeIfAbsent(cellKey, k -> new ArrayList<>()).add(stop);
-            stopToCellMap.put(stop.id, cellKey);
+        this.stops = stops.toArray(new DijkstraStop[0]);
+
+        // Longitude degrees shrink towards the poles: size the cells for the
+        // stop furthest from the equator
+        double maxAbsLat = 0;
+        for (DijkstraStop stop : this.stops) {
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(stop.lat));
         }
+        this.latCellDegrees = (maxWalkingDistanceMeters * CELL_MARGIN + 1) / METERS_PER_DEGREE;
+        this.lonCellDegrees = latCellDegrees / Math.max(Math.cos(Math.toRadians(Math.min(maxAbsLat, 89.0))), 1e-3);
 
-        tempCells.forEach((key, list) ->
-                gridCells.put(key, list.toArray(new DijkstraStop[0])));
+        long[] stopCell = new long[this.stops.length];
+        for (int i = 0; i < this.stops.length; i++) {
+            stopCell[i] = getCellKey(this.stops[i].lat, this.stops[i].lon);
+        }
+        long[] sorted = stopCell.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.cellKeys = Arrays.copyOf(sorted, distinct);
+
+        // Counting sort of the stop positions by cell
+        this.cellStart = new int[distinct + 1];
+        int[] cellOfStop = new int[this.stops.length];
+        for (int i = 0; i < this.stops.length; i++) {
+            cellOfStop[i] = Arrays.binarySearch(cellKeys, stopCell[i]);
+            cellStart[cellOfStop[i] + 1]++;
+        }
+        for (int c = 0; c < distinct; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellMembers = new int[this.stops.length];
+        int[] fill = Arrays.copyOf(cellStart, distinct);
+        for (int i = 0; i < this.stops.length; i++) {
+            cellMembers[fill[cellOfStop[i]]++] = i;
+        }
     }
 
     /**
@@ -39,12 +81,22 @@ public class GridIndex {
      *
      * @param lat the latitude
      * @param lon the longitude
-     * @return a string key representing the grid cell
+     * @return the row in the high and the column in the low 32 bits
      */
-    private String getCellKey(double lat, double lon) {
-        int latCell = (int) (lat / cellSizeDegrees);
-        int lonCell = (int) (lon / cellSizeDegrees);
-        return latCell + "," + lonCell;
+    private long getCellKey(double lat, double lon) {
+        return cellKey((int) Math.floor(lat / latCellDegrees), (int) Math.floor(lon / lonCellDegrees));
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xFFFFFFFFL);
+    }
+
+    private static int latCell(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int lonCell(long key) {
+        return (int) key;
     }
 
     /**
@@ -55,46 +107,100 @@ public class GridIndex {
      * @return true if the stops are in the same or adjacent cells, false otherwise
      */
     public boolean areStopsNearby(DijkstraStop stop1, DijkstraStop stop2) {
-        String cell1 = stopToCellMap.get(stop1.id);
-        String cell2 = stopToCellMap.get(stop2.id);
-
-        if (cell1.equals(cell2)) return true;
-
-        String[] parts1 = cell1.split(",");
-        String[] parts2 = cell2.split(",");
-        int lat1 = Integer.parseInt(parts1[0]);
-        int lon1 = Integer.parseInt(parts1[1]);
-        int lat2 = Integer.parseInt(parts2[0]);
-        int lon2 = Integer.parseInt(parts2[1]);
-
-        return Math.abs(lat1 - lat2) <= 1 && Math.abs(lon1 - lon2) <= 1;
+        long cell1 = getCellKey(stop1.lat, stop1.lon);
+        long cell2 = getCellKey(stop2.lat, stop2.lon);
+        return Math.abs(latCell(cell1) - latCell(cell2)) <= 1 && Math.abs(lonCell(cell1) - lonCell(cell2)) <= 1;
     }
 
     /**
      * Retrieves all stops in the same or adjacent grid cells as the given stop.
      *
      * @param stop the reference stop
-     * @return a list of nearby DijkstraStop objects
+     * @return a list of nearby DijkstraStop objects, in the order the stops were indexed
      */
     public List<DijkstraStop> getNearbyStops(DijkstraStop stop) {
-        List<DijkstraStop> nearbyStops = new ArrayList<>();
-        String baseCellKey = stopToCellMap.get(stop.id);
-
-        if (baseCellKey != null) {
-            String[] parts = baseCellKey.split(",");
-            int baseLat = Integer.parseInt(parts[0]);
-            int baseLon = Integer.parseInt(parts[1]);
-
-            for (int latOffset = -1; latOffset <= 1; latOffset++) {
-                for (int lonOffset = -1; lonOffset <= 1; lonOffset++) {
-                    String cellKey = (baseLat + latOffset) + "," + (baseLon + lonOffset);
-                    DijkstraStop[] cellStops = gridCells.get(cellKey);
-                    if (cellStops != null) {
-                        Collections.addAll(nearbyStops, cellStops);
-                    }
+        int[] positions = neighborhood(getCellKey(stop.lat, stop.lon));
+        List<DijkstraStop> nearbyStops = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            nearbyStops.add(stops[position]);
+        }
+        return nearbyStops;
+    }
+
+    /**
+     * @return the number of non-empty cells
+     */
+    public int getCellCount() {
+        return cellKeys.length;
+    }
+
+    /**
+     * @param cell a cell index, below {@link #getCellCount()}
+     * @return the first member slot of the cell, see {@link #getCellMember(int)}
+     */
+    public int cellBegin(int cell) {
+        return cellStart[cell];
+    }
+
+    /**
+     * @param cell a cell index, below {@link #getCellCount()}
+     * @return the (exclusive) last member slot of the cell
+     */
+    public int cellEnd(int cell) {
+        return cellStart[cell + 1];
+    }
+
+    /**
+     * @param slot a member slot between {@link #cellBegin} and {@link #cellEnd}
+     * @return the position of the stop in that slot
+     */
+    public int getCellMember(int slot) {
+        return cellMembers[slot];
+    }
+
+    /**
+     * @param position a stop position, in the order the stops were indexed
+     * @return the stop at that position
+     */
+    public DijkstraStop getStop(int position) {
+        return stops[position];
+    }
+
+    /**
+     * Returns the positions of the stops in a cell and its eight neighbours,
+     * in ascending order. Meant to be computed once per cell when sweeping the
+     * grid, and shared by all stops of the cell.
+     *
+     * @param cell a cell index, below {@link #getCellCount()}
+     * @return the sorted stop positions
+     */
+    public int[] getNeighborhood(int cell) {
+        return neighborhood(cellKeys[cell]);
+    }
+
+    private int[] neighborhood(long key) {
+        int baseLat = latCell(key);
+        int baseLon = lonCell(key);
+        int[] cells = new int[9];
+        int cellCount = 0;
+        int size = 0;
+        for (int latOffset = -1; latOffset <= 1; latOffset++) {
+            for (int lonOffset = -1; lonOffset <= 1; lonOffset++) {
+                int cell = Arrays.binarySearch(cellKeys, cellKey(baseLat + latOffset, baseLon + lonOffset));
+                if (cell >= 0) {
+                    cells[cellCount++] = cell;
+                    size += cellStart[cell + 1] - cellStart[cell];
                 }
             }
         }
-        return nearbyStops;
+        int[] positions = new int[size];
+        int n = 0;
+        for (int i = 0; i < cellCount; i++) {
+            for (int slot = cellStart[cells[i]]; slot < cellStart[cells[i] + 1]; slot++) {
+                positions[n++] = cellMembers[slot];
+            }
+        }
+        Arrays.sort(positions);
+        return positions;
     }
-}
\ No newline at end of file
+}
@@ -2,15 +2,15 @@ package routing.routingEngineDijkstra.dijkstra.service;
 
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineModels.utils.GeoDistance;
 
 /**
  * Implements the DistanceCalculator interface using the Haversine formula to calculate distances between geographical points.
  */
 public class HaversineDistanceCalculator implements DistanceCalculator {
-    private static final int EARTH_RADIUS_M = 6_371_000;
-
     /**
-     * Provides a fast approximation of the distance between two points for initial filtering.
+     * Provides a fast approximation of the distance between two points for
+     * initial filtering, see {@link GeoDistance#fastMeters}.
      *
      * @param lat1 the latitude of the first point
      * @param lon1 the longitude of the first point
@@ -19,9 +19,7 @@ public class HaversineDistanceCalculator implements DistanceCalculator {
      * @return the approximate distance in meters
      */
     public int estimateQuickDistance(double lat1, double lon1, double lat2, double lon2) {
-        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
-        double y = (lat2 - lat1);
-        return (int) (Math.sqrt(x*x + y*y) * 111319.491); // meters per degree
+        return (int) GeoDistance.fastMeters(lat1, lon1, lat2, lon2);
     }
 
     /**
@@ -83,16 +81,6 @@ public class HaversineDistanceCalculator implements DistanceCalculator {
      */
     @Override
     public int calculateDistanceMeters(double lat1, double lon1, double lat2, double lon2) {
-        double lat1Rad = Math.toRadians(lat1);
-        double lat2Rad = Math.toRadians(lat2);
-        double deltaLat = Math.toRadians(lat2 - lat1);
-        double deltaLon = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) +
-                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-                        Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return (int) Math.round(EARTH_RADIUS_M * c);
+        return (int) Math.round(GeoDistance.meters(lat1, lon1, lat2, lon2));
     }
 }
\ No newline at end of file
@@ -3,78 +3,55 @@ package routing.routingEngineDijkstra.dijkstra.service;
 import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
 import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
-import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
 
 import java.util.*;
 
 /**
- * Reconstructs a journey from a search node, creating a sequence of journey legs.
+ * Reconstructs a journey from the state of a finished search, creating a sequence of journey legs.
  */
 public class PathReconstructionService {
 
     /**
-     * Represents a node in the search graph used for path reconstruction.
-     */
-    public static class SearchNode {
-        /** The stop associated with this node. */
-        public final DijkstraStop stop;
-        /** The arrival time at this node in seconds since midnight. */
-        public final int time;
-        /** The previous node in the search path. */
-        public final SearchNode previous;
-        /** The connection used to reach this node. */
-        public final DijkstraConnection connectionUsed;
-
-        /**
-         * Constructs a SearchNode with the specified details.
-         *
-         * @param stop           the stop associated with this node
-         * @param time           the arrival time in seconds
-         * @param previous       the previous node in the path
-         * @param connectionUsed the connection used to reach this node
-         */
-        public SearchNode(DijkstraStop stop, int time, SearchNode previous, DijkstraConnection connectionUsed) {
-            this.stop = stop;
-            this.time = time;
-            this.previous = previous;
-            this.connectionUsed = connectionUsed;
-        }
-    }
-
-    /**
-     * Reconstructs a journey from the destination node back to the start.
+     * Reconstructs a journey from the destination stop back to the start.
      *
-     * @param destinationNode the final node in the search path
-     * @param departureTime   the departure time of the journey in seconds
+     * @param searchManager the search that reached the destination
+     * @param destination   index of the destination stop
+     * @param departureTime the departure time of the journey in seconds
      * @return a Journey object representing the reconstructed path
      */
-    public Journey reconstructJourney(SearchNode destinationNode, int departureTime) {
-        List<JourneyLeg> legs = buildJourneyLegs(destinationNode);
+    public Journey reconstructJourney(DijkstraSearchManager searchManager, int destination, int departureTime) {
+        List<JourneyLeg> legs = buildJourneyLegs(searchManager, destination);
         Collections.reverse(legs);
 
-        return new Journey(legs, departureTime, destinationNode.time);
+        return new Journey(legs, departureTime, searchManager.getEarliestArrival(destination));
     }
 
     /**
-     * Builds a list of journey legs by backtracking from the destination node.
+     * Builds a list of journey legs by backtracking from the destination stop.
+     * Walking connections are stored as templates, so their times are taken
+     * from the search state instead.
      *
-     * @param destinationNode the final node in the search path
-     * @return a list of JourneyLeg objects representing the journey
+     * @param searchManager the search that reached the destination
+     * @param destination   index of the destination stop
+     * @return a list of JourneyLeg objects representing the journey, last leg first
      */
-    private List<JourneyLeg> buildJourneyLegs(SearchNode destinationNode) {
+    private List<JourneyLeg> buildJourneyLegs(DijkstraSearchManager searchManager, int destination) {
         List<JourneyLeg> legs = new ArrayList<>();
-        SearchNode current = destinationNode;
+        int current = destination;
 
-        while (current.previous != null) {
-            DijkstraConnection conn = current.connectionUsed;
+        DijkstraConnection conn;
+        while ((conn = searchManager.getReachedVia(current)) != null) {
+            boolean walking = "WALK".equals(conn.routeId);
+            int departure = walking ? searchManager.getReachedViaDeparture(current) : conn.departureTime;
+            int arrival = walking ? searchManager.getEarliestArrival(current) : conn.arrivalTime;
             legs.add(new JourneyLeg(
                     conn.from, conn.to,
-                    conn.departureTime, conn.arrivalTime,
+                    departure, arrival,
                     conn.routeId, conn.tripId, conn.headSign,
-                    "WALK".equals(conn.routeId)
+                    walking
             ));
-            current = current.previous;
+            current = conn.from.index;
         }
         return legs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,156 @@
+package routing.routingEngineDijkstra.dijkstra.service;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineModels.utils.IntList;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Rebuilds trips from the consecutive-stop connections of the parser and
+ * groups them into patterns: trips with the same stop sequence that never
+ * overtake each other, so the trips of a pattern are ordered at every stop.
+ *
+ * Shared by the engines that work on trips rather than on single connections
+ * (RAPTOR's route patterns and the trip-based search's lines).
+ */
+public final class TripPatterns {
+
+    private TripPatterns() {
+    }
+
+    /**
+     * One trip (or a continuous piece of a trip) as a stop sequence with times.
+     */
+    public static final class Trip {
+        public final String tripId;
+        public final String routeId;
+        public final String headSign;
+        public final IntList stops = new IntList();
+        public final IntList arrivals = new IntList();
+        public final IntList departures = new IntList();
+
+        Trip(DijkstraConnection first, int fromStop) {
+            this.tripId = first.tripId;
+            this.routeId = first.routeId;
+            this.headSign = first.headSign;
+            stops.add(fromStop);
+            arrivals.add(first.departureTime);
+            departures.add(first.departureTime);
+        }
+
+        String sequenceKey() {
+            StringBuilder key = new StringBuilder(stops.size() * 6);
+            for (int i = 0; i < stops.size(); i++) {
+                key.append(stops.get(i)).append(',');
+            }
+            return key.toString();
+        }
+
+        /** True if this trip never departs or arrives earlier than {@code other} at any stop. */
+        boolean notBefore(Trip other) {
+            for (int i = 0; i < stops.size(); i++) {
+                if (departures.get(i) < other.departures.get(i) || arrivals.get(i) < other.arrivals.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds trips, one per trip and service day, from the consecutive-stop
+     * connections. Walking connections and connections to unknown stops are
+     * skipped. A trip whose hops do not chain (missing stop times) is split
+     * into several pieces.
+     *
+     * @param connections the connections, in lists as the parser groups them
+     * @param stopIndex   the engine's index of a stop, or -1 to skip the stop
+     * @return the trips with at least one hop
+     */
+    public static List<Trip> buildTrips(Collection<? extends List<DijkstraConnection>> connections,
+                                        ToIntFunction<DijkstraStop> stopIndex) {
+        Map<String, List<DijkstraConnection>> byTrip = new HashMap<>();
+        for (List<DijkstraConnection> list : connections) {
+            for (DijkstraConnection c : list) {
+                if ("WALK".equals(c.routeId) || c.tripId == null) {
+                    continue;
+                }
+                byTrip.computeIfAbsent(c.tripKey(), k -> new ArrayList<>()).add(c);
+            }
+        }
+
+        List<Trip> trips = new ArrayList<>(byTrip.size());
+        for (List<DijkstraConnection> hops : byTrip.values()) {
+            hops.sort((a, b) -> a.departureTime != b.departureTime
+                    ? Integer.compare(a.departureTime, b.departureTime)
+                    : Integer.compare(a.arrivalTime, b.arrivalTime));
+
+            Trip current = null;
+            int lastStop = -1;
+            int lastArrival = -1;
+            for (DijkstraConnection c : hops) {
+                int from = stopIndex.applyAsInt(c.from);
+                int to = stopIndex.applyAsInt(c.to);
+                if (from < 0 || to < 0 || c.arrivalTime < c.departureTime) {
+                    continue;
+                }
+                if (current == null || from != lastStop || c.departureTime < lastArrival) {
+                    if (current != null && current.stops.size() > 1) {
+                        trips.add(current);
+                    }
+                    current = new Trip(c, from);
+                } else {
+                    current.departures.set(current.departures.size() - 1, c.departureTime);
+                }
+                current.stops.add(to);
+                current.arrivals.add(c.arrivalTime);
+                current.departures.add(c.arrivalTime);
+                lastStop = to;
+                lastArrival = c.arrivalTime;
+            }
+            if (current != null && current.stops.size() > 1) {
+                trips.add(current);
+            }
+        }
+        return trips;
+    }
+
+    /**
+     * Groups trips with identical stop sequences into patterns, sorted by
+     * departure. A trip that would overtake the last trip of a pattern starts
+     * a new pattern with the same stops.
+     *
+     * @param trips the trips from {@link #buildTrips}
+     * @return the patterns, each a non-empty list of trips
+     */
+    public static List<List<Trip>> groupIntoPatterns(List<Trip> trips) {
+        Map<String, List<Trip>> bySequence = new HashMap<>();
+        for (Trip trip : trips) {
+            bySequence.computeIfAbsent(trip.sequenceKey(), k -> new ArrayList<>()).add(trip);
+        }
+
+        List<List<Trip>> patterns = new ArrayList<>();
+        for (List<Trip> group : bySequence.values()) {
+            group.sort((a, b) -> Integer.compare(a.departures.get(0), b.departures.get(0)));
+            List<List<Trip>> split = new ArrayList<>();
+            for (Trip trip : group) {
+                List<Trip> target = null;
+                for (List<Trip> candidate : split) {
+                    if (trip.notBefore(candidate.get(candidate.size() - 1))) {
+                        target = candidate;
+                        break;
+                    }
+                }
+                if (target == null) {
+                    target = new ArrayList<>();
+                    split.add(target);
+                }
+                target.add(trip);
+            }
+            patterns.addAll(split);
+        }
+        return patterns;
+    }
+}
@@ -3,20 +3,33 @@ package routing.routingEngineDijkstra.dijkstra.service;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
 import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineModels.utils.PackedKDTree;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Manages walking transfers between stops, including distance calculations and nearby stop lookups.
+ *
+ * The stops within walking distance of each stop are computed once, by a
+ * parallel sweep over the cells of a {@link GridIndex}, and kept as a CSR
+ * adjacency: per stop a sorted slice of neighbour positions with the walking
+ * seconds alongside. The arrays are never written after construction, so
+ * lookups need neither locks nor allocation and are safe from any thread.
  */
 public class WalkingTransferService {
     private static final double AVERAGE_WALKING_SPEED_MS = 1.389;
+    private static final int NOT_INDEXED = Integer.MIN_VALUE;
     private final DistanceCalculator distanceCalculator;
     private final int maxWalkingDistanceMeters;
-    private final Map<DijkstraStop, List<DijkstraStop>> nearbyStopsCache = new HashMap<>();
     private final GridIndex gridIndex;
-    private final Map<String, Integer> distanceCache = new HashMap<>();
+    private final DijkstraStop[] indexedStops;
+    private final PackedKDTree stopIndex;
+    private final Map<String, Integer> positionById;
+    private final int[] neighborStart;
+    private final int[] neighbors;
+    private final short[] neighborSeconds;   // unsigned, read with & 0xFFFF
 
     /**
      * Constructs a WalkingTransferService with the specified distance calculator and stops.
@@ -28,24 +41,74 @@ public class WalkingTransferService {
     public WalkingTransferService(DistanceCalculator distanceCalculator,
                                   int maxWalkingDistanceMeters,
                                   Collection<DijkstraStop> allStops) {
+        DijkstraStop[] stops = allStops.toArray(new DijkstraStop[0]);
+        GridIndex grid = new GridIndex(allStops, maxWalkingDistanceMeters);
+        Adjacency adjacency = Adjacency.build(distanceCalculator, maxWalkingDistanceMeters, grid, stops);
+
         this.distanceCalculator = distanceCalculator;
         this.maxWalkingDistanceMeters = maxWalkingDistanceMeters;
-        this.gridIndex = new GridIndex(allStops, maxWalkingDistanceMeters);
+        this.gridIndex = grid;
+        this.indexedStops = stops;
+        double[] lats = new double[stops.length];
+        double[] lons = new double[stops.length];
+        this.positionById = new HashMap<>(stops.length * 2);
+        for (int i = 0; i < stops.length; i++) {
+            lats[i] = stops[i].lat;
+            lons[i] = stops[i].lon;
+            positionById.put(stops[i].id, i);
+        }
+        this.stopIndex = new PackedKDTree(lats, lons);
+        this.neighborStart = adjacency.start();
+        this.neighbors = adjacency.neighbors();
+        this.neighborSeconds = adjacency.seconds();
     }
 
     /**
-     * Precomputes nearby stops for each stop based on walking distance.
-     *
-     * @param stops the collection of stops to process
+     * The CSR arrays of the walking neighbours, built before the service is
+     * assigned any field so that the parallel sweep never sees a partly
+     * constructed service.
      */
-    public void precomputeNearbyStops(Collection<DijkstraStop> stops) {
-        for (DijkstraStop stop : stops) {
-            nearbyStopsCache.put(stop,
-                    stops.stream()
-                            .filter(s -> !s.equals(stop))
-                            .filter(s -> canWalkBetween(stop, s))
-                            .collect(Collectors.toList())
-            );
+    private record Adjacency(int[] start, int[] neighbors, short[] seconds) {
+
+        static Adjacency build(DistanceCalculator distanceCalculator, int maxWalkingDistanceMeters,
+                               GridIndex gridIndex, DijkstraStop[] stops) {
+            // Each cell task fills the rows of its own stops; rows are then concatenated
+            int[][] rowNeighbors = new int[stops.length][];
+            short[][] rowSeconds = new short[stops.length][];
+            IntStream.range(0, gridIndex.getCellCount()).parallel().forEach(cell -> {
+                int[] neighborhood = gridIndex.getNeighborhood(cell);
+                int[] found = new int[neighborhood.length];
+                short[] seconds = new short[neighborhood.length];
+                for (int slot = gridIndex.cellBegin(cell); slot < gridIndex.cellEnd(cell); slot++) {
+                    int from = gridIndex.getCellMember(slot);
+                    int count = 0;
+                    for (int to : neighborhood) {
+                        if (to == from) {
+                            continue;
+                        }
+                        int distance = distanceCalculator.calculateDistanceMeters(stops[from], stops[to]);
+                        if (distance <= maxWalkingDistanceMeters) {
+                            found[count] = to;
+                            seconds[count] = (short) Math.min(toWalkSeconds(distance), 0xFFFF);
+                            count++;
+                        }
+                    }
+                    rowNeighbors[from] = Arrays.copyOf(found, count);
+                    rowSeconds[from] = Arrays.copyOf(seconds, count);
+                }
+            });
+
+            int[] start = new int[stops.length + 1];
+            for (int i = 0; i < stops.length; i++) {
+                start[i + 1] = start[i] + rowNeighbors[i].length;
+            }
+            int[] neighbors = new int[start[stops.length]];
+            short[] neighborSeconds = new short[neighbors.length];
+            for (int i = 0; i < stops.length; i++) {
+                System.arraycopy(rowNeighbors[i], 0, neighbors, start[i], rowNeighbors[i].length);
+                System.arraycopy(rowSeconds[i], 0, neighborSeconds, start[i], rowSeconds[i].length);
+            }
+            return new Adjacency(start, neighbors, neighborSeconds);
         }
     }
 
@@ -53,13 +116,21 @@ public class WalkingTransferService {
      * Retrieves nearby stops within walking distance of the given stop.
      *
      * @param stop the reference stop
-     * @return a list of nearby DijkstraStop objects
+     * @return a list of nearby DijkstraStop objects, in the order the stops were given
      */
     public List<DijkstraStop> getNearbyStops(DijkstraStop stop) {
-        return gridIndex.getNearbyStops(stop).stream()
-                .filter(s -> !s.equals(stop))
-                .filter(s -> canWalkBetween(stop, s))
-                .collect(Collectors.toList());
+        Integer from = positionById.get(stop.id);
+        if (from == null) {
+            return gridIndex.getNearbyStops(stop).stream()
+                    .filter(s -> !s.equals(stop))
+                    .filter(s -> canWalkBetween(stop, s))
+                    .collect(Collectors.toList());
+        }
+        List<DijkstraStop> nearbyStops = new ArrayList<>(neighborStart[from + 1] - neighborStart[from]);
+        for (int n = neighborStart[from]; n < neighborStart[from + 1]; n++) {
+            nearbyStops.add(indexedStops[neighbors[n]]);
+        }
+        return nearbyStops;
     }
 
     /**
@@ -70,15 +141,11 @@ public class WalkingTransferService {
      * @return true if walking is possible, false otherwise
      */
     public boolean canWalkBetween(DijkstraStop from, DijkstraStop to) {
-        String cacheKey = from.id + "-" + to.id;
-        Integer cachedDistance = distanceCache.get(cacheKey);
-
-        if (cachedDistance == null) {
-            cachedDistance = distanceCalculator.calculateDistanceMeters(from, to);
-            distanceCache.put(cacheKey, cachedDistance);
+        int n = findNeighbor(from, to);
+        if (n != NOT_INDEXED) {
+            return n >= 0;
         }
-
-        return cachedDistance <= maxWalkingDistanceMeters;
+        return distanceCalculator.calculateDistanceMeters(from, to) <= maxWalkingDistanceMeters;
     }
 
     /**
@@ -89,15 +156,42 @@ public class WalkingTransferService {
      * @return the walking time in seconds
      */
     public int calculateWalkTime(DijkstraStop from, DijkstraStop to) {
-        String cacheKey = from.id + "-" + to.id;
-        Integer cachedDistance = distanceCache.get(cacheKey);
-
-        if (cachedDistance == null) {
-            cachedDistance = distanceCalculator.calculateDistanceMeters(from, to);
-            distanceCache.put(cacheKey, cachedDistance);
+        int n = findNeighbor(from, to);
+        if (n >= 0) {
+            return neighborSeconds[n] & 0xFFFF;
         }
+        return walkTimeSeconds(distanceCalculator.calculateDistanceMeters(from, to));
+    }
 
-        return (int) Math.round(cachedDistance / AVERAGE_WALKING_SPEED_MS);
+    /**
+     * Converts a walking distance to a walking time.
+     *
+     * @param distanceMeters the distance in meters
+     * @return the walking time in seconds
+     */
+    public int walkTimeSeconds(int distanceMeters) {
+        return toWalkSeconds(distanceMeters);
+    }
+
+    private static int toWalkSeconds(int distanceMeters) {
+        return (int) Math.round(distanceMeters / AVERAGE_WALKING_SPEED_MS);
+    }
+
+    /**
+     * Looks up a stop pair in the adjacency.
+     *
+     * @return the slot of {@code to} among the neighbours of {@code from}, a
+     *         negative value if both are indexed but out of walking distance,
+     *         or {@link #NOT_INDEXED} if either stop is unknown
+     */
+    private int findNeighbor(DijkstraStop from, DijkstraStop to) {
+        Integer fromPos = positionById.get(from.id);
+        Integer toPos = positionById.get(to.id);
+        if (fromPos == null || toPos == null) {
+            return NOT_INDEXED;
+        }
+        int n = Arrays.binarySearch(neighbors, neighborStart[fromPos], neighborStart[fromPos + 1], toPos);
+        return n >= 0 ? n : -1;
     }
 
     /**
@@ -115,6 +209,21 @@ public class WalkingTransferService {
                 null, "WALK", "Walk to " + to.name);
     }
 
+    /**
+     * Finds the closest of all known stops to a given coordinate, using the spatial index.
+     *
+     * @param coord the reference coordinate
+     * @return the closest DijkstraStop
+     * @throws NoSuchElementException if there are no stops
+     */
+    public DijkstraStop findClosestStop(DijkstraCoordinates coord) {
+        int nearest = stopIndex.nearest(coord.getLatitude(), coord.getLongitude());
+        if (nearest < 0) {
+            throw new NoSuchElementException("No stops available");
+        }
+        return indexedStops[nearest];
+    }
+
     /**
      * Finds the closest stop to a given coordinate.
      *
@@ -162,6 +271,15 @@ public class WalkingTransferService {
         return distanceCalculator.calculateDistanceMeters(from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude());
     }
 
+    /**
+     * Retrieves the grid of all stops, for sweeping stop pairs cell by cell.
+     *
+     * @return the grid index
+     */
+    public GridIndex getGridIndex() {
+        return gridIndex;
+    }
+
     /**
      * Retrieves the maximum walking distance.
      *
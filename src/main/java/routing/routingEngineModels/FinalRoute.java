@@ -5,6 +5,7 @@ package routing.routingEngineModels;
 
 import java.util.ArrayList;
 
+import routing.metrics.SearchStats;
 import routing.routingEngineDijkstra.adiModels.AdiRouteStep;
 
 /**
@@ -18,6 +19,7 @@ public class FinalRoute{
     private ArrayList<AdiRouteStep> routeSteps;
     private double totalDistance;
     private double totalTime;
+    private SearchStats searchStats;
 
     /**
      * Constructor for FinalRoute.
@@ -45,4 +47,40 @@ public class FinalRoute{
         return this.totalTime;
     }
 
+    /**
+     * @return what computing this route cost, null unless run with -Drouting.metrics=true
+     */
+    public SearchStats getSearchStats() {
+        return this.searchStats;
+    }
+
+    public void setSearchStats(SearchStats searchStats) {
+        this.searchStats = searchStats;
+    }
+
+    /**
+     * Copies the route for another caller: the steps themselves are immutable,
+     * the list holding them and the search stats are not shared.
+     *
+     * @return a copy with its own step list and no search stats
+     */
+    public FinalRoute copy() {
+        return new FinalRoute(new ArrayList<>(routeSteps), totalDistance, totalTime);
+    }
+
+    /**
+     * Counts the transfers of this route, i.e. the number of vehicles boarded minus one.
+     *
+     * @return the number of transfers, 0 for walking-only routes
+     */
+    public int getNumberOfTransfers() {
+        int rides = 0;
+        for (AdiRouteStep step : routeSteps) {
+            if ("ride".equalsIgnoreCase(step.getMode())) {
+                rides++;
+            }
+        }
+        return Math.max(0, rides - 1);
+    }
+
 }
@@ -1,17 +1,19 @@
 package routing.routingEngineModels;
 
+import java.time.LocalDate;
 import java.time.LocalTime;
 
 /**
  * InputJourney.java
  *
- * Represents a journey with a start and end location, and a start time.
+ * Represents a journey with a start and end location, a start time and optionally a service date.
  * This class is used to encapsulate the details of a journey for routing purposes.
  */
 public class InputJourney {
     Coordinates start;
     Coordinates end;
     LocalTime startTime;
+    LocalDate date;
 
     /**
      * Constructor for InputJourney.
@@ -21,9 +23,23 @@ public class InputJourney {
      * @param startTime The time when the journey starts.
      */
     public InputJourney(Coordinates start, Coordinates end, LocalTime startTime) {
+        this(start, end, startTime, null);
+    }
+
+    /**
+     * Constructor for InputJourney on a specific service date.
+     *
+     * @param start The starting coordinates of the journey.
+     * @param end The ending coordinates of the journey.
+     * @param startTime The time when the journey starts.
+     * @param date The service date of the journey, or null to ignore the service calendar.
+     *             Only engines that read the calendar accept a date; the others reject the journey.
+     */
+    public InputJourney(Coordinates start, Coordinates end, LocalTime startTime, LocalDate date) {
         this.start = start;
         this.end = end;
         this.startTime = startTime;
+        this.date = date;
     }
 
 
@@ -39,6 +55,13 @@ public class InputJourney {
     public LocalTime getStartTime() {
         return this.startTime;
     }
+
+    /**
+     * @return the service date of the journey, or null if any day will do
+     */
+    public LocalDate getDate() {
+        return this.date;
+    }
 }
 
 
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import routing.routingEngineModels.Stop.Stop;
+import routing.routingEngineModels.utils.ServiceTime;
 
 /**
  * RouteStep.java
@@ -105,7 +106,8 @@ public class RouteStep {
     }
 
     /**
-     * Adds seconds to a time string in HH:mm:ss format.
+     * Adds seconds to a time string in HH:mm:ss format. The result is not
+     * wrapped at midnight, so it stays on the same service-day timeline.
      *
      * @param timeStr the time string in HH:mm:ss format
      * @param secondsToAdd the number of seconds to add
@@ -113,24 +115,27 @@ public class RouteStep {
      */
     private String addSecondsToTime(String timeStr, int secondsToAdd) {
         try {
-            String[] parts = timeStr.split(":");
-            int hours = Integer.parseInt(parts[0]);
-            int minutes = Integer.parseInt(parts[1]);
-            int seconds = Integer.parseInt(parts[2]);
-
-            int totalSeconds = hours * 3600 + minutes * 60 + seconds + secondsToAdd;
-
-            int newHours = totalSeconds / 3600;
-            int newMinutes = (totalSeconds % 3600) / 60;
-            int newSecs = totalSeconds % 60;
-
-            return String.format("%02d:%02d:%02d", newHours, newMinutes, newSecs);
-
-        } catch (Exception e) {
+            return ServiceTime.format(ServiceTime.parse(timeStr) + secondsToAdd);
+        } catch (IllegalArgumentException e) {
             return timeStr;
         }
     }
 
+    /**
+     * Returns the wall-clock "HH:mm" of a service-day time, so a departure at
+     * 25:10:00 is shown as 01:10.
+     *
+     * @param timeStr the time string in HH:mm:ss format
+     * @return the clock time in HH:mm format
+     */
+    private static String clockTime(String timeStr) {
+        try {
+            return ServiceTime.formatClock(ServiceTime.parse(timeStr)).substring(0, 5);
+        } catch (IllegalArgumentException e) {
+            return timeStr.substring(0, 5);
+        }
+    }
+
     /**
      * Returns the route information associated with this step.
      *
@@ -141,12 +146,12 @@ public class RouteStep {
         if (modeOfTransport.equals("walk")) {
             return String.format(
                     "{\"mode\":\"%s\",\"to\":\"%s\",\"duration\":\"%.2f\",\"startTime\":\"%s\"}",
-                    modeOfTransport, toCoord, numOfMinutes, startTime.substring(0, 5)
+                    modeOfTransport, toCoord, numOfMinutes, clockTime(startTime)
             );
         } else {
             return String.format(
                     "{\"mode\":\"ride\",\"to\":\"%s\",\"duration\":\"%.2f\",\"startTime\":\"%s\",\"stop\":%s,\"route\":\"%s\"}",
-                    toCoord, numOfMinutes, departureTime.substring(0, 5), stopStr, routeInfo.toString()
+                    toCoord, numOfMinutes, clockTime(departureTime), stopStr, routeInfo.toString()
             );
         }
     }
@@ -169,7 +174,7 @@ public class RouteStep {
 
         // String twoDecimals = String.format("%.2f", numOfMinutes);
         json.put("duration", numOfMinutes);
-        json.put("startTime", startTime.substring(0, 5));
+        json.put("startTime", clockTime(startTime));
 
         if (!modeOfTransport.equals("walk")) {
             json.put("stop", stopStr);
@@ -0,0 +1,132 @@
+package routing.routingEngineModels.utils;
+
+/**
+ * GeoDistance.java
+ *
+ * Distances in meters between points given in degrees, on a sphere of radius
+ * {@link #EARTH_RADIUS_M}. Two modes:
+ * <ul>
+ * <li>{@link Mode#EXACT}: the haversine formula, correct at any distance;</li>
+ * <li>{@link Mode#FAST}: an equirectangular projection around the points'
+ * mean latitude. No trigonometry besides one cosine, and within a city it
+ * stays within centimetres of the haversine distance.</li>
+ * </ul>
+ * The batch methods compute the distances from one point to many points held
+ * in plain lat/lon arrays; in fast mode the cosine of the query latitude is
+ * computed once for the whole batch.
+ */
+public final class GeoDistance {
+
+    public static final double EARTH_RADIUS_M = 6_371_000.0;
+
+    /**
+     * How distances are computed.
+     */
+    public enum Mode {
+        /** Haversine formula. */
+        EXACT,
+        /** Equirectangular approximation, for city-scale distances. */
+        FAST
+    }
+
+    private GeoDistance() {
+    }
+
+    /**
+     * Haversine distance between two points.
+     *
+     * @param lat1 latitude of the first point
+     * @param lon1 longitude of the first point
+     * @param lat2 latitude of the second point
+     * @param lon2 longitude of the second point
+     * @return the distance in meters
+     */
+    public static double meters(double lat1, double lon1, double lat2, double lon2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return EARTH_RADIUS_M * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Equirectangular approximation of the distance between two points.
+     *
+     * @param lat1 latitude of the first point
+     * @param lon1 longitude of the first point
+     * @param lat2 latitude of the second point
+     * @param lon2 longitude of the second point
+     * @return the distance in meters
+     */
+    public static double fastMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS_M * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Distance between two points in the given mode.
+     *
+     * @param mode how to compute the distance
+     * @param lat1 latitude of the first point
+     * @param lon1 longitude of the first point
+     * @param lat2 latitude of the second point
+     * @param lon2 longitude of the second point
+     * @return the distance in meters
+     */
+    public static double meters(Mode mode, double lat1, double lon1, double lat2, double lon2) {
+        return mode == Mode.FAST ? fastMeters(lat1, lon1, lat2, lon2) : meters(lat1, lon1, lat2, lon2);
+    }
+
+    /**
+     * Distances from one point to every point of the arrays.
+     *
+     * @param mode how to compute the distances
+     * @param lat  latitude of the point
+     * @param lon  longitude of the point
+     * @param lats latitudes of the targets
+     * @param lons longitudes of the targets, same length as {@code lats}
+     * @param out  receives the distances in meters, at least as long as {@code lats}
+     */
+    public static void metersFrom(Mode mode, double lat, double lon, double[] lats, double[] lons, double[] out) {
+        metersFrom(mode, lat, lon, lats, lons, out, 0, lats.length);
+    }
+
+    /**
+     * Distances from one point to the points {@code from} (inclusive) to
+     * {@code to} (exclusive) of the arrays, written to the same positions of {@code out}.
+     *
+     * @param mode how to compute the distances
+     * @param lat  latitude of the point
+     * @param lon  longitude of the point
+     * @param lats latitudes of the targets
+     * @param lons longitudes of the targets
+     * @param out  receives the distances in meters
+     * @param from first target
+     * @param to   end of the targets
+     */
+    public static void metersFrom(Mode mode, double lat, double lon, double[] lats, double[] lons, double[] out,
+                                  int from, int to) {
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        double cosLat = Math.cos(latRad);
+        if (mode == Mode.FAST) {
+            // cos of the pair's mean latitude, to first order around the query
+            // latitude, so one sine and cosine serve the whole batch
+            double halfSinLat = Math.sin(latRad) / 2;
+            for (int i = from; i < to; i++) {
+                double y = Math.toRadians(lats[i]) - latRad;
+                double x = (Math.toRadians(lons[i]) - lonRad) * (cosLat - halfSinLat * y);
+                out[i] = EARTH_RADIUS_M * Math.sqrt(x * x + y * y);
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                // same operations as meters(), so both agree to the last bit
+                double sinLat = Math.sin(Math.toRadians(lats[i] - lat) / 2);
+                double sinLon = Math.sin(Math.toRadians(lons[i] - lon) / 2);
+                double a = sinLat * sinLat + cosLat * Math.cos(Math.toRadians(lats[i])) * sinLon * sinLon;
+                out[i] = EARTH_RADIUS_M * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package routing.routingEngineModels.utils;
+
+import java.util.Arrays;
+
+/**
+ * IntList.java
+ *
+ * A minimal growable list of primitive ints. Used while loading timetable data
+ * so that millions of stop times can be collected without boxing every value
+ * into an Integer; call {@link #toArray()} once loading is finished.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty IntList with a default capacity.
+     */
+    public IntList() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty IntList with the given initial capacity.
+     *
+     * @param initialCapacity the number of values to reserve space for
+     */
+    public IntList(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value the value to append
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Returns the value at the given position.
+     *
+     * @param index position in the list
+     * @return the stored value
+     */
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Overwrites the value at the given position.
+     *
+     * @param index position in the list
+     * @param value the new value
+     */
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all values while keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the contents into a new array of exactly {@link #size()} elements.
+     *
+     * @return the values as an int array
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
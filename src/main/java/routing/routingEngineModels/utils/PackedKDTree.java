@@ -0,0 +1,288 @@
+package routing.routingEngineModels.utils;
+
+/**
+ * PackedKDTree.java
+ *
+ * Immutable 2-d tree over points given as latitude/longitude, stored as flat
+ * arrays: the points are permuted so that every subrange [lo, hi) is a node
+ * whose median element splits the rest, alternating between the x and y axes.
+ * No node objects are allocated, so the tree is compact and cache friendly.
+ *
+ * Points are projected to meters with an equirectangular projection around the
+ * mean latitude for pruning; every candidate is then checked with the exact
+ * haversine distance, so results match a linear haversine scan. The pruning
+ * bound is widened by the largest projection error of the indexed area, which
+ * is tiny for a city-sized network.
+ *
+ * Queries return the indices of the points in the arrays passed to the
+ * constructor. The tree is safe to query from several threads at once.
+ */
+public final class PackedKDTree {
+
+    private static final double EARTH_RADIUS_M = 6_371_000.0;
+
+    private final double[] lat;
+    private final double[] lon;
+    private final double[] x;
+    private final double[] y;
+    private final int[] index;
+    private final double cosRef;
+    private final double slack;
+
+    /**
+     * Builds the tree.
+     *
+     * @param latitudes  latitude of every point
+     * @param longitudes longitude of every point
+     */
+    public PackedKDTree(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("latitude and longitude arrays differ in length");
+        }
+        int n = latitudes.length;
+        this.lat = new double[n];
+        this.lon = new double[n];
+        this.x = new double[n];
+        this.y = new double[n];
+        this.index = new int[n];
+
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double sumLat = 0;
+        for (int i = 0; i < n; i++) {
+            sumLat += latitudes[i];
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+        }
+        this.cosRef = Math.cos(Math.toRadians(n == 0 ? 0 : sumLat / n));
+        double cosMin = Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+        this.slack = n == 0 ? 1.0 : 1.01 * Math.max(1.0, cosRef / Math.max(cosMin, 1e-6));
+
+        for (int i = 0; i < n; i++) {
+            lat[i] = latitudes[i];
+            lon[i] = longitudes[i];
+            x[i] = projectX(longitudes[i]);
+            y[i] = projectY(latitudes[i]);
+            index[i] = i;
+        }
+        build(0, n, 0);
+    }
+
+    public int size() {
+        return index.length;
+    }
+
+    private double projectX(double longitude) {
+        return Math.toRadians(longitude) * cosRef * EARTH_RADIUS_M;
+    }
+
+    private double projectY(double latitude) {
+        return Math.toRadians(latitude) * EARTH_RADIUS_M;
+    }
+
+    /**
+     * Recursively places the median of [lo, hi) on the splitting axis in the middle.
+     */
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, (depth & 1) == 0 ? x : y);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Quickselect: partially orders [lo, hi] so that position k holds the
+     * k-th smallest key.
+     */
+    private void select(int lo, int hi, int k, double[] key) {
+        while (hi > lo) {
+            double pivot = key[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[i] < pivot) i++;
+                while (key[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        double t = lat[a]; lat[a] = lat[b]; lat[b] = t;
+        t = lon[a]; lon[a] = lon[b]; lon[b] = t;
+        t = x[a]; x[a] = x[b]; x[b] = t;
+        t = y[a]; y[a] = y[b]; y[b] = t;
+        int i = index[a]; index[a] = index[b]; index[b] = i;
+    }
+
+    /**
+     * Finds every point within {@code radiusMeters} (haversine) of a location.
+     *
+     * @param latitude     latitude of the query location
+     * @param longitude    longitude of the query location
+     * @param radiusMeters the search radius in meters
+     * @return the indices of the points, in no particular order
+     */
+    public IntList within(double latitude, double longitude, double radiusMeters) {
+        IntList result = new IntList();
+        if (index.length > 0) {
+            within(0, index.length, 0, projectX(longitude), projectY(latitude),
+                    latitude, longitude, radiusMeters, radiusMeters * slack, result);
+        }
+        return result;
+    }
+
+    private void within(int lo, int hi, int depth, double qx, double qy, double qLat, double qLon,
+                        double radius, double pruneRadius, IntList result) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double dx = x[mid] - qx;
+            double dy = y[mid] - qy;
+            if (Math.abs(dx) <= pruneRadius && Math.abs(dy) <= pruneRadius
+                    && TimeAndGeoUtils.haversineMeters(qLat, qLon, lat[mid], lon[mid]) <= radius) {
+                result.add(index[mid]);
+            }
+            double diff = (depth & 1) == 0 ? dx : dy;
+            // diff > 0: the query lies on the low side of the split
+            if (diff > -pruneRadius) {
+                if (diff < pruneRadius) {
+                    within(mid + 1, hi, depth + 1, qx, qy, qLat, qLon, radius, pruneRadius, result);
+                }
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Finds the point closest (haversine) to a location.
+     *
+     * @param latitude  latitude of the query location
+     * @param longitude longitude of the query location
+     * @return the index of the closest point, or -1 if the tree is empty
+     */
+    public int nearest(double latitude, double longitude) {
+        int[] result = nearest(latitude, longitude, 1);
+        return result.length == 0 ? -1 : result[0];
+    }
+
+    /**
+     * Finds the {@code k} points closest (haversine) to a location.
+     *
+     * @param latitude  latitude of the query location
+     * @param longitude longitude of the query location
+     * @param k         the number of points to return
+     * @return the indices of the closest points, nearest first
+     */
+    public int[] nearest(double latitude, double longitude, int k) {
+        int count = Math.min(k, index.length);
+        if (count <= 0) {
+            return new int[0];
+        }
+        Nearest best = new Nearest(count);
+        nearest(0, index.length, 0, projectX(longitude), projectY(latitude), latitude, longitude, best);
+        return best.sortedIndices();
+    }
+
+    private void nearest(int lo, int hi, int depth, double qx, double qy, double qLat, double qLon, Nearest best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = x[mid] - qx;
+        double dy = y[mid] - qy;
+        // The exact distance is only needed if the projected one could beat the k-th best
+        if (Math.sqrt(dx * dx + dy * dy) / slack <= best.bound()) {
+            best.offer(index[mid], TimeAndGeoUtils.haversineMeters(qLat, qLon, lat[mid], lon[mid]));
+        }
+
+        double diff = (depth & 1) == 0 ? dx : dy;
+        boolean lowFirst = diff > 0;
+        if (lowFirst) {
+            nearest(lo, mid, depth + 1, qx, qy, qLat, qLon, best);
+        } else {
+            nearest(mid + 1, hi, depth + 1, qx, qy, qLat, qLon, best);
+        }
+        // Visit the far side only if the splitting plane is closer than the current k-th best
+        if (Math.abs(diff) / slack <= best.bound()) {
+            if (lowFirst) {
+                nearest(mid + 1, hi, depth + 1, qx, qy, qLat, qLon, best);
+            } else {
+                nearest(lo, mid, depth + 1, qx, qy, qLat, qLon, best);
+            }
+        }
+    }
+
+    /**
+     * Bounded max-heap of the k best candidates.
+     */
+    private static final class Nearest {
+        final int[] ids;
+        final double[] dist;
+        int size;
+
+        Nearest(int k) {
+            ids = new int[k];
+            dist = new double[k];
+        }
+
+        double bound() {
+            return size < ids.length ? Double.POSITIVE_INFINITY : dist[0];
+        }
+
+        void offer(int id, double d) {
+            if (size < ids.length) {
+                int i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) {
+                    ids[i] = ids[(i - 1) / 2];
+                    dist[i] = dist[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                ids[i] = id;
+                dist[i] = d;
+            } else if (d < dist[0]) {
+                siftDown(id, d, size);
+            }
+        }
+
+        private void siftDown(int id, double d, int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) break;
+                if (child + 1 < n && dist[child + 1] > dist[child]) child++;
+                if (dist[child] <= d) break;
+                ids[i] = ids[child];
+                dist[i] = dist[child];
+                i = child;
+            }
+            ids[i] = id;
+            dist[i] = d;
+        }
+
+        int[] sortedIndices() {
+            int[] result = new int[size];
+            for (int n = size; n > 0; n--) {
+                result[n - 1] = ids[0];
+                int lastId = ids[n - 1];
+                double lastDist = dist[n - 1];
+                siftDown(lastId, lastDist, n - 1);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package routing.routingEngineModels.utils;
+
+/**
+ * ServiceTime.java
+ *
+ * The one time scale used by the engines: whole seconds since midnight of the
+ * service day. GTFS writes trips that run past midnight with times of 24:00:00
+ * and later; these stay on the service day they belong to as values of
+ * {@link #DAY_SECONDS} and above, so times never wrap inside a trip.
+ *
+ * A search starting at clock time t on some day therefore sees two service
+ * days: the current one at t and the previous one at t + {@link #DAY_SECONDS},
+ * where its after-midnight trips are. Searches running past midnight continue
+ * into the next service day at t - {@link #DAY_SECONDS}.
+ */
+public final class ServiceTime {
+
+    public static final int DAY_SECONDS = 24 * 3600;
+
+    private ServiceTime() {
+    }
+
+    /**
+     * Parses a GTFS time "H:MM:SS" or "HH:MM:SS". Hours of 24 and more are kept,
+     * surrounding whitespace is ignored.
+     *
+     * @param time the time string
+     * @return seconds since midnight of the service day
+     * @throws IllegalArgumentException if the string is not a time
+     */
+    public static int parse(String time) {
+        String t = time.trim();
+        int first = t.indexOf(':');
+        int second = t.indexOf(':', first + 1);
+        if (first < 1 || second != first + 3 || t.length() != second + 3) {
+            throw new IllegalArgumentException("Invalid time format: " + time);
+        }
+        try {
+            int h = Integer.parseInt(t, 0, first, 10);
+            int m = Integer.parseInt(t, first + 1, second, 10);
+            int s = Integer.parseInt(t, second + 1, t.length(), 10);
+            if (h < 0 || m < 0 || m > 59 || s < 0 || s > 59) {
+                throw new IllegalArgumentException("Invalid time format: " + time);
+            }
+            return h * 3600 + m * 60 + s;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time format: " + time, e);
+        }
+    }
+
+    /**
+     * Formats service-day seconds the GTFS way, "HH:MM:SS" with hours of 24 and
+     * more after midnight. Negative times (the previous service day seen from
+     * the next one) are wrapped onto the clock.
+     *
+     * @param seconds seconds since midnight of the service day
+     * @return the time string
+     */
+    public static String format(int seconds) {
+        if (seconds < 0) {
+            return formatClock(seconds);
+        }
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+
+    /**
+     * Formats service-day seconds as a wall-clock time, wrapping at 24 hours.
+     *
+     * @param seconds seconds since midnight of the service day
+     * @return the time string, "00:00:00" to "23:59:59"
+     */
+    public static String formatClock(int seconds) {
+        int s = toClock(seconds);
+        return String.format("%02d:%02d:%02d", s / 3600, (s % 3600) / 60, s % 60);
+    }
+
+    /**
+     * @param seconds seconds since midnight of the service day
+     * @return the wall-clock second of the day, 0 to 86399
+     */
+    public static int toClock(int seconds) {
+        return Math.floorMod(seconds, DAY_SECONDS);
+    }
+
+    /**
+     * Number of whole days a service-day time lies after midnight, e.g. 1 for 25:10:00.
+     *
+     * @param seconds seconds since midnight of the service day
+     * @return the day offset
+     */
+    public static int dayOffset(int seconds) {
+        return Math.floorDiv(seconds, DAY_SECONDS);
+    }
+}
@@ -0,0 +1,107 @@
+package routing.routingEngineRaptor.api;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import routing.api.RoutingStrategy;
+import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.converters.DijkstraModelConverter;
+import routing.routingEngineModels.Coordinates;
+import routing.routingEngineModels.FinalRoute;
+import routing.routingEngineModels.InputJourney;
+import routing.routingEngineRaptor.engine.RaptorRouter;
+
+/**
+ * Implements the RoutingStrategy interface with RAPTOR. Besides the fastest
+ * route it can return the Pareto set of routes trading arrival time against
+ * the number of transfers.
+ */
+public class RaptorRoutePlanner implements RoutingStrategy {
+    private final RaptorRouter router;
+
+    /**
+     * Constructs a RaptorRoutePlanner with a specified RaptorRouter.
+     *
+     * @param router the RaptorRouter used for route calculations
+     */
+    public RaptorRoutePlanner(RaptorRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * Finds the earliest-arrival route based on the provided InputJourney.
+     *
+     * @param inputJourney the journey details including start, end, and start time
+     * @return a FinalRoute object representing the calculated route, or null if no route is found
+     * @throws UnsupportedOperationException if the journey has a service date
+     */
+    @Override
+    public FinalRoute findRoute(InputJourney inputJourney) {
+        List<FinalRoute> routes = findParetoRoutes(inputJourney);
+        return routes.isEmpty() ? null : routes.get(routes.size() - 1);
+    }
+
+    /**
+     * Finds a route between two stops starting at a specified time.
+     *
+     * @param from      the starting stop
+     * @param to        the destination stop
+     * @param startTime the start time of the journey
+     * @return a FinalRoute object representing the calculated route, or null if no route is found
+     */
+    @Override
+    public FinalRoute findRoute(AdiStop from, AdiStop to, LocalTime startTime) {
+        InputJourney inputJourney = new InputJourney(
+                new Coordinates(from.getLatitude(), from.getLongitude()),
+                new Coordinates(to.getLatitude(), to.getLongitude()),
+                startTime
+        );
+        return findRoute(inputJourney);
+    }
+
+    /**
+     * Finds the Pareto-optimal routes: each route arrives strictly earlier than
+     * every route with fewer transfers.
+     *
+     * @param inputJourney the journey details including start, end, and start time
+     * @return the routes ordered by increasing number of transfers, empty if none is found
+     * @throws UnsupportedOperationException if the journey has a service date
+     */
+    @Override
+    public List<FinalRoute> findParetoRoutes(InputJourney inputJourney) {
+        if (inputJourney.getDate() != null) {
+            throw new UnsupportedOperationException("The RAPTOR planner does not apply the service calendar");
+        }
+        List<Journey> journeys = router.findParetoJourneys(
+                DijkstraModelConverter.toDijkstraCoordinates(inputJourney.getStart()),
+                DijkstraModelConverter.toDijkstraCoordinates(inputJourney.getEnd()),
+                inputJourney.getStartTime().toSecondOfDay()
+        );
+        List<FinalRoute> routes = new ArrayList<>(journeys.size());
+        for (Journey journey : journeys) {
+            routes.add(DijkstraModelConverter.toFinalRoute(journey, router::getRouteInfo));
+        }
+        return routes;
+    }
+
+    /**
+     * One-to-all search: travel times from {@code origin} to every reachable stop.
+     *
+     * @param origin    the starting coordinates
+     * @param startTime the start time of the journey
+     * @return a map of stop IDs to travel times in seconds
+     */
+    @Override
+    public Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime) {
+        int departureSec = startTime.toSecondOfDay();
+        Map<String, Integer> arrivals = router.findEarliestArrivals(
+                DijkstraModelConverter.toDijkstraCoordinates(origin), departureSec);
+        Map<String, Integer> travelTimes = new HashMap<>(arrivals.size() * 2);
+        arrivals.forEach((stopId, arrival) -> travelTimes.put(stopId, arrival - departureSec));
+        return travelTimes;
+    }
+}
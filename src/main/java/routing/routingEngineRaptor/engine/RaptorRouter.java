@@ -0,0 +1,616 @@
+package routing.routingEngineRaptor.engine;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import routing.metrics.SearchStats;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineDijkstra.dijkstra.parsers.GTFSDatabaseParser;
+import routing.routingEngineDijkstra.dijkstra.parsers.TimetableSnapshot;
+import routing.routingEngineDijkstra.dijkstra.service.HaversineDistanceCalculator;
+import routing.routingEngineDijkstra.dijkstra.service.TripPatterns;
+import routing.routingEngineDijkstra.dijkstra.service.TripPatterns.Trip;
+import routing.routingEngineDijkstra.dijkstra.service.WalkingTransferService;
+import routing.routingEngineModels.utils.IntList;
+import routing.routingEngineModels.utils.PackedKDTree;
+
+/**
+ * RaptorRouter.java
+ *
+ * Round-based public transit routing (RAPTOR, Delling et al.). Trips with the
+ * same stop sequence are grouped into route patterns; round k scans every
+ * pattern touched by a stop improved in round k-1 and therefore finds the
+ * earliest arrival using at most k vehicles. Keeping one label array per
+ * round yields the Pareto set of (arrival time, number of transfers) journeys
+ * from a single query.
+ *
+ * Trips inside a pattern are kept sorted and never overtake each other, so the
+ * earliest catchable trip at any stop of the pattern is found by binary search.
+ * Trips that would overtake are moved to a separate pattern with the same stops.
+ *
+ * All query state lives in local arrays, so one instance can be queried from
+ * many threads at the same time.
+ */
+public class RaptorRouter {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final double WALKING_SPEED_MPS = 1.389;
+    private static final int DEFAULT_MAX_TRANSFERS = 5;
+
+    // How a stop was reached in a round
+    private static final byte NONE = 0;
+    private static final byte ORIGIN = 1;
+    private static final byte TRANSIT = 2;
+    private static final byte WALK = 3;
+
+    private final DijkstraStop[] stops;
+    private final PackedKDTree spatialIndex;
+    private final Map<String, DijkstraRouteInfo> routeInfo;
+
+    // Patterns: stop sequence and trips (CSR)
+    private final int[] patternStopStart;
+    private final int[] patternStops;
+    private final int[] patternTripStart;
+
+    // Trips: owning pattern and offset of their times in arrival/departure arrays
+    private final int[] tripPattern;
+    private final int[] tripTimeBase;
+    private final int[] arrivalTimes;
+    private final int[] departureTimes;
+    private final String[] tripIds;
+    private final String[] tripRouteIds;
+    private final String[] tripHeadSigns;
+
+    // Patterns serving each stop, with the position of the stop in the pattern (CSR)
+    private final int[] stopPatternStart;
+    private final int[] stopPatternIds;
+    private final int[] stopPatternPos;
+
+    // Footpaths (CSR)
+    private final int[] footpathStart;
+    private final int[] footpathTarget;
+    private final int[] footpathDuration;
+
+    private final HaversineDistanceCalculator distanceCalculator;
+    private final int maxWalkingDistanceMeters;
+    private final int maxRounds;
+
+    /**
+     * Builds route patterns and footpaths with the default transfer limit.
+     *
+     * @param stops                    the map of stop IDs to DijkstraStop objects
+     * @param outgoingConnections      the map of stop IDs to their outgoing connections
+     * @param routeInfo                the map of route IDs to DijkstraRouteInfo objects
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     */
+    public RaptorRouter(Map<String, DijkstraStop> stops,
+                        Map<String, List<DijkstraConnection>> outgoingConnections,
+                        Map<String, DijkstraRouteInfo> routeInfo,
+                        int maxWalkingDistanceMeters) {
+        this(stops, outgoingConnections, routeInfo, maxWalkingDistanceMeters, DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Builds route patterns and footpaths.
+     *
+     * @param stops                    the map of stop IDs to DijkstraStop objects
+     * @param outgoingConnections      the map of stop IDs to their outgoing connections
+     * @param routeInfo                the map of route IDs to DijkstraRouteInfo objects
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @param maxTransfers             the maximum number of transfers of a journey
+     */
+    public RaptorRouter(Map<String, DijkstraStop> stops,
+                        Map<String, List<DijkstraConnection>> outgoingConnections,
+                        Map<String, DijkstraRouteInfo> routeInfo,
+                        int maxWalkingDistanceMeters,
+                        int maxTransfers) {
+        this.routeInfo = routeInfo;
+        this.maxWalkingDistanceMeters = maxWalkingDistanceMeters;
+        this.maxRounds = maxTransfers + 1;
+        this.distanceCalculator = new HaversineDistanceCalculator();
+
+        this.stops = stops.values().toArray(new DijkstraStop[0]);
+        Arrays.sort(this.stops, (a, b) -> a.id.compareTo(b.id));
+        // indexed after sorting: the tree's point indices are indices into this.stops
+        double[] stopLats = new double[this.stops.length];
+        double[] stopLons = new double[this.stops.length];
+        for (int s = 0; s < this.stops.length; s++) {
+            stopLats[s] = this.stops[s].lat;
+            stopLons[s] = this.stops[s].lon;
+        }
+        this.spatialIndex = new PackedKDTree(stopLats, stopLons);
+        Map<String, Integer> stopIndex = new HashMap<>(this.stops.length * 2);
+        for (int i = 0; i < this.stops.length; i++) {
+            stopIndex.put(this.stops[i].id, i);
+        }
+
+        List<Trip> trips = TripPatterns.buildTrips(outgoingConnections.values(),
+                stop -> stopIndex.getOrDefault(stop.id, -1));
+        List<List<Trip>> patterns = TripPatterns.groupIntoPatterns(trips);
+
+        // Flatten patterns and trips
+        IntList pStopStart = new IntList();
+        IntList pStops = new IntList();
+        IntList pTripStart = new IntList();
+        IntList tPattern = new IntList();
+        IntList tTimeBase = new IntList();
+        IntList arrivals = new IntList(1 << 20);
+        IntList departures = new IntList(1 << 20);
+        List<String> tIds = new ArrayList<>();
+        List<String> tRoutes = new ArrayList<>();
+        List<String> tHeadSigns = new ArrayList<>();
+
+        for (int p = 0; p < patterns.size(); p++) {
+            List<Trip> patternTrips = patterns.get(p);
+            pStopStart.add(pStops.size());
+            int[] sequence = patternTrips.get(0).stops.toArray();
+            for (int s : sequence) {
+                pStops.add(s);
+            }
+            pTripStart.add(tIds.size());
+            for (Trip trip : patternTrips) {
+                tPattern.add(p);
+                tTimeBase.add(arrivals.size());
+                for (int i = 0; i < sequence.length; i++) {
+                    arrivals.add(trip.arrivals.get(i));
+                    departures.add(trip.departures.get(i));
+                }
+                tIds.add(trip.tripId);
+                tRoutes.add(trip.routeId);
+                tHeadSigns.add(trip.headSign);
+            }
+        }
+        pStopStart.add(pStops.size());
+        pTripStart.add(tIds.size());
+
+        this.patternStopStart = pStopStart.toArray();
+        this.patternStops = pStops.toArray();
+        this.patternTripStart = pTripStart.toArray();
+        this.tripPattern = tPattern.toArray();
+        this.tripTimeBase = tTimeBase.toArray();
+        this.arrivalTimes = arrivals.toArray();
+        this.departureTimes = departures.toArray();
+        this.tripIds = tIds.toArray(new String[0]);
+        this.tripRouteIds = tRoutes.toArray(new String[0]);
+        this.tripHeadSigns = tHeadSigns.toArray(new String[0]);
+
+        // Stop -> (pattern, position) index
+        this.stopPatternStart = new int[this.stops.length + 1];
+        for (int s : patternStops) {
+            stopPatternStart[s + 1]++;
+        }
+        for (int s = 0; s < this.stops.length; s++) {
+            stopPatternStart[s + 1] += stopPatternStart[s];
+        }
+        this.stopPatternIds = new int[patternStops.length];
+        this.stopPatternPos = new int[patternStops.length];
+        int[] fill = Arrays.copyOf(stopPatternStart, this.stops.length);
+        for (int p = 0; p + 1 < patternStopStart.length; p++) {
+            for (int i = patternStopStart[p]; i < patternStopStart[p + 1]; i++) {
+                int s = patternStops[i];
+                stopPatternIds[fill[s]] = p;
+                stopPatternPos[fill[s]] = i - patternStopStart[p];
+                fill[s]++;
+            }
+        }
+
+        // Footpaths between stops within walking distance
+        WalkingTransferService walkingService = new WalkingTransferService(
+                distanceCalculator, maxWalkingDistanceMeters, stops.values());
+        this.footpathStart = new int[this.stops.length + 1];
+        IntList targets = new IntList(this.stops.length * 8);
+        IntList durations = new IntList(this.stops.length * 8);
+        for (int s = 0; s < this.stops.length; s++) {
+            footpathStart[s] = targets.size();
+            for (DijkstraStop near : walkingService.getNearbyStops(this.stops[s])) {
+                targets.add(stopIndex.get(near.id));
+                durations.add(Math.max(1, walkingService.calculateWalkTime(this.stops[s], near)));
+            }
+        }
+        footpathStart[this.stops.length] = targets.size();
+        this.footpathTarget = targets.toArray();
+        this.footpathDuration = durations.toArray();
+    }
+
+    /**
+     * Creates a RaptorRouter from the GTFS database, using the same parser (and
+     * snapshot) as the Dijkstra engine.
+     *
+     * @param maxWalkingDistanceMeters the maximum walking distance in meters
+     * @return a ready-to-query router
+     * @throws SQLException if a database error occurs
+     */
+    public static RaptorRouter createFromGTFS(int maxWalkingDistanceMeters) throws SQLException {
+        // the snapshot's walking connections are ignored, footpaths are rebuilt from the stops
+        TimetableSnapshot snapshot = GTFSDatabaseParser.openSnapshot(maxWalkingDistanceMeters);
+        if (snapshot != null) {
+            return new RaptorRouter(snapshot.getStops(), snapshot.getConnections(), snapshot.getRoutes(),
+                    maxWalkingDistanceMeters);
+        }
+        GTFSDatabaseParser parser = new GTFSDatabaseParser();
+        Map<String, DijkstraStop> stops = parser.parseStops();
+        Map<String, DijkstraRouteInfo> routes = parser.parseRoutes();
+        Map<String, List<DijkstraConnection>> connections = parser.parseConnections(stops);
+        return new RaptorRouter(stops, connections, routes, maxWalkingDistanceMeters);
+    }
+
+    /**
+     * Finds the Pareto-optimal journeys between two coordinates: for every
+     * number of transfers, the earliest arrival, keeping only journeys that
+     * arrive strictly earlier than all journeys with fewer transfers. The list
+     * is ordered by increasing number of transfers (and decreasing arrival time).
+     *
+     * @param from         the starting coordinates
+     * @param to           the destination coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return the Pareto set of journeys, empty if the destination cannot be reached
+     */
+    public List<Journey> findParetoJourneys(DijkstraCoordinates from, DijkstraCoordinates to, int departureSec) {
+        int[] sources = stopsAround(from);
+        int[] targets = stopsAround(to);
+        if (sources.length == 0 || targets.length == 0) {
+            return Collections.emptyList();
+        }
+
+        int[] sourceArrival = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceArrival[i] = departureSec + walkSeconds(from, stops[sources[i]]);
+        }
+        int[] targetWalk = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            targetWalk[i] = walkSeconds(to, stops[targets[i]]);
+        }
+
+        Labels labels = run(sources, sourceArrival, targets, targetWalk);
+
+        DijkstraStop origin = new DijkstraStop("ORIGIN", "Origin", from.getLatitude(), from.getLongitude());
+        DijkstraStop destination = new DijkstraStop("DEST", "Destination", to.getLatitude(), to.getLongitude());
+
+        List<Journey> journeys = new ArrayList<>();
+        int previousBest = INFINITY;
+        for (int k = 0; k <= labels.rounds; k++) {
+            int bestTarget = -1;
+            int bestArrival = INFINITY;
+            for (int i = 0; i < targets.length; i++) {
+                int arr = labels.arrival[k][targets[i]];
+                if (arr != INFINITY && arr + targetWalk[i] < bestArrival) {
+                    bestArrival = arr + targetWalk[i];
+                    bestTarget = i;
+                }
+            }
+            if (bestTarget < 0 || bestArrival >= previousBest) {
+                continue;
+            }
+            previousBest = bestArrival;
+
+            int lastStop = targets[bestTarget];
+            List<JourneyLeg> legs = reconstruct(labels, k, lastStop, origin, departureSec);
+            if (targetWalk[bestTarget] > 0) {
+                legs.add(new JourneyLeg(stops[lastStop], destination, labels.arrival[k][lastStop], bestArrival,
+                        "WALK", null, "Walk to " + destination.name, true));
+            }
+            journeys.add(new Journey(legs, departureSec, bestArrival));
+        }
+        return journeys;
+    }
+
+    /**
+     * Finds the earliest-arrival journey between two coordinates, regardless
+     * of the number of transfers.
+     *
+     * @param from         the starting coordinates
+     * @param to           the destination coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return the journey, or null if the destination cannot be reached
+     */
+    public Journey findJourney(DijkstraCoordinates from, DijkstraCoordinates to, int departureSec) {
+        List<Journey> journeys = findParetoJourneys(from, to, departureSec);
+        return journeys.isEmpty() ? null : journeys.get(journeys.size() - 1);
+    }
+
+    /**
+     * One-to-all search: the earliest arrival time at every stop reachable from
+     * a coordinate within the transfer limit.
+     *
+     * @param from         the starting coordinates
+     * @param departureSec the departure time in seconds since midnight
+     * @return a map of stop IDs to arrival times in seconds since midnight
+     */
+    public Map<String, Integer> findEarliestArrivals(DijkstraCoordinates from, int departureSec) {
+        int[] sources = stopsAround(from);
+        int[] sourceArrival = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceArrival[i] = departureSec + walkSeconds(from, stops[sources[i]]);
+        }
+
+        Labels labels = run(sources, sourceArrival, new int[0], new int[0]);
+        int[] best = labels.arrival[labels.rounds];
+
+        Map<String, Integer> arrivals = new HashMap<>(stops.length * 2);
+        for (int s = 0; s < stops.length; s++) {
+            if (best[s] != INFINITY) {
+                arrivals.put(stops[s].id, best[s]);
+            }
+        }
+        return arrivals;
+    }
+
+    /**
+     * Per-query labels. arrival[k][s] is the earliest arrival at s using at
+     * most k vehicles; the parent fields describe how round k improved it.
+     */
+    private static final class Labels {
+        final int[][] arrival;
+        final byte[][] type;
+        final int[][] trip;
+        final int[][] boardPos;
+        final int[][] exitPos;
+        final int[][] walkFrom;
+        int rounds;
+
+        Labels(int maxRounds, int stopCount) {
+            arrival = new int[maxRounds + 1][stopCount];
+            type = new byte[maxRounds + 1][stopCount];
+            trip = new int[maxRounds + 1][];
+            boardPos = new int[maxRounds + 1][];
+            exitPos = new int[maxRounds + 1][];
+            walkFrom = new int[maxRounds + 1][];
+            Arrays.fill(arrival[0], INFINITY);
+            for (int k = 1; k <= maxRounds; k++) {
+                trip[k] = new int[stopCount];
+                boardPos[k] = new int[stopCount];
+                exitPos[k] = new int[stopCount];
+                walkFrom[k] = new int[stopCount];
+            }
+        }
+    }
+
+    /**
+     * Runs the RAPTOR rounds from the given source stops.
+     */
+    private Labels run(int[] sources, int[] sourceArrival, int[] targets, int[] targetWalk) {
+        int n = stops.length;
+        Labels labels = new Labels(maxRounds, n);
+
+        BitSet marked = new BitSet(n);
+        for (int i = 0; i < sources.length; i++) {
+            int s = sources[i];
+            if (sourceArrival[i] < labels.arrival[0][s]) {
+                labels.arrival[0][s] = sourceArrival[i];
+                labels.type[0][s] = ORIGIN;
+                marked.set(s);
+            }
+        }
+        int targetBound = bestTargetArrival(labels.arrival[0], targets, targetWalk);
+
+        int patternCount = patternTripStart.length - 1;
+        int[] firstPos = new int[patternCount];
+        Arrays.fill(firstPos, INFINITY);
+        IntList queue = new IntList();
+        // the counts are only reported with metrics enabled
+        long markedStops = 0;
+        long scanned = 0;
+
+        for (int k = 1; k <= maxRounds && !marked.isEmpty(); k++) {
+            int[] prev = labels.arrival[k - 1];
+            int[] curr = labels.arrival[k];
+            System.arraycopy(prev, 0, curr, 0, n);
+
+            // Collect the patterns touched by stops marked in the previous round
+            queue.clear();
+            for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+                for (int i = stopPatternStart[s]; i < stopPatternStart[s + 1]; i++) {
+                    int p = stopPatternIds[i];
+                    if (firstPos[p] == INFINITY) {
+                        queue.add(p);
+                    }
+                    firstPos[p] = Math.min(firstPos[p], stopPatternPos[i]);
+                }
+            }
+            marked.clear();
+
+            // Scan each pattern once from the earliest marked position
+            for (int q = 0; q < queue.size(); q++) {
+                int p = queue.get(q);
+                int stopBase = patternStopStart[p];
+                int length = patternStopStart[p + 1] - stopBase;
+                int trip = -1;
+                int boardPos = -1;
+                scanned += length - firstPos[p];
+
+                for (int pos = firstPos[p]; pos < length; pos++) {
+                    int s = patternStops[stopBase + pos];
+
+                    if (trip >= 0) {
+                        int arr = arrivalTimes[tripTimeBase[trip] + pos];
+                        if (arr < curr[s] && arr < targetBound) {
+                            curr[s] = arr;
+                            labels.type[k][s] = TRANSIT;
+                            labels.trip[k][s] = trip;
+                            labels.boardPos[k][s] = boardPos;
+                            labels.exitPos[k][s] = pos;
+                            marked.set(s);
+                        }
+                    }
+
+                    if (prev[s] != INFINITY
+                            && (trip < 0 || prev[s] <= departureTimes[tripTimeBase[trip] + pos])) {
+                        int catchable = earliestTrip(p, pos, prev[s]);
+                        if (catchable >= 0 && catchable != trip) {
+                            trip = catchable;
+                            boardPos = pos;
+                        }
+                    }
+                }
+                firstPos[p] = INFINITY;
+            }
+
+            // Footpaths from stops improved by a vehicle in this round
+            BitSet walked = new BitSet(n);
+            for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+                if (labels.type[k][s] != TRANSIT) {
+                    continue;
+                }
+                scanned += footpathStart[s + 1] - footpathStart[s];
+                for (int f = footpathStart[s]; f < footpathStart[s + 1]; f++) {
+                    int next = footpathTarget[f];
+                    int walkArrival = curr[s] + footpathDuration[f];
+                    if (walkArrival < curr[next] && walkArrival < targetBound) {
+                        curr[next] = walkArrival;
+                        labels.type[k][next] = WALK;
+                        labels.walkFrom[k][next] = s;
+                        walked.set(next);
+                    }
+                }
+            }
+            marked.or(walked);
+            markedStops += marked.cardinality();
+
+            targetBound = Math.min(targetBound, bestTargetArrival(curr, targets, targetWalk));
+            labels.rounds = k;
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.recordSearch(markedStops, scanned);
+        }
+        return labels;
+    }
+
+    /**
+     * Binary-searches the first trip of a pattern departing at {@code pos} no
+     * earlier than {@code timeSec}.
+     *
+     * @return the trip index, or -1 if none
+     */
+    private int earliestTrip(int pattern, int pos, int timeSec) {
+        int lo = patternTripStart[pattern];
+        int hi = patternTripStart[pattern + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departureTimes[tripTimeBase[mid] + pos] < timeSec) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < patternTripStart[pattern + 1] ? lo : -1;
+    }
+
+    /**
+     * Returns the best known arrival at the destination coordinate.
+     */
+    private int bestTargetArrival(int[] arrival, int[] targets, int[] targetWalk) {
+        int best = INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            int arr = arrival[targets[i]];
+            if (arr != INFINITY && arr + targetWalk[i] < best) {
+                best = arr + targetWalk[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Follows the parent labels back from {@code stop} in round {@code round}.
+     */
+    private List<JourneyLeg> reconstruct(Labels labels, int round, int stop, DijkstraStop origin, int departureSec) {
+        List<JourneyLeg> legs = new ArrayList<>();
+        int k = round;
+        int s = stop;
+
+        while (true) {
+            // A label not improved in round k was inherited from an earlier round
+            while (k > 0 && labels.type[k][s] == NONE) {
+                k--;
+            }
+            byte type = labels.type[k][s];
+            if (type == ORIGIN) {
+                if (labels.arrival[0][s] > departureSec) {
+                    legs.add(new JourneyLeg(origin, stops[s], departureSec, labels.arrival[0][s],
+                            "WALK", null, "Walk to " + stops[s].name, true));
+                }
+                break;
+            }
+            if (type == WALK) {
+                int from = labels.walkFrom[k][s];
+                int arrival = labels.arrival[k][s];
+                legs.add(new JourneyLeg(stops[from], stops[s], arrival - footpathDuration(from, s), arrival,
+                        "WALK", null, "Walk to " + stops[s].name, true));
+                s = from;
+                continue;
+            }
+            if (type != TRANSIT) {
+                break;
+            }
+            int trip = labels.trip[k][s];
+            int base = tripTimeBase[trip];
+            int boardPos = labels.boardPos[k][s];
+            int boardStop = patternStops[patternStopStart[tripPattern[trip]] + boardPos];
+            legs.add(new JourneyLeg(stops[boardStop], stops[s],
+                    departureTimes[base + boardPos], arrivalTimes[base + labels.exitPos[k][s]],
+                    tripRouteIds[trip], tripIds[trip], tripHeadSigns[trip], false));
+            s = boardStop;
+            k--;
+        }
+        Collections.reverse(legs);
+        return legs;
+    }
+
+    /**
+     * Looks up the footpath duration between two stops.
+     */
+    private int footpathDuration(int from, int to) {
+        for (int f = footpathStart[from]; f < footpathStart[from + 1]; f++) {
+            if (footpathTarget[f] == to) {
+                return footpathDuration[f];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the stops within walking distance of a coordinate, or the single
+     * closest stop when none is that close.
+     */
+    private int[] stopsAround(DijkstraCoordinates coord) {
+        IntList result = spatialIndex.within(coord.getLatitude(), coord.getLongitude(), maxWalkingDistanceMeters);
+        if (result.isEmpty()) {
+            int closest = spatialIndex.nearest(coord.getLatitude(), coord.getLongitude());
+            if (closest >= 0) {
+                result.add(closest);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Walking time between a coordinate and a stop.
+     */
+    private int walkSeconds(DijkstraCoordinates coord, DijkstraStop stop) {
+        return (int) Math.ceil(distanceCalculator.calculateDistanceMeters(coord, stop) / WALKING_SPEED_MPS);
+    }
+
+    /**
+     * Retrieves the route information of a route.
+     *
+     * @param routeId the route ID
+     * @return the DijkstraRouteInfo, or null if unknown
+     */
+    public DijkstraRouteInfo getRouteInfo(String routeId) {
+        return routeInfo.get(routeId);
+    }
+
+    public int getPatternCount() {
+        return patternTripStart.length - 1;
+    }
+}
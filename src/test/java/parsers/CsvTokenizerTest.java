@@ -0,0 +1,109 @@
+package parsers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CsvTokenizerTest {
+
+    /**
+     * Tokenizes a whole input, with a window small enough to make records
+     * cross window boundaries.
+     */
+    private static List<String[]> records(String csv, int window) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv), window);
+        List<String[]> records = new ArrayList<>();
+        while (tokenizer.next()) {
+            records.add(tokenizer.getStrings());
+        }
+        return records;
+    }
+
+    private static void assertRecords(String csv, String[]... expected) throws IOException {
+        for (int window : new int[] {16, 17, 64, 1 << 16}) {
+            List<String[]> actual = records(csv, window);
+            assertEquals(expected.length, actual.size(), "records, window " + window);
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual.get(i), "record " + i + ", window " + window);
+            }
+        }
+    }
+
+    @Test
+    void skipsTheByteOrderMark() throws IOException {
+        assertRecords("\uFEFFstop_id,stop_name\n1,A\n",
+                new String[] {"stop_id", "stop_name"}, new String[] {"1", "A"});
+    }
+
+    @Test
+    void removesQuotesAndCollapsesEscapedQuotes() throws IOException {
+        assertRecords("a,\"b,c\",\"say \"\"hi\"\"\",\"\"\n",
+                new String[] {"a", "b,c", "say \"hi\"", ""});
+    }
+
+    @Test
+    void keepsLineBreaksInsideQuotes() throws IOException {
+        assertRecords("id,text\n1,\"first line\nsecond line\"\n2,\"crlf\r\ninside\"\n",
+                new String[] {"id", "text"},
+                new String[] {"1", "first line\nsecond line"},
+                new String[] {"2", "crlf\r\ninside"});
+    }
+
+    @Test
+    void acceptsEveryLineEnding() throws IOException {
+        assertRecords("a,b\r\nc,d\re,f\ng,h",
+                new String[] {"a", "b"}, new String[] {"c", "d"}, new String[] {"e", "f"}, new String[] {"g", "h"});
+    }
+
+    @Test
+    void skipsBlankLinesAndTrimsFields() throws IOException {
+        assertRecords("\r\n a , b \n\n\r\n,\n",
+                new String[] {"a", "b"}, new String[] {"", ""});
+    }
+
+    @Test
+    void growsTheWindowForLongRecords() throws IOException {
+        String longField = "x".repeat(1000);
+        assertRecords("1," + longField + "\n2,\"" + longField + "\"\n",
+                new String[] {"1", longField}, new String[] {"2", longField});
+    }
+
+    @Test
+    void parsesTypedFieldsLikeTheJdk() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(
+                "42,-7,+3,12345678901234567890,47.4979,-19.0402,1e3,.5,25:10:00,8:05:09\n"));
+        assertTrue(tokenizer.next());
+        assertEquals(42, tokenizer.getInt(0));
+        assertEquals(-7, tokenizer.getLong(1));
+        assertEquals(3, tokenizer.getInt(2));
+        assertThrows(NumberFormatException.class, () -> tokenizer.getLong(3));
+        assertEquals(Double.parseDouble("47.4979"), tokenizer.getDouble(4));
+        assertEquals(Double.parseDouble("-19.0402"), tokenizer.getDouble(5));
+        assertEquals(1000.0, tokenizer.getDouble(6));
+        assertEquals(0.5, tokenizer.getDouble(7));
+        assertEquals(25 * 3600 + 10 * 60, tokenizer.getSeconds(8));
+        assertEquals(8 * 3600 + 5 * 60 + 9, tokenizer.getSeconds(9));
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void comparesFieldsWithoutAllocating() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("\"stop_id\", x \n"));
+        assertTrue(tokenizer.next());
+        assertEquals(2, tokenizer.fieldCount());
+        assertTrue(tokenizer.fieldEquals(0, "stop_id"));
+        assertTrue(tokenizer.fieldEquals(1, "x"));
+        assertFalse(tokenizer.fieldEquals(1, " x"));
+        assertEquals(1, tokenizer.length(1));
+        assertEquals('x', tokenizer.charAt(1, 0));
+    }
+}
@@ -0,0 +1,103 @@
+package parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.junit.jupiter.api.Test;
+
+class OrderedResponseWriterTest {
+
+    /**
+     * Collects the written responses instead of printing them.
+     */
+    private static final class Recorder extends CLIWrite {
+        final List<Object> written = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void write(Map<String, Object> response) {
+            written.add(response.get("ok"));
+        }
+    }
+
+    @Test
+    void writesResponsesInInputOrder() throws IOException {
+        Recorder recorder = new Recorder();
+        Semaphore inFlight = new Semaphore(0);
+        OrderedResponseWriter writer = new OrderedResponseWriter(recorder, inFlight);
+        long[] sequences = new long[4];
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = writer.nextSequence();
+        }
+
+        writer.complete(sequences[3], CLIWrite.ok(3));
+        writer.complete(sequences[1], CLIWrite.ok(1));
+        assertEquals(List.of(), recorder.written);
+        assertEquals(0, inFlight.availablePermits());
+
+        writer.complete(sequences[0], CLIWrite.ok(0));
+        assertEquals(List.of(0, 1), recorder.written);
+        assertEquals(2, inFlight.availablePermits());
+
+        writer.complete(sequences[2], CLIWrite.ok(2));
+        assertEquals(List.of(0, 1, 2, 3), recorder.written);
+        assertEquals(4, inFlight.availablePermits());
+    }
+
+    @Test
+    void writesRequestsWithAnIdRightAway() throws IOException {
+        Recorder recorder = new Recorder();
+        Semaphore inFlight = new Semaphore(0);
+        OrderedResponseWriter writer = new OrderedResponseWriter(recorder, inFlight);
+        long first = writer.nextSequence();
+
+        writer.completeUnordered(CLIWrite.ok("with id"));
+        assertEquals(List.of("with id"), recorder.written);
+        assertEquals(1, inFlight.availablePermits());
+
+        writer.complete(first, CLIWrite.ok("ordered"));
+        assertEquals(List.of("with id", "ordered"), recorder.written);
+    }
+
+    @Test
+    void keepsTheOrderUnderConcurrentCompletion() throws Exception {
+        Recorder recorder = new Recorder();
+        Semaphore inFlight = new Semaphore(0);
+        OrderedResponseWriter writer = new OrderedResponseWriter(recorder, inFlight);
+        int requests = 2000;
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            sequences.add(writer.nextSequence());
+        }
+        List<Long> shuffled = new ArrayList<>(sequences);
+        Collections.shuffle(shuffled, new Random(3));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (long sequence : shuffled) {
+                done.add(pool.submit(() -> {
+                    writer.complete(sequence, CLIWrite.ok(sequence));
+                    return null;
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(new ArrayList<Object>(sequences), recorder.written);
+        assertEquals(requests, inFlight.availablePermits());
+    }
+}
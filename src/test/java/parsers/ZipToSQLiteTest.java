@@ -0,0 +1,83 @@
+package parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ZipToSQLiteTest {
+
+    private static final String[] TIMES = {"8:05:09", "08:05:09", " 25:10:00 ", "00:00:00", ""};
+    private static final Integer[] SECONDS = {29109, 29109, 90600, 0, null};
+
+    @Test
+    void readsTheStoredSecondsColumn() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE stop_times (departure_time TEXT, departure_secs INTEGER);");
+            for (int i = 0; i < TIMES.length; i++) {
+                st.execute("INSERT INTO stop_times VALUES ('" + TIMES[i] + "', " + SECONDS[i] + ");");
+            }
+            String expression = ZipToSQLite.secondsExpression(conn, "stop_times", "x", "departure_time");
+            assertEquals("x.departure_secs", expression);
+            assertEquals(Arrays.asList(SECONDS), seconds(st, expression));
+        }
+    }
+
+    @Test
+    void computesSecondsForDatabasesWithoutTheColumn() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE stop_times (departure_time TEXT);");
+            for (String time : TIMES) {
+                st.execute("INSERT INTO stop_times VALUES ('" + time + "');");
+            }
+            st.execute("INSERT INTO stop_times VALUES (NULL);");
+            String expression = ZipToSQLite.secondsExpression(conn, "stop_times", "x", "departure_time");
+            List<Integer> expected = new ArrayList<>(Arrays.asList(SECONDS));
+            expected.add(null);
+            assertEquals(expected, seconds(st, expression));
+        }
+    }
+
+    private static List<Integer> seconds(Statement st, String expression) throws SQLException {
+        List<Integer> out = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery("SELECT " + expression + " FROM stop_times x ORDER BY rowid;")) {
+            while (rs.next()) {
+                int value = rs.getInt(1);
+                out.add(rs.wasNull() ? null : value);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    void feedHashFollowsTheRecordedEntries() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement st = conn.createStatement()) {
+            assertEquals(0, ZipToSQLite.feedHash(conn));
+
+            st.execute("CREATE TABLE feed_entries (tbl TEXT PRIMARY KEY, entry_crc INTEGER, entry_size INTEGER,"
+                    + " columns TEXT);");
+            assertEquals(0, ZipToSQLite.feedHash(conn));
+
+            st.execute("INSERT INTO feed_entries VALUES ('stops', 123, 4567, 'stop_id');");
+            st.execute("INSERT INTO feed_entries VALUES ('trips', 89, 1011, 'trip_id');");
+            long hash = ZipToSQLite.feedHash(conn);
+            assertNotEquals(0, hash);
+            assertEquals(hash, ZipToSQLite.feedHash(conn));
+
+            st.execute("UPDATE feed_entries SET entry_crc = 124 WHERE tbl = 'stops';");
+            assertNotEquals(hash, ZipToSQLite.feedHash(conn));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import routing.routingEngineCSA.engine.ConnectionScanRouter;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+import routing.routingEngineRaptor.engine.RaptorRouter;
+
+/**
+ * Runs the same stop-to-stop queries on every engine over a small random
+ * feed and checks their earliest arrivals against a reference scan. The stops
+ * are 2 km apart, so no engine can walk between them and the answers must be
+ * equal to the second. Trips run from 22:30 to past 27:00, so the queries
+ * cross midnight on the service-day time scale. Queries start once every line
+ * runs at its headway, because stop-based Dijkstra waits at most 30 minutes
+ * at a stop.
+ */
+class EngineAgreementTest {
+
+    private static final int STOPS = 12;
+    private static final int MAX_WALK_METERS = 400;
+    private static final int FIRST_DEPARTURE = 22 * 3600 + 1800;
+    private static final int HEADWAY = 900;
+
+    private final List<DijkstraStop> stopList = new ArrayList<>();
+    private final Map<String, DijkstraStop> stops = new LinkedHashMap<>();
+    private final Map<String, List<DijkstraConnection>> outgoing = new HashMap<>();
+    private final Map<String, DijkstraRouteInfo> routes = new HashMap<>();
+    private final List<DijkstraConnection> connections = new ArrayList<>();
+
+    EngineAgreementTest() {
+        Random random = new Random(5);
+        // ids in reverse order of insertion, so map order and id order differ
+        for (int i = 0; i < STOPS; i++) {
+            DijkstraStop stop = new DijkstraStop(String.format("S%02d", STOPS - 1 - i), "stop " + i,
+                    47.40 + (i / 4) * 0.02, 19.00 + (i % 4) * 0.03, i);
+            stopList.add(stop);
+            stops.put(stop.id, stop);
+        }
+        for (int line = 0; line < 6; line++) {
+            int length = 3 + random.nextInt(4);
+            int[] sequence = random.ints(0, STOPS).distinct().limit(length).toArray();
+            int[] runSeconds = random.ints(length - 1, 120, 600).toArray();
+            String routeId = "R" + line;
+            routes.put(routeId, new DijkstraRouteInfo("op", String.valueOf(line), "", "line " + line));
+            for (int trip = 0; trip < 20; trip++) {
+                int time = FIRST_DEPARTURE + trip * HEADWAY + random.nextInt(300);
+                for (int k = 0; k + 1 < length; k++) {
+                    DijkstraStop from = stopList.get(sequence[k]);
+                    DijkstraStop to = stopList.get(sequence[k + 1]);
+                    DijkstraConnection c = new DijkstraConnection(from, to, time, time + runSeconds[k],
+                            routeId + "T" + trip, routeId, "line " + line);
+                    outgoing.computeIfAbsent(from.id, id -> new ArrayList<>()).add(c);
+                    connections.add(c);
+                    time += runSeconds[k] + 30;
+                }
+            }
+        }
+        connections.sort(Comparator.comparingInt(c -> c.departureTime));
+    }
+
+    /**
+     * Earliest arrival by scanning the connections in departure order.
+     */
+    private int referenceArrival(DijkstraStop source, DijkstraStop target, int departure) {
+        int[] arrival = new int[STOPS];
+        Arrays.fill(arrival, Integer.MAX_VALUE);
+        arrival[source.index] = departure;
+        Map<String, Boolean> boarded = new HashMap<>();
+        for (DijkstraConnection c : connections) {
+            if (boarded.containsKey(c.tripId) || arrival[c.from.index] <= c.departureTime) {
+                boarded.put(c.tripId, true);
+                arrival[c.to.index] = Math.min(arrival[c.to.index], c.arrivalTime);
+            }
+        }
+        return arrival[target.index];
+    }
+
+    @Test
+    void earliestArrivalsAgree() {
+        ConnectionScanRouter csa = new ConnectionScanRouter(stops, outgoing, routes, MAX_WALK_METERS);
+        RaptorRouter raptor = new RaptorRouter(stops, outgoing, routes, MAX_WALK_METERS);
+        DijkstraRouter dijkstra = new DijkstraRouter(stops, outgoing, routes, MAX_WALK_METERS,
+                DijkstraRouter.SearchMode.STOP_BASED);
+        DijkstraRouter tripBased = new DijkstraRouter(stops, outgoing, routes, MAX_WALK_METERS,
+                DijkstraRouter.SearchMode.TRIP_BASED);
+
+        Random random = new Random(9);
+        int found = 0;
+        for (int q = 0; q < 300; q++) {
+            DijkstraStop source = stopList.get(random.nextInt(STOPS));
+            DijkstraStop target = stopList.get(random.nextInt(STOPS));
+            if (source == target) {
+                continue;
+            }
+            int departure = FIRST_DEPARTURE + 3600 + random.nextInt(2 * 3600);
+            int expected = referenceArrival(source, target, departure);
+            if (expected > departure + 3 * 3600) {
+                // beyond the Dijkstra journey limit
+                expected = Integer.MAX_VALUE;
+            }
+            String query = source.id + " -> " + target.id + " at " + departure;
+            DijkstraCoordinates from = new DijkstraCoordinates(source.lat, source.lon);
+            DijkstraCoordinates to = new DijkstraCoordinates(target.lat, target.lon);
+
+            assertEquals(expected, arrivalOf(csa.findJourney(from, to, departure)), "CSA " + query);
+            assertEquals(expected, arrivalOf(raptor.findJourney(from, to, departure)), "RAPTOR " + query);
+            assertEquals(expected, arrivalOf(dijkstra.findShortestJourney(source.id, target.id, departure)),
+                    "Dijkstra " + query);
+            assertEquals(expected, arrivalOf(tripBased.findShortestJourney(source.id, target.id, departure)),
+                    "trip-based " + query);
+            if (expected != Integer.MAX_VALUE) {
+                found++;
+            }
+        }
+        assertTrue(found > 50, "too few reachable queries: " + found);
+    }
+
+    @Test
+    void oneToAllArrivalsAgree() {
+        ConnectionScanRouter csa = new ConnectionScanRouter(stops, outgoing, routes, MAX_WALK_METERS);
+        RaptorRouter raptor = new RaptorRouter(stops, outgoing, routes, MAX_WALK_METERS);
+
+        for (DijkstraStop source : stopList) {
+            int departure = FIRST_DEPARTURE + 3600;
+            DijkstraCoordinates from = new DijkstraCoordinates(source.lat, source.lon);
+            Map<String, Integer> csaArrivals = csa.findEarliestArrivals(from, departure);
+            Map<String, Integer> raptorArrivals = raptor.findEarliestArrivals(from, departure);
+            for (DijkstraStop target : stopList) {
+                int expected = referenceArrival(source, target, departure);
+                Integer reference = expected == Integer.MAX_VALUE ? null : expected;
+                assertEquals(reference, csaArrivals.get(target.id), "CSA " + source.id + " -> " + target.id);
+                // RAPTOR stops after its transfer limit, which this small feed never reaches
+                assertEquals(reference, raptorArrivals.get(target.id), "RAPTOR " + source.id + " -> " + target.id);
+            }
+        }
+    }
+
+    private static int arrivalOf(Journey journey) {
+        return journey == null ? Integer.MAX_VALUE : journey.arrivalTime;
+    }
+}
@@ -0,0 +1,206 @@
+package routing.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RouteCacheTest {
+
+    // two stops 30 m apart form one cluster, a third is 2 km away
+    private static final double[] LATS = {47.5000, 47.50027, 47.5180};
+    private static final double[] LONS = {19.0400, 19.0400, 19.0400};
+    private static final double FAR_LAT = 47.4500;
+    private static final double FAR_LON = 19.1000;
+    private static final int T = 8 * 3600;
+
+    private final AtomicInteger searches = new AtomicInteger();
+
+    private RouteCache<String> cache(int ttlSeconds, int maxEntries) {
+        return new RouteCache<>(LATS, LONS, 50, 60, ttlSeconds, maxEntries);
+    }
+
+    private String search(int departureSec) {
+        searches.incrementAndGet();
+        return "route@" + departureSec;
+    }
+
+    @Test
+    void searchesFromTheEndOfTheBucket() {
+        RouteCache<String> cache = cache(600, 1000);
+
+        assertEquals("route@" + (T + 59), cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T + 10, null, this::search));
+        assertEquals("route@" + (T + 59), cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T + 59, null, this::search));
+        assertEquals(1, searches.get());
+
+        assertEquals("route@" + (T + 119), cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T + 60, null, this::search));
+        assertEquals(2, searches.get());
+    }
+
+    @Test
+    void coordinatesNearOneClusterShareEntries() {
+        RouteCache<String> cache = cache(600, 1000);
+
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        // the other stop of the cluster, and a point 20 m from it
+        cache.get(LATS[1], LONS[1], LATS[2], LONS[2], T, null, this::search);
+        cache.get(LATS[1] + 0.00018, LONS[1], LATS[2], LONS[2], T, null, this::search);
+        assertEquals(1, searches.get());
+
+        cache.get(FAR_LAT, FAR_LON, LATS[2], LONS[2], T, null, this::search);
+        cache.get(FAR_LAT + 0.001, FAR_LON, LATS[2], LONS[2], T, null, this::search);
+        cache.get(LATS[2], LONS[2], LATS[0], LONS[0], T, null, this::search);
+        assertEquals(4, searches.get());
+
+        RouteCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.hits());
+        assertEquals(4, stats.misses());
+        assertEquals(4, stats.entries());
+    }
+
+    @Test
+    void serviceDateIsPartOfTheKey() {
+        RouteCache<String> cache = cache(600, 1000);
+        LocalDate monday = LocalDate.of(2025, 3, 3);
+
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, monday, this::search);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, monday.plusDays(1), this::search);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, monday, this::search);
+        assertEquals(3, searches.get());
+    }
+
+    @Test
+    void cachesNoRoute() {
+        RouteCache<String> cache = cache(600, 1000);
+
+        assertNull(cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, d -> {
+            searches.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search));
+        assertEquals(1, searches.get());
+    }
+
+    @Test
+    void concurrentIdenticalQueriesShareOneSearch() throws Exception {
+        RouteCache<String> cache = cache(600, 1000);
+        int threads = 8;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, d -> {
+                started.countDown();
+                await(release);
+                return search(d);
+            })));
+            started.await();
+            for (int i = 1; i < threads; i++) {
+                results.add(pool.submit(() -> cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null,
+                        this::search)));
+            }
+            // the waiters cannot finish before the first search does
+            while (cache.getStats().coalesced() < threads - 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            String first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<String> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, searches.get());
+        RouteCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.misses());
+        assertEquals(threads - 1, stats.coalesced());
+        assertEquals(1.0 - 1.0 / threads, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void failedSearchIsNotCached() {
+        RouteCache<String> cache = cache(600, 1000);
+
+        assertThrows(IllegalStateException.class, () -> cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null,
+                d -> {
+                    throw new IllegalStateException("engine failed");
+                }));
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        assertEquals(1, searches.get());
+        assertEquals(1, cache.getStats().entries());
+    }
+
+    @Test
+    void entriesExpireAfterTheirTtl() throws InterruptedException {
+        RouteCache<String> cache = cache(1, 1000);
+
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        assertEquals(1, searches.get());
+
+        Thread.sleep(1100);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        assertEquals(2, searches.get());
+        assertEquals(1, cache.getStats().evictions());
+    }
+
+    @Test
+    void clearDropsEntriesAndRunningSearches() {
+        RouteCache<String> cache = cache(600, 1000);
+
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        cache.clear();
+        assertEquals(0, cache.getStats().entries());
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T, null, this::search);
+        assertEquals(2, searches.get());
+
+        // a search that was running when the data was reloaded answers its caller but is not kept
+        String answer = cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T + 600, null, d -> {
+            cache.clear();
+            return search(d);
+        });
+        assertEquals("route@" + (T + 659), answer);
+        cache.get(LATS[0], LONS[0], LATS[2], LONS[2], T + 600, null, this::search);
+        assertEquals(4, searches.get());
+        assertEquals(0, cache.getStats().hits());
+    }
+
+    @Test
+    void staysWithinItsSizeBound() {
+        RouteCache<String> cache = cache(600, 64);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.get(LATS[0], LONS[0], LATS[2], LONS[2], i * 60, null, this::search);
+        }
+        RouteCache.Stats stats = cache.getStats();
+        assertTrue(stats.entries() <= 64, "entries " + stats.entries());
+        assertEquals(1000 - stats.entries(), stats.evictions());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package routing.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import routing.routingEngineDijkstra.adiModels.AdiRouteStep;
+import routing.routingEngineDijkstra.adiModels.Stop.AdiStop;
+import routing.routingEngineModels.Coordinates;
+import routing.routingEngineModels.FinalRoute;
+import routing.routingEngineModels.InputJourney;
+
+class RouterTest {
+
+    private static final double[] LATS = {47.5000, 47.5180};
+    private static final double[] LONS = {19.0400, 19.0400};
+    private static final Coordinates FROM = new Coordinates(LATS[0], LONS[0]);
+    private static final Coordinates TO = new Coordinates(LATS[1], LONS[1]);
+
+    /** Answers every query with a one-step route departing at the searched time. */
+    private static final class RecordingStrategy implements RoutingStrategy {
+        final List<LocalTime> searches = new ArrayList<>();
+
+        @Override
+        public FinalRoute findRoute(InputJourney inputJourney) {
+            searches.add(inputJourney.getStartTime());
+            ArrayList<AdiRouteStep> steps = new ArrayList<>();
+            steps.add(new AdiRouteStep("walk", inputJourney.getEnd(), 5, inputJourney.getStartTime()));
+            return new FinalRoute(steps, 400, 300);
+        }
+
+        @Override
+        public FinalRoute findRoute(AdiStop from, AdiStop to, LocalTime startTime) {
+            return findRoute(new InputJourney(from.getCoordinates(), to.getCoordinates(), startTime));
+        }
+
+        @Override
+        public Map<String, Integer> findTravelTimes(Coordinates origin, LocalTime startTime) {
+            return Map.of();
+        }
+    }
+
+    private static Router cachedRouter(RoutingStrategy strategy, int bucketSeconds) {
+        return new Router(strategy, new RouteCache<>(LATS, LONS, 50, bucketSeconds, 600, 1000));
+    }
+
+    @Test
+    void queriesOfOneBucketShareASearchFromItsEnd() {
+        RecordingStrategy strategy = new RecordingStrategy();
+        Router router = cachedRouter(strategy, 60);
+
+        FinalRoute first = router.findRoute(FROM, TO, LocalTime.of(8, 0, 10));
+        FinalRoute second = router.findRoute(FROM, TO, LocalTime.of(8, 0, 50));
+
+        assertEquals(List.of(LocalTime.of(8, 0, 59)), strategy.searches);
+        // neither caller gets a route that leaves before it asked for
+        assertEquals(LocalTime.of(8, 0, 59), first.getRouteSteps().get(0).getStartTime());
+        assertEquals(1, router.getCacheStats().hits());
+    }
+
+    @Test
+    void callersGetTheirOwnCopies() {
+        RecordingStrategy strategy = new RecordingStrategy();
+        Router router = cachedRouter(strategy, 60);
+
+        FinalRoute first = router.findRoute(FROM, TO, LocalTime.of(8, 0));
+        first.getRouteSteps().clear();
+        FinalRoute second = router.findRoute(FROM, TO, LocalTime.of(8, 0));
+
+        assertNotSame(first, second);
+        assertEquals(1, second.getRouteSteps().size());
+        assertEquals(300, second.getTotalTime());
+        assertNull(second.getSearchStats());
+        assertEquals(1, strategy.searches.size());
+    }
+
+    @Test
+    void lastBucketOfTheDaySearchesFromMidnightAtMost() {
+        RecordingStrategy strategy = new RecordingStrategy();
+        // 86,400 is not a multiple of 420, so the last bucket ends after midnight
+        Router router = cachedRouter(strategy, 420);
+
+        router.findRoute(FROM, TO, LocalTime.of(23, 59));
+        assertEquals(List.of(LocalTime.of(23, 59, 59)), strategy.searches);
+    }
+
+    @Test
+    void invalidatingOrReplacingTheStrategyClearsTheCache() {
+        RecordingStrategy strategy = new RecordingStrategy();
+        Router router = cachedRouter(strategy, 60);
+
+        router.findRoute(FROM, TO, LocalTime.of(8, 0));
+        router.invalidateCache();
+        router.findRoute(FROM, TO, LocalTime.of(8, 0));
+        assertEquals(2, strategy.searches.size());
+
+        RecordingStrategy reloaded = new RecordingStrategy();
+        router.setStrategy(reloaded);
+        router.findRoute(FROM, TO, LocalTime.of(8, 0));
+        assertEquals(1, reloaded.searches.size());
+        assertEquals(0, router.getCacheStats().hits());
+    }
+
+    @Test
+    void withoutACacheEveryQuerySearchesAtItsOwnTime() {
+        RecordingStrategy strategy = new RecordingStrategy();
+        Router router = new Router(strategy);
+
+        router.findRoute(FROM, TO, LocalTime.of(8, 0, 10));
+        router.findRoute(FROM, TO, LocalTime.of(8, 0, 10));
+        assertEquals(List.of(LocalTime.of(8, 0, 10), LocalTime.of(8, 0, 10)), strategy.searches);
+        assertNull(router.getCacheStats());
+    }
+}
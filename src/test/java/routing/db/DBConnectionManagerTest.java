@@ -0,0 +1,107 @@
+package routing.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DBConnectionManagerTest {
+
+    @TempDir
+    Path dir;
+
+    private String url() {
+        return "jdbc:sqlite:" + dir.resolve("pool.db");
+    }
+
+    @Test
+    void threadGetsBackItsConnection() throws SQLException {
+        try (DBConnectionManager manager = new DBConnectionManager(url(), 2)) {
+            String first;
+            try (Connection conn = manager.getConnection()) {
+                first = conn.toString();
+            }
+            try (Connection conn = manager.getConnection()) {
+                assertEquals(first, conn.toString());
+            }
+            assertEquals(1, manager.getStats().connectionMisses());
+        }
+    }
+
+    @Test
+    void closedManagerRefusesConnections() throws SQLException {
+        DBConnectionManager manager = new DBConnectionManager(url(), 2);
+        try (Connection conn = manager.getConnection()) {
+            assertEquals(1, query(conn));
+        }
+        manager.close();
+        SQLException e = assertThrows(SQLException.class, manager::getConnection);
+        assertEquals("Connection manager is closed", e.getMessage());
+        assertEquals(0, manager.getStats().openConnections());
+    }
+
+    @Test
+    void closeWhileBorrowingNeverHandsOutAClosedConnection() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            DBConnectionManager manager = new DBConnectionManager(url(), 4);
+            int threads = 8;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<Throwable>> results = new ArrayList<>();
+            try {
+                for (int t = 0; t < threads; t++) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        while (true) {
+                            Connection conn;
+                            try {
+                                conn = manager.getConnection();
+                            } catch (SQLException e) {
+                                // the only acceptable failure once the manager is closed
+                                return "Connection manager is closed".equals(e.getMessage()) ? null : e;
+                            }
+                            try (conn) {
+                                query(conn);
+                            } catch (SQLException e) {
+                                return e;
+                            }
+                        }
+                    }));
+                }
+                start.countDown();
+                Thread.sleep(round % 5);
+                manager.close();
+                for (Future<Throwable> result : results) {
+                    Throwable failure = result.get(30, TimeUnit.SECONDS);
+                    assertSame(null, failure, () -> "round failed: " + failure);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(0, manager.getStats().openConnections());
+        }
+    }
+
+    private static int query(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT 1")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package routing.routingEngineCSA.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+
+class ConnectionScanRouterTest {
+
+    private static final int EIGHT = 8 * 3600;
+
+    @Test
+    void accessStopsFollowTheSortedStopOrder() {
+        // inserted in another order than sorted by id, so map order and index order differ
+        Map<String, DijkstraStop> stops = new LinkedHashMap<>();
+        DijkstraStop z = new DijkstraStop("z", "far", 47.60, 19.15);
+        DijkstraStop a = new DijkstraStop("a", "origin", 47.50, 19.00);
+        DijkstraStop m = new DijkstraStop("m", "next door", 47.5005, 19.00);
+        stops.put("z", z);
+        stops.put("a", a);
+        stops.put("m", m);
+
+        Map<String, List<DijkstraConnection>> outgoing = new HashMap<>();
+        outgoing.computeIfAbsent("a", k -> new ArrayList<>())
+                .add(new DijkstraConnection(a, z, EIGHT + 600, EIGHT + 1800, "T1", "R1", "far"));
+        Map<String, DijkstraRouteInfo> routes = Map.of("R1", new DijkstraRouteInfo("op", "1", "", "far"));
+
+        ConnectionScanRouter router = new ConnectionScanRouter(stops, outgoing, routes, 500);
+        Map<String, Integer> arrivals = router.findEarliestArrivals(new DijkstraCoordinates(47.50, 19.00), EIGHT);
+
+        assertEquals(EIGHT, arrivals.get("a"));
+        assertEquals(EIGHT + 1800, arrivals.get("z"));
+        assertEquals(3, arrivals.size());
+    }
+
+    @Test
+    void sortsByDepartureThenArrivalThenInputOrder() {
+        // dep, arr, from, to, trip
+        int[] raw = {
+                EIGHT + 60, EIGHT + 120, 0, 1, 0,
+                EIGHT, EIGHT + 300, 1, 2, 1,
+                EIGHT, EIGHT + 60, 2, 3, 2,
+                EIGHT, EIGHT + 60, 3, 4, 3,
+                -300, 60, 4, 5, 4,
+        };
+        int[] expected = {
+                -300, 60, 4, 5, 4,
+                EIGHT, EIGHT + 60, 2, 3, 2,
+                EIGHT, EIGHT + 60, 3, 4, 3,
+                EIGHT, EIGHT + 300, 1, 2, 1,
+                EIGHT + 60, EIGHT + 120, 0, 1, 0,
+        };
+        assertArrayEquals(expected, ConnectionScanRouter.sortByDeparture(raw, 5));
+    }
+
+    @Test
+    void sortRefusesInputItCannotKeyExactly() {
+        // checked before anything is allocated, so the array does not have to be that long
+        assertThrows(IllegalArgumentException.class,
+                () -> ConnectionScanRouter.sortByDeparture(new int[0], (1 << 28) + 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> ConnectionScanRouter.sortByDeparture(new int[] {1 << 20, (1 << 20) + 60, 0, 1, 0}, 1));
+    }
+}
@@ -0,0 +1,165 @@
+package routing.routingEngineDijkstra.dijkstra.parsers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+
+class TimetableSnapshotTest {
+
+    private static final long FEED = 0x1234_5678_9ABCL;
+    private static final int WALK = 400;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private final Map<String, DijkstraStop> stops = new LinkedHashMap<>();
+    private final Map<String, DijkstraRouteInfo> routes = new LinkedHashMap<>();
+    private final Map<String, List<DijkstraConnection>> connections = new LinkedHashMap<>();
+
+    @BeforeEach
+    void buildTimetable() {
+        file = dir.resolve("timetable.snapshot");
+        DijkstraStop a = stop("A", "Déli pályaudvar", 47.5003, 19.0236, 0);
+        DijkstraStop b = stop("B", "Széll Kálmán tér", 47.5075, 19.0245, 1);
+        DijkstraStop c = stop("C", "Batthyány tér", 47.5068, 19.0385, 2);
+        routes.put("M2", new DijkstraRouteInfo("BKV", "M2", "Metro 2", "Örs vezér tere"));
+        routes.put("N1", new DijkstraRouteInfo("BKV", "N1", "Night 1", null));
+
+        add(new DijkstraConnection(a, b, 8 * 3600, 8 * 3600 + 120, "t1", "M2", "Örs vezér tere"));
+        add(new DijkstraConnection(b, c, 8 * 3600 + 180, 8 * 3600 + 300, "t1", "M2", "Örs vezér tere"));
+        // the previous day's run of a trip past midnight, and one without a head sign
+        add(new DijkstraConnection(a, c, 300, 900, "t2", "N1", null, -1));
+        add(new DijkstraConnection(a, c, 86_400 + 300, 86_400 + 900, "t2", "N1", null));
+        add(new DijkstraConnection(b, a, 0, 240, null, "WALK", "Walk to " + a.name));
+        add(new DijkstraConnection(c, b, 0, 310, null, "WALK", "Walk to " + b.name));
+    }
+
+    private DijkstraStop stop(String id, String name, double lat, double lon, int index) {
+        DijkstraStop stop = new DijkstraStop(id, name, lat, lon, index);
+        stops.put(id, stop);
+        return stop;
+    }
+
+    private void add(DijkstraConnection connection) {
+        connections.computeIfAbsent(connection.from.id, k -> new ArrayList<>()).add(connection);
+    }
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        TimetableSnapshot.write(file, FEED, WALK, stops, routes, connections);
+
+        for (boolean verify : new boolean[] {false, true}) {
+            TimetableSnapshot snapshot = TimetableSnapshot.openIfCurrent(file, FEED, WALK, verify);
+            assertNotNull(snapshot);
+
+            assertEquals(stops.keySet(), snapshot.getStops().keySet());
+            for (DijkstraStop expected : stops.values()) {
+                DijkstraStop actual = snapshot.getStops().get(expected.id);
+                assertEquals(expected.name, actual.name);
+                assertEquals(expected.lat, actual.lat);
+                assertEquals(expected.lon, actual.lon);
+                assertEquals(expected.index, actual.index);
+            }
+
+            assertEquals(routes.keySet(), snapshot.getRoutes().keySet());
+            for (Map.Entry<String, DijkstraRouteInfo> e : routes.entrySet()) {
+                DijkstraRouteInfo actual = snapshot.getRoutes().get(e.getKey());
+                assertEquals(e.getValue().operator, actual.operator);
+                assertEquals(e.getValue().shortName, actual.shortName);
+                assertEquals(e.getValue().longName, actual.longName);
+                assertEquals(e.getValue().headSign, actual.headSign);
+            }
+
+            assertEquals(connections.keySet(), snapshot.getConnections().keySet());
+            for (String stop : connections.keySet()) {
+                assertEquals(describe(connections.get(stop)), describe(snapshot.getConnections().get(stop)), stop);
+            }
+        }
+    }
+
+    private static List<String> describe(List<DijkstraConnection> list) {
+        List<String> out = new ArrayList<>();
+        for (DijkstraConnection c : list) {
+            out.add(c.from.id + ">" + c.to.id + " " + c.departureTime + "-" + c.arrivalTime + " " + c.tripId
+                    + " " + c.routeId + " " + c.headSign + " " + c.serviceDay);
+        }
+        out.sort(Comparator.naturalOrder());
+        return out;
+    }
+
+    @Test
+    void missingSnapshotIsNotCurrent() throws IOException {
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK, true));
+    }
+
+    @Test
+    void snapshotOfAnotherFeedOrWalkingDistanceIsStale() throws IOException {
+        TimetableSnapshot.write(file, FEED, WALK, stops, routes, connections);
+
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED + 1, WALK, false));
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK + 1, false));
+        assertNotNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK, false));
+    }
+
+    @Test
+    void truncatedSnapshotIsStale() throws IOException {
+        TimetableSnapshot.write(file, FEED, WALK, stops, routes, connections);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 8);
+        }
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK, false));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(16);
+        }
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK, false));
+    }
+
+    @Test
+    void verifiedOpenRejectsCorruptedPayload() throws IOException {
+        TimetableSnapshot.write(file, FEED, WALK, stops, routes, connections);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long last = raf.length() - 1;
+            raf.seek(last);
+            int b = raf.read();
+            raf.seek(last);
+            raf.write(b ^ 0x01);
+        }
+        assertNull(TimetableSnapshot.openIfCurrent(file, FEED, WALK, true));
+    }
+
+    @Test
+    void fileStampFollowsTheDatabaseAndItsLog() throws IOException {
+        Path db = dir.resolve("feed.db");
+        Files.write(db, new byte[] {1, 2, 3});
+        long stamp = TimetableSnapshot.fileStamp(db);
+        assertEquals(stamp, TimetableSnapshot.fileStamp(db));
+
+        Files.write(dir.resolve("feed.db-wal"), new byte[] {4});
+        long withLog = TimetableSnapshot.fileStamp(db);
+        assertNotEquals(stamp, withLog);
+
+        Files.write(db, new byte[] {1, 2, 3, 4});
+        assertNotEquals(withLog, TimetableSnapshot.fileStamp(db));
+    }
+}
@@ -0,0 +1,95 @@
+package routing.routingEngineModels.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the KD-tree queries against a linear haversine scan.
+ */
+class PackedKDTreeTest {
+
+    private static final int POINTS = 2000;
+
+    private final double[] lats = new double[POINTS];
+    private final double[] lons = new double[POINTS];
+    private final PackedKDTree tree;
+
+    PackedKDTreeTest() {
+        // a Budapest-sized area, with some duplicate points
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            if (i > 0 && i % 50 == 0) {
+                lats[i] = lats[i - 1];
+                lons[i] = lons[i - 1];
+            } else {
+                lats[i] = 47.35 + random.nextDouble() * 0.3;
+                lons[i] = 18.90 + random.nextDouble() * 0.4;
+            }
+        }
+        tree = new PackedKDTree(lats, lons);
+    }
+
+    @Test
+    void withinMatchesLinearScan() {
+        Random random = new Random(7);
+        for (int q = 0; q < 200; q++) {
+            double lat = 47.30 + random.nextDouble() * 0.4;
+            double lon = 18.85 + random.nextDouble() * 0.5;
+            double radius = random.nextInt(3) == 0 ? 50 : 100 + random.nextDouble() * 2000;
+
+            int[] expected = IntStream.range(0, POINTS)
+                    .filter(i -> TimeAndGeoUtils.haversineMeters(lat, lon, lats[i], lons[i]) <= radius)
+                    .toArray();
+            int[] actual = tree.within(lat, lon, radius).toArray();
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual, "query " + q);
+        }
+    }
+
+    @Test
+    void withinAtAPointFindsIt() {
+        for (int i = 0; i < POINTS; i += 97) {
+            int point = i;
+            int[] actual = tree.within(lats[i], lons[i], 0).toArray();
+            assertTrue(Arrays.stream(actual).anyMatch(p -> p == point), "point " + i);
+        }
+    }
+
+    @Test
+    void nearestMatchesLinearScan() {
+        Random random = new Random(11);
+        for (int q = 0; q < 200; q++) {
+            double lat = 47.30 + random.nextDouble() * 0.4;
+            double lon = 18.85 + random.nextDouble() * 0.5;
+
+            double[] distances = new double[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                distances[i] = TimeAndGeoUtils.haversineMeters(lat, lon, lats[i], lons[i]);
+            }
+            double[] sorted = distances.clone();
+            Arrays.sort(sorted);
+
+            // compare distances, ties between duplicate points may come in any order
+            assertEquals(sorted[0], distances[tree.nearest(lat, lon)], 1e-9, "query " + q);
+            int[] nearest = tree.nearest(lat, lon, 10);
+            assertEquals(10, nearest.length);
+            for (int k = 0; k < nearest.length; k++) {
+                assertEquals(sorted[k], distances[nearest[k]], 1e-9, "query " + q + " rank " + k);
+            }
+        }
+    }
+
+    @Test
+    void emptyTree() {
+        PackedKDTree empty = new PackedKDTree(new double[0], new double[0]);
+        assertEquals(-1, empty.nearest(47.5, 19.0));
+        assertEquals(0, empty.within(47.5, 19.0, 1000).size());
+    }
+}
@@ -0,0 +1,59 @@
+package routing.routingEngineModels.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class ServiceTimeTest {
+
+    @Test
+    void parsesTimesBeforeMidnight() {
+        assertEquals(0, ServiceTime.parse("00:00:00"));
+        assertEquals(8 * 3600 + 5 * 60 + 9, ServiceTime.parse("8:05:09"));
+        assertEquals(8 * 3600 + 5 * 60 + 9, ServiceTime.parse(" 08:05:09 "));
+        assertEquals(ServiceTime.DAY_SECONDS - 1, ServiceTime.parse("23:59:59"));
+    }
+
+    @Test
+    void keepsHoursPastMidnightOnTheServiceDay() {
+        assertEquals(ServiceTime.DAY_SECONDS, ServiceTime.parse("24:00:00"));
+        assertEquals(25 * 3600 + 10 * 60, ServiceTime.parse("25:10:00"));
+        assertEquals(48 * 3600 + 1, ServiceTime.parse("48:00:01"));
+    }
+
+    @Test
+    void rejectsMalformedTimes() {
+        for (String bad : new String[] {"", "8:00", "08:60:00", "08:00:60", "8:5:09", "08:00:00:00",
+                "ab:00:00", "-1:00:00", ":00:00"}) {
+            assertThrows(IllegalArgumentException.class, () -> ServiceTime.parse(bad), bad);
+        }
+    }
+
+    @Test
+    void formatsTheGtfsWayAndRoundTrips() {
+        assertEquals("08:05:09", ServiceTime.format(8 * 3600 + 5 * 60 + 9));
+        assertEquals("24:00:00", ServiceTime.format(ServiceTime.DAY_SECONDS));
+        assertEquals("25:10:00", ServiceTime.format(25 * 3600 + 10 * 60));
+        for (int seconds = 0; seconds < 2 * ServiceTime.DAY_SECONDS; seconds += 1237) {
+            assertEquals(seconds, ServiceTime.parse(ServiceTime.format(seconds)));
+        }
+    }
+
+    @Test
+    void wrapsOntoTheClock() {
+        assertEquals("01:10:00", ServiceTime.formatClock(25 * 3600 + 10 * 60));
+        assertEquals("00:00:00", ServiceTime.formatClock(ServiceTime.DAY_SECONDS));
+        // the previous service day seen from the next one
+        assertEquals("23:30:00", ServiceTime.format(-1800));
+        assertEquals(ServiceTime.DAY_SECONDS - 1800, ServiceTime.toClock(-1800));
+    }
+
+    @Test
+    void countsDaysAfterMidnight() {
+        assertEquals(0, ServiceTime.dayOffset(ServiceTime.DAY_SECONDS - 1));
+        assertEquals(1, ServiceTime.dayOffset(ServiceTime.DAY_SECONDS));
+        assertEquals(1, ServiceTime.dayOffset(25 * 3600));
+        assertEquals(-1, ServiceTime.dayOffset(-1));
+    }
+}
@@ -0,0 +1,107 @@
+package routing.routingEngineRaptor.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.Journey;
+import routing.routingEngineDijkstra.dijkstra.algorithm.DijkstraRouter.JourneyLeg;
+
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraConnection;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraCoordinates;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraRouteInfo;
+import routing.routingEngineDijkstra.dijkstra.model.input.DijkstraStop;
+
+class RaptorRouterTest {
+
+    private static final int EIGHT = 8 * 3600;
+
+    @Test
+    void accessStopsFollowTheSortedStopOrder() {
+        // inserted in another order than sorted by id, so map order and index order differ
+        Map<String, DijkstraStop> stops = new LinkedHashMap<>();
+        DijkstraStop z = new DijkstraStop("z", "far", 47.60, 19.15);
+        DijkstraStop a = new DijkstraStop("a", "origin", 47.50, 19.00);
+        DijkstraStop m = new DijkstraStop("m", "next door", 47.5005, 19.00);
+        stops.put("z", z);
+        stops.put("a", a);
+        stops.put("m", m);
+
+        Map<String, List<DijkstraConnection>> outgoing = new HashMap<>();
+        outgoing.computeIfAbsent("a", k -> new ArrayList<>())
+                .add(new DijkstraConnection(a, z, EIGHT + 600, EIGHT + 1800, "T1", "R1", "far"));
+        Map<String, DijkstraRouteInfo> routes = Map.of("R1", new DijkstraRouteInfo("op", "1", "", "far"));
+
+        RaptorRouter router = new RaptorRouter(stops, outgoing, routes, 500);
+        Map<String, Integer> arrivals = router.findEarliestArrivals(new DijkstraCoordinates(47.50, 19.00), EIGHT);
+
+        assertEquals(EIGHT, arrivals.get("a"));
+        assertEquals(EIGHT + 1800, arrivals.get("z"));
+        assertEquals(3, arrivals.size());
+    }
+
+    @Test
+    void paretoSetKeepsTheSlowerDirectAndTheFasterTransferJourney() {
+        // stops several km apart, so nothing is within walking distance of anything else
+        Map<String, DijkstraStop> stops = new LinkedHashMap<>();
+        DijkstraStop a = new DijkstraStop("a", "origin", 47.50, 19.00);
+        DijkstraStop b = new DijkstraStop("b", "change", 47.55, 19.05);
+        DijkstraStop c = new DijkstraStop("c", "detour", 47.52, 19.20);
+        DijkstraStop d = new DijkstraStop("d", "destination", 47.60, 19.10);
+        for (DijkstraStop stop : List.of(a, b, c, d)) {
+            stops.put(stop.id, stop);
+        }
+
+        Map<String, List<DijkstraConnection>> outgoing = new HashMap<>();
+        List<DijkstraConnection> connections = List.of(
+                // direct, no transfer, arrives 09:30
+                new DijkstraConnection(a, d, EIGHT + 600, EIGHT + 5400, "direct", "R1", "d"),
+                // a later direct trip, dominated by the first
+                new DijkstraConnection(a, d, EIGHT + 2400, EIGHT + 6000, "later", "R1", "d"),
+                // one transfer at b, arrives 08:50
+                new DijkstraConnection(a, b, EIGHT + 300, EIGHT + 1200, "feeder", "R2", "b"),
+                new DijkstraConnection(b, d, EIGHT + 1500, EIGHT + 3000, "express", "R3", "d"),
+                // one transfer at c, arrives 09:00: dominated by the change at b
+                new DijkstraConnection(a, c, EIGHT + 60, EIGHT + 600, "detour", "R4", "c"),
+                new DijkstraConnection(c, d, EIGHT + 900, EIGHT + 3600, "slow", "R5", "d"),
+                // two transfers via c and b, reaching the same express: no earlier arrival
+                new DijkstraConnection(c, b, EIGHT + 720, EIGHT + 1320, "shuttle", "R5", "b"));
+        for (DijkstraConnection connection : connections) {
+            outgoing.computeIfAbsent(connection.from.id, k -> new ArrayList<>()).add(connection);
+        }
+        Map<String, DijkstraRouteInfo> routes = new HashMap<>();
+        for (String route : List.of("R1", "R2", "R3", "R4", "R5")) {
+            routes.put(route, new DijkstraRouteInfo("op", route, "", ""));
+        }
+
+        RaptorRouter router = new RaptorRouter(stops, outgoing, routes, 500);
+        List<Journey> journeys = router.findParetoJourneys(
+                new DijkstraCoordinates(a.lat, a.lon), new DijkstraCoordinates(d.lat, d.lon), EIGHT);
+
+        assertEquals(2, journeys.size());
+        assertEquals(List.of("direct"), trips(journeys.get(0)));
+        assertEquals(EIGHT + 5400, journeys.get(0).arrivalTime);
+        assertEquals(List.of("feeder", "express"), trips(journeys.get(1)));
+        assertEquals(EIGHT + 3000, journeys.get(1).arrivalTime);
+
+        // the earliest-arrival query returns the last journey of the set
+        assertEquals(List.of("feeder", "express"), trips(router.findJourney(
+                new DijkstraCoordinates(a.lat, a.lon), new DijkstraCoordinates(d.lat, d.lon), EIGHT)));
+    }
+
+    private static List<String> trips(Journey journey) {
+        List<String> trips = new ArrayList<>();
+        for (JourneyLeg leg : journey.legs) {
+            if (!leg.isWalking) {
+                trips.add(leg.tripId);
+            }
+        }
+        return trips;
+    }
+}